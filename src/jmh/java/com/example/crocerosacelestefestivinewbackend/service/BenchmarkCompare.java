@@ -0,0 +1,63 @@
+package com.example.crocerosacelestefestivinewbackend.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Confronta due risultati JMH in formato JSON (-rf json) e segnala le regressioni oltre la soglia.
+ * Uso: BenchmarkCompare baseline.json current.json [sogliaPercentuale=10]. Exit code 1 se c'è almeno una regressione.
+ */
+public final class BenchmarkCompare {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Uso: BenchmarkCompare <baseline.json> <current.json> [sogliaPercentuale]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10.0;
+        Map<String, JsonNode> baseline = load(new File(args[0]));
+        Map<String, JsonNode> current = load(new File(args[1]));
+
+        int regressions = 0;
+        System.out.printf("%-70s %12s %12s %9s%n", "benchmark", "baseline", "current", "delta%");
+        for (Map.Entry<String, JsonNode> e : current.entrySet()) {
+            JsonNode cur = e.getValue().path("primaryMetric");
+            JsonNode base = baseline.containsKey(e.getKey()) ? baseline.get(e.getKey()).path("primaryMetric") : null;
+            double c = cur.path("score").asDouble();
+            if (base == null) {
+                System.out.printf("%-70s %12s %12.3f %9s%n", e.getKey(), "-", c, "new");
+                continue;
+            }
+            double b = base.path("score").asDouble();
+            double delta = b == 0.0 ? 0.0 : (c - b) / b * 100.0;
+            // tutte le modalità usate (AverageTime, SingleShotTime) sono "più basso è meglio"
+            boolean regression = delta > threshold;
+            if (regression) regressions++;
+            System.out.printf("%-70s %12.3f %12.3f %+8.1f%%%s%n", e.getKey(), b, c, delta, regression ? "  REGRESSION" : "");
+        }
+        if (regressions > 0) {
+            System.out.println(regressions + " regressioni oltre il " + threshold + "%");
+            System.exit(1);
+        }
+    }
+
+    private static Map<String, JsonNode> load(File f) throws IOException {
+        Map<String, JsonNode> byKey = new LinkedHashMap<>();
+        for (JsonNode run : new ObjectMapper().readTree(f)) {
+            StringBuilder key = new StringBuilder(run.path("benchmark").asText());
+            JsonNode params = run.path("params");
+            for (Iterator<Map.Entry<String, JsonNode>> it = params.fields(); it.hasNext(); ) {
+                Map.Entry<String, JsonNode> p = it.next();
+                key.append(' ').append(p.getKey()).append('=').append(p.getValue().asText());
+            }
+            byKey.put(key.toString(), run);
+        }
+        return byKey;
+    }
+}
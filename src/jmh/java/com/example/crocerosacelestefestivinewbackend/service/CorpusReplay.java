@@ -0,0 +1,110 @@
+package com.example.crocerosacelestefestivinewbackend.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.ortools.modelbuilder.ModelBuilder;
+import com.google.ortools.modelbuilder.ModelSolver;
+import com.google.ortools.modelbuilder.SolveStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Replay del corpus scritto da ModelDump (festivi.milp.dump.dir): per ogni voce risolve il modello salvato così
+ * com'è (engine "mps", SCIP via ModelBuilder) e rilancia la richiesta originale sugli engine correnti a partire da
+ * snapshot.json. Stampa stato e tempo accanto a quelli registrati; exit code 1 se una voce che aveva una soluzione
+ * non ne trova più una. Uso: CorpusReplay <corpusDir> [timeoutSeconds=registrato]
+ * [engines=mps,greedy,milp,milp-lex,milp-strengthened,milp-strengthened-lex]
+ */
+public final class CorpusReplay {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Uso: CorpusReplay <corpusDir> [timeoutSeconds] [engines]");
+            System.exit(2);
+        }
+        Path corpus = Paths.get(args[0]);
+        Integer timeoutOverride = args.length > 1 && !args[1].isBlank() ? Integer.valueOf(args[1]) : null;
+        List<String> engines = Arrays.asList((args.length > 2 ? args[2]
+                : "mps,greedy,milp,milp-lex,milp-strengthened,milp-strengthened-lex").split(","));
+
+        OrToolsNatives natives = new OrToolsNatives("");
+        natives.ensureLoaded();
+        SchedulingMetrics metrics = new SchedulingMetrics(new SimpleMeterRegistry());
+        GreedySchedulerService greedy = new GreedySchedulerService(metrics, InfeasibilityDiagnosis.defaults());
+        MilpSchedulerService milp = new MilpSchedulerService(metrics, natives, ModelDump.disabled(), InfeasibilityDiagnosis.defaults(), false, 0.6, 0.0);
+        MilpSchedulerService milpStrengthened = new MilpSchedulerService(metrics, natives, ModelDump.disabled(), InfeasibilityDiagnosis.defaults(), true, 0.6, 0.0);
+
+        List<Path> entries;
+        try (Stream<Path> s = Files.list(corpus)) {
+            entries = s.filter(p -> Files.exists(p.resolve(ModelDump.SNAPSHOT))).sorted().toList();
+        }
+        ObjectMapper mapper = new ObjectMapper();
+        int regressions = 0;
+        System.out.printf("%-34s %-22s %-10s %9s %-10s %9s%n", "entry", "engine", "status", "ms", "recorded", "rec.ms");
+        for (Path entry : entries) {
+            JsonNode stats = mapper.readTree(entry.resolve(ModelDump.STATS).toFile());
+            String recorded = stats.path("status").asText();
+            long recordedMs = stats.path("solveMs").asLong();
+            boolean recordedSolved = "OPTIMAL".equals(recorded) || "FEASIBLE".equals(recorded);
+            for (String engine : engines) {
+                ModelDump.Request req = ModelDump.readSnapshot(entry);
+                int timeout = timeoutOverride != null ? timeoutOverride : req.timeoutSeconds;
+                long t0 = System.nanoTime();
+                String status;
+                try {
+                    status = switch (engine.trim()) {
+                        case "mps" -> solveRaw(entry, timeout);
+                        case "greedy" -> {
+                            greedy.schedule(req.rows, req.pesanti, req.start, req.end, req.minProximityDays, req.alpha, req.teams);
+                            yield "FEASIBLE";
+                        }
+                        case "milp" -> run(milp, req, timeout, false);
+                        case "milp-lex" -> run(milp, req, timeout, true);
+                        case "milp-strengthened" -> run(milpStrengthened, req, timeout, false);
+                        case "milp-strengthened-lex" -> run(milpStrengthened, req, timeout, true);
+                        default -> throw new IllegalArgumentException("engine sconosciuto: " + engine);
+                    };
+                } catch (RuntimeException e) {
+                    // ValidationException: nessuna assegnazione
+                    status = "NO_SOLUTION";
+                }
+                long ms = (System.nanoTime() - t0) / 1_000_000;
+                boolean solved = "OPTIMAL".equals(status) || "FEASIBLE".equals(status);
+                boolean regression = recordedSolved && !solved && !"greedy".equals(engine.trim());
+                if (regression) regressions++;
+                System.out.printf("%-34s %-22s %-10s %9d %-10s %9d%s%n", entry.getFileName(), engine.trim(), status, ms,
+                        recorded, recordedMs, regression ? "  REGRESSION" : "");
+            }
+        }
+        if (regressions > 0) {
+            System.out.println(regressions + " voci senza soluzione che prima ne avevano una");
+            System.exit(1);
+        }
+    }
+
+    private static String run(MilpSchedulerService service, ModelDump.Request req, int timeout, boolean lexicographic) {
+        service.schedule(req.rows, req.pesanti, req.start, req.end, req.minProximityDays, req.alpha, timeout, lexicographic, req.teams);
+        // schedule non espone lo stato: una soluzione restituita conta come FEASIBLE
+        return "FEASIBLE";
+    }
+
+    private static String solveRaw(Path entry, int timeout) throws IOException {
+        ModelBuilder model = new ModelBuilder();
+        Path mps = entry.resolve("model.mps");
+        // import*File di OR-Tools 9.8 fallisce sui file esportati da MPSolver, la variante da stringa no
+        boolean ok = Files.exists(mps) ? model.importFromMpsString(Files.readString(mps))
+                : model.importFromLpString(Files.readString(entry.resolve("model.lp")));
+        if (!ok) return "IMPORT_FAILED";
+        ModelSolver solver = new ModelSolver("scip");
+        solver.setTimeLimit(Duration.ofSeconds(timeout));
+        SolveStatus status = solver.solve(model);
+        return status.name();
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.crocerosacelestefestivinewbackend.service;
+
+import com.example.crocerosacelestefestivinewbackend.service.SchedulingCommon.BuiltModel;
+import com.google.ortools.linearsolver.MPSolver;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+/**
+ * Confronto tra formulazioni e modalità MILP sugli stessi calendari: originale (min L) e rafforzata (spread L - Lmin
+ * con bound e tagli), obiettivo pesato con alpha oppure lessicografico a due fasi. Stampa stato, tempo di risoluzione,
+ * gap relativo finale e spread/carico massimo/Emax effettivi della soluzione.
+ * "template" tra i mesi usa il template xlsx 2025 (pesi reali 10/20/30).
+ * Uso: MilpFormulationCompare [timeoutSeconds=30] [months=1,3,12,template] [alpha=1.0] [modes=blended,lex]
+ */
+public final class MilpFormulationCompare {
+
+    public static void main(String[] args) throws IOException {
+        int timeout = args.length > 0 ? Integer.parseInt(args[0]) : 30;
+        String[] months = (args.length > 1 ? args[1] : "1,3,12,template").split(",");
+        double alpha = args.length > 2 ? Double.parseDouble(args[2]) : 1.0;
+        String[] modes = (args.length > 3 ? args[3] : "blended,lex").split(",");
+
+        OrToolsNatives natives = new OrToolsNatives("");
+        natives.ensureLoaded();
+        MilpSchedulerService milp = new MilpSchedulerService(new SchedulingMetrics(new SimpleMeterRegistry()), natives, ModelDump.disabled(), InfeasibilityDiagnosis.defaults(), false, 0.6, 0.0);
+
+        System.out.printf("%-8s %-12s %-8s %-9s %8s %8s %7s %6s %4s %6s%n",
+                "months", "formulation", "mode", "status", "ms", "gap", "spread", "maxW", "Emax", "cons");
+        for (String m : months) {
+            for (String mode : modes) {
+                for (boolean strengthened : new boolean[]{false, true}) {
+                    BuiltModel bm = units(m.trim());
+                    MilpSchedulerService.MilpModel model = milp.buildModel(bm, PipelineBenchmark.MIN_PROXIMITY_DAYS, alpha, strengthened);
+                    try {
+                        int cons = model.solver.numConstraints();
+                        long t0 = System.nanoTime();
+                        MPSolver.ResultStatus status;
+                        boolean solved;
+                        if ("lex".equals(mode.trim())) {
+                            MilpSchedulerService.LexResult lex = milp.solveLexicographic(model, timeout);
+                            status = lex.status;
+                            solved = lex.objectiveValid;
+                        } else {
+                            model.solver.setTimeLimit(timeout * 1000L);
+                            status = model.solver.solve();
+                            solved = status == MPSolver.ResultStatus.OPTIMAL || status == MPSolver.ResultStatus.FEASIBLE;
+                        }
+                        long ms = (System.nanoTime() - t0) / 1_000_000;
+                        String gap = "-", spread = "-", maxW = "-", emax = "-";
+                        if (solved) {
+                            double value = model.solver.objective().value();
+                            double bound = model.solver.objective().bestBound();
+                            gap = String.format("%.4f", Math.abs(value - bound) / Math.max(Math.abs(value), 1e-9));
+                            long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+                            long e = 0;
+                            for (int t = 1; t <= model.T; t++) {
+                                long w = Math.round(model.W[t].solutionValue());
+                                min = Math.min(min, w);
+                                max = Math.max(max, w);
+                                e = Math.max(e, Math.round(model.E[t].solutionValue()));
+                            }
+                            spread = String.valueOf(max - min);
+                            maxW = String.valueOf(max);
+                            emax = String.valueOf(e);
+                        }
+                        System.out.printf("%-8s %-12s %-8s %-9s %8d %8s %7s %6s %4s %6d%n", m.trim(),
+                                strengthened ? "strengthened" : "original", mode.trim(), status, ms, gap, spread, maxW, emax, cons);
+                    } finally {
+                        model.solver.delete();
+                    }
+                }
+            }
+        }
+    }
+
+    private static BuiltModel units(String months) throws IOException {
+        if ("template".equals(months)) {
+            LocalDate start = LocalDate.of(2025, 1, 1), end = LocalDate.of(2025, 12, 31);
+            try (InputStream in = Files.newInputStream(Path.of("src/main/resources/festivi-template.xlsx"))) {
+                ExcelParsingService.ParseResult parsed = new ExcelParsingService(Violations.DEFAULT_MAX).parse(in, start, end);
+                return SchedulingCommon.buildUnits(parsed.rows, parsed.pesanti, start, end);
+            }
+        }
+        SyntheticCalendar cal = SyntheticCalendar.generate(PipelineBenchmark.START, Integer.parseInt(months), PipelineBenchmark.SEED);
+        return SchedulingCommon.buildUnits(cal.copyRows(), cal.pesanti, cal.start, cal.end);
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.crocerosacelestefestivinewbackend.service;
+
+import com.example.crocerosacelestefestivinewbackend.service.SchedulingCommon.BuiltModel;
+import com.google.ortools.linearsolver.MPSolver;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tempo di risoluzione SCIP sul modello MILP. Il modello viene ricostruito prima di ogni invocazione
+ * (fuori dalla misura) perché MPSolver mantiene lo stato della risoluzione precedente. Misura sia la formulazione
+ * originale sia quella rafforzata (festivi.milp.strengthened).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MilpSolveBenchmark {
+    static final int TIMEOUT_SECONDS = 30;
+
+    @Param({"1", "3", "12"})
+    public int months;
+
+    @Param({"false", "true"})
+    public boolean strengthened;
+
+    MilpSchedulerService milp;
+    BuiltModel built;
+    MilpSchedulerService.MilpModel model;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        OrToolsNatives natives = new OrToolsNatives("");
+        natives.ensureLoaded();
+        milp = new MilpSchedulerService(new SchedulingMetrics(new SimpleMeterRegistry()), natives, ModelDump.disabled(), InfeasibilityDiagnosis.defaults(), false, 0.6, 0.0);
+        SyntheticCalendar calendar = SyntheticCalendar.generate(PipelineBenchmark.START, months, PipelineBenchmark.SEED);
+        built = SchedulingCommon.buildUnits(calendar.rows, calendar.pesanti, calendar.start, calendar.end);
+    }
+
+    @Setup(Level.Invocation)
+    public void buildModel() {
+        model = milp.buildModel(built, PipelineBenchmark.MIN_PROXIMITY_DAYS, PipelineBenchmark.ALPHA, strengthened);
+        model.solver.setTimeLimit(TIMEOUT_SECONDS * 1000L);
+    }
+
+    @TearDown(Level.Invocation)
+    public void release() {
+        model.solver.delete();
+    }
+
+    @Benchmark
+    public MPSolver.ResultStatus solve() {
+        return model.solver.solve();
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.crocerosacelestefestivinewbackend.service;
+
+import com.example.crocerosacelestefestivinewbackend.service.ExcelParsingService.ParseResult;
+import com.example.crocerosacelestefestivinewbackend.service.SchedulingCommon.BuiltModel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark delle fasi della pipeline sui calendari sintetici (1 mese .. 3 anni).
+ * La risoluzione MILP, molto più lenta, è in {@link MilpSolveBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelineBenchmark {
+    static final long SEED = 20250101L;
+    static final LocalDate START = LocalDate.of(2025, 1, 1);
+    static final int MIN_PROXIMITY_DAYS = 1;
+    static final double ALPHA = 0.7;
+
+    @Param({"1", "12", "36"})
+    public int months;
+
+    SyntheticCalendar calendar;
+    byte[] xlsx;
+    ExcelParsingService parsing;
+    GreedySchedulerService greedy;
+    MilpSchedulerService milp;
+    ExcelOutputService output;
+    BuiltModel built;
+    SchedulingCommon.ScheduleResult greedyResult;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        OrToolsNatives natives = new OrToolsNatives("");
+        natives.ensureLoaded();
+        SchedulingMetrics metrics = new SchedulingMetrics(new SimpleMeterRegistry());
+        parsing = new ExcelParsingService(Violations.DEFAULT_MAX);
+        greedy = new GreedySchedulerService(metrics, InfeasibilityDiagnosis.defaults());
+        milp = new MilpSchedulerService(metrics, natives, ModelDump.disabled(), InfeasibilityDiagnosis.defaults(), false, 0.6, 0.0);
+        output = new ExcelOutputService();
+        calendar = SyntheticCalendar.generate(START, months, SEED);
+        xlsx = calendar.toXlsx();
+        built = SchedulingCommon.buildUnits(calendar.copyRows(), calendar.pesanti, calendar.start, calendar.end);
+        greedyResult = greedy.schedule(calendar.copyRows(), calendar.pesanti, calendar.start, calendar.end, MIN_PROXIMITY_DAYS, ALPHA);
+    }
+
+    @Benchmark
+    public ParseResult parse() {
+        return parsing.parse(new ByteArrayInputStream(xlsx), calendar.start, calendar.end);
+    }
+
+    @Benchmark
+    public BuiltModel buildUnits() {
+        // buildUnits muta solo le forzate MPB in modo idempotente: le righe possono essere riusate
+        return SchedulingCommon.buildUnits(calendar.rows, calendar.pesanti, calendar.start, calendar.end);
+    }
+
+    @Benchmark
+    public SchedulingCommon.ScheduleResult greedy() {
+        return greedy.schedule(calendar.rows, calendar.pesanti, calendar.start, calendar.end, MIN_PROXIMITY_DAYS, ALPHA);
+    }
+
+    @Benchmark
+    public int milpModelBuild() {
+        MilpSchedulerService.MilpModel model = milp.buildModel(built, MIN_PROXIMITY_DAYS, ALPHA);
+        int size = model.solver.numVariables() + model.solver.numConstraints();
+        model.solver.delete();
+        return size;
+    }
+
+    @Benchmark
+    public byte[] buildOutput() {
+        return output.buildOutput(greedyResult.rowsMutated, greedyResult.assignment, greedyResult.pesiPerMese, greedyResult.eventiPerMese);
+    }
+}
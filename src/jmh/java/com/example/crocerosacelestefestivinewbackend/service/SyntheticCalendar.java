@@ -0,0 +1,157 @@
+package com.example.crocerosacelestefestivinewbackend.service;
+
+import com.example.crocerosacelestefestivinewbackend.service.dto.FestivoInputRow;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.MonthDay;
+import java.util.*;
+
+/**
+ * Generatore deterministico di calendari realistici per i benchmark: festività nazionali (Pasqua e Pasquetta
+ * calcolate), weekend con MP sab-dom (blocchi MPB), SN il 31 e nelle festività principali, festivi pesanti,
+ * qualche forzata ed esclusione. Lo stesso (start, months, seed) produce sempre lo stesso calendario.
+ */
+public final class SyntheticCalendar {
+
+    private static final List<MonthDay> FIXED_HOLIDAYS = List.of(
+            MonthDay.of(1, 1), MonthDay.of(1, 6), MonthDay.of(4, 25), MonthDay.of(5, 1), MonthDay.of(6, 2),
+            MonthDay.of(8, 15), MonthDay.of(11, 1), MonthDay.of(12, 8), MonthDay.of(12, 25), MonthDay.of(12, 26));
+    // festività con anche il turno SN (e pesanti)
+    private static final Set<MonthDay> MAJOR = Set.of(MonthDay.of(1, 1), MonthDay.of(12, 25));
+
+    public final LocalDate start;
+    public final LocalDate end;
+    public final List<FestivoInputRow> rows;
+    public final Set<String> pesanti;
+
+    private SyntheticCalendar(LocalDate start, LocalDate end, List<FestivoInputRow> rows, Set<String> pesanti) {
+        this.start = start;
+        this.end = end;
+        this.rows = rows;
+        this.pesanti = pesanti;
+    }
+
+    public static SyntheticCalendar generate(LocalDate start, int months, long seed) {
+        LocalDate first = start.withDayOfMonth(1);
+        LocalDate end = first.plusMonths(months).minusDays(1);
+        Random rnd = new Random(seed);
+        List<FestivoInputRow> rows = new ArrayList<>();
+        Set<String> pesanti = new LinkedHashSet<>();
+        Map<Integer, LocalDate> easterByYear = new HashMap<>();
+
+        int excelRow = 2;
+        int lastForcedMonth = -1;
+        for (LocalDate d = first; !d.isAfter(end); d = d.plusDays(1)) {
+            LocalDate easter = easterByYear.computeIfAbsent(d.getYear(), CalendarGenerator::easter);
+            boolean weekend = d.getDayOfWeek() == DayOfWeek.SATURDAY || d.getDayOfWeek() == DayOfWeek.SUNDAY;
+            MonthDay md = MonthDay.from(d);
+            boolean holiday = FIXED_HOLIDAYS.contains(md) || d.equals(easter) || d.equals(easter.plusDays(1));
+            boolean major = MAJOR.contains(md) || d.equals(easter);
+
+            if (weekend || holiday) {
+                int peso = holiday ? 3 : 1;
+                rows.add(row(excelRow++, d, "MP", peso, holiday ? holidayName(md, d, easter) : ""));
+                if (md.equals(MonthDay.of(12, 25)) || md.equals(MonthDay.of(8, 15)) || d.equals(easter)) pesanti.add(d + "|MP");
+            }
+            if (major || d.getDayOfMonth() == 31) {
+                rows.add(row(excelRow++, d, "SN", major ? 3 : 2, major ? holidayName(md, d, easter) : "31"));
+                if (major) pesanti.add(d + "|SN");
+            }
+        }
+
+        // forzate: al più una per mese, su una SN infrasettimanale, squadra che non ha il giorno regolare vicino
+        for (FestivoInputRow r : rows) {
+            int monthIdx = r.date.getYear() * 12 + r.date.getMonthValue();
+            if (!"SN".equals(r.turno) || monthIdx == lastForcedMonth || pesanti.contains(r.date + "|SN")) continue;
+            if (rnd.nextInt(4) != 0) continue;
+            int team = 1 + Math.floorMod(r.date.getDayOfMonth() + 4, 10);
+            r.assegnazioneForzata = Optional.of(team);
+            lastForcedMonth = monthIdx;
+        }
+        // esclusioni: ~8% delle righe MP non forzate, una o due squadre
+        for (FestivoInputRow r : rows) {
+            if (r.assegnazioneForzata.isPresent() || !"MP".equals(r.turno) || rnd.nextInt(100) >= 8) continue;
+            r.squadreEscluse.set(1 + rnd.nextInt(10));
+            if (rnd.nextBoolean()) r.squadreEscluse.set(1 + rnd.nextInt(10));
+        }
+        return new SyntheticCalendar(first, end, rows, pesanti);
+    }
+
+    private static FestivoInputRow row(int excelRow, LocalDate d, String turno, int peso, String note) {
+        FestivoInputRow r = new FestivoInputRow();
+        r.excelRowNumber = excelRow;
+        r.note1 = note;
+        r.note2 = "";
+        r.date = d;
+        r.turno = turno;
+        r.peso = peso;
+        r.assegnazioneForzata = Optional.empty();
+        r.squadreEscluse = new BitSet();
+        return r;
+    }
+
+    private static String holidayName(MonthDay md, LocalDate d, LocalDate easter) {
+        if (d.equals(easter)) return "Pasqua";
+        if (d.equals(easter.plusDays(1))) return "Pasquetta";
+        return md.getDayOfMonth() + "/" + md.getMonthValue();
+    }
+
+    /** Copia profonda delle righe: buildUnits propaga le forzate e gli engine scrivono errorMessage. */
+    public List<FestivoInputRow> copyRows() {
+        List<FestivoInputRow> out = new ArrayList<>(rows.size());
+        for (FestivoInputRow r : rows) {
+            FestivoInputRow c = row(r.excelRowNumber, r.date, r.turno, r.peso, r.note1);
+            c.note2 = r.note2;
+            c.assegnazioneForzata = r.assegnazioneForzata;
+            c.squadreEscluse = (BitSet) r.squadreEscluse.clone();
+            out.add(c);
+        }
+        return out;
+    }
+
+    /** Workbook nel layout del template (lista-festivi + festivi-pesanti). */
+    public byte[] toXlsx() {
+        try (Workbook wb = new XSSFWorkbook()) {
+            Sheet s = wb.createSheet("lista-festivi");
+            String[] header = {"", "", "data", "turno", "peso", "assegnazione forzata", "squadre escluse"};
+            Row h = s.createRow(0);
+            for (int c = 0; c < header.length; c++) h.createCell(c).setCellValue(header[c]);
+            int r = 1;
+            for (FestivoInputRow row : rows) {
+                Row x = s.createRow(r++);
+                x.createCell(0).setCellValue(row.note1);
+                x.createCell(1).setCellValue(row.note2);
+                x.createCell(2).setCellValue(row.date.toString());
+                x.createCell(3).setCellValue(row.turno);
+                x.createCell(4).setCellValue(String.valueOf(row.peso));
+                x.createCell(5).setCellValue(row.assegnazioneForzata.map(Object::toString).orElse(""));
+                StringJoiner excl = new StringJoiner(";");
+                row.squadreEscluse.stream().forEach(t -> excl.add(String.valueOf(t)));
+                x.createCell(6).setCellValue(excl.toString());
+            }
+            Sheet heavy = wb.createSheet("festivi-pesanti");
+            Row hh = heavy.createRow(0);
+            hh.createCell(0).setCellValue("data");
+            hh.createCell(1).setCellValue("turno");
+            r = 1;
+            for (String k : pesanti) {
+                String[] parts = k.split("\\|");
+                Row x = heavy.createRow(r++);
+                x.createCell(0).setCellValue(parts[0]);
+                x.createCell(1).setCellValue(parts[1]);
+            }
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            wb.write(bos);
+            return bos.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.crocerosacelestefestivinewbackend.service;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Load test degli upload contro un'istanza in esecuzione: N richieste multipart con C client concorrenti,
+ * stampa throughput, percentili di latenza e codici di risposta. Usato per confrontare thread di piattaforma e virtuali.
+ * Uso: UploadLoadTest [baseUrl=http://localhost:8080] [engine=greedy] [concurrency=32] [requests=200] [months=12]
+ */
+public final class UploadLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:8080";
+        String engine = args.length > 1 ? args[1] : "greedy";
+        int concurrency = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+        int requests = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+        int months = args.length > 4 ? Integer.parseInt(args[4]) : 12;
+
+        SyntheticCalendar cal = SyntheticCalendar.generate(LocalDate.of(2025, 1, 1), months, PipelineBenchmark.SEED);
+        String boundary = "----festivi" + UUID.randomUUID();
+        byte[] body = multipart(boundary, cal);
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+        HttpRequest req = HttpRequest.newBuilder(URI.create(baseUrl + "/api/festivi/assegna/" + engine))
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .timeout(Duration.ofMinutes(5))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+
+        // riscaldamento
+        for (int i = 0; i < Math.min(10, requests); i++) client.send(req, HttpResponse.BodyHandlers.discarding());
+
+        ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+        long[] latencies = new long[requests];
+        Map<Integer, Integer> statuses = new ConcurrentSkipListMap<>();
+        List<Future<?>> futures = new ArrayList<>();
+        long t0 = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            int idx = i;
+            futures.add(pool.submit(() -> {
+                long s = System.nanoTime();
+                int status;
+                try {
+                    status = client.send(req, HttpResponse.BodyHandlers.discarding()).statusCode();
+                } catch (Exception e) {
+                    status = -1;
+                }
+                latencies[idx] = System.nanoTime() - s;
+                statuses.merge(status, 1, Integer::sum);
+            }));
+        }
+        for (Future<?> f : futures) f.get();
+        double elapsedS = (System.nanoTime() - t0) / 1e9;
+        pool.shutdown();
+
+        Arrays.sort(latencies);
+        System.out.printf("engine=%s months=%d rows=%d concurrency=%d requests=%d%n", engine, months, cal.rows.size(), concurrency, requests);
+        System.out.printf("throughput=%.1f req/s elapsed=%.1fs%n", requests / elapsedS, elapsedS);
+        System.out.printf("latency ms p50=%.0f p95=%.0f p99=%.0f max=%.0f%n",
+                pct(latencies, 50), pct(latencies, 95), pct(latencies, 99), latencies[requests - 1] / 1e6);
+        System.out.println("status=" + statuses);
+    }
+
+    private static double pct(long[] sorted, int p) {
+        int i = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, i)] / 1e6;
+    }
+
+    private static byte[] multipart(String boundary, SyntheticCalendar cal) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("startDate", cal.start.toString());
+        fields.put("endDate", cal.end.toString());
+        fields.put("minProximityDays", String.valueOf(PipelineBenchmark.MIN_PROXIMITY_DAYS));
+        for (Map.Entry<String, String> e : fields.entrySet()) {
+            out.write(("--" + boundary + "\r\nContent-Disposition: form-data; name=\"" + e.getKey() + "\"\r\n\r\n"
+                    + e.getValue() + "\r\n").getBytes(StandardCharsets.UTF_8));
+        }
+        out.write(("--" + boundary + "\r\nContent-Disposition: form-data; name=\"file\"; filename=\"festivi.xlsx\"\r\n"
+                + "Content-Type: application/vnd.openxmlformats-officedocument.spreadsheetml.sheet\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        out.write(cal.toXlsx());
+        out.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        return out.toByteArray();
+    }
+}
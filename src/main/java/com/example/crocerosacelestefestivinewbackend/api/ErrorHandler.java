@@ -1,5 +1,6 @@
 package com.example.crocerosacelestefestivinewbackend.api;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
@@ -19,6 +20,30 @@ public class ErrorHandler {
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ex.getViolations());
     }
 
+    @ExceptionHandler(SolverBusyException.class)
+    public ResponseEntity<List<Map<String, Object>>> handleSolverBusy(SolverBusyException ex) {
+        List<Map<String, Object>> errors = new ArrayList<>();
+        Map<String, Object> m = new HashMap<>();
+        m.put("row", 0);
+        m.put("field", "__global__");
+        m.put("message", ex.getMessage());
+        errors.add(m);
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(errors);
+    }
+
+    @ExceptionHandler(SessionNotFoundException.class)
+    public ResponseEntity<List<Map<String, Object>>> handleSessionNotFound(SessionNotFoundException ex) {
+        List<Map<String, Object>> errors = new ArrayList<>();
+        Map<String, Object> m = new HashMap<>();
+        m.put("row", 0);
+        m.put("field", "session");
+        m.put("message", ex.getMessage());
+        errors.add(m);
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(errors);
+    }
+
     @ExceptionHandler(MethodArgumentNotValidException.class)
     public ResponseEntity<List<Map<String, Object>>> handleMethodArgumentNotValid(MethodArgumentNotValidException ex) {
         List<Map<String, Object>> errors = new ArrayList<>();
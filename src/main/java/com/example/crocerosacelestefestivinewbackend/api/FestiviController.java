@@ -1,32 +1,50 @@
 package com.example.crocerosacelestefestivinewbackend.api;
 
+import com.example.crocerosacelestefestivinewbackend.service.BeamSchedulerService;
+import com.example.crocerosacelestefestivinewbackend.service.CalendarGenerator;
+import com.example.crocerosacelestefestivinewbackend.service.CpuOffload;
+import com.example.crocerosacelestefestivinewbackend.service.CsvParsingService;
+import com.example.crocerosacelestefestivinewbackend.service.EditingSessionService;
 import com.example.crocerosacelestefestivinewbackend.service.ExcelParsingService;
 import com.example.crocerosacelestefestivinewbackend.service.ExcelParsingService.ParseResult;
+import com.example.crocerosacelestefestivinewbackend.service.ExcelParsingService.Section;
+import com.example.crocerosacelestefestivinewbackend.service.FlowSchedulerService;
 import com.example.crocerosacelestefestivinewbackend.service.GreedySchedulerService;
+import com.example.crocerosacelestefestivinewbackend.service.LnsSchedulerService;
+import com.example.crocerosacelestefestivinewbackend.service.LpRoundingSchedulerService;
 import com.example.crocerosacelestefestivinewbackend.service.MilpSchedulerService;
+import com.example.crocerosacelestefestivinewbackend.service.SchedulingCommon.ScheduleResult;
+import com.example.crocerosacelestefestivinewbackend.service.SchedulingMetrics;
+import com.example.crocerosacelestefestivinewbackend.service.SchedulingTrace;
+import com.example.crocerosacelestefestivinewbackend.service.SectionScheduler;
+import com.example.crocerosacelestefestivinewbackend.service.SolverAdmission;
+import com.example.crocerosacelestefestivinewbackend.service.TeamConfig;
+import com.example.crocerosacelestefestivinewbackend.service.TemplateStore;
 import com.example.crocerosacelestefestivinewbackend.service.ExcelOutputService;
+import com.example.crocerosacelestefestivinewbackend.service.ExcelOutputService.SectionOutput;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.GetMapping;
-import org.springframework.core.io.ClassPathResource;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.FileSystemResource;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.springframework.http.CacheControl;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
  
 
 @RestController
@@ -34,112 +52,631 @@ import java.time.format.DateTimeFormatter;
 public class FestiviController {
 
     private final ExcelParsingService excelParsingService;
+    private final CsvParsingService csvParsingService;
     private final GreedySchedulerService greedySchedulerService;
     private final MilpSchedulerService milpSchedulerService;
+    private final BeamSchedulerService beamSchedulerService;
+    private final LpRoundingSchedulerService lpRoundingSchedulerService;
+    private final LnsSchedulerService lnsSchedulerService;
+    private final FlowSchedulerService flowSchedulerService;
+    private final EditingSessionService editingSessionService;
     private final ExcelOutputService excelOutputService;
+    private final SchedulingMetrics metrics;
+    private final SolverAdmission solverAdmission;
+    private final CpuOffload cpuOffload;
+    private final TemplateStore templateStore;
+    private final SectionScheduler sectionScheduler;
+    private final CalendarGenerator calendarGenerator;
+    private final int traceCapacity;
+    private final int poolMinDistance;
+    private final String outputMode;
+    static final String TRACE_HEADER = "X-Festivi-Trace";
+    static final String SCORE_HEADER = "X-Festivi-Score";
+    static final String LOWER_BOUND_HEADER = "X-Festivi-Lower-Bound";
+    private static final int MAX_POOL_SIZE = 10;
+    private static final Duration TEMPLATE_MAX_AGE = Duration.ofHours(1);
     private static final DateTimeFormatter STRICT_FMT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
     private static final Logger log = LoggerFactory.getLogger(FestiviController.class);
 
     public FestiviController(ExcelParsingService excelParsingService,
+                             CsvParsingService csvParsingService,
                              GreedySchedulerService greedySchedulerService,
                              MilpSchedulerService milpSchedulerService,
-                             ExcelOutputService excelOutputService) {
+                             BeamSchedulerService beamSchedulerService,
+                             LpRoundingSchedulerService lpRoundingSchedulerService,
+                             LnsSchedulerService lnsSchedulerService,
+                             FlowSchedulerService flowSchedulerService,
+                             EditingSessionService editingSessionService,
+                             ExcelOutputService excelOutputService,
+                             SchedulingMetrics metrics,
+                             SolverAdmission solverAdmission,
+                             CpuOffload cpuOffload,
+                             TemplateStore templateStore,
+                             SectionScheduler sectionScheduler,
+                             CalendarGenerator calendarGenerator,
+                             @Value("${festivi.trace.capacity:20000}") int traceCapacity,
+                             @Value("${festivi.milp.pool.min-distance:5}") int poolMinDistance,
+                             @Value("${festivi.output.mode:rebuild}") String outputMode) {
         this.excelParsingService = excelParsingService;
+        this.csvParsingService = csvParsingService;
         this.greedySchedulerService = greedySchedulerService;
         this.milpSchedulerService = milpSchedulerService;
+        this.beamSchedulerService = beamSchedulerService;
+        this.lpRoundingSchedulerService = lpRoundingSchedulerService;
+        this.lnsSchedulerService = lnsSchedulerService;
+        this.flowSchedulerService = flowSchedulerService;
+        this.editingSessionService = editingSessionService;
         this.excelOutputService = excelOutputService;
+        this.metrics = metrics;
+        this.solverAdmission = solverAdmission;
+        this.cpuOffload = cpuOffload;
+        this.templateStore = templateStore;
+        this.sectionScheduler = sectionScheduler;
+        this.calendarGenerator = calendarGenerator;
+        this.traceCapacity = traceCapacity;
+        this.poolMinDistance = poolMinDistance;
+        this.outputMode = outputMode;
     }
 
     @GetMapping(path = "/template")
-    public ResponseEntity<byte[]> downloadTemplate() {
-        try {
-            byte[] bytes = null;
-            // Prefer exact file name with '@'
-            for (Resource res : new Resource[]{
-                    new ClassPathResource("@festivi-template.xlsx"),
-                    new ClassPathResource("festivi-template.xlsx"),
-                    new FileSystemResource("src/main/resources/@festivi-template.xlsx"),
-                    new FileSystemResource("src/main/resources/festivi-template.xlsx"),
-                    new FileSystemResource("main/resources/@festivi-template.xlsx"),
-                    new FileSystemResource("main/resources/festivi-template.xlsx")
-            }) {
-                if (res.exists()) { try (java.io.InputStream is = res.getInputStream()) { bytes = is.readAllBytes(); break; } }
-            }
-            if (bytes == null) return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
-            return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=@festivi-template.xlsx")
-                    .body(bytes);
-        } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+    public ResponseEntity<byte[]> downloadTemplate(WebRequest request) {
+        if (!templateStore.isAvailable()) return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        CacheControl cache = CacheControl.maxAge(TEMPLATE_MAX_AGE).cachePublic();
+        // If-None-Match (o If-Modified-Since): 304 senza corpo
+        if (request.checkNotModified(templateStore.etag(), templateStore.lastModified())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).cacheControl(cache).build();
         }
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=@festivi-template.xlsx")
+                .eTag(templateStore.etag())
+                .lastModified(templateStore.lastModified())
+                .cacheControl(cache)
+                .body(templateStore.bytes());
     }
 
     @PostMapping(path = "/greedy", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public ResponseEntity<byte[]> assegnaGreedy(
-            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "file", required = false) MultipartFile file,
+            @RequestParam(value = "pesanti", required = false) MultipartFile pesanti,
+            @RequestParam(value = "generate", required = false) Boolean generate,
             @RequestParam("startDate") String startDate,
             @RequestParam("endDate") String endDate,
             @RequestParam("minProximityDays") Integer minProximityDays,
-            @RequestParam(value = "alpha", required = false) Double alpha
+            @RequestParam(value = "alpha", required = false) Double alpha,
+            @RequestParam(value = "dynamicOrder", required = false) Boolean dynamicOrder,
+            @RequestParam(value = "teams", required = false) Integer teams,
+            @RequestParam(value = "rotation", required = false) String rotation,
+            @RequestParam(value = "rotationStart", required = false) String rotationStart,
+            @RequestParam(value = "trace", required = false) Boolean trace,
+            @RequestParam(value = "output", required = false) String output,
+            @RequestHeader(value = TRACE_HEADER, required = false) String traceHeader
     ) {
-        long t0 = System.currentTimeMillis();
-        LocalDate start = LocalDate.parse(startDate, STRICT_FMT);
-        LocalDate end = LocalDate.parse(endDate, STRICT_FMT);
-        double a = alpha == null ? 1.0 : alpha.doubleValue();
-        if (a < 0.0 || a > 1.0) throw new ValidationException(java.util.List.of(java.util.Map.of(
+        AssignRequest rq = request(SchedulingMetrics.ENGINE_GREEDY, file, pesanti, generate, startDate, endDate, alpha, teams, rotation, rotationStart, trace, traceHeader, output);
+        boolean dynamic = Boolean.TRUE.equals(dynamicOrder);
+        log.info("[GREEDY] Request received. file={}, startDate={}, endDate={}, minProximityDays={}, alpha={}, dynamicOrder={}, teams={}", sourceName(file, generate), rq.start, rq.end, minProximityDays, rq.alpha, dynamic, rq.teams);
+        return solve(rq, false, (parsed, teamConfig, tr) -> greedySchedulerService.schedule(parsed.rows, parsed.pesanti,
+                rq.start, rq.end, minProximityDays, rq.alpha, dynamic, teamConfig, tr));
+    }
+
+    /**
+     * MILP (SCIP). Con poolSize > 1 restituisce anche le alternative a distanza di Hamming almeno poolMinDistance,
+     * trovate nello stesso timeout: fogli lista-festivi-alt2, ... e foglio "alternative" con i loro score.
+     */
+    @PostMapping(path = "/milp", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<byte[]> assegnaMilp(
+            @RequestParam(value = "file", required = false) MultipartFile file,
+            @RequestParam(value = "pesanti", required = false) MultipartFile pesanti,
+            @RequestParam(value = "generate", required = false) Boolean generate,
+            @RequestParam("startDate") String startDate,
+            @RequestParam("endDate") String endDate,
+            @RequestParam("minProximityDays") Integer minProximityDays,
+            @RequestParam(value = "alpha", required = false) Double alpha,
+            @RequestParam(value = "timeoutSeconds", required = false) Integer timeoutSeconds,
+            @RequestParam(value = "lexicographic", required = false) Boolean lexicographic,
+            @RequestParam(value = "poolSize", required = false) Integer poolSize,
+            @RequestParam(value = "poolMinDistance", required = false) Integer poolMinDistance,
+            @RequestParam(value = "teams", required = false) Integer teams,
+            @RequestParam(value = "rotation", required = false) String rotation,
+            @RequestParam(value = "rotationStart", required = false) String rotationStart,
+            @RequestParam(value = "trace", required = false) Boolean trace,
+            @RequestParam(value = "output", required = false) String output,
+            @RequestHeader(value = TRACE_HEADER, required = false) String traceHeader
+    ) {
+        AssignRequest rq = request(SchedulingMetrics.ENGINE_MILP, file, pesanti, generate, startDate, endDate, alpha, teams, rotation, rotationStart, trace, traceHeader, output);
+        int timeout = timeoutSeconds == null ? 120 : timeoutSeconds.intValue();
+        boolean lex = Boolean.TRUE.equals(lexicographic);
+        int pool = poolSize == null ? 1 : poolSize.intValue();
+        int poolDistance = poolMinDistance == null ? this.poolMinDistance : poolMinDistance.intValue();
+        if (timeout < 1 || timeout > 600) throw new ValidationException(java.util.List.of(java.util.Map.of(
                 "row", 0,
-                "field", "alpha",
-                "message", "alpha deve essere tra 0 e 1"
+                "field", "timeoutSeconds",
+                "message", "timeoutSeconds deve essere tra 1 e 600"
+        )));
+        if (pool < 1 || pool > MAX_POOL_SIZE) throw new ValidationException(java.util.List.of(java.util.Map.of(
+                "row", 0,
+                "field", "poolSize",
+                "message", "poolSize deve essere tra 1 e " + MAX_POOL_SIZE
         )));
-        log.info("[GREEDY] Request received. file={}, startDate={}, endDate={}, minProximityDays={}, alpha={}", file.getOriginalFilename(), start, end, minProximityDays, a);
-        ParseResult parsed = excelParsingService.parse(getStream(file), start, end);
-        GreedySchedulerService.ScheduleResult res = greedySchedulerService.schedule(parsed.rows, parsed.pesanti, start, end, minProximityDays, a);
-        byte[] xls = excelOutputService.buildOutput(res.rowsMutated, res.assignment, res.pesiPerMese, res.eventiPerMese);
-        long dt = System.currentTimeMillis() - t0;
-        log.info("[GREEDY] Completed. rows={}, durationMs={}", parsed.rows.size(), dt);
+        if (pool > 1 && lex) throw new ValidationException(java.util.List.of(java.util.Map.of(
+                "row", 0,
+                "field", "poolSize",
+                "message", "poolSize maggiore di 1 non è disponibile con lexicographic"
+        )));
+        if (poolDistance < 1) throw new ValidationException(java.util.List.of(java.util.Map.of(
+                "row", 0,
+                "field", "poolMinDistance",
+                "message", "poolMinDistance deve essere almeno 1"
+        )));
+        log.info("[MILP] Request received. file={}, startDate={}, endDate={}, minProximityDays={}, alpha={}, timeoutSeconds={}, lexicographic={}, poolSize={}, poolMinDistance={}, teams={}", sourceName(file, generate), rq.start, rq.end, minProximityDays, rq.alpha, timeout, lex, pool, poolDistance, rq.teams);
+        return solve(rq, true, (parsed, teamConfig, tr) -> milpSchedulerService.schedule(parsed.rows, parsed.pesanti,
+                rq.start, rq.end, minProximityDays, rq.alpha, timeout, lex, pool, poolDistance, teamConfig, tr));
+    }
+
+    /**
+     * Beam search: come il greedy ma tiene le beamWidth soluzioni parziali migliori. Il solve gira sul thread della
+     * richiesta e distribuisce l'espansione del fascio sul pool solver; con le sezioni ogni sezione espande da sola.
+     * Lo score alpha è nell'header X-Festivi-Score (uno per sezione).
+     */
+    @PostMapping(path = "/beam", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<byte[]> assegnaBeam(
+            @RequestParam(value = "file", required = false) MultipartFile file,
+            @RequestParam(value = "pesanti", required = false) MultipartFile pesanti,
+            @RequestParam(value = "generate", required = false) Boolean generate,
+            @RequestParam("startDate") String startDate,
+            @RequestParam("endDate") String endDate,
+            @RequestParam("minProximityDays") Integer minProximityDays,
+            @RequestParam(value = "alpha", required = false) Double alpha,
+            @RequestParam(value = "beamWidth", required = false) Integer beamWidth,
+            @RequestParam(value = "timeBudgetMs", required = false) Long timeBudgetMs,
+            @RequestParam(value = "teams", required = false) Integer teams,
+            @RequestParam(value = "rotation", required = false) String rotation,
+            @RequestParam(value = "rotationStart", required = false) String rotationStart,
+            @RequestParam(value = "trace", required = false) Boolean trace,
+            @RequestParam(value = "output", required = false) String output,
+            @RequestHeader(value = TRACE_HEADER, required = false) String traceHeader
+    ) {
+        AssignRequest rq = request(SchedulingMetrics.ENGINE_BEAM, file, pesanti, generate, startDate, endDate, alpha, teams, rotation, rotationStart, trace, traceHeader, output);
+        int width = beamWidth == null ? beamSchedulerService.defaultWidth() : beamWidth.intValue();
+        long budget = timeBudgetMs == null ? beamSchedulerService.defaultBudgetMs() : timeBudgetMs.longValue();
+        if (width < 1 || width > 4096) throw new ValidationException(java.util.List.of(java.util.Map.of(
+                "row", 0,
+                "field", "beamWidth",
+                "message", "beamWidth deve essere tra 1 e 4096"
+        )));
+        if (budget < 1 || budget > 600_000) throw new ValidationException(java.util.List.of(java.util.Map.of(
+                "row", 0,
+                "field", "timeBudgetMs",
+                "message", "timeBudgetMs deve essere tra 1 e 600000"
+        )));
+        log.info("[BEAM] Request received. file={}, startDate={}, endDate={}, minProximityDays={}, alpha={}, beamWidth={}, timeBudgetMs={}, teams={}", sourceName(file, generate), rq.start, rq.end, minProximityDays, rq.alpha, width, budget, rq.teams);
+        return solve(rq, false, (parsed, teamConfig, tr) -> beamSchedulerService.schedule(parsed.rows, parsed.pesanti,
+                rq.start, rq.end, minProximityDays, rq.alpha, width, budget, teamConfig, tr));
+    }
+
+    /**
+     * Rilassamento LP (GLOP) arrotondato e riparato. Lo score alpha della soluzione e il limite inferiore LP sono
+     * negli header X-Festivi-Score e X-Festivi-Lower-Bound; con le sezioni un valore per sezione, separati da virgola.
+     */
+    @PostMapping(path = "/lp", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<byte[]> assegnaLp(
+            @RequestParam(value = "file", required = false) MultipartFile file,
+            @RequestParam(value = "pesanti", required = false) MultipartFile pesanti,
+            @RequestParam(value = "generate", required = false) Boolean generate,
+            @RequestParam("startDate") String startDate,
+            @RequestParam("endDate") String endDate,
+            @RequestParam("minProximityDays") Integer minProximityDays,
+            @RequestParam(value = "alpha", required = false) Double alpha,
+            @RequestParam(value = "teams", required = false) Integer teams,
+            @RequestParam(value = "rotation", required = false) String rotation,
+            @RequestParam(value = "rotationStart", required = false) String rotationStart,
+            @RequestParam(value = "trace", required = false) Boolean trace,
+            @RequestParam(value = "output", required = false) String output,
+            @RequestHeader(value = TRACE_HEADER, required = false) String traceHeader
+    ) {
+        AssignRequest rq = request(SchedulingMetrics.ENGINE_LP, file, pesanti, generate, startDate, endDate, alpha, teams, rotation, rotationStart, trace, traceHeader, output);
+        log.info("[LP] Request received. file={}, startDate={}, endDate={}, minProximityDays={}, alpha={}, teams={}", sourceName(file, generate), rq.start, rq.end, minProximityDays, rq.alpha, rq.teams);
+        return solve(rq, true, (parsed, teamConfig, tr) -> lpRoundingSchedulerService.schedule(parsed.rows, parsed.pesanti,
+                rq.start, rq.end, minProximityDays, rq.alpha, teamConfig, tr));
+    }
+
+    /**
+     * Flusso di costo minimo con penalità lagrangiane e riparazione: veloce, utile come ripiego quando il MILP non
+     * ha slot o come soluzione iniziale dell'LNS. Lo score alpha è nell'header X-Festivi-Score (uno per sezione).
+     */
+    @PostMapping(path = "/flow", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<byte[]> assegnaFlow(
+            @RequestParam(value = "file", required = false) MultipartFile file,
+            @RequestParam(value = "pesanti", required = false) MultipartFile pesanti,
+            @RequestParam(value = "generate", required = false) Boolean generate,
+            @RequestParam("startDate") String startDate,
+            @RequestParam("endDate") String endDate,
+            @RequestParam("minProximityDays") Integer minProximityDays,
+            @RequestParam(value = "alpha", required = false) Double alpha,
+            @RequestParam(value = "teams", required = false) Integer teams,
+            @RequestParam(value = "rotation", required = false) String rotation,
+            @RequestParam(value = "rotationStart", required = false) String rotationStart,
+            @RequestParam(value = "trace", required = false) Boolean trace,
+            @RequestParam(value = "output", required = false) String output,
+            @RequestHeader(value = TRACE_HEADER, required = false) String traceHeader
+    ) {
+        AssignRequest rq = request(SchedulingMetrics.ENGINE_FLOW, file, pesanti, generate, startDate, endDate, alpha, teams, rotation, rotationStart, trace, traceHeader, output);
+        log.info("[FLOW] Request received. file={}, startDate={}, endDate={}, minProximityDays={}, alpha={}, teams={}", sourceName(file, generate), rq.start, rq.end, minProximityDays, rq.alpha, rq.teams);
+        return solve(rq, true, (parsed, teamConfig, tr) -> flowSchedulerService.schedule(parsed.rows, parsed.pesanti,
+                rq.start, rq.end, minProximityDays, rq.alpha, teamConfig, tr));
+    }
+
+    /**
+     * LNS sopra una soluzione iniziale (initial=greedy|lp|milp|flow) fino a budgetSeconds. Il workbook ha il foglio
+     * "andamento" con lo score nel tempo, lo score finale è nell'header X-Festivi-Score (uno per sezione).
+     */
+    @PostMapping(path = "/lns", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<byte[]> assegnaLns(
+            @RequestParam(value = "file", required = false) MultipartFile file,
+            @RequestParam(value = "pesanti", required = false) MultipartFile pesanti,
+            @RequestParam(value = "generate", required = false) Boolean generate,
+            @RequestParam("startDate") String startDate,
+            @RequestParam("endDate") String endDate,
+            @RequestParam("minProximityDays") Integer minProximityDays,
+            @RequestParam(value = "alpha", required = false) Double alpha,
+            @RequestParam(value = "initial", required = false) String initial,
+            @RequestParam(value = "budgetSeconds", required = false) Integer budgetSeconds,
+            @RequestParam(value = "teams", required = false) Integer teams,
+            @RequestParam(value = "rotation", required = false) String rotation,
+            @RequestParam(value = "rotationStart", required = false) String rotationStart,
+            @RequestParam(value = "trace", required = false) Boolean trace,
+            @RequestParam(value = "output", required = false) String output,
+            @RequestHeader(value = TRACE_HEADER, required = false) String traceHeader
+    ) {
+        AssignRequest rq = request(SchedulingMetrics.ENGINE_LNS, file, pesanti, generate, startDate, endDate, alpha, teams, rotation, rotationStart, trace, traceHeader, output);
+        String init = initial == null ? LnsSchedulerService.INITIAL_GREEDY : initial.trim().toLowerCase(java.util.Locale.ROOT);
+        int budget = budgetSeconds == null ? lnsSchedulerService.defaultBudgetSeconds() : budgetSeconds.intValue();
+        if (!List.of(LnsSchedulerService.INITIAL_GREEDY, LnsSchedulerService.INITIAL_LP, LnsSchedulerService.INITIAL_MILP, LnsSchedulerService.INITIAL_FLOW).contains(init)) {
+            throw new ValidationException(java.util.List.of(java.util.Map.of(
+                    "row", 0,
+                    "field", "initial",
+                    "message", "initial deve essere greedy, lp, milp o flow"
+            )));
+        }
+        if (budget < 1 || budget > 600) throw new ValidationException(java.util.List.of(java.util.Map.of(
+                "row", 0,
+                "field", "budgetSeconds",
+                "message", "budgetSeconds deve essere tra 1 e 600"
+        )));
+        log.info("[LNS] Request received. file={}, startDate={}, endDate={}, minProximityDays={}, alpha={}, initial={}, budgetSeconds={}, teams={}", sourceName(file, generate), rq.start, rq.end, minProximityDays, rq.alpha, init, budget, rq.teams);
+        // il ciclo gira sul thread della richiesta e distribuisce i sottoproblemi sul pool solver
+        return solve(rq, false, (parsed, teamConfig, tr) -> lnsSchedulerService.schedule(parsed.rows, parsed.pesanti,
+                rq.start, rq.end, minProximityDays, rq.alpha, init, budget, teamConfig, tr));
+    }
+
+    /**
+     * Calendario generato (nessun file, o file di override con generate=true) nello stesso layout del template:
+     * si corregge e si ricarica come upload normale.
+     */
+    @GetMapping(path = "/calendar")
+    public ResponseEntity<byte[]> downloadCalendar(
+            @RequestParam("startDate") String startDate,
+            @RequestParam("endDate") String endDate,
+            @RequestParam(value = "rotation", required = false) String rotation
+    ) {
+        LocalDate start = LocalDate.parse(startDate, STRICT_FMT);
+        LocalDate end = LocalDate.parse(endDate, STRICT_FMT);
+        TeamConfig teamConfig = TeamConfig.of(null, rotation, null, start);
+        ParseResult generated = calendarGenerator.generate(start, end, teamConfig);
+        byte[] xls = cpuOffload.call(() -> excelOutputService.buildCalendar(generated.rows, generated.pesanti));
         return ResponseEntity.ok()
                 .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=assegnazioni_festivi.xlsx")
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=calendario-festivi_" + start + "_" + end + ".xlsx")
                 .body(xls);
     }
 
-    @PostMapping(path = "/milp", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public ResponseEntity<byte[]> assegnaMilp(
-            @RequestParam("file") MultipartFile file,
+    /**
+     * Sessione di modifica: risolve con engine=greedy|flow|lp (default greedy) e tiene in memoria unità e assegnazione
+     * per spostamenti e scambi (vedi EditingSessionService). Risponde con id, scadenza e stato della sessione.
+     */
+    @PostMapping(path = "/sessioni", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @SuppressWarnings("try") // il permesso serve solo a essere rilasciato a fine solve
+    public ResponseEntity<java.util.Map<String, Object>> creaSessione(
+            @RequestParam(value = "file", required = false) MultipartFile file,
+            @RequestParam(value = "pesanti", required = false) MultipartFile pesanti,
+            @RequestParam(value = "generate", required = false) Boolean generate,
             @RequestParam("startDate") String startDate,
             @RequestParam("endDate") String endDate,
             @RequestParam("minProximityDays") Integer minProximityDays,
             @RequestParam(value = "alpha", required = false) Double alpha,
-            @RequestParam(value = "timeoutSeconds", required = false) Integer timeoutSeconds
+            @RequestParam(value = "engine", required = false) String engine,
+            @RequestParam(value = "teams", required = false) Integer teams,
+            @RequestParam(value = "rotation", required = false) String rotation,
+            @RequestParam(value = "rotationStart", required = false) String rotationStart
     ) {
         long t0 = System.currentTimeMillis();
         LocalDate start = LocalDate.parse(startDate, STRICT_FMT);
         LocalDate end = LocalDate.parse(endDate, STRICT_FMT);
         double a = alpha == null ? 1.0 : alpha.doubleValue();
-        int timeout = timeoutSeconds == null ? 120 : timeoutSeconds.intValue();
+        String eng = engine == null ? SchedulingMetrics.ENGINE_GREEDY : engine.trim().toLowerCase(java.util.Locale.ROOT);
         if (a < 0.0 || a > 1.0) throw new ValidationException(java.util.List.of(java.util.Map.of(
                 "row", 0,
                 "field", "alpha",
                 "message", "alpha deve essere tra 0 e 1"
         )));
-        if (timeout < 1 || timeout > 600) throw new ValidationException(java.util.List.of(java.util.Map.of(
+        if (!List.of(SchedulingMetrics.ENGINE_GREEDY, SchedulingMetrics.ENGINE_FLOW, SchedulingMetrics.ENGINE_LP).contains(eng)) {
+            throw new ValidationException(java.util.List.of(java.util.Map.of(
+                    "row", 0,
+                    "field", "engine",
+                    "message", "engine deve essere greedy, flow o lp"
+            )));
+        }
+        TeamConfig teamConfig = TeamConfig.of(teams, rotation, rotationStart == null ? null : LocalDate.parse(rotationStart, STRICT_FMT), start);
+        log.info("[SESSION] Request received. file={}, startDate={}, endDate={}, minProximityDays={}, alpha={}, engine={}, teams={}", sourceName(file, generate), start, end, minProximityDays, a, eng, teamConfig);
+        List<Section> sections = metrics.time(SchedulingMetrics.PHASE_PARSE, eng,
+                () -> cpuOffload.call(() -> parseUpload(file, pesanti, generate, start, end, teamConfig)));
+        if (sections.get(0).name != null) throw new ValidationException(java.util.List.of(java.util.Map.of(
                 "row", 0,
-                "field", "timeoutSeconds",
-                "message", "timeoutSeconds deve essere tra 1 e 600"
+                "field", "file",
+                "message", "Le sessioni di modifica non supportano gli upload a sezioni: carica una sezione alla volta"
         )));
-        log.info("[MILP] Request received. file={}, startDate={}, endDate={}, minProximityDays={}, alpha={}, timeoutSeconds={}", file.getOriginalFilename(), start, end, minProximityDays, a, timeout);
-        ParseResult parsed = excelParsingService.parse(getStream(file), start, end);
-        MilpSchedulerService.ScheduleResult res = milpSchedulerService.schedule(parsed.rows, parsed.pesanti, start, end, minProximityDays, a, timeout);
-        byte[] xls = excelOutputService.buildOutput(res.rowsMutated, res.assignment, res.pesiPerMese, res.eventiPerMese);
-        long dt = System.currentTimeMillis() - t0;
-        log.info("[MILP] Completed. rows={}, durationMs={}", parsed.rows.size(), dt);
+        ParseResult parsed = sections.get(0).parsed;
+        java.util.Map<String, Integer> assignment;
+        // stessa ammissione delle richieste dirette all'engine: le sessioni non aggirano gli slot di lp e flow
+        try (SolverAdmission.Permit permit = solverAdmission.acquire(eng)) {
+            assignment = cpuOffload.solve(() -> switch (eng) {
+                case SchedulingMetrics.ENGINE_FLOW -> flowSchedulerService.schedule(parsed.rows, parsed.pesanti, start, end, minProximityDays, a, teamConfig, SchedulingTrace.OFF).assignment;
+                case SchedulingMetrics.ENGINE_LP -> lpRoundingSchedulerService.schedule(parsed.rows, parsed.pesanti, start, end, minProximityDays, a, teamConfig, SchedulingTrace.OFF).assignment;
+                default -> greedySchedulerService.schedule(parsed.rows, parsed.pesanti, start, end, minProximityDays, a, teamConfig).assignment;
+            });
+        }
+        EditingSessionService.Session session = editingSessionService.create(parsed.rows, parsed.pesanti, start, end, minProximityDays, a, teamConfig, assignment);
+        java.util.Map<String, Object> body = describeSession(session);
+        log.info("[SESSION] Completed. id={}, rows={}, durationMs={}", session.id, parsed.rows.size(), System.currentTimeMillis() - t0);
+        return ResponseEntity.ok(body);
+    }
+
+    @GetMapping(path = "/sessioni/{id}")
+    public ResponseEntity<java.util.Map<String, Object>> leggiSessione(@PathVariable("id") String id) {
+        return ResponseEntity.ok(describeSession(editingSessionService.get(id)));
+    }
+
+    /** Sposta un festivo (unit=data|turno, per gli MPB una delle due date) sulla squadra team. */
+    @PostMapping(path = "/sessioni/{id}/move")
+    public ResponseEntity<java.util.Map<String, Object>> spostaInSessione(
+            @PathVariable("id") String id,
+            @RequestParam("unit") String unit,
+            @RequestParam("team") Integer team,
+            @RequestParam(value = "dryRun", required = false) Boolean dryRun
+    ) {
+        EditingSessionService.Session session = editingSessionService.get(id);
+        return ResponseEntity.ok(session.move(unit, team, Boolean.TRUE.equals(dryRun)));
+    }
+
+    /** Scambia le squadre di due festivi (unit e other, data|turno). */
+    @PostMapping(path = "/sessioni/{id}/swap")
+    public ResponseEntity<java.util.Map<String, Object>> scambiaInSessione(
+            @PathVariable("id") String id,
+            @RequestParam("unit") String unit,
+            @RequestParam("other") String other,
+            @RequestParam(value = "dryRun", required = false) Boolean dryRun
+    ) {
+        EditingSessionService.Session session = editingSessionService.get(id);
+        return ResponseEntity.ok(session.swap(unit, other, Boolean.TRUE.equals(dryRun)));
+    }
+
+    /** Workbook della sessione nello stato corrente, con le violazioni in "note / errori". */
+    @GetMapping(path = "/sessioni/{id}/export")
+    public ResponseEntity<byte[]> esportaSessione(@PathVariable("id") String id) {
+        SectionOutput out = editingSessionService.get(id).export();
+        byte[] xls = cpuOffload.call(() -> excelOutputService.buildOutput(out.rows, out.assignment, out.pesiPerMese, out.eventiPerMese));
         return ResponseEntity.ok()
                 .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
                 .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=assegnazioni_festivi.xlsx")
                 .body(xls);
     }
 
+    @DeleteMapping(path = "/sessioni/{id}")
+    public ResponseEntity<Void> chiudiSessione(@PathVariable("id") String id) {
+        editingSessionService.delete(id);
+        return ResponseEntity.noContent().build();
+    }
+
+    private java.util.Map<String, Object> describeSession(EditingSessionService.Session session) {
+        java.util.Map<String, Object> body = new java.util.LinkedHashMap<>(session.describe());
+        body.put("expiresAt", editingSessionService.expiresAt(session).toString());
+        return body;
+    }
+
+    /** Parametri comuni a tutti gli engine, già validati. */
+    private static final class AssignRequest {
+        final String engine;
+        final long t0 = System.currentTimeMillis();
+        final MultipartFile file;
+        final MultipartFile pesanti;
+        final Boolean generate;
+        final LocalDate start;
+        final LocalDate end;
+        final double alpha;
+        final TeamConfig teams;
+        final SchedulingTrace trace;
+        final byte[] original; // workbook da patchare, null per ricostruire
+        final boolean patchRequested; // output=patch nella richiesta (non il default di festivi.output.mode)
+
+        AssignRequest(String engine, MultipartFile file, MultipartFile pesanti, Boolean generate, LocalDate start, LocalDate end,
+                      double alpha, TeamConfig teams, SchedulingTrace trace, byte[] original, boolean patchRequested) {
+            this.engine = engine;
+            this.file = file;
+            this.pesanti = pesanti;
+            this.generate = generate;
+            this.start = start;
+            this.end = end;
+            this.alpha = alpha;
+            this.teams = teams;
+            this.trace = trace;
+            this.original = original;
+            this.patchRequested = patchRequested;
+        }
+    }
+
+    /** Solve di un engine su righe e squadre di una sezione (o dell'upload intero), con la traccia della sezione. */
+    private interface SectionSolve {
+        ScheduleResult solve(ParseResult parsed, TeamConfig teams, SchedulingTrace trace);
+    }
+
+    private AssignRequest request(String engine, MultipartFile file, MultipartFile pesanti, Boolean generate, String startDate, String endDate,
+                                  Double alpha, Integer teams, String rotation, String rotationStart, Boolean trace, String traceHeader,
+                                  String output) {
+        LocalDate start = LocalDate.parse(startDate, STRICT_FMT);
+        LocalDate end = LocalDate.parse(endDate, STRICT_FMT);
+        double a = alpha == null ? 1.0 : alpha.doubleValue();
+        if (a < 0.0 || a > 1.0) throw new ValidationException(java.util.List.of(java.util.Map.of(
+                "row", 0,
+                "field", "alpha",
+                "message", "alpha deve essere tra 0 e 1"
+        )));
+        TeamConfig teamConfig = TeamConfig.of(teams, rotation, rotationStart == null ? null : LocalDate.parse(rotationStart, STRICT_FMT), start);
+        return new AssignRequest(engine, file, pesanti, generate, start, end, a, teamConfig, newTrace(trace, traceHeader),
+                patchSource(output, file, generate), output != null && "patch".equalsIgnoreCase(output.trim()));
+    }
+
+    /**
+     * Parsing, ammissione (SolverAdmission: passa subito per gli engine non limitati), solve e rendering comuni a tutti
+     * gli engine. offload: il solve dell'upload non a sezioni gira sul pool solver invece che sul thread della richiesta
+     * (le sezioni ci girano sempre, vedi SectionScheduler). Score e limite inferiore, se l'engine li calcola, vanno
+     * negli header X-Festivi-Score e X-Festivi-Lower-Bound, uno per sezione.
+     */
+    @SuppressWarnings("try") // il permesso serve solo a essere rilasciato a fine solve
+    private ResponseEntity<byte[]> solve(AssignRequest rq, boolean offload, SectionSolve solver) {
+        String engine = rq.engine;
+        String tag = engine.toUpperCase(java.util.Locale.ROOT);
+        SchedulingTrace tr = rq.trace;
+        long p0 = System.nanoTime();
+        List<Section> sections = metrics.time(SchedulingMetrics.PHASE_PARSE, engine,
+                () -> cpuOffload.call(() -> parseUpload(rq.file, rq.pesanti, rq.generate, rq.start, rq.end, rq.teams)));
+        tr.phase(SchedulingMetrics.PHASE_PARSE, System.nanoTime() - p0, "sections=" + sections.size() + " rows=" + rowCount(sections));
+        byte[] xls;
+        List<ScheduleResult> results = new java.util.ArrayList<>();
+        if (sections.get(0).name == null) {
+            ParseResult parsed = sections.get(0).parsed;
+            ScheduleResult res;
+            try (SolverAdmission.Permit permit = solverAdmission.acquire(engine)) {
+                res = offload ? cpuOffload.solve(() -> solver.solve(parsed, rq.teams, tr)) : solver.solve(parsed, rq.teams, tr);
+            }
+            results.add(res);
+            xls = metrics.time(SchedulingMetrics.PHASE_RENDER, engine,
+                    () -> cpuOffload.call(() -> rq.original != null
+                            ? excelOutputService.patchOutput(rq.original, res.rowsMutated, res.assignment, res.pesiPerMese, res.eventiPerMese, tr, res.progress, res.pool)
+                            : excelOutputService.buildOutput(res.rowsMutated, res.assignment, res.pesiPerMese, res.eventiPerMese, tr, res.progress, res.pool)));
+        } else {
+            if (rq.patchRequested) throw new ValidationException(java.util.List.of(java.util.Map.of(
+                    "row", 0,
+                    "field", "output",
+                    "message", "output=patch non è supportato per gli upload a sezioni: usa output=rebuild"
+            )));
+            // le sezioni girano in parallelo: risultati raccolti per nome, poi nell'ordine delle sezioni
+            java.util.Map<String, ScheduleResult> bySection = new java.util.concurrent.ConcurrentHashMap<>();
+            List<SectionOutput> outputs;
+            // uno slot per sezione (al più gli slot dell'engine): le sezioni girano su tante corsie quanti slot ottenuti
+            try (SolverAdmission.Permit permit = solverAdmission.acquire(engine, sections.size())) {
+                outputs = sectionScheduler.solveAll(engine, sections, permit.count(), section -> {
+                    ScheduleResult res = solver.solve(section.parsed, section.teams, tr.forSection(section.name));
+                    bySection.put(section.name, res);
+                    return new SectionOutput(section.name, res.rowsMutated, res.assignment, res.pesiPerMese, res.eventiPerMese, res.pool);
+                });
+            }
+            List<LnsSchedulerService.ObjectivePoint> progress = new java.util.ArrayList<>();
+            for (Section section : sections) {
+                ScheduleResult res = bySection.get(section.name);
+                results.add(res);
+                for (LnsSchedulerService.ObjectivePoint p : res.progress) progress.add(p.withSection(section.name));
+            }
+            xls = metrics.time(SchedulingMetrics.PHASE_RENDER, engine,
+                    () -> cpuOffload.call(() -> excelOutputService.buildOutput(outputs, tr, progress)));
+        }
+        long dt = System.currentTimeMillis() - rq.t0;
+        String score = joinValues(results.stream().map(r -> r.score).toList());
+        String bound = joinValues(results.stream().map(r -> r.lowerBound).toList());
+        log.info("[{}] Completed. sections={}, rows={}, score={}, lowerBound={}, durationMs={}, traceEntries={}", tag, sections.size(),
+                rowCount(sections), score.isEmpty() ? "-" : score, bound.isEmpty() ? "-" : bound, dt, tr.entries().size());
+        ResponseEntity.BodyBuilder ok = ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=assegnazioni_festivi.xlsx");
+        if (!score.isEmpty()) ok.header(SCORE_HEADER, score);
+        if (!bound.isEmpty()) ok.header(LOWER_BOUND_HEADER, bound);
+        return ok.body(xls);
+    }
+
+    // Nessun file: calendario generato. generate=true: il file contiene override del calendario generato.
+    // Altrimenti CSV/TSV (lista-festivi, con festivi-pesanti opzionali in un secondo file o sezione) oppure xlsx, anche a sezioni
+    private List<Section> parseUpload(MultipartFile file, MultipartFile pesanti, Boolean generate,
+                                      LocalDate start, LocalDate end, TeamConfig teams) {
+        if (file == null || file.isEmpty()) {
+            return List.of(new Section(null, teams, calendarGenerator.generate(start, end, teams)));
+        }
+        if (Boolean.TRUE.equals(generate)) {
+            ParseResult overrides = isCsv(file)
+                    ? csvParsingService.parseOverrides(getStream(file), pesanti == null || pesanti.isEmpty() ? null : getStream(pesanti), start, end, teams)
+                    : excelParsingService.parseOverrides(getStream(file), start, end, teams);
+            return List.of(new Section(null, teams, calendarGenerator.generate(start, end, teams, overrides)));
+        }
+        if (isCsv(file)) {
+            return List.of(new Section(null, teams,
+                    csvParsingService.parse(getStream(file), pesanti == null || pesanti.isEmpty() ? null : getStream(pesanti), start, end, teams)));
+        }
+        return excelParsingService.parseSections(getStream(file), start, end, teams);
+    }
+
+    /**
+     * output=patch (o festivi.output.mode=patch): il workbook caricato, da patchare invece che ricostruire. null per
+     * output=rebuild e per gli input senza workbook da patchare (calendario generato, generate=true, CSV). Gli upload
+     * a sezioni non si patchano: con output=patch nella richiesta sono rifiutati (solve), con il solo default
+     * festivi.output.mode=patch sono ricostruiti.
+     */
+    private byte[] patchSource(String output, MultipartFile file, Boolean generate) {
+        String mode = output == null ? outputMode : output.trim().toLowerCase(java.util.Locale.ROOT);
+        if (!"rebuild".equals(mode) && !"patch".equals(mode)) throw new ValidationException(java.util.List.of(java.util.Map.of(
+                "row", 0,
+                "field", "output",
+                "message", "output deve essere rebuild o patch"
+        )));
+        if (!"patch".equals(mode) || file == null || file.isEmpty() || Boolean.TRUE.equals(generate) || isCsv(file)) return null;
+        try { return file.getBytes(); } catch (Exception e) { throw new RuntimeException(e); }
+    }
+
+    // traccia per richiesta: parametro trace=true o header X-Festivi-Trace: true|1
+    private SchedulingTrace newTrace(Boolean param, String header) {
+        boolean on = Boolean.TRUE.equals(param)
+                || (header != null && ("1".equals(header.trim()) || "true".equalsIgnoreCase(header.trim())));
+        return on ? SchedulingTrace.create(traceCapacity) : SchedulingTrace.OFF;
+    }
+
+    // valori per sezione (score, limite inferiore LP) nell'header, separati da virgola; vuoto se l'engine non li calcola
+    private static String joinValues(List<Double> values) {
+        StringBuilder sb = new StringBuilder();
+        for (double v : values) {
+            if (Double.isNaN(v)) return "";
+            if (sb.length() > 0) sb.append(',');
+            sb.append(String.format(java.util.Locale.ROOT, "%.6f", v));
+        }
+        return sb.toString();
+    }
+
+    private static String sourceName(MultipartFile file, Boolean generate) {
+        if (file == null || file.isEmpty()) return "(generato)";
+        return Boolean.TRUE.equals(generate) ? "(generato) + " + file.getOriginalFilename() : file.getOriginalFilename();
+    }
+
+    private static int rowCount(List<Section> sections) {
+        int n = 0;
+        for (Section s : sections) n += s.parsed.rows.size();
+        return n;
+    }
+
+    private static boolean isCsv(MultipartFile f) {
+        String ct = f.getContentType();
+        if (ct != null && (ct.startsWith("text/csv") || ct.startsWith("text/tab-separated-values") || ct.startsWith("application/csv"))) return true;
+        String name = f.getOriginalFilename();
+        if (name == null) return false;
+        String lower = name.toLowerCase(java.util.Locale.ROOT);
+        return lower.endsWith(".csv") || lower.endsWith(".tsv");
+    }
+
     private java.io.InputStream getStream(MultipartFile f) {
         try { return f.getInputStream(); } catch (Exception e) { throw new RuntimeException(e); }
     }
@@ -0,0 +1,16 @@
+package com.example.crocerosacelestefestivinewbackend.api;
+
+public class SessionNotFoundException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final String id;
+
+    public SessionNotFoundException(String id) {
+        super("Sessione " + id + " inesistente o scaduta");
+        this.id = id;
+    }
+
+    public String getId() {
+        return id;
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.crocerosacelestefestivinewbackend.api;
+
+public class SolverBusyException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final String engine;
+    private final long retryAfterSeconds;
+
+    public SolverBusyException(String engine, long retryAfterSeconds) {
+        super("Troppe risoluzioni " + engine + " in corso, riprova tra " + retryAfterSeconds + " secondi");
+        this.engine = engine;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public String getEngine() {
+        return engine;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
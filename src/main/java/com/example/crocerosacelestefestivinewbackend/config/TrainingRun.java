@@ -0,0 +1,123 @@
+package com.example.crocerosacelestefestivinewbackend.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Run di training per l'archivio CDS (profilo Maven fast-startup): con festivi.training.enabled, a contesto pronto
+ * esegue via HTTP il percorso completo (template, parse xlsx e CSV, greedy, MILP, output) e poi chiude la JVM, che
+ * scrive in uscita l'archivio con le classi caricate. Il flag è letto a runtime e non con una condizione sul bean,
+ * perché con Spring AOT le condizioni vengono fissate al build.
+ */
+@Component
+public class TrainingRun implements ApplicationListener<ApplicationReadyEvent> {
+    private static final Logger log = LoggerFactory.getLogger(TrainingRun.class);
+    private static final String XLSX = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+    // febbraio: nessun 31, un weekend MP completo e una SN
+    private static final String CSV = ",,data,turno,peso,assegnazione forzata,squadre escluse\n"
+            + ",,2025-02-01,MP,10,,\n"
+            + ",,2025-02-02,MP,10,,\n"
+            + ",,2025-02-02,SN,10,,3\n"
+            + ",,2025-02-08,MP,10,,\n"
+            + ",,2025-02-09,MP,10,,\n";
+
+    private final boolean enabled;
+    private final int milpTimeoutSeconds;
+
+    public TrainingRun(@Value("${festivi.training.enabled:false}") boolean enabled,
+                       @Value("${festivi.training.milp-timeout-seconds:5}") int milpTimeoutSeconds) {
+        this.enabled = enabled;
+        this.milpTimeoutSeconds = milpTimeoutSeconds;
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        if (!enabled) return;
+        ConfigurableApplicationContext context = event.getApplicationContext();
+        String baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port", "8080");
+        Thread t = new Thread(() -> {
+            int code = 0;
+            try {
+                train(baseUrl);
+            } catch (Exception e) {
+                log.error("[TRAINING] Training run failed", e);
+                code = 1;
+            }
+            int exitCode = code;
+            System.exit(SpringApplication.exit(context, () -> exitCode));
+        }, "training-run");
+        t.start();
+    }
+
+    private void train(String baseUrl) throws IOException, InterruptedException {
+        long t0 = System.currentTimeMillis();
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+        String api = baseUrl + "/api/festivi/assegna";
+
+        send(client, HttpRequest.newBuilder(URI.create(baseUrl + "/api/ping")).GET(), "ping");
+        byte[] template = send(client, HttpRequest.newBuilder(URI.create(api + "/template")).GET(), "template");
+
+        Map<String, String> year = fields("2025-01-01", "2025-12-31");
+        send(client, multipart(api + "/greedy", year, "festivi.xlsx", XLSX, template), "greedy xlsx");
+        year.put("timeoutSeconds", String.valueOf(milpTimeoutSeconds));
+        send(client, multipart(api + "/milp", year, "festivi.xlsx", XLSX, template), "milp xlsx");
+
+        Map<String, String> feb = fields("2025-02-01", "2025-02-09");
+        byte[] csv = CSV.getBytes(StandardCharsets.UTF_8);
+        send(client, multipart(api + "/greedy", feb, "festivi.csv", "text/csv", csv), "greedy csv");
+        feb.put("timeoutSeconds", String.valueOf(milpTimeoutSeconds));
+        send(client, multipart(api + "/milp", feb, "festivi.csv", "text/csv", csv), "milp csv");
+        log.info("[TRAINING] Completed in {}ms", System.currentTimeMillis() - t0);
+    }
+
+    private static Map<String, String> fields(String start, String end) {
+        Map<String, String> f = new LinkedHashMap<>();
+        f.put("startDate", start);
+        f.put("endDate", end);
+        f.put("minProximityDays", "1");
+        f.put("alpha", "0.7");
+        return f;
+    }
+
+    private static byte[] send(HttpClient client, HttpRequest.Builder req, String step) throws IOException, InterruptedException {
+        long t0 = System.currentTimeMillis();
+        HttpResponse<byte[]> res = client.send(req.timeout(Duration.ofMinutes(5)).build(), HttpResponse.BodyHandlers.ofByteArray());
+        if (res.statusCode() != 200) throw new IOException(step + ": HTTP " + res.statusCode());
+        log.info("[TRAINING] {} ok in {}ms", step, System.currentTimeMillis() - t0);
+        return res.body();
+    }
+
+    private static HttpRequest.Builder multipart(String url, Map<String, String> fields, String filename, String contentType, byte[] file) throws IOException {
+        String boundary = "----festivi" + UUID.randomUUID();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (Map.Entry<String, String> e : fields.entrySet()) {
+            out.write(("--" + boundary + "\r\nContent-Disposition: form-data; name=\"" + e.getKey() + "\"\r\n\r\n"
+                    + e.getValue() + "\r\n").getBytes(StandardCharsets.UTF_8));
+        }
+        out.write(("--" + boundary + "\r\nContent-Disposition: form-data; name=\"file\"; filename=\"" + filename + "\"\r\n"
+                + "Content-Type: " + contentType + "\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        out.write(file);
+        out.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        return HttpRequest.newBuilder(URI.create(url))
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(out.toByteArray()));
+    }
+}
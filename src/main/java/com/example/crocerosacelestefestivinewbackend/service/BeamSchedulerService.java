@@ -0,0 +1,413 @@
+package com.example.crocerosacelestefestivinewbackend.service;
+
+import com.example.crocerosacelestefestivinewbackend.api.ValidationException;
+import com.example.crocerosacelestefestivinewbackend.service.dto.FestivoInputRow;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Supplier;
+
+import static com.example.crocerosacelestefestivinewbackend.service.SchedulingCommon.*;
+
+/**
+ * Beam search sull'ordine delle unità del greedy (forzate, blocchi MPB, peso): a ogni unità tiene le beamWidth
+ * assegnazioni parziali migliori per score alpha (lo stesso del greedy) invece di una sola. Con larghezza 1 è il
+ * greedy con in più il controllo in avanti; allargando il fascio la qualità sale verso quella del MILP a costo di
+ * tempo. Scaduto il budget di tempo il fascio si restringe alla sola soluzione migliore e si completa in modo greedy.
+ * <p>
+ * Lo stato di una soluzione parziale è compatto e copy-on-write: pesi ed eventi per squadra (T+1 valori copiati),
+ * mesi e anni pesanti già usati come bitset per squadra e la squadra scelta per unità in blocchi da CHUNK; un figlio
+ * copia solo la riga della squadra e il blocco dell'unità che cambia, il resto è condiviso con il padre.
+ * L'espansione del fascio gira in parallelo sul pool solver; un figlio è scartato subito se lascia senza squadre
+ * un'unità successiva dello stesso mese, dello stesso anno pesante o dello stesso giorno.
+ */
+@Service
+public class BeamSchedulerService {
+    private static final Logger log = LoggerFactory.getLogger(BeamSchedulerService.class);
+    private static final String ENGINE = SchedulingMetrics.ENGINE_BEAM;
+    private static final int CHUNK = 16;
+    private static final int MIN_NODES_PER_TASK = 8; // sotto, l'espansione in parallelo costa più di quanto rende
+
+    private final SchedulingMetrics metrics;
+    private final CpuOffload cpuOffload;
+    private final InfeasibilityDiagnosis diagnosis;
+    private final int defaultWidth;
+    private final long defaultBudgetMs;
+
+    public BeamSchedulerService(SchedulingMetrics metrics,
+                                CpuOffload cpuOffload,
+                                InfeasibilityDiagnosis diagnosis,
+                                @Value("${festivi.beam.width:32}") int defaultWidth,
+                                @Value("${festivi.beam.time-budget-ms:2000}") long defaultBudgetMs) {
+        this.metrics = metrics;
+        this.cpuOffload = cpuOffload;
+        this.diagnosis = diagnosis;
+        this.defaultWidth = Math.max(1, defaultWidth);
+        this.defaultBudgetMs = Math.max(1, defaultBudgetMs);
+    }
+
+    public int defaultWidth() {
+        return defaultWidth;
+    }
+
+    public long defaultBudgetMs() {
+        return defaultBudgetMs;
+    }
+
+    public ScheduleResult schedule(List<FestivoInputRow> rows,
+                                   Set<String> pesanti,
+                                   LocalDate start,
+                                   LocalDate end,
+                                   int minProximityDays,
+                                   double alpha,
+                                   int beamWidth,
+                                   long timeBudgetMs,
+                                   TeamConfig teams,
+                                   SchedulingTrace trace) {
+        metrics.solveStarted(ENGINE);
+        try {
+            return doSchedule(rows, pesanti, start, end, minProximityDays, alpha, beamWidth, timeBudgetMs, teams, trace);
+        } finally {
+            metrics.solveFinished(ENGINE);
+        }
+    }
+
+    private ScheduleResult doSchedule(List<FestivoInputRow> rows,
+                                      Set<String> pesanti,
+                                      LocalDate start,
+                                      LocalDate end,
+                                      int minProximityDays,
+                                      double alpha,
+                                      int beamWidth,
+                                      long timeBudgetMs,
+                                      TeamConfig teams,
+                                      SchedulingTrace trace) {
+        SchedulingMetrics.Phase buildPhase = metrics.start();
+        BuiltModel bm = buildUnits(rows, pesanti, start, end, teams);
+        long buildNanos = metrics.stop(buildPhase, SchedulingMetrics.PHASE_BUILD_UNITS, ENGINE);
+        metrics.units(ENGINE, bm.units.size());
+        trace.phase(SchedulingMetrics.PHASE_BUILD_UNITS, buildNanos, "units=" + bm.units.size() + " teams=" + teams);
+        log.info("[BEAM] Units built: {} width={} budgetMs={}", bm.units.size(), beamWidth, timeBudgetMs);
+
+        SchedulingMetrics.Phase solvePhase = metrics.start();
+        long t0 = System.currentTimeMillis();
+        Instance in = new Instance(bm, start, end, minProximityDays);
+        List<Map<String, Object>> violations = new ArrayList<>();
+        List<Node> beam = List.of(in.root());
+        int width = beamWidth;
+        int expanded = 0;
+        for (int i = 0; i < in.U; i++) {
+            if (width > 1 && System.currentTimeMillis() - t0 > timeBudgetMs) {
+                width = 1; // budget esaurito: si prosegue solo dalla soluzione migliore
+                log.info("[BEAM] Time budget exhausted at unit {}/{}: completing greedily", i, in.U);
+                trace.record("budget", in.units.get(i).id, "larghezza ridotta a 1 dopo " + (System.currentTimeMillis() - t0) + " ms");
+            }
+            List<Child> children = expand(in, beam, i, alpha);
+            expanded += children.size();
+            FestivoUnit u = in.units.get(i);
+            if (children.isEmpty()) {
+                String reason = "Nessuna squadra disponibile per data=" + u.dates.get(0) + " turno=" + u.tipo
+                        + " (beam search, soluzioni parziali nel fascio: " + beam.size() + ")";
+                addV(violations, u.rows.get(0).excelRowNumber, "__assign__", reason);
+                trace.record("nessun-candidato", u.id, reason);
+                for (FestivoInputRow row : u.rows) row.errorMessage = reason;
+                continue; // unità saltata, il fascio resta quello di prima
+            }
+            children.sort(CHILD_ORDER);
+            List<Node> next = new ArrayList<>(Math.min(width, children.size()));
+            Set<StateKey> seen = new HashSet<>();
+            // la discendenza greedy (sempre in testa al fascio) sopravvive: il risultato non è mai peggiore che con larghezza 1
+            Child lead = null;
+            for (Child c : children) {
+                if (c.parent == 0 && (lead == null || GREEDY_ORDER.compare(c, lead) < 0)) lead = c;
+            }
+            if (lead == null) lead = children.get(0); // la soluzione greedy si è bloccata: ne prende il posto la migliore
+            Node leadNode = in.child(beam.get(lead.parent), i, lead.team, lead.score, lead.sq);
+            seen.add(new StateKey(leadNode));
+            next.add(leadNode);
+            for (Child c : children) {
+                if (next.size() == width) break;
+                if (c == lead) continue;
+                Node n = in.child(beam.get(c.parent), i, c.team, c.score, c.sq);
+                if (seen.add(new StateKey(n))) next.add(n); // stati equivalenti per il resto della ricerca: ne basta uno
+            }
+            beam = next;
+            if (trace.enabled()) {
+                trace.record("livello", u.id, "figli=" + children.size() + " tenuti=" + beam.size()
+                        + " migliore=" + String.format(Locale.ROOT, "%.4f", best(beam).score));
+            }
+        }
+        long solveNanos = metrics.stop(solvePhase, SchedulingMetrics.PHASE_SOLVE, ENGINE);
+        Node best = best(beam);
+        log.info("[BEAM] Completed. width={} expanded={} score={} violations={} durationMs={}", beamWidth, expanded,
+                best.score, violations.size(), System.currentTimeMillis() - t0);
+        trace.phase(SchedulingMetrics.PHASE_SOLVE, solveNanos, "width=" + beamWidth + " expanded=" + expanded
+                + " score=" + String.format(Locale.ROOT, "%.4f", best.score) + " violations=" + violations.size());
+
+        if (!violations.isEmpty()) {
+            diagnoseInto(diagnosis, metrics, ENGINE, bm, minProximityDays, violations, trace, "aumenta beamWidth o usa l'engine MILP");
+            metrics.outcome(ENGINE, SchedulingMetrics.OUTCOME_INFEASIBLE);
+            throw new ValidationException(violations);
+        }
+        metrics.outcome(ENGINE, SchedulingMetrics.OUTCOME_FEASIBLE);
+
+        int[] team = new int[in.U];
+        for (int i = 0; i < in.U; i++) team[i] = best.team(i);
+        traceAssigned(trace, in.units, team);
+        return new ScheduleResult(assignmentOf(in.units, team, in.T), bm.mutatedRows, best.score, Double.NaN, List.of(), List.of());
+    }
+
+    private static Node best(List<Node> beam) {
+        Node best = beam.get(0);
+        for (Node n : beam) if (n.score < best.score || (n.score == best.score && n.sq < best.sq)) best = n;
+        return best;
+    }
+
+    /** Figli di tutte le soluzioni del fascio per l'unità i; con un fascio largo a blocchi in parallelo sul pool solver. */
+    private List<Child> expand(Instance in, List<Node> beam, int i, double alpha) {
+        int tasks = Math.min(cpuOffload.threads(), beam.size() / MIN_NODES_PER_TASK);
+        if (tasks <= 1) return in.expand(beam, 0, beam.size(), i, alpha);
+        List<Supplier<List<Child>>> work = new ArrayList<>(tasks);
+        for (int k = 0; k < tasks; k++) {
+            int from = beam.size() * k / tasks;
+            int to = beam.size() * (k + 1) / tasks;
+            work.add(() -> in.expand(beam, from, to, i, alpha));
+        }
+        List<Child> out = new ArrayList<>();
+        for (List<Child> part : cpuOffload.callAll(work)) out.addAll(part);
+        return out;
+    }
+
+    /** Figlio non ancora materializzato: solo i figli tenuti nel fascio copiano lo stato. */
+    private record Child(int parent, int team, double score, long sq) {
+    }
+
+    // scelta del greedy per la discendenza in testa: score, poi somma dei quadrati, poi numero di squadra
+    private static final Comparator<Child> GREEDY_ORDER = Comparator.comparingDouble(Child::score)
+            .thenComparingLong(Child::sq)
+            .thenComparingInt(Child::team);
+
+    // resto del fascio: la somma dei quadrati dei pesi distingue le soluzioni parziali meglio dello spread, che nei
+    // primi livelli è quasi sempre il peso più alto assegnato; poi score, padre e squadra per un ordine deterministico
+    private static final Comparator<Child> CHILD_ORDER = Comparator.comparingLong(Child::sq)
+            .thenComparingDouble(Child::score)
+            .thenComparingInt(Child::parent)
+            .thenComparingInt(Child::team);
+
+    /** Soluzione parziale: le prime k unità dell'ordine assegnate. */
+    private static final class Node {
+        final long[] pesi; // [squadra]
+        final int[] eventi; // [squadra]
+        final long[][] months; // [squadra][parola]: bit anno-mese già usato, righe condivise con il padre
+        final long[] heavyYears; // [squadra]: bit anno con un pesante
+        final int[][] chosen; // blocchi di CHUNK unità: squadra scelta, 0 se non ancora assegnata
+        final double score;
+        final long sq;
+
+        Node(long[] pesi, int[] eventi, long[][] months, long[] heavyYears, int[][] chosen, double score, long sq) {
+            this.pesi = pesi;
+            this.eventi = eventi;
+            this.months = months;
+            this.heavyYears = heavyYears;
+            this.chosen = chosen;
+            this.score = score;
+            this.sq = sq;
+        }
+
+        int team(int unit) {
+            return chosen[unit / CHUNK][unit % CHUNK];
+        }
+
+        boolean monthUsed(int team, int ym) {
+            return (months[team][ym >> 6] & (1L << ym)) != 0;
+        }
+
+        boolean heavyUsed(int team, int year) {
+            return (heavyYears[team] & (1L << year)) != 0;
+        }
+    }
+
+    /** Chiave di deduplica: due soluzioni con stessi carichi, mesi, pesanti e squadre scelte sono la stessa. */
+    private static final class StateKey {
+        private final Node n;
+        private final int hash;
+
+        StateKey(Node n) {
+            this.n = n;
+            int h = Arrays.hashCode(n.pesi);
+            h = 31 * h + Arrays.hashCode(n.eventi);
+            h = 31 * h + Arrays.deepHashCode(n.months);
+            h = 31 * h + Arrays.hashCode(n.heavyYears);
+            this.hash = 31 * h + Arrays.deepHashCode(n.chosen);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof StateKey k) || k.hash != hash) return false;
+            return Arrays.equals(n.pesi, k.n.pesi) && Arrays.equals(n.eventi, k.n.eventi)
+                    && Arrays.deepEquals(n.months, k.n.months) && Arrays.equals(n.heavyYears, k.n.heavyYears)
+                    && Arrays.deepEquals(n.chosen, k.n.chosen);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /** Unità nell'ordine del greedy con domini statici e vicini, condivise in sola lettura dai task di espansione. */
+    private static final class Instance {
+        final List<FestivoUnit> units;
+        final int U;
+        final int T;
+        final int words;
+        final int[][] domain; // squadre ammesse da forzata, esclusioni e prossimità
+        final int[] ym;
+        final int[] year;
+        final int[][] dayPeers; // MP/SN dello stesso giorno
+        final int[][] laterPeers; // unità successive nell'ordine toccate da un'assegnazione (mese, anno pesante, giorno)
+
+        Instance(BuiltModel bm, LocalDate start, LocalDate end, int minProximityDays) {
+            List<FestivoUnit> sorted = new ArrayList<>(bm.units);
+            // stesso ordine del greedy: forzate, blocchi MPB, peso decrescente
+            sorted.sort((a, b) -> {
+                boolean af = a.forzata.isPresent();
+                boolean bf = b.forzata.isPresent();
+                if (af != bf) return af ? -1 : 1;
+                int ta = "MPB".equals(a.tipo) ? 0 : 1;
+                int tb = "MPB".equals(b.tipo) ? 0 : 1;
+                if (ta != tb) return Integer.compare(ta, tb);
+                return Integer.compare(b.peso, a.peso);
+            });
+            this.units = sorted;
+            this.U = sorted.size();
+            this.T = bm.teams.teams();
+            int baseYear = start.getYear();
+            int years = end.getYear() - baseYear + 1;
+            if (years > 64) throw new IllegalArgumentException("Periodo oltre 64 anni non supportato dal beam search");
+            this.words = (years * 12 + 63) >> 6;
+            this.domain = new int[U][];
+            this.ym = new int[U];
+            this.year = new int[U];
+            for (int i = 0; i < U; i++) {
+                FestivoUnit u = sorted.get(i);
+                ym[i] = (u.year - baseYear) * 12 + u.month - 1;
+                year[i] = u.year - baseYear;
+                int[] d = new int[T];
+                int n = 0;
+                for (int t = 1; t <= T; t++) {
+                    if (u.forzata.isPresent() && u.forzata.get() != t) continue;
+                    if (u.escluse.get(t)) continue;
+                    boolean ok = true;
+                    for (LocalDate date : u.dates) if (!bm.proximityOk(t, date, minProximityDays)) { ok = false; break; }
+                    if (ok) d[n++] = t;
+                }
+                domain[i] = Arrays.copyOf(d, n);
+            }
+            this.dayPeers = dayPeers(sorted);
+            this.laterPeers = new int[U][];
+            for (int i = 0; i < U; i++) {
+                FestivoUnit u = sorted.get(i);
+                Set<Integer> day = new HashSet<>();
+                for (int q : dayPeers[i]) day.add(q);
+                List<Integer> later = new ArrayList<>();
+                for (int j = i + 1; j < U; j++) {
+                    if (ym[j] == ym[i] || (u.pesante && sorted.get(j).pesante && year[j] == year[i]) || day.contains(j)) later.add(j);
+                }
+                laterPeers[i] = later.stream().mapToInt(Integer::intValue).toArray();
+            }
+        }
+
+        Node root() {
+            long[][] months = new long[T + 1][];
+            long[] empty = new long[words];
+            Arrays.fill(months, empty); // riga condivisa finché la squadra non riceve un'unità
+            int[][] chosen = new int[(U + CHUNK - 1) / CHUNK][];
+            int[] zeros = new int[CHUNK];
+            Arrays.fill(chosen, zeros);
+            return new Node(new long[T + 1], new int[T + 1], months, new long[T + 1], chosen, 0.0, 0);
+        }
+
+        List<Child> expand(List<Node> beam, int from, int to, int i, double alpha) {
+            List<Child> out = new ArrayList<>();
+            FestivoUnit u = units.get(i);
+            for (int p = from; p < to; p++) {
+                Node n = beam.get(p);
+                for (int t : domain[i]) {
+                    if (!fits(n, i, t, -1, 0)) continue;
+                    if (wipesOut(n, i, t)) continue;
+                    long maxW = Long.MIN_VALUE, minW = Long.MAX_VALUE, totW = 0, sq = 0;
+                    int maxE = Integer.MIN_VALUE, totE = 0;
+                    for (int s = 1; s <= T; s++) {
+                        long w = n.pesi[s] + (s == t ? u.peso : 0);
+                        int e = n.eventi[s] + (s == t ? 1 : 0);
+                        maxW = Math.max(maxW, w);
+                        minW = Math.min(minW, w);
+                        totW += w;
+                        sq += w * w;
+                        maxE = Math.max(maxE, e);
+                        totE += e;
+                    }
+                    double lPrime = totW == 0 ? 0.0 : (double) (maxW - minW) / (double) totW;
+                    double eMaxPrime = totE == 0 ? 0.0 : (double) maxE / (double) totE;
+                    out.add(new Child(p, t, alpha * lPrime + (1.0 - alpha) * eMaxPrime, sq));
+                }
+            }
+            return out;
+        }
+
+        /**
+         * La squadra t può prendere l'unità j nella soluzione n, considerando anche l'assegnazione ipotetica
+         * dell'unità i alla squadra ti (i = -1: nessuna).
+         */
+        boolean fits(Node n, int j, int t, int i, int ti) {
+            boolean sameTeam = i >= 0 && ti == t;
+            if (n.monthUsed(t, ym[j]) || (sameTeam && ym[i] == ym[j])) return false;
+            if (units.get(j).pesante) {
+                if (n.heavyUsed(t, year[j])) return false;
+                if (sameTeam && units.get(i).pesante && year[i] == year[j]) return false;
+            }
+            for (int q : dayPeers[j]) {
+                int c = q == i ? ti : n.team(q);
+                if (c == t) return false;
+            }
+            return true;
+        }
+
+        // controllo in avanti: un'unità successiva toccata da (i, t) deve conservare almeno una squadra
+        private boolean wipesOut(Node n, int i, int t) {
+            for (int j : laterPeers[i]) {
+                boolean any = false;
+                for (int s : domain[j]) {
+                    if (fits(n, j, s, i, t)) { any = true; break; }
+                }
+                if (!any) return true;
+            }
+            return false;
+        }
+
+        Node child(Node parent, int i, int t, double score, long sq) {
+            FestivoUnit u = units.get(i);
+            long[] pesi = parent.pesi.clone();
+            int[] eventi = parent.eventi.clone();
+            pesi[t] += u.peso;
+            eventi[t] += 1;
+            long[][] months = parent.months.clone();
+            months[t] = months[t].clone();
+            months[t][ym[i] >> 6] |= 1L << ym[i];
+            long[] heavyYears = parent.heavyYears;
+            if (u.pesante) {
+                heavyYears = heavyYears.clone();
+                heavyYears[t] |= 1L << year[i];
+            }
+            int[][] chosen = parent.chosen.clone();
+            chosen[i / CHUNK] = chosen[i / CHUNK].clone();
+            chosen[i / CHUNK][i % CHUNK] = t;
+            return new Node(pesi, eventi, months, heavyYears, chosen, score, sq);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.example.crocerosacelestefestivinewbackend.service;
+
+import com.example.crocerosacelestefestivinewbackend.service.ExcelParsingService.ParseResult;
+import com.example.crocerosacelestefestivinewbackend.service.dto.FestivoInputRow;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.MonthDay;
+import java.util.*;
+
+/**
+ * Calendario dei festivi generato lato server, da usare al posto del file lista-festivi (o come base corretta da
+ * righe di override). Per ogni giorno del periodo:
+ * <ul>
+ *   <li>sabato e domenica: MP (categoria weekend);</li>
+ *   <li>festività nazionali: SN (categoria festivo), più MP se cadono nel weekend;</li>
+ *   <li>Capodanno: MP e SN; Pasqua: MP; Pasquetta: SN; Natale: SN (più MP nel weekend), con pesi propri;</li>
+ *   <li>il 31 del mese: SN (categoria giorno-31), solo con la rotazione mensile, come richiesto dalla regola del 31.</li>
+ * </ul>
+ * I pesi di default sono festivi.calendar.peso.&lt;categoria&gt;; le categorie in festivi.calendar.pesanti finiscono in
+ * festivi-pesanti. Il calendario di un periodo è calcolato una volta e tenuto in una cache LRU
+ * (festivi.calendar.cache-size voci); ogni richiesta riceve righe nuove, modificabili dal solver.
+ */
+@Service
+public class CalendarGenerator {
+    private static final Logger log = LoggerFactory.getLogger(CalendarGenerator.class);
+    private static final String PREFIX = "festivi.calendar.";
+
+    public enum Category { WEEKEND, FESTIVO, CAPODANNO, PASQUA, PASQUETTA, NATALE, GIORNO_31 }
+
+    private static final Map<MonthDay, String> FIXED_HOLIDAYS = Map.of(
+            MonthDay.of(1, 1), "Capodanno", MonthDay.of(1, 6), "Epifania", MonthDay.of(4, 25), "Liberazione",
+            MonthDay.of(5, 1), "Festa del lavoro", MonthDay.of(6, 2), "Festa della Repubblica",
+            MonthDay.of(8, 15), "Ferragosto", MonthDay.of(11, 1), "Ognissanti", MonthDay.of(12, 8), "Immacolata",
+            MonthDay.of(12, 25), "Natale", MonthDay.of(12, 26), "Santo Stefano");
+
+    private final EnumMap<Category, Integer> pesi = new EnumMap<>(Category.class);
+    private final EnumSet<Category> pesanti = EnumSet.noneOf(Category.class);
+    private final Map<Key, Generated> cache;
+    private final int maxViolations;
+
+    public CalendarGenerator(Environment env) {
+        pesi.put(Category.WEEKEND, env.getProperty(PREFIX + "peso.weekend", Integer.class, 10));
+        pesi.put(Category.FESTIVO, env.getProperty(PREFIX + "peso.festivo", Integer.class, 10));
+        pesi.put(Category.CAPODANNO, env.getProperty(PREFIX + "peso.capodanno", Integer.class, 30));
+        pesi.put(Category.PASQUA, env.getProperty(PREFIX + "peso.pasqua", Integer.class, 40));
+        pesi.put(Category.PASQUETTA, env.getProperty(PREFIX + "peso.pasquetta", Integer.class, 35));
+        pesi.put(Category.NATALE, env.getProperty(PREFIX + "peso.natale", Integer.class, 30));
+        pesi.put(Category.GIORNO_31, env.getProperty(PREFIX + "peso.giorno-31", Integer.class, 10));
+        for (Map.Entry<Category, Integer> e : pesi.entrySet()) {
+            if (e.getValue() <= 0) {
+                throw new IllegalStateException(PREFIX + "peso." + propertyName(e.getKey()) + " deve essere > 0");
+            }
+        }
+        for (String c : env.getProperty(PREFIX + "pesanti", "capodanno,pasqua,natale").split(",")) {
+            if (c.isBlank()) continue;
+            pesanti.add(Category.valueOf(c.trim().toUpperCase(Locale.ROOT).replace('-', '_')));
+        }
+        maxViolations = env.getProperty("festivi.validation.max-violations", Integer.class, Violations.DEFAULT_MAX);
+        int cacheSize = Math.max(1, env.getProperty(PREFIX + "cache-size", Integer.class, 64));
+        cache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Generated> eldest) {
+                return size() > cacheSize;
+            }
+        });
+        log.info("[CALENDAR] pesi={}, pesanti={}, cacheSize={}", pesi, pesanti, cacheSize);
+    }
+
+    private record Key(LocalDate start, LocalDate end, boolean include31) { }
+
+    /** Riga generata, immutabile: condivisa tra le richieste tramite la cache. */
+    private record Spec(LocalDate date, String turno, int peso, String note) { }
+
+    private record Generated(List<Spec> specs, Set<String> pesanti) { }
+
+    /** Calendario generato del periodo. La regola del 31 vale solo per la rotazione mensile. */
+    public ParseResult generate(LocalDate start, LocalDate end, TeamConfig teams) {
+        Generated g = generated(start, end, teams);
+        List<FestivoInputRow> rows = new ArrayList<>(g.specs.size());
+        int excelRow = 2;
+        for (Spec s : g.specs) rows.add(toRow(s, excelRow++));
+        return new ParseResult(rows, new HashSet<>(g.pesanti));
+    }
+
+    /**
+     * Calendario generato corretto dalle righe di override (ExcelParsingService/CsvParsingService.parseOverrides):
+     * una riga con la stessa data+turno sostituisce quella generata (peso 0 la rimuove), le altre si aggiungono;
+     * i festivi-pesanti dell'override si sommano a quelli generati. Il risultato passa dalla validazione completa
+     * (coppie sab-dom, regola del 31) con i numeri di riga del calendario risultante, ordinato per data e turno.
+     */
+    public ParseResult generate(LocalDate start, LocalDate end, TeamConfig teams, ParseResult overrides) {
+        Generated g = generated(start, end, teams);
+        Map<String, FestivoInputRow> byKey = new HashMap<>();
+        for (Spec s : g.specs) byKey.put(s.date + "|" + s.turno, toRow(s, 0));
+        int removed = 0, replaced = 0;
+        for (FestivoInputRow o : overrides.rows) {
+            String key = o.date + "|" + o.turno;
+            if (o.peso == 0) {
+                if (byKey.remove(key) != null) removed++;
+            } else if (byKey.put(key, o) != null) {
+                replaced++;
+            }
+        }
+        List<FestivoInputRow> merged = new ArrayList<>(byKey.values());
+        merged.sort(Comparator.comparing((FestivoInputRow r) -> r.date).thenComparing(r -> r.turno));
+
+        FestiviInputCollector collector = new FestiviInputCollector(start, end, teams, maxViolations);
+        int excelRow = 2;
+        for (FestivoInputRow r : merged) {
+            collector.addListaRow(excelRow++, r.note1, r.note2, r.date.toString(), r.turno, String.valueOf(r.peso),
+                    r.assegnazioneForzata.map(String::valueOf).orElse(""), ExcelOutputService.joinExcl(r.squadreEscluse));
+        }
+        Set<String> heavy = new TreeSet<>(g.pesanti);
+        heavy.addAll(overrides.pesanti);
+        int pesanteRow = 2;
+        for (String key : heavy) {
+            if (!byKey.containsKey(key)) continue; // riga rimossa dall'override
+            int sep = key.indexOf('|');
+            collector.addPesanteRow(pesanteRow++, key.substring(0, sep), key.substring(sep + 1));
+        }
+        log.info("[CALENDAR] Overrides applied. period=[{}..{}], generated={}, overrides={}, replaced={}, removed={}, rows={}",
+                start, end, g.specs.size(), overrides.rows.size(), replaced, removed, merged.size());
+        return collector.finish();
+    }
+
+    private Generated generated(LocalDate start, LocalDate end, TeamConfig teams) {
+        Key key = new Key(start, end, teams.rotation() == TeamConfig.Rotation.MENSILE);
+        Generated g = cache.get(key);
+        if (g != null) {
+            log.debug("[CALENDAR] cache hit period=[{}..{}] include31={}", start, end, key.include31);
+            return g;
+        }
+        long t0 = System.nanoTime();
+        g = build(key);
+        cache.put(key, g);
+        log.info("[CALENDAR] Generated. period=[{}..{}], include31={}, rows={}, heavy={}, durationMs={}", start, end,
+                key.include31, g.specs.size(), g.pesanti.size(), (System.nanoTime() - t0) / 1_000_000);
+        return g;
+    }
+
+    private Generated build(Key key) {
+        List<Spec> specs = new ArrayList<>();
+        Set<String> heavy = new HashSet<>();
+        Map<Integer, LocalDate> easterByYear = new HashMap<>();
+        for (LocalDate d = key.start; !d.isAfter(key.end); d = d.plusDays(1)) {
+            LocalDate easter = easterByYear.computeIfAbsent(d.getYear(), CalendarGenerator::easter);
+            MonthDay md = MonthDay.from(d);
+            boolean weekend = d.getDayOfWeek() == DayOfWeek.SATURDAY || d.getDayOfWeek() == DayOfWeek.SUNDAY;
+            String name = d.equals(easter) ? "Pasqua" : d.equals(easter.plusDays(1)) ? "Pasquetta" : FIXED_HOLIDAYS.get(md);
+            Category holiday = name == null ? null
+                    : d.equals(easter) ? Category.PASQUA
+                    : d.equals(easter.plusDays(1)) ? Category.PASQUETTA
+                    : md.equals(MonthDay.of(1, 1)) ? Category.CAPODANNO
+                    : md.equals(MonthDay.of(12, 25)) ? Category.NATALE
+                    : Category.FESTIVO;
+
+            Category mp = null, sn = null;
+            if (holiday == Category.PASQUA || holiday == Category.CAPODANNO) mp = holiday;
+            else if (weekend) mp = Category.WEEKEND;
+            if (holiday == Category.CAPODANNO) sn = Category.FESTIVO;
+            else if (holiday != null && holiday != Category.PASQUA) sn = holiday;
+            else if (d.getDayOfMonth() == 31 && key.include31) sn = Category.GIORNO_31;
+
+            String note = name != null ? name : d.getDayOfMonth() == 31 && sn != null ? "31" : "";
+            if (mp != null) {
+                specs.add(new Spec(d, "MP", pesi.get(mp), note));
+                if (holiday != null && pesanti.contains(holiday)) heavy.add(d + "|MP");
+            }
+            if (sn != null) {
+                specs.add(new Spec(d, "SN", pesi.get(sn), note));
+                if (holiday != null && pesanti.contains(holiday)) heavy.add(d + "|SN");
+            }
+        }
+        return new Generated(List.copyOf(specs), Set.copyOf(heavy));
+    }
+
+    private static FestivoInputRow toRow(Spec s, int excelRow) {
+        FestivoInputRow r = new FestivoInputRow();
+        r.excelRowNumber = excelRow;
+        r.note1 = s.note;
+        r.note2 = "";
+        r.date = s.date;
+        r.turno = s.turno;
+        r.peso = s.peso;
+        r.assegnazioneForzata = Optional.empty();
+        r.squadreEscluse = new BitSet();
+        return r;
+    }
+
+    private static String propertyName(Category c) {
+        return c.name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+
+    /** Domenica di Pasqua (calendario gregoriano, algoritmo di Meeus/Jones/Butcher). */
+    public static LocalDate easter(int year) {
+        int a = year % 19, b = year / 100, c = year % 100;
+        int d = b / 4, e = b % 4, f = (b + 8) / 25, g = (b - f + 1) / 3;
+        int h = (19 * a + b - d - g + 15) % 30;
+        int i = c / 4, k = c % 4;
+        int l = (32 + 2 * e + 2 * i - h - k) % 7;
+        int m = (a + 11 * h + 22 * l) / 451;
+        int month = (h + l - 7 * m + 114) / 31;
+        int day = ((h + l - 7 * m + 114) % 31) + 1;
+        return LocalDate.of(year, month, day);
+    }
+}
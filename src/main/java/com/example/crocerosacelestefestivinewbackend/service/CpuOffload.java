@@ -0,0 +1,119 @@
+package com.example.crocerosacelestefestivinewbackend.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Pool di thread di piattaforma per il lavoro CPU-bound e nativo, in due pool separati:
+ * - pool CPU (festivi.executor.cpu-threads) per lettura e scrittura POI, lavori brevi di ogni richiesta;
+ * - pool solver (festivi.executor.solver-threads) per le risoluzioni (OR-Tools via JNI, sezioni, fascio del beam,
+ *   vicinati dell'LNS), che possono durare minuti.
+ * Così i solve lunghi non occupano i thread del parse e del render: un /greedy non resta in coda dietro un MILP.
+ * Con i thread virtuali attivi (spring.threads.virtual.enabled) la richiesta resta su un thread virtuale che si
+ * sospende in attesa del risultato, invece di tenere bloccato un carrier per tutta la durata della chiamata nativa.
+ */
+@Component
+public class CpuOffload {
+    private static final Logger log = LoggerFactory.getLogger(CpuOffload.class);
+
+    private final ExecutorService cpu;
+    private final ExecutorService solver;
+    private final int solverThreads;
+
+    public CpuOffload(@Value("${festivi.executor.cpu-threads:0}") int cpuThreads,
+                      @Value("${festivi.executor.solver-threads:0}") int solverThreads) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        int c = cpuThreads > 0 ? cpuThreads : cores;
+        int s = solverThreads > 0 ? solverThreads : cores;
+        this.solverThreads = s;
+        AtomicInteger cpuSeq = new AtomicInteger();
+        AtomicInteger solverSeq = new AtomicInteger();
+        this.cpu = Executors.newFixedThreadPool(c, r -> new CpuThread(r, "festivi-cpu-" + cpuSeq.incrementAndGet(), false));
+        this.solver = Executors.newFixedThreadPool(s, r -> new CpuThread(r, "festivi-solver-" + solverSeq.incrementAndGet(), true));
+        log.info("[OFFLOAD] CPU pool threads={} solver pool threads={}", c, s);
+    }
+
+    /** Thread del pool solver: quanti lavori di callAll girano davvero in parallelo. */
+    public int threads() {
+        return solverThreads;
+    }
+
+    /**
+     * Esegue il lavoro breve (parse, render) sul pool CPU e attende il risultato; le RuntimeException
+     * (es. ValidationException) vengono rilanciate.
+     */
+    public <T> T call(Supplier<T> work) {
+        if (Thread.currentThread() instanceof CpuThread) return work.get(); // già su un pool: evita deadlock
+        return await(cpu.submit(work::get));
+    }
+
+    /** Esegue una risoluzione sul pool solver e attende il risultato, come call. */
+    public <T> T solve(Supplier<T> work) {
+        if (onSolverPool()) return work.get(); // già sul pool solver: evita deadlock
+        return await(solver.submit(work::get));
+    }
+
+    /**
+     * Esegue i lavori di risoluzione in parallelo sul pool solver (al più festivi.executor.solver-threads alla volta)
+     * e attende tutti i risultati, nell'ordine dei lavori. Alla prima eccezione annulla i lavori rimasti e la rilancia.
+     */
+    public <T> List<T> callAll(List<Supplier<T>> work) {
+        List<T> out = new ArrayList<>(work.size());
+        if (onSolverPool()) { // già sul pool solver: in sequenza, evita deadlock
+            for (Supplier<T> w : work) out.add(w.get());
+            return out;
+        }
+        List<Future<T>> futures = new ArrayList<>(work.size());
+        for (Supplier<T> w : work) futures.add(solver.submit(w::get));
+        try {
+            for (Future<T> f : futures) out.add(await(f));
+        } finally {
+            for (Future<T> f : futures) f.cancel(true); // no-op per quelli completati
+        }
+        return out;
+    }
+
+    private static <T> T await(Future<T> f) {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            f.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Richiesta interrotta", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException re) throw re;
+            if (cause instanceof Error err) throw err;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private static boolean onSolverPool() {
+        return Thread.currentThread() instanceof CpuThread t && t.solver;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        cpu.shutdown();
+        solver.shutdown();
+    }
+
+    private static final class CpuThread extends Thread {
+        final boolean solver;
+
+        CpuThread(Runnable r, String name, boolean solver) {
+            super(r, name);
+            this.solver = solver;
+            setDaemon(true);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.crocerosacelestefestivinewbackend.service;
+
+import com.example.crocerosacelestefestivinewbackend.api.ValidationException;
+import com.example.crocerosacelestefestivinewbackend.service.ExcelParsingService.ParseResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parsing del layout lista-festivi da CSV/TSV (separatore ',', ';' o tab rilevato dall'header).
+ * I festivi pesanti possono arrivare da un secondo file (header data,turno) oppure da una sezione
+ * dello stesso file introdotta da una riga "[festivi-pesanti]". Stesse regole e messaggi di ExcelParsingService.
+ */
+@Service
+public class CsvParsingService {
+    private static final Logger log = LoggerFactory.getLogger(CsvParsingService.class);
+
+    static final String SECTION_LISTA = "[lista-festivi]";
+    static final String SECTION_PESANTI = "[festivi-pesanti]";
+
+    private final int maxViolations;
+
+    public CsvParsingService(@Value("${festivi.validation.max-violations:200}") int maxViolations) {
+        this.maxViolations = maxViolations;
+    }
+
+    public ParseResult parse(InputStream lista, InputStream pesanti, LocalDate startDate, LocalDate endDate) {
+        return parse(lista, pesanti, startDate, endDate, TeamConfig.DEFAULT);
+    }
+
+    public ParseResult parse(InputStream lista, InputStream pesanti, LocalDate startDate, LocalDate endDate, TeamConfig teams) {
+        return parse(lista, pesanti, new FestiviInputCollector(startDate, endDate, teams, maxViolations));
+    }
+
+    /** Righe che correggono un calendario generato: vedi CalendarGenerator (peso 0 rimuove la riga generata). */
+    public ParseResult parseOverrides(InputStream lista, InputStream pesanti, LocalDate startDate, LocalDate endDate, TeamConfig teams) {
+        return parse(lista, pesanti, new FestiviInputCollector(startDate, endDate, teams, true, maxViolations));
+    }
+
+    private ParseResult parse(InputStream lista, InputStream pesanti, FestiviInputCollector collector) {
+        List<Map<String, Object>> violations = collector.violations;
+        try {
+            log.info("[PARSE] Start parsing CSV.");
+            CsvTokenizer tok = new CsvTokenizer(lista);
+            String[] f = new String[7];
+            if (!tok.next(f)) collector.headerMissing();
+            int base = 0; // record che precedono la sezione corrente (la numerazione riparte da 1 come in un foglio)
+            if (SECTION_LISTA.equals(f[0])) {
+                base = tok.recordNumber();
+                if (!tok.next(f)) collector.headerMissing();
+            }
+            if (!FestiviInputCollector.isListaHeader(f[2], f[3], f[4], f[5], f[6])) collector.headerInvalid();
+
+            boolean pesantiSection = false;
+            int pendingEmpty = 0; // righe vuote valgono come errore solo se seguite da altre righe (come getLastRowNum)
+            while (!collector.isFull() && tok.next(f)) {
+                if (SECTION_PESANTI.equals(f[0])) { pesantiSection = true; break; }
+                if (FestiviInputCollector.isAllEmpty(f)) { pendingEmpty++; continue; }
+                int rowNumber = tok.recordNumber() - base;
+                for (int i = pendingEmpty; i > 0; i--) collector.emptyRow(rowNumber - i);
+                pendingEmpty = 0;
+                collector.addListaRow(rowNumber, f[0], f[1], f[2], f[3], f[4], f[5], f[6]);
+            }
+            if (pesantiSection) readPesanti(tok, tok.recordNumber(), collector);
+            if (pesanti != null) readPesanti(new CsvTokenizer(pesanti), 0, collector);
+
+            return collector.finish();
+        } catch (ValidationException ve) {
+            throw ve;
+        } catch (Exception e) {
+            ValidationUtil.addV(violations, 0, "__global__", e.getMessage());
+            throw new ValidationException(violations);
+        }
+    }
+
+    private static void readPesanti(CsvTokenizer tok, int base, FestiviInputCollector collector) throws IOException {
+        String[] f = new String[2];
+        if (!tok.next(f) || !FestiviInputCollector.isPesantiHeader(f[0], f[1])) {
+            collector.pesantiHeaderInvalid();
+            return;
+        }
+        while (tok.next(f)) {
+            if (FestiviInputCollector.isAllEmpty(f)) continue;
+            collector.addPesanteRow(tok.recordNumber() - base, f[0], f[1]);
+        }
+        log.debug("[PARSE] heavy marked count={}", collector.pesantiCount());
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.crocerosacelestefestivinewbackend.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Tokenizer CSV/TSV in streaming: legge direttamente dallo stream in un buffer fisso e materializza
+ * una String solo per le colonne richieste (già trimmate). Campi vuoti e i valori "MP"/"SN" non allocano.
+ * Supporta campi tra virgolette ("" come escape), fine riga CRLF/LF/CR e BOM UTF-8.
+ */
+class CsvTokenizer {
+    private static final int BUF_SIZE = 16 * 1024;
+
+    private final Reader reader;
+    private final char[] buf = new char[BUF_SIZE];
+    private int pos;
+    private int limit;
+    private final char delimiter;
+    private char[] field = new char[256];
+    private int fieldLen;
+    private int recordNumber;
+
+    CsvTokenizer(InputStream in) throws IOException {
+        this.reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+        fill();
+        if (limit > 0 && buf[0] == '\uFEFF') pos = 1;
+        this.delimiter = sniffDelimiter();
+    }
+
+    char delimiter() {
+        return delimiter;
+    }
+
+    /** Numero (1-based) dell'ultimo record letto, equivalente al numero di riga Excel. */
+    int recordNumber() {
+        return recordNumber;
+    }
+
+    /**
+     * Legge il prossimo record riempiendo {@code out[0..out.length)}; le colonne mancanti valgono "" e quelle
+     * oltre out.length vengono scartate senza allocare. Restituisce false a fine stream.
+     */
+    boolean next(String[] out) throws IOException {
+        if (pos >= limit && fill() <= 0) return false;
+        recordNumber++;
+        int col = 0;
+        while (true) {
+            boolean endOfRecord = readField();
+            if (col < out.length) out[col] = materialize();
+            col++;
+            if (endOfRecord) break;
+        }
+        for (int i = col; i < out.length; i++) out[i] = "";
+        return true;
+    }
+
+    /** Legge un campo nel buffer di lavoro; true se il campo chiude il record (newline o EOF). */
+    private boolean readField() throws IOException {
+        fieldLen = 0;
+        int c = read();
+        if (c == '"') {
+            while (true) {
+                c = read();
+                if (c < 0) return true;
+                if (c == '"') {
+                    int n = read();
+                    if (n == '"') { append('"'); continue; }
+                    c = n;
+                    break;
+                }
+                append((char) c);
+            }
+            // dopo la virgoletta di chiusura: ignora tutto fino al separatore
+            while (c >= 0 && c != delimiter && c != '\n' && c != '\r') c = read();
+        } else {
+            while (c >= 0 && c != delimiter && c != '\n' && c != '\r') {
+                append((char) c);
+                c = read();
+            }
+        }
+        if (c < 0 || c == '\n') return true;
+        if (c == '\r') {
+            if (peek() == '\n') read();
+            return true;
+        }
+        return false;
+    }
+
+    private String materialize() {
+        int from = 0, to = fieldLen;
+        while (from < to && Character.isWhitespace(field[from])) from++;
+        while (to > from && Character.isWhitespace(field[to - 1])) to--;
+        int len = to - from;
+        if (len == 0) return "";
+        if (len == 2) {
+            if (field[from] == 'M' && field[from + 1] == 'P') return "MP";
+            if (field[from] == 'S' && field[from + 1] == 'N') return "SN";
+        }
+        return new String(field, from, len);
+    }
+
+    private void append(char c) {
+        if (fieldLen == field.length) {
+            char[] bigger = new char[field.length * 2];
+            System.arraycopy(field, 0, bigger, 0, fieldLen);
+            field = bigger;
+        }
+        field[fieldLen++] = c;
+    }
+
+    private int read() throws IOException {
+        if (pos >= limit && fill() <= 0) return -1;
+        return buf[pos++];
+    }
+
+    private int peek() throws IOException {
+        if (pos >= limit && fill() <= 0) return -1;
+        return buf[pos];
+    }
+
+    private int fill() throws IOException {
+        int n = reader.read(buf, 0, buf.length);
+        pos = 0;
+        limit = Math.max(n, 0);
+        return n;
+    }
+
+    /** Sceglie tra tab, ';' e ',' contando le occorrenze fuori dalle virgolette nella prima riga bufferizzata. */
+    private char sniffDelimiter() {
+        int tabs = 0, semis = 0, commas = 0;
+        boolean quoted = false;
+        for (int i = pos; i < limit; i++) {
+            char c = buf[i];
+            if (c == '"') quoted = !quoted;
+            else if (!quoted && (c == '\n' || c == '\r')) break;
+            else if (!quoted && c == '\t') tabs++;
+            else if (!quoted && c == ';') semis++;
+            else if (!quoted && c == ',') commas++;
+        }
+        if (tabs > 0 && tabs >= semis && tabs >= commas) return '\t';
+        if (semis > commas) return ';';
+        return ',';
+    }
+}
@@ -0,0 +1,465 @@
+package com.example.crocerosacelestefestivinewbackend.service;
+
+import com.example.crocerosacelestefestivinewbackend.api.SessionNotFoundException;
+import com.example.crocerosacelestefestivinewbackend.api.ValidationException;
+import com.example.crocerosacelestefestivinewbackend.service.dto.FestivoInputRow;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.example.crocerosacelestefestivinewbackend.service.SchedulingCommon.*;
+
+/**
+ * Sessioni di modifica in memoria: dopo un solve tengono unità, vincoli e assegnazione e applicano spostamenti e
+ * scambi rispondendo con le violazioni introdotte o risolte e la variazione di spread, Emax e tabelle mensili. Ogni
+ * operazione aggiorna solo i contatori toccati (carichi ed eventi per squadra e mese, festivi per squadra nel mese e
+ * pesanti per squadra nell'anno, numero totale di violazioni), senza riscorrere l'assegnazione. Le sessioni scadono
+ * dopo festivi.session.ttl-minutes dall'ultimo accesso; oltre festivi.session.max-sessions si scarta la meno recente.
+ */
+@Service
+public class EditingSessionService {
+    private static final Logger log = LoggerFactory.getLogger(EditingSessionService.class);
+
+    private final long ttlMillis;
+    private final int maxSessions;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+    public EditingSessionService(@Value("${festivi.session.ttl-minutes:30}") long ttlMinutes,
+                                 @Value("${festivi.session.max-sessions:100}") int maxSessions) {
+        this.ttlMillis = Math.max(1, ttlMinutes) * 60_000L;
+        this.maxSessions = Math.max(1, maxSessions);
+    }
+
+    /** Nuova sessione sull'assegnazione di un engine (chiavi data|turno come in ScheduleResult.assignment). */
+    public Session create(List<FestivoInputRow> rows,
+                          Set<String> pesanti,
+                          LocalDate start,
+                          LocalDate end,
+                          int minProximityDays,
+                          double alpha,
+                          TeamConfig teams,
+                          Map<String, Integer> assignment) {
+        long now = System.currentTimeMillis();
+        evictExpired(now);
+        Session s = new Session(UUID.randomUUID().toString(), buildUnits(rows, pesanti, start, end, teams), start, minProximityDays, alpha, assignment, now);
+        while (sessions.size() >= maxSessions) {
+            sessions.values().stream().min(Comparator.comparingLong(x -> x.lastAccess)).ifPresent(old -> {
+                sessions.remove(old.id, old);
+                log.info("[SESSION] Evicted id={} (max-sessions={})", old.id, maxSessions);
+            });
+        }
+        sessions.put(s.id, s);
+        log.info("[SESSION] Created id={} units={} teams={} violations={} sessions={}", s.id, s.U, s.T, s.violations, sessions.size());
+        return s;
+    }
+
+    /** Sessione viva, con scadenza rinnovata; SessionNotFoundException se inesistente o scaduta. */
+    public Session get(String id) {
+        long now = System.currentTimeMillis();
+        Session s = sessions.get(id);
+        if (s == null || now - s.lastAccess > ttlMillis) {
+            if (s != null) sessions.remove(id, s);
+            throw new SessionNotFoundException(id);
+        }
+        s.lastAccess = now;
+        return s;
+    }
+
+    public void delete(String id) {
+        if (sessions.remove(id) == null) throw new SessionNotFoundException(id);
+        log.info("[SESSION] Deleted id={}", id);
+    }
+
+    public Instant expiresAt(Session s) {
+        return Instant.ofEpochMilli(s.lastAccess + ttlMillis);
+    }
+
+    private void evictExpired(long now) {
+        sessions.values().removeIf(s -> now - s.lastAccess > ttlMillis);
+    }
+
+    /**
+     * Stato di una sessione. Le violazioni contate sono: squadra fuori dominio (esclusa, non forzata o per
+     * prossimità), ogni festivo oltre il primo della squadra nel mese, ogni pesante oltre il primo della squadra
+     * nell'anno, ogni coppia MP/SN dello stesso giorno sulla stessa squadra.
+     */
+    public static final class Session {
+        public final String id;
+        private volatile long lastAccess;
+        private final BuiltModel bm;
+        private final List<FestivoUnit> units;
+        private final int U;
+        private final int T;
+        private final int minProximityDays;
+        private final double alpha;
+        private final long totalPeso;
+        private final Map<String, Integer> unitByKey = new HashMap<>(); // data|turno -> unità (MPB: entrambe le date)
+        private final BitSet[] allowed; // squadre ammesse per unità
+        private final int[] monthIdx; // anno-mese dall'inizio del periodo
+        private final int[] yearIdx;
+        private final int[][] dayPeers; // MP/SN dello stesso giorno
+        private final int[] team;
+        private final long[] w;
+        private final int[] e;
+        private final long[][] pesiPerMese;
+        private final int[][] eventiPerMese;
+        private final List<Integer>[][] monthUnits; // [squadra][anno-mese]
+        private final List<Integer>[][] heavyUnits; // [squadra][anno]
+        private final TreeMap<Long, Integer> loads = new TreeMap<>(); // multiinsieme dei carichi: spread in O(log T)
+        private final int[] eventHist; // squadre per numero di eventi: Emax in O(1)
+        private int emax;
+        private int violations;
+
+        @SuppressWarnings({"unchecked", "rawtypes"}) // array di liste per squadra e anno-mese
+        Session(String id, BuiltModel bm, LocalDate start, int minProximityDays, double alpha, Map<String, Integer> assignment, long now) {
+            this.id = id;
+            this.lastAccess = now;
+            this.bm = bm;
+            this.units = bm.units;
+            this.U = units.size();
+            this.T = bm.teams.teams();
+            this.minProximityDays = minProximityDays;
+            this.alpha = alpha;
+            this.allowed = new BitSet[U];
+            this.monthIdx = new int[U];
+            this.yearIdx = new int[U];
+            this.team = new int[U];
+            long tot = 0;
+            int years = 1;
+            for (int i = 0; i < U; i++) {
+                FestivoUnit u = units.get(i);
+                tot += u.peso;
+                yearIdx[i] = u.year - start.getYear();
+                monthIdx[i] = yearIdx[i] * 12 + u.month - 1;
+                years = Math.max(years, yearIdx[i] + 1);
+                BitSet ok = new BitSet(T + 1);
+                for (int t = 1; t <= T; t++) if (reason(u, t) == null) ok.set(t);
+                allowed[i] = ok;
+                for (LocalDate d : u.dates) unitByKey.put(d + "|" + ("MPB".equals(u.tipo) ? "MP" : u.tipo), i);
+            }
+            this.totalPeso = tot;
+            this.dayPeers = dayPeers(units);
+            this.w = new long[T + 1];
+            this.e = new int[T + 1];
+            this.pesiPerMese = new long[T + 1][12];
+            this.eventiPerMese = new int[T + 1][12];
+            this.monthUnits = new List[T + 1][years * 12];
+            this.heavyUnits = new List[T + 1][years];
+            this.eventHist = new int[U + 1];
+            eventHist[0] = T;
+            loads.put(0L, T);
+            for (int i = 0; i < U; i++) {
+                Integer t = assignment.get(unitKey(units.get(i)));
+                if (t == null || t < 1 || t > T) throw new IllegalStateException("Unità senza squadra: " + units.get(i).id);
+                place(i, t);
+            }
+        }
+
+        /** Spostamento di un festivo su un'altra squadra; con dryRun lo stato resta invariato. */
+        public synchronized Map<String, Object> move(String unitKey, int toTeam, boolean dryRun) {
+            int i = unit(unitKey, "unit");
+            if (toTeam < 1 || toTeam > T) throw invalid("team", "team deve essere tra 1 e " + T);
+            int from = team[i];
+            return change(new int[]{i}, new int[]{toTeam}, new int[]{from}, dryRun);
+        }
+
+        /** Scambio delle squadre di due festivi; con dryRun lo stato resta invariato. */
+        public synchronized Map<String, Object> swap(String unitKey, String otherKey, boolean dryRun) {
+            int i = unit(unitKey, "unit");
+            int j = unit(otherKey, "other");
+            if (i == j) throw invalid("other", "Scambio di un festivo con se stesso");
+            return change(new int[]{i, j}, new int[]{team[j], team[i]}, new int[]{team[i], team[j]}, dryRun);
+        }
+
+        private Map<String, Object> change(int[] moved, int[] to, int[] from, boolean dryRun) {
+            Map<String, Object> before = objective();
+            int violationsBefore = violations;
+            Map<String, Map<String, Object>> conflictsBefore = conflicts(moved);
+            // celle toccate: squadra di partenza e di arrivo nel mese di ogni unità spostata
+            Map<Long, long[]> cells = new LinkedHashMap<>();
+            Set<Integer> teams = new TreeSet<>();
+            for (int k = 0; k < moved.length; k++) {
+                int m = units.get(moved[k]).month - 1;
+                for (int t : new int[]{from[k], to[k]}) {
+                    cells.putIfAbsent((long) t * 12 + m, new long[]{t, m, pesiPerMese[t][m], eventiPerMese[t][m]});
+                    teams.add(t);
+                }
+            }
+            Map<Integer, long[]> totalsBefore = new HashMap<>();
+            for (int t : teams) totalsBefore.put(t, new long[]{w[t], e[t]});
+
+            for (int i : moved) unplace(i);
+            for (int k = 0; k < moved.length; k++) place(moved[k], to[k]);
+
+            Map<String, Map<String, Object>> conflictsAfter = conflicts(moved);
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("applied", !dryRun);
+            out.put("introduced", diff(conflictsAfter, conflictsBefore));
+            out.put("resolved", diff(conflictsBefore, conflictsAfter));
+            out.put("violations", violations);
+            out.put("deltaViolations", violations - violationsBefore);
+            out.put("before", before);
+            out.put("after", objective());
+            List<Map<String, Object>> cellList = new ArrayList<>();
+            for (long[] c : cells.values()) {
+                int t = (int) c[0];
+                int m = (int) c[1];
+                Map<String, Object> cell = new LinkedHashMap<>();
+                cell.put("team", t);
+                cell.put("month", m + 1);
+                cell.put("weight", pesiPerMese[t][m]);
+                cell.put("events", eventiPerMese[t][m]);
+                cell.put("deltaWeight", pesiPerMese[t][m] - c[2]);
+                cell.put("deltaEvents", eventiPerMese[t][m] - c[3]);
+                cellList.add(cell);
+            }
+            out.put("cells", cellList);
+            List<Map<String, Object>> teamList = new ArrayList<>();
+            for (int t : teams) {
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("team", t);
+                row.put("weight", w[t]);
+                row.put("events", e[t]);
+                row.put("deltaWeight", w[t] - totalsBefore.get(t)[0]);
+                row.put("deltaEvents", e[t] - totalsBefore.get(t)[1]);
+                teamList.add(row);
+            }
+            out.put("teams", teamList);
+
+            if (dryRun) {
+                for (int i : moved) unplace(i);
+                for (int k = 0; k < moved.length; k++) place(moved[k], from[k]);
+            }
+            return out;
+        }
+
+        /** Riepilogo: obiettivo, violazioni, totali per squadra e squadra di ogni festivo. */
+        public synchronized Map<String, Object> describe() {
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("id", id);
+            out.putAll(objective());
+            out.put("violations", violations);
+            List<Map<String, Object>> teamList = new ArrayList<>();
+            for (int t = 1; t <= T; t++) {
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("team", t);
+                row.put("weight", w[t]);
+                row.put("events", e[t]);
+                teamList.add(row);
+            }
+            out.put("teams", teamList);
+            List<Map<String, Object>> unitList = new ArrayList<>();
+            for (int i = 0; i < U; i++) {
+                FestivoUnit u = units.get(i);
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("unit", unitKey(u));
+                row.put("id", u.id);
+                row.put("weight", u.peso);
+                row.put("heavy", u.pesante);
+                row.put("team", team[i]);
+                unitList.add(row);
+            }
+            out.put("units", unitList);
+            return out;
+        }
+
+        /**
+         * Copia dello stato per ExcelOutputService: righe con le violazioni correnti in "note / errori" (in coda agli
+         * eventuali messaggi del parsing), assegnazione e tabelle mensili.
+         */
+        public synchronized ExcelOutputService.SectionOutput export() {
+            Map<FestivoInputRow, FestivoInputRow> copies = new IdentityHashMap<>();
+            List<FestivoInputRow> rows = new ArrayList<>();
+            for (FestivoInputRow r : bm.mutatedRows) {
+                FestivoInputRow c = copy(r);
+                copies.put(r, c);
+                rows.add(c);
+            }
+            Map<String, Integer> assignment = new HashMap<>();
+            for (int i = 0; i < U; i++) {
+                FestivoUnit u = units.get(i);
+                for (LocalDate d : u.dates) assignment.put(d + "|" + ("MPB".equals(u.tipo) ? "MP" : u.tipo), team[i]);
+                if (violations == 0) continue;
+                Collection<Map<String, Object>> found = conflicts(new int[]{i}).values();
+                if (found.isEmpty()) continue;
+                StringBuilder sb = new StringBuilder();
+                for (Map<String, Object> v : found) {
+                    if (sb.length() > 0) sb.append("; ");
+                    sb.append(v.get("message"));
+                }
+                for (FestivoInputRow r : u.rows) {
+                    FestivoInputRow c = copies.get(r);
+                    c.errorMessage = c.errorMessage == null || c.errorMessage.isEmpty() ? sb.toString() : c.errorMessage + "; " + sb;
+                }
+            }
+            long[][] pesi = new long[T + 1][];
+            int[][] eventi = new int[T + 1][];
+            for (int t = 0; t <= T; t++) {
+                pesi[t] = pesiPerMese[t].clone();
+                eventi[t] = eventiPerMese[t].clone();
+            }
+            return new ExcelOutputService.SectionOutput(null, rows, assignment, pesi, eventi);
+        }
+
+        // aggiunge i alla squadra t: violazioni contate prima di inserire i nelle liste
+        private void place(int i, int t) {
+            FestivoUnit u = units.get(i);
+            if (!allowed[i].get(t)) violations++;
+            List<Integer> month = slot(monthUnits, t, monthIdx[i]);
+            if (!month.isEmpty()) violations++;
+            month.add(i);
+            if (u.pesante) {
+                List<Integer> heavy = slot(heavyUnits, t, yearIdx[i]);
+                if (!heavy.isEmpty()) violations++;
+                heavy.add(i);
+            }
+            for (int q : dayPeers[i]) if (team[q] == t) violations++;
+            team[i] = t;
+            setLoad(t, w[t] + u.peso);
+            eventHist[e[t]]--;
+            e[t]++;
+            eventHist[e[t]]++;
+            if (e[t] > emax) emax = e[t];
+            pesiPerMese[t][u.month - 1] += u.peso;
+            eventiPerMese[t][u.month - 1] += 1;
+        }
+
+        private void unplace(int i) {
+            FestivoUnit u = units.get(i);
+            int t = team[i];
+            team[i] = 0;
+            if (!allowed[i].get(t)) violations--;
+            List<Integer> month = monthUnits[t][monthIdx[i]];
+            month.remove((Integer) i);
+            if (!month.isEmpty()) violations--;
+            if (u.pesante) {
+                List<Integer> heavy = heavyUnits[t][yearIdx[i]];
+                heavy.remove((Integer) i);
+                if (!heavy.isEmpty()) violations--;
+            }
+            for (int q : dayPeers[i]) if (team[q] == t) violations--;
+            setLoad(t, w[t] - u.peso);
+            eventHist[e[t]]--;
+            if (e[t] == emax && eventHist[e[t]] == 0) emax--;
+            e[t]--;
+            eventHist[e[t]]++;
+            pesiPerMese[t][u.month - 1] -= u.peso;
+            eventiPerMese[t][u.month - 1] -= 1;
+        }
+
+        private void setLoad(int t, long value) {
+            loads.computeIfPresent(w[t], (k, n) -> n == 1 ? null : n - 1);
+            loads.merge(value, 1, Integer::sum);
+            w[t] = value;
+        }
+
+        private static List<Integer> slot(List<Integer>[][] lists, int t, int idx) {
+            List<Integer> l = lists[t][idx];
+            if (l == null) {
+                l = new ArrayList<>(2);
+                lists[t][idx] = l;
+            }
+            return l;
+        }
+
+        private Map<String, Object> objective() {
+            long spread = loads.lastKey() - loads.firstKey();
+            double l = totalPeso == 0 ? 0.0 : (double) spread / (double) totalPeso;
+            double ev = U == 0 ? 0.0 : (double) emax / (double) U;
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("score", alpha * l + (1.0 - alpha) * ev);
+            out.put("spread", spread);
+            out.put("emax", emax);
+            return out;
+        }
+
+        // violazioni che coinvolgono le unità date, per messaggio (le coppie hanno lo stesso messaggio dai due lati)
+        private Map<String, Map<String, Object>> conflicts(int[] unitIdx) {
+            Map<String, Map<String, Object>> out = new LinkedHashMap<>();
+            for (int i : unitIdx) {
+                FestivoUnit u = units.get(i);
+                int t = team[i];
+                String why = allowed[i].get(t) ? null : reason(u, t);
+                if (why != null) conflict(out, "dominio", List.of(u), u.id + " sulla squadra " + t + ": " + why);
+                List<Integer> month = monthUnits[t][monthIdx[i]];
+                for (int j : month) {
+                    if (j != i) conflict(out, "mese", pair(u, units.get(j)), pairText(u, units.get(j)) + " sulla squadra " + t + " nello stesso mese");
+                }
+                if (u.pesante) {
+                    for (int j : heavyUnits[t][yearIdx[i]]) {
+                        if (j != i) conflict(out, "pesante", pair(u, units.get(j)), pairText(u, units.get(j)) + ": due pesanti alla squadra " + t + " nello stesso anno");
+                    }
+                }
+                for (int q : dayPeers[i]) {
+                    if (team[q] == t) conflict(out, "stesso-giorno", pair(u, units.get(q)), pairText(u, units.get(q)) + ": MP e SN dello stesso giorno alla squadra " + t);
+                }
+            }
+            return out;
+        }
+
+        private static void conflict(Map<String, Map<String, Object>> out, String type, List<FestivoUnit> involved, String message) {
+            Map<String, Object> v = new LinkedHashMap<>();
+            v.put("type", type);
+            v.put("units", involved.stream().map(SchedulingCommon::unitKey).toList());
+            v.put("message", message);
+            out.putIfAbsent(message, v);
+        }
+
+        private static List<FestivoUnit> pair(FestivoUnit a, FestivoUnit b) {
+            return a.id.compareTo(b.id) <= 0 ? List.of(a, b) : List.of(b, a);
+        }
+
+        private static String pairText(FestivoUnit a, FestivoUnit b) {
+            List<FestivoUnit> p = pair(a, b);
+            return p.get(0).id + " e " + p.get(1).id;
+        }
+
+        private static List<Map<String, Object>> diff(Map<String, Map<String, Object>> a, Map<String, Map<String, Object>> b) {
+            List<Map<String, Object>> out = new ArrayList<>();
+            for (Map.Entry<String, Map<String, Object>> en : a.entrySet()) if (!b.containsKey(en.getKey())) out.add(en.getValue());
+            return out;
+        }
+
+        // motivo per cui t non è ammessa per u, null se ammessa
+        private String reason(FestivoUnit u, int t) {
+            if (u.escluse.get(t)) return "squadra esclusa";
+            if (u.forzata.isPresent() && u.forzata.get() != t) return "forzata alla squadra " + u.forzata.get();
+            for (LocalDate d : u.dates) {
+                if (!bm.proximityOk(t, d, minProximityDays)) return "turno ordinario a meno di " + minProximityDays + " giorni da " + d;
+            }
+            return null;
+        }
+
+        private int unit(String key, String field) {
+            Integer i = key == null ? null : unitByKey.get(key.trim());
+            if (i == null) throw invalid(field, "Festivo inesistente: " + key + " (formato data|turno, es. 2025-03-08|MP)");
+            return i;
+        }
+
+        private static ValidationException invalid(String field, String message) {
+            List<Map<String, Object>> v = new ArrayList<>();
+            addV(v, 0, field, message);
+            return new ValidationException(v);
+        }
+
+        private static FestivoInputRow copy(FestivoInputRow r) {
+            FestivoInputRow c = new FestivoInputRow();
+            c.excelRowNumber = r.excelRowNumber;
+            c.note1 = r.note1;
+            c.note2 = r.note2;
+            c.date = r.date;
+            c.turno = r.turno;
+            c.peso = r.peso;
+            c.assegnazioneForzata = r.assegnazioneForzata;
+            c.squadreEscluse = r.squadreEscluse;
+            c.errorMessage = r.errorMessage;
+            return c;
+        }
+    }
+}
@@ -2,6 +2,8 @@ package com.example.crocerosacelestefestivinewbackend.service;
 
 import com.example.crocerosacelestefestivinewbackend.service.dto.FestivoInputRow;
 import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.ss.util.WorkbookUtil;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.springframework.stereotype.Service;
 
@@ -11,13 +13,178 @@ import java.util.*;
 
 @Service
 public class ExcelOutputService {
+    private static final int MAX_SHEET_NAME = 31; // limite di Excel
 
+    /** Risultato di una sezione di un upload a sezioni. */
+    public static class SectionOutput {
+        public final String name;
+        public final List<FestivoInputRow> rows;
+        public final Map<String, Integer> assignment;
+        public final long[][] pesiPerMese;
+        public final int[][] eventiPerMese;
+        public final List<MilpSchedulerService.PoolSolution> pool; // alternative del pool MILP, vuota senza
+        public SectionOutput(String name, List<FestivoInputRow> rows, Map<String, Integer> assignment,
+                             long[][] pesiPerMese, int[][] eventiPerMese) {
+            this(name, rows, assignment, pesiPerMese, eventiPerMese, List.of());
+        }
+        public SectionOutput(String name, List<FestivoInputRow> rows, Map<String, Integer> assignment,
+                             long[][] pesiPerMese, int[][] eventiPerMese, List<MilpSchedulerService.PoolSolution> pool) {
+            this.name = name;
+            this.rows = rows;
+            this.assignment = assignment;
+            this.pesiPerMese = pesiPerMese;
+            this.eventiPerMese = eventiPerMese;
+            this.pool = pool;
+        }
+    }
+
+    public byte[] buildOutput(List<FestivoInputRow> inputRows,
+                              Map<String, Integer> assignment,
+                              long[][] pesiPerMese,
+                              int[][] eventiPerMese) {
+        return buildOutput(inputRows, assignment, pesiPerMese, eventiPerMese, SchedulingTrace.OFF);
+    }
+
+    /** Con la traccia attiva il workbook ha in coda il foglio "trace" (vedi SchedulingTrace). */
+    public byte[] buildOutput(List<FestivoInputRow> inputRows,
+                              Map<String, Integer> assignment,
+                              long[][] pesiPerMese,
+                              int[][] eventiPerMese,
+                              SchedulingTrace trace) {
+        return buildOutput(inputRows, assignment, pesiPerMese, eventiPerMese, trace, List.of());
+    }
+
+    /** progress non vuoto: foglio "andamento" con lo score nel tempo (LNS), prima dell'eventuale "trace". */
+    public byte[] buildOutput(List<FestivoInputRow> inputRows,
+                              Map<String, Integer> assignment,
+                              long[][] pesiPerMese,
+                              int[][] eventiPerMese,
+                              SchedulingTrace trace,
+                              List<LnsSchedulerService.ObjectivePoint> progress) {
+        return buildOutput(inputRows, assignment, pesiPerMese, eventiPerMese, trace, progress, List.of());
+    }
+
+    /**
+     * pool con più di una soluzione: i tre fogli per ogni alternativa (lista-festivi-alt2, ...) e il foglio
+     * "alternative" con score, spread, Emax e distanza di ognuna; la soluzione di rango 1 è quella dei fogli principali.
+     */
     public byte[] buildOutput(List<FestivoInputRow> inputRows,
                               Map<String, Integer> assignment,
-                              Map<Integer, long[]> pesiPerMese,
-                              Map<Integer, int[]> eventiPerMese) {
+                              long[][] pesiPerMese,
+                              int[][] eventiPerMese,
+                              SchedulingTrace trace,
+                              List<LnsSchedulerService.ObjectivePoint> progress,
+                              List<MilpSchedulerService.PoolSolution> pool) {
+        try (Workbook wb = new XSSFWorkbook()) {
+            writeSheets(wb, "lista-festivi", "riepilogo-pesi", "riepilogo-eventi", inputRows, assignment, pesiPerMese, eventiPerMese);
+            Set<String> used = new HashSet<>();
+            for (MilpSchedulerService.PoolSolution p : pool) {
+                if (p.rank == 1) continue;
+                String alt = "alt" + p.rank;
+                writeSheets(wb, sheetName("lista-festivi", alt, used), sheetName("riepilogo-pesi", alt, used),
+                        sheetName("riepilogo-eventi", alt, used), inputRows, p.assignment, p.pesiPerMese, p.eventiPerMese);
+            }
+            if (pool.size() > 1) writePool(wb, List.of(new SectionOutput(null, inputRows, assignment, pesiPerMese, eventiPerMese, pool)));
+            if (!progress.isEmpty()) writeProgress(wb, progress);
+            if (trace.enabled()) writeTrace(wb, trace);
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            wb.write(bos);
+            return bos.toByteArray();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Patch del workbook caricato invece della ricostruzione: le parti del pacchetto non toccate (stili, altri fogli,
+     * larghezze, commenti) sono copiate byte per byte, in lista-festivi sono riscritte solo le colonne "squadra
+     * assegnata" e "note / errori" delle righe del piano (per numero di riga Excel), riepilogo-pesi e
+     * riepilogo-eventi (più alternative, andamento e trace come in buildOutput) sono aggiunti in coda o sostituiscono
+     * i fogli omonimi. Vale per un upload xlsx non a sezioni; le altre colonne, inclusa l'assegnazione forzata
+     * propagata ai blocchi MPB, restano quelle caricate.
+     */
+    public byte[] patchOutput(byte[] original,
+                              List<FestivoInputRow> inputRows,
+                              Map<String, Integer> assignment,
+                              long[][] pesiPerMese,
+                              int[][] eventiPerMese,
+                              SchedulingTrace trace,
+                              List<LnsSchedulerService.ObjectivePoint> progress,
+                              List<MilpSchedulerService.PoolSolution> pool) {
+        Map<Integer, String[]> values = new HashMap<>();
+        values.put(1, new String[]{"squadra assegnata", "note / errori"});
+        for (FestivoInputRow row : inputRows) {
+            Integer squad = assignment.get(row.date + "|" + row.turno);
+            values.put(row.excelRowNumber, new String[]{squad == null ? "" : String.valueOf(squad), row.errorMessage});
+        }
+        // fogli aggiunti in un workbook a parte, con stringhe inline: innestati senza toccare shared strings e stili
+        SXSSFWorkbook wb = new SXSSFWorkbook(null, SXSSFWorkbook.DEFAULT_WINDOW_SIZE, false, false);
+        try {
+            writeSummaries(wb, "riepilogo-pesi", "riepilogo-eventi", pesiPerMese, eventiPerMese);
+            Set<String> used = new HashSet<>();
+            for (MilpSchedulerService.PoolSolution p : pool) {
+                if (p.rank == 1) continue;
+                String alt = "alt" + p.rank;
+                writeSheets(wb, sheetName("lista-festivi", alt, used), sheetName("riepilogo-pesi", alt, used),
+                        sheetName("riepilogo-eventi", alt, used), inputRows, p.assignment, p.pesiPerMese, p.eventiPerMese);
+            }
+            if (pool.size() > 1) writePool(wb, List.of(new SectionOutput(null, inputRows, assignment, pesiPerMese, eventiPerMese, pool)));
+            if (!progress.isEmpty()) writeProgress(wb, progress);
+            if (trace.enabled()) writeTrace(wb, trace);
+            for (Sheet sh : wb) sh.setSelected(false); // resta selezionato solo il foglio attivo dell'upload
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            wb.write(bos);
+            return WorkbookPatcher.patch(original, ExcelParsingService.SHEET_LISTA, ExcelParsingService.COL_SQUADRA_ASSEGNATA, values, bos.toByteArray());
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        } finally {
+            wb.dispose();
+        }
+    }
+
+    /**
+     * Un workbook con i tre fogli per ogni sezione (lista-festivi-&lt;sezione&gt;, riepilogo-pesi-&lt;sezione&gt;,
+     * riepilogo-eventi-&lt;sezione&gt;), nell'ordine delle sezioni. I nomi oltre i 31 caratteri di Excel sono
+     * troncati e resi univoci.
+     */
+    public byte[] buildOutput(List<SectionOutput> sections) {
+        return buildOutput(sections, SchedulingTrace.OFF);
+    }
+
+    public byte[] buildOutput(List<SectionOutput> sections, SchedulingTrace trace) {
+        return buildOutput(sections, trace, List.of());
+    }
+
+    public byte[] buildOutput(List<SectionOutput> sections, SchedulingTrace trace, List<LnsSchedulerService.ObjectivePoint> progress) {
+        try (Workbook wb = new XSSFWorkbook()) {
+            Set<String> used = new HashSet<>();
+            for (SectionOutput so : sections) {
+                writeSheets(wb, sheetName("lista-festivi", so.name, used), sheetName("riepilogo-pesi", so.name, used),
+                        sheetName("riepilogo-eventi", so.name, used), so.rows, so.assignment, so.pesiPerMese, so.eventiPerMese);
+                for (MilpSchedulerService.PoolSolution p : so.pool) {
+                    if (p.rank == 1) continue;
+                    String alt = so.name + "-alt" + p.rank;
+                    writeSheets(wb, sheetName("lista-festivi", alt, used), sheetName("riepilogo-pesi", alt, used),
+                            sheetName("riepilogo-eventi", alt, used), so.rows, p.assignment, p.pesiPerMese, p.eventiPerMese);
+                }
+            }
+            if (sections.stream().anyMatch(so -> so.pool.size() > 1)) writePool(wb, sections);
+            if (!progress.isEmpty()) writeProgress(wb, progress);
+            if (trace.enabled()) writeTrace(wb, trace);
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            wb.write(bos);
+            return bos.toByteArray();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Calendario (generato) nel layout del template: lista-festivi con le colonne 1..7 e festivi-pesanti, da
+     * correggere e ricaricare come upload o come override (generate=true).
+     */
+    public byte[] buildCalendar(List<FestivoInputRow> rows, Set<String> pesanti) {
         try (Workbook wb = new XSSFWorkbook()) {
-            // Sheet 1: lista-festivi (preserva col1-col7, aggiungi col8 e col9)
             Sheet s = wb.createSheet("lista-festivi");
             Row header = s.createRow(0);
             header.createCell(0).setCellValue("");
@@ -27,56 +194,29 @@ public class ExcelOutputService {
             header.createCell(4).setCellValue("peso");
             header.createCell(5).setCellValue("assegnazione forzata");
             header.createCell(6).setCellValue("squadre escluse");
-            header.createCell(7).setCellValue("squadra assegnata");
-            header.createCell(8).setCellValue("note / errori");
-
             int r = 1;
-            for (FestivoInputRow row : inputRows) {
+            for (FestivoInputRow row : rows) {
                 Row rr = s.createRow(r++);
                 rr.createCell(0).setCellValue(row.note1 == null ? "" : row.note1);
                 rr.createCell(1).setCellValue(row.note2 == null ? "" : row.note2);
                 rr.createCell(2).setCellValue(row.date.toString());
                 rr.createCell(3).setCellValue(row.turno);
-                rr.createCell(4).setCellValue(row.peso);
+                rr.createCell(4).setCellValue(String.valueOf(row.peso)); // testo come nel template: il parser legge stringhe
                 rr.createCell(5).setCellValue(row.assegnazioneForzata.map(Object::toString).orElse(""));
                 rr.createCell(6).setCellValue(joinExcl(row.squadreEscluse));
-                Integer squad = assignment.get(row.date + "|" + row.turno);
-                rr.createCell(7).setCellValue(squad == null ? "" : String.valueOf(squad));
-                rr.createCell(8).setCellValue(row.errorMessage == null ? "" : row.errorMessage);
-            }
-
-            // Sheet 2: riepilogo-pesi
-            Sheet rp = wb.createSheet("riepilogo-pesi");
-            Row hp = rp.createRow(0);
-            hp.createCell(0).setCellValue("squadra");
-            int c = 1;
-            for (Month m : Month.values()) { hp.createCell(c++).setCellValue(shortMonth(m)); }
-            hp.createCell(c).setCellValue("Totale");
-            for (int squadra = 1; squadra <= 10; squadra++) {
-                long[] arr = pesiPerMese.getOrDefault(squadra, new long[12]);
-                Row row = rp.createRow(squadra);
-                row.createCell(0).setCellValue(squadra);
-                long tot = 0;
-                for (int i = 0; i < 12; i++) { row.createCell(i + 1).setCellValue(arr[i]); tot += arr[i]; }
-                row.createCell(13).setCellValue(tot);
             }
 
-            // Sheet 3: riepilogo-eventi
-            Sheet re = wb.createSheet("riepilogo-eventi");
-            Row he = re.createRow(0);
-            he.createCell(0).setCellValue("squadra");
-            c = 1;
-            for (Month m : Month.values()) { he.createCell(c++).setCellValue(shortMonth(m)); }
-            he.createCell(c).setCellValue("Totale");
-            for (int squadra = 1; squadra <= 10; squadra++) {
-                int[] arr = eventiPerMese.getOrDefault(squadra, new int[12]);
-                Row row = re.createRow(squadra);
-                row.createCell(0).setCellValue(squadra);
-                int tot = 0;
-                for (int i = 0; i < 12; i++) { row.createCell(i + 1).setCellValue(arr[i]); tot += arr[i]; }
-                row.createCell(13).setCellValue(tot);
+            Sheet heavy = wb.createSheet("festivi-pesanti");
+            Row hh = heavy.createRow(0);
+            hh.createCell(0).setCellValue("data");
+            hh.createCell(1).setCellValue("turno");
+            r = 1;
+            for (String key : new TreeSet<>(pesanti)) {
+                int sep = key.indexOf('|');
+                Row rr = heavy.createRow(r++);
+                rr.createCell(0).setCellValue(key.substring(0, sep));
+                rr.createCell(1).setCellValue(key.substring(sep + 1));
             }
-
             ByteArrayOutputStream bos = new ByteArrayOutputStream();
             wb.write(bos);
             return bos.toByteArray();
@@ -85,11 +225,167 @@ public class ExcelOutputService {
         }
     }
 
-    private static String joinExcl(Set<Integer> excl) {
+    // foglio alternative: una riga per soluzione del pool, rango 1 = fogli principali
+    private static void writePool(Workbook wb, List<SectionOutput> sections) {
+        Sheet s = wb.createSheet("alternative");
+        Row header = s.createRow(0);
+        header.createCell(0).setCellValue("sezione");
+        header.createCell(1).setCellValue("alternativa");
+        header.createCell(2).setCellValue("score");
+        header.createCell(3).setCellValue("spread pesi");
+        header.createCell(4).setCellValue("Emax");
+        header.createCell(5).setCellValue("distanza dalla 1");
+        int r = 1;
+        for (SectionOutput so : sections) {
+            for (MilpSchedulerService.PoolSolution p : so.pool) {
+                Row rr = s.createRow(r++);
+                rr.createCell(0).setCellValue(so.name == null ? "" : so.name);
+                rr.createCell(1).setCellValue(p.rank);
+                rr.createCell(2).setCellValue(p.score);
+                rr.createCell(3).setCellValue(p.spread);
+                rr.createCell(4).setCellValue(p.emax);
+                rr.createCell(5).setCellValue(p.distance);
+            }
+        }
+    }
+
+    // foglio andamento: un punto per la soluzione iniziale e uno per ogni miglioramento
+    private static void writeProgress(Workbook wb, List<LnsSchedulerService.ObjectivePoint> progress) {
+        Sheet s = wb.createSheet("andamento");
+        Row header = s.createRow(0);
+        header.createCell(0).setCellValue("ms");
+        header.createCell(1).setCellValue("sezione");
+        header.createCell(2).setCellValue("score");
+        header.createCell(3).setCellValue("spread pesi");
+        header.createCell(4).setCellValue("Emax");
+        header.createCell(5).setCellValue("origine");
+        int r = 1;
+        for (LnsSchedulerService.ObjectivePoint p : progress) {
+            Row rr = s.createRow(r++);
+            rr.createCell(0).setCellValue(p.millis);
+            rr.createCell(1).setCellValue(p.section == null ? "" : p.section);
+            rr.createCell(2).setCellValue(p.score);
+            rr.createCell(3).setCellValue(p.spread);
+            rr.createCell(4).setCellValue(p.emax);
+            rr.createCell(5).setCellValue(p.source);
+        }
+    }
+
+    // foglio trace: una riga per voce, in ordine di registrazione; le voci perse per capacità sono segnalate in testa
+    private static void writeTrace(Workbook wb, SchedulingTrace trace) {
+        Sheet s = wb.createSheet("trace");
+        Row header = s.createRow(0);
+        header.createCell(0).setCellValue("ms");
+        header.createCell(1).setCellValue("sezione");
+        header.createCell(2).setCellValue("tipo");
+        header.createCell(3).setCellValue("unità");
+        header.createCell(4).setCellValue("dettaglio");
+        int r = 1;
+        long dropped = trace.dropped();
+        if (dropped > 0) {
+            Row rr = s.createRow(r++);
+            rr.createCell(2).setCellValue("troncata");
+            rr.createCell(4).setCellValue(dropped + " voci più vecchie scartate (festivi.trace.capacity)");
+        }
+        for (SchedulingTrace.Entry e : trace.entries()) {
+            Row rr = s.createRow(r++);
+            rr.createCell(0).setCellValue(e.atMicros / 1000.0);
+            rr.createCell(1).setCellValue(e.section == null ? "" : e.section);
+            rr.createCell(2).setCellValue(e.kind);
+            rr.createCell(3).setCellValue(e.unit == null ? "" : e.unit);
+            rr.createCell(4).setCellValue(e.detail == null ? "" : e.detail);
+        }
+    }
+
+    private static String sheetName(String prefix, String section, Set<String> used) {
+        String base = WorkbookUtil.createSafeSheetName(prefix + "-" + section);
+        String name = base;
+        for (int i = 2; !used.add(name.toLowerCase(Locale.ROOT)); i++) {
+            String suffix = "~" + i;
+            name = base.substring(0, Math.min(base.length(), MAX_SHEET_NAME - suffix.length())) + suffix;
+        }
+        return name;
+    }
+
+    private static void writeSheets(Workbook wb, String listaName, String pesiName, String eventiName,
+                                    List<FestivoInputRow> inputRows,
+                                    Map<String, Integer> assignment,
+                                    long[][] pesiPerMese,
+                                    int[][] eventiPerMese) {
+        // Sheet 1: lista-festivi (preserva col1-col7, aggiungi col8 e col9)
+        Sheet s = wb.createSheet(listaName);
+        Row header = s.createRow(0);
+        header.createCell(0).setCellValue("");
+        header.createCell(1).setCellValue("");
+        header.createCell(2).setCellValue("data");
+        header.createCell(3).setCellValue("turno");
+        header.createCell(4).setCellValue("peso");
+        header.createCell(5).setCellValue("assegnazione forzata");
+        header.createCell(6).setCellValue("squadre escluse");
+        header.createCell(ExcelParsingService.COL_SQUADRA_ASSEGNATA).setCellValue("squadra assegnata");
+        header.createCell(ExcelParsingService.COL_SQUADRA_ASSEGNATA + 1).setCellValue("note / errori");
+
+        int r = 1;
+        for (FestivoInputRow row : inputRows) {
+            Row rr = s.createRow(r++);
+            rr.createCell(0).setCellValue(row.note1 == null ? "" : row.note1);
+            rr.createCell(1).setCellValue(row.note2 == null ? "" : row.note2);
+            rr.createCell(2).setCellValue(row.date.toString());
+            rr.createCell(3).setCellValue(row.turno);
+            rr.createCell(4).setCellValue(row.peso);
+            rr.createCell(5).setCellValue(row.assegnazioneForzata.map(Object::toString).orElse(""));
+            rr.createCell(6).setCellValue(joinExcl(row.squadreEscluse));
+            Integer squad = assignment.get(row.date + "|" + row.turno);
+            rr.createCell(ExcelParsingService.COL_SQUADRA_ASSEGNATA).setCellValue(squad == null ? "" : String.valueOf(squad));
+            rr.createCell(ExcelParsingService.COL_SQUADRA_ASSEGNATA + 1).setCellValue(row.errorMessage == null ? "" : row.errorMessage);
+        }
+        writeSummaries(wb, pesiName, eventiName, pesiPerMese, eventiPerMese);
+    }
+
+    private static void writeSummaries(Workbook wb, String pesiName, String eventiName,
+                                       long[][] pesiPerMese,
+                                       int[][] eventiPerMese) {
+        // Sheet 2: riepilogo-pesi
+        Sheet rp = wb.createSheet(pesiName);
+        Row hp = rp.createRow(0);
+        hp.createCell(0).setCellValue("squadra");
+        int c = 1;
+        for (Month m : Month.values()) { hp.createCell(c++).setCellValue(shortMonth(m)); }
+        hp.createCell(c).setCellValue("Totale");
+        // una riga per squadra: pesiPerMese/eventiPerMese hanno N+1 righe (0 inutilizzata)
+        for (int squadra = 1; squadra < pesiPerMese.length; squadra++) {
+            long[] arr = pesiPerMese[squadra];
+            Row row = rp.createRow(squadra);
+            row.createCell(0).setCellValue(squadra);
+            long tot = 0;
+            for (int i = 0; i < 12; i++) { row.createCell(i + 1).setCellValue(arr[i]); tot += arr[i]; }
+            row.createCell(13).setCellValue(tot);
+        }
+
+        // Sheet 3: riepilogo-eventi
+        Sheet re = wb.createSheet(eventiName);
+        Row he = re.createRow(0);
+        he.createCell(0).setCellValue("squadra");
+        c = 1;
+        for (Month m : Month.values()) { he.createCell(c++).setCellValue(shortMonth(m)); }
+        he.createCell(c).setCellValue("Totale");
+        for (int squadra = 1; squadra < eventiPerMese.length; squadra++) {
+            int[] arr = eventiPerMese[squadra];
+            Row row = re.createRow(squadra);
+            row.createCell(0).setCellValue(squadra);
+            int tot = 0;
+            for (int i = 0; i < 12; i++) { row.createCell(i + 1).setCellValue(arr[i]); tot += arr[i]; }
+            row.createCell(13).setCellValue(tot);
+        }
+    }
+
+    static String joinExcl(BitSet excl) {
         if (excl == null || excl.isEmpty()) return "";
         StringBuilder sb = new StringBuilder();
-        boolean first = true;
-        for (Integer i : excl) { if (!first) sb.append(";"); sb.append(i); first = false; }
+        for (int i = excl.nextSetBit(0); i >= 0; i = excl.nextSetBit(i + 1)) {
+            if (sb.length() > 0) sb.append(";");
+            sb.append(i);
+        }
         return sb.toString();
     }
 
@@ -4,18 +4,34 @@ import com.example.crocerosacelestefestivinewbackend.api.ValidationException;
 import com.example.crocerosacelestefestivinewbackend.service.dto.FestivoInputRow;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.InputStream;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
 import java.util.*;
 
 @Service
 public class ExcelParsingService {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(ExcelParsingService.class);
 
-    private static final DateTimeFormatter STRICT_FMT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    static final String SHEET_LISTA = "lista-festivi";
+    static final String SHEET_PESANTI = "festivi-pesanti";
+    static final String SHEET_SEZIONI = "sezioni";
+    static final String COL_SEZIONE = "sezione";
+    // lista-festivi: le colonne 0-6 sono il piano (data, turno, ..., squadre escluse); la colonna dopo è "sezione"
+    // negli upload a sezioni su un solo foglio, "squadra assegnata" (seguita da "note / errori") nell'output
+    static final int LISTA_COLUMNS = 7;
+    static final int COL_SEZIONE_INDEX = LISTA_COLUMNS;
+    static final int COL_SQUADRA_ASSEGNATA = LISTA_COLUMNS;
+    static final int MAX_SECTIONS = 50;
+
+    private final int maxViolations;
+
+    /** maxViolations: oltre questo numero di violazioni per foglio il parsing si ferma (Violations). */
+    public ExcelParsingService(@Value("${festivi.validation.max-violations:200}") int maxViolations) {
+        this.maxViolations = maxViolations;
+    }
 
     public static class ParseResult {
         public final List<FestivoInputRow> rows;
@@ -26,213 +42,162 @@ public class ExcelParsingService {
         }
     }
 
+    /** Sezione indipendente dell'upload, con le proprie squadre. name == null: upload senza sezioni. */
+    public static class Section {
+        public final String name;
+        public final TeamConfig teams;
+        public final ParseResult parsed;
+        public Section(String name, TeamConfig teams, ParseResult parsed) {
+            this.name = name;
+            this.teams = teams;
+            this.parsed = parsed;
+        }
+    }
+
     public ParseResult parse(InputStream inputStream, LocalDate startDate, LocalDate endDate) {
-        List<Map<String, Object>> violations = new ArrayList<>();
-        List<FestivoInputRow> rows = new ArrayList<>();
-        Set<String> duoKey = new HashSet<>();
+        return parse(inputStream, startDate, endDate, TeamConfig.DEFAULT);
+    }
+
+    /** teams: squadre e rotazione della richiesta (range di forzate ed esclusioni, regola del 31). */
+    public ParseResult parse(InputStream inputStream, LocalDate startDate, LocalDate endDate, TeamConfig teams) {
+        FestiviInputCollector collector = new FestiviInputCollector(startDate, endDate, teams, maxViolations);
+        List<Map<String, Object>> violations = collector.violations;
 
         try (Workbook wb = new XSSFWorkbook(inputStream)) {
-            org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(ExcelParsingService.class);
             log.info("[PARSE] Start parsing Excel. period=[{}..{}]", startDate, endDate);
-            // Sheet 1: lista-festivi
-            Sheet s = wb.getSheet("lista-festivi");
-            if (s == null) {
-                ValidationUtil.addV(violations, 1, "__sheet__", "Foglio 'lista-festivi' mancante");
-                throw new ValidationException(violations);
-            }
-            Row header = s.getRow(0);
-            if (header == null) {
-                ValidationUtil.addV(violations, 1, "__header__", "Header mancante in riga 1");
-                throw new ValidationException(violations);
-            }
-            // Expect columns: col1/2 notes, col3=data, col4=turno, col5=peso, col6=assegnazione forzata, col7=squadre escluse
-            if (!"data".equals(getStringCell(header, 2)) ||
-                !"turno".equals(getStringCell(header, 3)) ||
-                !"peso".equals(getStringCell(header, 4)) ||
-                !"assegnazione forzata".equals(getStringCell(header, 5)) ||
-                !"squadre escluse".equals(getStringCell(header, 6))) {
-                ValidationUtil.addV(violations, 1, "__header__", "Header non valido (atteso: data, turno, peso, assegnazione forzata, squadre escluse in col 3..7)");
-                throw new ValidationException(violations);
-            }
-
-            // Collect to map by date for further checks
-            Map<String, FestivoInputRow> byKey = new HashMap<>();
-            Map<LocalDate, Set<String>> byDateTurni = new HashMap<>();
-
-            for (int r = 1; r <= s.getLastRowNum(); r++) {
-                Row row = s.getRow(r);
-                if (row == null) {
-                    ValidationUtil.addV(violations, r + 1, "__row__", "Riga vuota");
-                    continue;
-                }
-                String note1 = getTrimmed(row, 0);
-                String note2 = getTrimmed(row, 1);
-                String dataStr = getTrimmed(row, 2);
-                String turno = getTrimmed(row, 3);
-                String pesoStr = getTrimmed(row, 4);
-                String forzataStr = getTrimmed(row, 5);
-                String escluseStr = getTrimmed(row, 6);
-
-                if (isAllEmpty(note1, note2, dataStr, turno, pesoStr, forzataStr, escluseStr)) {
-                    ValidationUtil.addV(violations, r + 1, "__row__", "Riga vuota");
-                    continue;
-                }
-
-                // data
-                LocalDate date = null;
-                try {
-                    date = LocalDate.parse(dataStr, STRICT_FMT);
-                } catch (DateTimeParseException e) {
-                    ValidationUtil.addV(violations, r + 1, "data", "Formato data non valido, atteso YYYY-MM-DD");
-                }
-                if (date != null) {
-                    if (date.isBefore(startDate) || date.isAfter(endDate)) {
-                        ValidationUtil.addV(violations, r + 1, "data", "Data fuori dal periodo specificato");
-                    }
-                }
+            return parseSingle(wb, collector);
+        } catch (ValidationException ve) {
+            throw ve;
+        } catch (Exception e) {
+            ValidationUtil.addV(violations, 0, "__global__", e.getMessage());
+            throw new ValidationException(violations);
+        }
+    }
 
-                // turno
-                if (!("MP".equals(turno) || "SN".equals(turno))) {
-                    ValidationUtil.addV(violations, r + 1, "turno", "Valore non valido (atteso MP o SN, maiuscolo)");
-                }
+    /** Righe che correggono un calendario generato: vedi CalendarGenerator (peso 0 rimuove la riga generata). */
+    public ParseResult parseOverrides(InputStream inputStream, LocalDate startDate, LocalDate endDate, TeamConfig teams) {
+        FestiviInputCollector collector = new FestiviInputCollector(startDate, endDate, teams, true, maxViolations);
+        try (Workbook wb = new XSSFWorkbook(inputStream)) {
+            log.info("[PARSE] Start parsing Excel overrides. period=[{}..{}]", startDate, endDate);
+            return parseSingle(wb, collector);
+        } catch (ValidationException ve) {
+            throw ve;
+        } catch (Exception e) {
+            ValidationUtil.addV(collector.violations, 0, "__global__", e.getMessage());
+            throw new ValidationException(collector.violations);
+        }
+    }
 
-                // peso
-                Integer peso = null;
+    /**
+     * Upload con più sezioni indipendenti, in uno dei due layout:
+     * <ul>
+     *   <li>un foglio per sezione: lista-festivi-&lt;sezione&gt; con festivi-pesanti-&lt;sezione&gt; opzionale;</li>
+     *   <li>colonna "sezione" (col 8) in lista-festivi; in festivi-pesanti la col 3 "sezione" è opzionale e se vuota
+     *   il festivo è pesante in tutte le sezioni.</li>
+     * </ul>
+     * Il foglio opzionale "sezioni" (sezione, squadre, rotazione) assegna a ogni sezione le proprie squadre, altrimenti
+     * vale la configurazione della richiesta. Senza sezioni restituisce una sola Section con name == null.
+     * Le violazioni di tutte le sezioni sono riportate insieme, con il nome della sezione.
+     */
+    public List<Section> parseSections(InputStream inputStream, LocalDate startDate, LocalDate endDate, TeamConfig teams) {
+        Violations violations = new Violations(maxViolations);
+        try (Workbook wb = new XSSFWorkbook(inputStream)) {
+            log.info("[PARSE] Start parsing Excel. period=[{}..{}]", startDate, endDate);
+            List<String> perSheet = new ArrayList<>();
+            for (Sheet sh : wb) {
+                String n = sh.getSheetName();
+                if (n.startsWith(SHEET_LISTA + "-") && n.length() > SHEET_LISTA.length() + 1) perSheet.add(n.substring(SHEET_LISTA.length() + 1));
+            }
+            Sheet lista = wb.getSheet(SHEET_LISTA);
+            boolean byColumn = perSheet.isEmpty() && lista != null && lista.getRow(0) != null
+                    && COL_SEZIONE.equals(getStringCell(lista.getRow(0), COL_SEZIONE_INDEX));
+            if (perSheet.isEmpty() && !byColumn) {
+                FestiviInputCollector collector = new FestiviInputCollector(startDate, endDate, teams, maxViolations);
                 try {
-                    peso = Integer.valueOf(pesoStr);
-                    if (peso <= 0) {
-                        ValidationUtil.addV(violations, r + 1, "peso", "Deve essere un intero > 0");
-                    }
+                    return List.of(new Section(null, teams, parseSingle(wb, collector)));
+                } catch (ValidationException ve) {
+                    throw ve;
                 } catch (Exception e) {
-                    ValidationUtil.addV(violations, r + 1, "peso", "Campo obbligatorio, intero > 0");
+                    ValidationUtil.addV(collector.violations, 0, "__global__", e.getMessage());
+                    throw new ValidationException(collector.violations);
                 }
+            }
 
-                // assegnazione forzata
-                Optional<Integer> forzata = Optional.empty();
-                if (forzataStr != null && !forzataStr.isEmpty()) {
+            // sezioni nell'ordine dei fogli o di prima comparsa nella colonna
+            Set<String> names = new LinkedHashSet<>(perSheet);
+            if (byColumn) {
+                for (int r = 1; r <= lista.getLastRowNum(); r++) {
+                    Row row = lista.getRow(r);
+                    String name = row == null ? "" : getTrimmed(row, COL_SEZIONE_INDEX);
+                    if (!name.isEmpty()) names.add(name);
+                }
+            }
+            if (names.size() > MAX_SECTIONS) {
+                ValidationUtil.addV(violations, 0, COL_SEZIONE, "Troppe sezioni: " + names.size() + " (max " + MAX_SECTIONS + ")");
+                throw new ValidationException(violations);
+            }
+            Map<String, TeamConfig> sectionTeams = readSectionTeams(wb, teams, startDate, violations);
+            Map<String, FestiviInputCollector> collectors = new LinkedHashMap<>();
+            for (String name : names) {
+                collectors.put(name, new FestiviInputCollector(startDate, endDate, sectionTeams.getOrDefault(name, teams), maxViolations));
+            }
+            if (!perSheet.isEmpty()) {
+                for (String name : perSheet) {
+                    FestiviInputCollector c = collectors.get(name);
                     try {
-                        int f = Integer.parseInt(forzataStr.trim());
-                        if (f < 1 || f > 10) {
-                            ValidationUtil.addV(violations, r + 1, "assegnazione forzata", "Valore fuori range 1..10");
-                        } else {
-                            forzata = Optional.of(f);
-                        }
-                    } catch (NumberFormatException nfe) {
-                        ValidationUtil.addV(violations, r + 1, "assegnazione forzata", "Deve essere un intero 1..10");
+                        parseLista(wb.getSheet(SHEET_LISTA + "-" + name), c);
+                    } catch (ValidationException ve) {
+                        // header mancante o non valido: la sezione non viene letta
+                        violations.addAll(tagSection(ve.getViolations(), name));
+                        collectors.remove(name);
+                        continue;
                     }
+                    Sheet heavy = wb.getSheet(SHEET_PESANTI + "-" + name);
+                    if (heavy != null) parsePesanti(heavy, collectors, c, violations);
                 }
-
-                // squadre escluse: punto e virgola come separatore, spazi tollerati
-                Set<Integer> escluse = new LinkedHashSet<>();
-                if (escluseStr != null && !escluseStr.isEmpty()) {
-                    String[] parts = escluseStr.split(";");
-                    for (String p : parts) {
-                        String t = p.trim();
-                        if (t.isEmpty()) continue;
-                        try {
-                            int n = Integer.parseInt(t);
-                            if (n < 1 || n > 10) {
-                                ValidationUtil.addV(violations, r + 1, "squadre escluse", "Valore fuori range 1..10: " + t);
-                            } else {
-                                escluse.add(n);
-                            }
-                        } catch (NumberFormatException nfe) {
-                            ValidationUtil.addV(violations, r + 1, "squadre escluse", "Valore non numerico: " + t);
-                        }
-                    }
-                    if (escluse.size() == 10) {
-                        ValidationUtil.addV(violations, r + 1, "squadre escluse", "Tutte le 10 squadre escluse non è ammesso");
-                    }
+            } else {
+                Row header = lista.getRow(0);
+                if (!FestiviInputCollector.isListaHeader(getStringCell(header, 2), getStringCell(header, 3),
+                        getStringCell(header, 4), getStringCell(header, 5), getStringCell(header, 6))) {
+                    ValidationUtil.addV(violations, 1, "__header__", "Header non valido (atteso: data, turno, peso, assegnazione forzata, squadre escluse in col 3..7)");
+                    throw new ValidationException(violations);
                 }
-
-                // duplicati data+turno
-                if (date != null && ("MP".equals(turno) || "SN".equals(turno))) {
-                    String key = date + "|" + turno;
-                    if (!duoKey.add(key)) {
-                        ValidationUtil.addV(violations, r + 1, "__row__", "Duplicato data+turno");
+                for (int r = 1; r <= lista.getLastRowNum() && !violations.isFull(); r++) {
+                    Row row = lista.getRow(r);
+                    String name = row == null ? "" : getTrimmed(row, COL_SEZIONE_INDEX);
+                    if (row == null || FestiviInputCollector.isAllEmpty(getTrimmed(row, 0), getTrimmed(row, 1), getTrimmed(row, 2),
+                            getTrimmed(row, 3), getTrimmed(row, 4), getTrimmed(row, 5), getTrimmed(row, 6), name)) {
+                        ValidationUtil.addV(violations, r + 1, "__row__", "Riga vuota");
+                        continue;
                     }
-                }
-
-                // assemble if fields valid enough
-                if (date != null && ("MP".equals(turno) || "SN".equals(turno)) && peso != null) {
-                    FestivoInputRow ir = new FestivoInputRow();
-                    ir.excelRowNumber = r + 1;
-                    ir.note1 = note1;
-                    ir.note2 = note2;
-                    ir.date = date;
-                    ir.turno = turno;
-                    ir.peso = peso;
-                    ir.assegnazioneForzata = forzata;
-                    ir.squadreEscluse = escluse;
-                    rows.add(ir);
-                    if (rows.size() % 100 == 0) log.debug("[PARSE] rows parsed={}", rows.size());
-                    byKey.put(date + "|" + turno, ir);
-                    byDateTurni.computeIfAbsent(date, k -> new HashSet<>()).add(turno);
-                    if (forzata.isPresent() && escluse.contains(forzata.get())) {
-                        ValidationUtil.addV(violations, r + 1, "assegnazione forzata", "Conflitto: squadra forzata presente tra le escluse");
+                    if (name.isEmpty()) {
+                        ValidationUtil.addV(violations, r + 1, COL_SEZIONE, "Campo obbligatorio quando è presente la colonna sezione");
+                        continue;
                     }
+                    collectors.get(name).addListaRow(r + 1, getTrimmed(row, 0), getTrimmed(row, 1), getTrimmed(row, 2), getTrimmed(row, 3),
+                            getTrimmed(row, 4), getTrimmed(row, 5), getTrimmed(row, 6));
                 }
+                Sheet heavy = wb.getSheet(SHEET_PESANTI);
+                if (heavy != null) parsePesanti(heavy, collectors, null, violations);
             }
-
-            // Sheet 2: festivi-pesanti (opzionale)
-            Set<String> pesanti = new HashSet<>();
-            Sheet heavy = wb.getSheet("festivi-pesanti");
-            if (heavy != null) {
-                Row h = heavy.getRow(0);
-                if (h == null || !"data".equals(getStringCell(h, 0)) || !"turno".equals(getStringCell(h, 1))) {
-                    ValidationUtil.addV(violations, 1, "__header__", "Header festivi-pesanti non valido (atteso: data, turno)");
-                } else {
-                    for (int r = 1; r <= heavy.getLastRowNum(); r++) {
-                        Row row = heavy.getRow(r);
-                        if (row == null) continue;
-                        String dataStr = getTrimmed(row, 0);
-                        String turno = getTrimmed(row, 1);
-                        try {
-                            LocalDate d = LocalDate.parse(dataStr, STRICT_FMT);
-                            if (d.isBefore(startDate) || d.isAfter(endDate)) {
-                                ValidationUtil.addV(violations, r + 1, "data", "Data fuori periodo");
-                            }
-                            if (!"MP".equals(turno) && !"SN".equals(turno)) {
-                                ValidationUtil.addV(violations, r + 1, "turno", "Valore non valido (MP|SN)");
-                            } else {
-                                pesanti.add(d + "|" + turno);
-                            }
-                        } catch (Exception e) {
-                            ValidationUtil.addV(violations, r + 1, "data", "Formato data non valido in festivi-pesanti");
-                        }
-                    }
-                    log.debug("[PARSE] heavy marked count={}", pesanti.size());
+            for (String name : sectionTeams.keySet()) {
+                if (!collectors.containsKey(name)) {
+                    ValidationUtil.addV(violations, 0, SHEET_SEZIONI, "Sezione '" + name + "' senza festivi");
                 }
             }
 
-            // Validazione blocco sabato/domenica MP: se una delle due righe manca (ed entrambe le date sono nel periodo) → errore
-            LocalDate cursor = startDate;
-            while (!cursor.isAfter(endDate)) {
-                if (cursor.getDayOfWeek() == java.time.DayOfWeek.SATURDAY) {
-                    LocalDate sunday = cursor.plusDays(1);
-                    if (!sunday.isAfter(endDate)) { // domenica nel periodo
-                        boolean hasSatMP = byKey.containsKey(cursor + "|MP");
-                        boolean hasSunMP = byKey.containsKey(sunday + "|MP");
-                        if (hasSatMP ^ hasSunMP) {
-                            FestivoInputRow presentRow = hasSatMP ? byKey.get(cursor + "|MP") : byKey.get(sunday + "|MP");
-                            LocalDate missingDate = hasSatMP ? sunday : cursor;
-                            String msg = "Coppia sab-dom MP incompleta: presente MP per " + presentRow.date + ", manca MP per " + missingDate;
-                            ValidationUtil.addV(violations, presentRow != null ? presentRow.excelRowNumber : 1, "turno", msg);
-                        }
-                    }
+            List<Section> sections = new ArrayList<>();
+            for (Map.Entry<String, FestiviInputCollector> e : collectors.entrySet()) {
+                try {
+                    ParseResult parsed = e.getValue().finish();
+                    sections.add(new Section(e.getKey(), sectionTeams.getOrDefault(e.getKey(), teams), parsed));
+                } catch (ValidationException ve) {
+                    violations.addAll(tagSection(ve.getViolations(), e.getKey()));
                 }
-                cursor = cursor.plusDays(1);
-            }
-
-            // Validazione 31 per mesi con 31 nel periodo
-            validate31(rows, startDate, endDate, violations);
-
-            if (!violations.isEmpty()) {
-                log.warn("[PARSE] Validation violations found: {}", violations.size());
-                throw new ValidationException(violations);
             }
-            log.info("[PARSE] Completed. rows={}, heavy={}", rows.size(), pesanti.size());
-            return new ParseResult(rows, pesanti);
+            if (!violations.isEmpty()) throw new ValidationException(violations);
+            log.info("[PARSE] Sections={} layout={}", sections.size(), byColumn ? "column" : "sheets");
+            return sections;
         } catch (ValidationException ve) {
             throw ve;
         } catch (Exception e) {
@@ -241,41 +206,121 @@ public class ExcelParsingService {
         }
     }
 
-    private static void validate31(List<FestivoInputRow> rows, LocalDate start, LocalDate end, List<Map<String, Object>> v) {
-        Map<String, Set<String>> byDate = new HashMap<>();
-        for (FestivoInputRow r : rows) {
-            if (r.date.getDayOfMonth() == 31) {
-                byDate.computeIfAbsent(r.date.toString(), k -> new HashSet<>()).add(r.turno);
+    /** Aggiunge il nome della sezione a ogni violazione (le righe si riferiscono al foglio della sezione). */
+    public static List<Map<String, Object>> tagSection(List<Map<String, Object>> violations, String section) {
+        List<Map<String, Object>> out = new ArrayList<>(violations.size());
+        for (Map<String, Object> v : violations) {
+            Map<String, Object> m = new HashMap<>(v);
+            m.put(COL_SEZIONE, section);
+            out.add(m);
+        }
+        return out;
+    }
+
+    private static Map<String, TeamConfig> readSectionTeams(Workbook wb, TeamConfig teams, LocalDate startDate,
+                                                            List<Map<String, Object>> violations) {
+        Map<String, TeamConfig> out = new LinkedHashMap<>();
+        Sheet s = wb.getSheet(SHEET_SEZIONI);
+        if (s == null) return out;
+        Row h = s.getRow(0);
+        if (h == null || !COL_SEZIONE.equals(getStringCell(h, 0)) || !"squadre".equals(getStringCell(h, 1))) {
+            ValidationUtil.addV(violations, 1, "__header__", "Header sezioni non valido (atteso: sezione, squadre, rotazione opzionale)");
+            return out;
+        }
+        for (int r = 1; r <= s.getLastRowNum(); r++) {
+            Row row = s.getRow(r);
+            if (row == null) continue;
+            String name = getTrimmed(row, 0);
+            if (name.isEmpty()) continue;
+            try {
+                Integer n = getTrimmed(row, 1).isEmpty() ? null : Integer.valueOf(getTrimmed(row, 1));
+                String rotation = getTrimmed(row, 2);
+                out.put(name, TeamConfig.of(n, rotation.isEmpty() ? teams.rotation().name() : rotation,
+                        teams.rotationStart(), startDate));
+            } catch (NumberFormatException e) {
+                ValidationUtil.addV(violations, r + 1, "squadre", "Deve essere un intero");
+            } catch (ValidationException ve) {
+                for (Map<String, Object> v : ve.getViolations()) {
+                    ValidationUtil.addV(violations, r + 1, String.valueOf(v.get("field")), String.valueOf(v.get("message")));
+                }
             }
         }
-        LocalDate cur = start.withDayOfMonth(1);
-        while (!cur.isAfter(end)) {
-            int length = cur.lengthOfMonth();
-            if (length == 31) {
-                LocalDate d31 = cur.withDayOfMonth(31);
-                if (!d31.isBefore(start) && !d31.isAfter(end)) {
-                    Set<String> set = byDate.getOrDefault(d31.toString(), Collections.emptySet());
-                    // SN must be present
-                    if (!set.contains("SN")) {
-                        ValidationUtil.addV(v, 1, "data", "Il 31 del mese " + d31.getMonth() + " deve contenere SN");
-                    }
-                    // MP allowed only if 31 is Saturday or Sunday; otherwise MP is invalid
-                    if (set.contains("MP")) {
-                        java.time.DayOfWeek dow = d31.getDayOfWeek();
-                        boolean weekend = dow == java.time.DayOfWeek.SATURDAY || dow == java.time.DayOfWeek.SUNDAY;
-                        if (!weekend) {
-                            ValidationUtil.addV(v, 1, "turno", "Il 31 infrasettimanale non può avere MP");
-                        }
-                    }
+        return out;
+    }
+
+    private static ParseResult parseSingle(Workbook wb, FestiviInputCollector collector) {
+        // Sheet 1: lista-festivi
+        Sheet s = wb.getSheet(SHEET_LISTA);
+        if (s == null) {
+            ValidationUtil.addV(collector.violations, 1, "__sheet__", "Foglio 'lista-festivi' mancante");
+            throw new ValidationException(collector.violations);
+        }
+        parseLista(s, collector);
+
+        // Sheet 2: festivi-pesanti (opzionale)
+        Sheet heavy = wb.getSheet(SHEET_PESANTI);
+        if (heavy != null) {
+            Row h = heavy.getRow(0);
+            if (h == null || !FestiviInputCollector.isPesantiHeader(getStringCell(h, 0), getStringCell(h, 1))) {
+                collector.pesantiHeaderInvalid();
+            } else {
+                for (int r = 1; r <= heavy.getLastRowNum(); r++) {
+                    Row row = heavy.getRow(r);
+                    if (row == null) continue;
+                    collector.addPesanteRow(r + 1, getTrimmed(row, 0), getTrimmed(row, 1));
                 }
+                log.debug("[PARSE] heavy marked count={}", collector.pesantiCount());
             }
-            cur = cur.plusMonths(1);
         }
+
+        return collector.finish();
     }
 
-    private static boolean isAllEmpty(String... s) {
-        for (String x : s) if (x != null && !x.isEmpty()) return false;
-        return true;
+    private static void parseLista(Sheet s, FestiviInputCollector collector) {
+        Row header = s.getRow(0);
+        if (header == null) collector.headerMissing();
+        if (!FestiviInputCollector.isListaHeader(getStringCell(header, 2), getStringCell(header, 3),
+                getStringCell(header, 4), getStringCell(header, 5), getStringCell(header, 6))) {
+            collector.headerInvalid();
+        }
+
+        for (int r = 1; r <= s.getLastRowNum() && !collector.isFull(); r++) {
+            Row row = s.getRow(r);
+            if (row == null) {
+                collector.emptyRow(r + 1);
+                continue;
+            }
+            collector.addListaRow(r + 1,
+                    getTrimmed(row, 0), getTrimmed(row, 1), getTrimmed(row, 2), getTrimmed(row, 3),
+                    getTrimmed(row, 4), getTrimmed(row, 5), getTrimmed(row, 6));
+        }
+    }
+
+    /**
+     * festivi-pesanti di un upload a sezioni. only != null: foglio di una sola sezione; altrimenti la col 3
+     * "sezione" sceglie la sezione e se vuota il festivo vale per tutte.
+     */
+    private static void parsePesanti(Sheet heavy, Map<String, FestiviInputCollector> collectors, FestiviInputCollector only,
+                                     List<Map<String, Object>> violations) {
+        Row h = heavy.getRow(0);
+        if (h == null || !FestiviInputCollector.isPesantiHeader(getStringCell(h, 0), getStringCell(h, 1))) {
+            ValidationUtil.addV(violations, 1, "__header__", "Header " + heavy.getSheetName() + " non valido (atteso: data, turno)");
+            return;
+        }
+        for (int r = 1; r <= heavy.getLastRowNum(); r++) {
+            Row row = heavy.getRow(r);
+            if (row == null) continue;
+            String name = only != null ? "" : getTrimmed(row, 2);
+            if (only != null) {
+                only.addPesanteRow(r + 1, getTrimmed(row, 0), getTrimmed(row, 1));
+            } else if (name.isEmpty()) {
+                for (FestiviInputCollector c : collectors.values()) c.addPesanteRow(r + 1, getTrimmed(row, 0), getTrimmed(row, 1));
+            } else if (collectors.containsKey(name)) {
+                collectors.get(name).addPesanteRow(r + 1, getTrimmed(row, 0), getTrimmed(row, 1));
+            } else {
+                ValidationUtil.addV(violations, r + 1, COL_SEZIONE, "Sezione sconosciuta in festivi-pesanti: " + name);
+            }
+        }
     }
 
     private static String getTrimmed(Row r, int c) {
@@ -293,5 +338,3 @@ public class ExcelParsingService {
         return cell.getStringCellValue();
     }
 }
-
-
@@ -0,0 +1,234 @@
+package com.example.crocerosacelestefestivinewbackend.service;
+
+import com.example.crocerosacelestefestivinewbackend.api.ValidationException;
+import com.example.crocerosacelestefestivinewbackend.service.ExcelParsingService.ParseResult;
+import com.example.crocerosacelestefestivinewbackend.service.dto.FestivoInputRow;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+
+/**
+ * Validazione riga per riga del layout lista-festivi / festivi-pesanti, indipendente dal formato
+ * di origine (xlsx o csv). Accumula le violazioni e costruisce il ParseResult finale.
+ */
+class FestiviInputCollector {
+    private static final Logger log = LoggerFactory.getLogger(FestiviInputCollector.class);
+    private static final DateTimeFormatter STRICT_FMT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    final Violations violations;
+    private final LocalDate startDate;
+    private final LocalDate endDate;
+    private final int teams;
+    private final boolean overrides;
+    private final TeamConfig teamConfig;
+    private final List<FestivoInputRow> rows = new ArrayList<>();
+    private final RuleValidator.DayTable table;
+    private final Set<String> pesanti = new HashSet<>();
+
+    FestiviInputCollector(LocalDate startDate, LocalDate endDate, TeamConfig teamConfig) {
+        this(startDate, endDate, teamConfig, false, Violations.DEFAULT_MAX);
+    }
+
+    FestiviInputCollector(LocalDate startDate, LocalDate endDate, TeamConfig teamConfig, int maxViolations) {
+        this(startDate, endDate, teamConfig, false, maxViolations);
+    }
+
+    /**
+     * overrides: righe che correggono un calendario generato (CalendarGenerator). peso 0 è ammesso (rimuove la riga
+     * generata) e i controlli trasversali (RuleValidator) sono rimandati al calendario risultante.
+     * maxViolations: oltre questo numero di violazioni il parsing si ferma (Violations).
+     */
+    FestiviInputCollector(LocalDate startDate, LocalDate endDate, TeamConfig teamConfig, boolean overrides, int maxViolations) {
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.teams = teamConfig.teams();
+        this.teamConfig = teamConfig;
+        this.overrides = overrides;
+        this.violations = new Violations(maxViolations);
+        this.table = new RuleValidator.DayTable(startDate, endDate);
+    }
+
+    /** Limite di violazioni raggiunto: il chiamante può smettere di leggere righe. */
+    boolean isFull() {
+        return violations.isFull();
+    }
+
+    // Expect columns: col1/2 notes, col3=data, col4=turno, col5=peso, col6=assegnazione forzata, col7=squadre escluse
+    static boolean isListaHeader(String data, String turno, String peso, String forzata, String escluse) {
+        return "data".equals(data) && "turno".equals(turno) && "peso".equals(peso)
+                && "assegnazione forzata".equals(forzata) && "squadre escluse".equals(escluse);
+    }
+
+    static boolean isPesantiHeader(String data, String turno) {
+        return "data".equals(data) && "turno".equals(turno);
+    }
+
+    void headerMissing() {
+        ValidationUtil.addV(violations, 1, "__header__", "Header mancante in riga 1");
+        throw new ValidationException(violations);
+    }
+
+    void headerInvalid() {
+        ValidationUtil.addV(violations, 1, "__header__", "Header non valido (atteso: data, turno, peso, assegnazione forzata, squadre escluse in col 3..7)");
+        throw new ValidationException(violations);
+    }
+
+    void pesantiHeaderInvalid() {
+        ValidationUtil.addV(violations, 1, "__header__", "Header festivi-pesanti non valido (atteso: data, turno)");
+    }
+
+    void emptyRow(int rowNumber) {
+        ValidationUtil.addV(violations, rowNumber, "__row__", "Riga vuota");
+    }
+
+    static boolean isAllEmpty(String... s) {
+        for (String x : s) if (x != null && !x.isEmpty()) return false;
+        return true;
+    }
+
+    void addListaRow(int rowNumber, String note1, String note2, String dataStr, String turno,
+                     String pesoStr, String forzataStr, String escluseStr) {
+        if (violations.isFull()) return;
+        if (isAllEmpty(note1, note2, dataStr, turno, pesoStr, forzataStr, escluseStr)) {
+            emptyRow(rowNumber);
+            return;
+        }
+
+        // data
+        LocalDate date = null;
+        try {
+            date = LocalDate.parse(dataStr, STRICT_FMT);
+        } catch (DateTimeParseException e) {
+            ValidationUtil.addV(violations, rowNumber, "data", "Formato data non valido, atteso YYYY-MM-DD");
+        }
+        if (date != null) {
+            if (date.isBefore(startDate) || date.isAfter(endDate)) {
+                ValidationUtil.addV(violations, rowNumber, "data", "Data fuori dal periodo specificato");
+            }
+        }
+
+        // turno
+        if (!("MP".equals(turno) || "SN".equals(turno))) {
+            ValidationUtil.addV(violations, rowNumber, "turno", "Valore non valido (atteso MP o SN, maiuscolo)");
+        }
+
+        // peso
+        Integer peso = null;
+        try {
+            peso = Integer.valueOf(pesoStr);
+            if (peso < 0 || (peso == 0 && !overrides)) {
+                ValidationUtil.addV(violations, rowNumber, "peso", overrides ? "Deve essere un intero >= 0 (0 rimuove la riga generata)" : "Deve essere un intero > 0");
+            }
+        } catch (Exception e) {
+            ValidationUtil.addV(violations, rowNumber, "peso", "Campo obbligatorio, intero > 0");
+        }
+
+        // assegnazione forzata
+        Optional<Integer> forzata = Optional.empty();
+        if (forzataStr != null && !forzataStr.isEmpty()) {
+            try {
+                int f = Integer.parseInt(forzataStr.trim());
+                if (f < 1 || f > teams) {
+                    ValidationUtil.addV(violations, rowNumber, "assegnazione forzata", "Valore fuori range 1.." + teams);
+                } else {
+                    forzata = Optional.of(f);
+                }
+            } catch (NumberFormatException nfe) {
+                ValidationUtil.addV(violations, rowNumber, "assegnazione forzata", "Deve essere un intero 1.." + teams);
+            }
+        }
+
+        // squadre escluse: punto e virgola come separatore, spazi tollerati
+        BitSet escluse = new BitSet(teams + 1);
+        if (escluseStr != null && !escluseStr.isEmpty()) {
+            String[] parts = escluseStr.split(";");
+            for (String p : parts) {
+                String t = p.trim();
+                if (t.isEmpty()) continue;
+                try {
+                    int n = Integer.parseInt(t);
+                    if (n < 1 || n > teams) {
+                        ValidationUtil.addV(violations, rowNumber, "squadre escluse", "Valore fuori range 1.." + teams + ": " + t);
+                    } else {
+                        escluse.set(n);
+                    }
+                } catch (NumberFormatException nfe) {
+                    ValidationUtil.addV(violations, rowNumber, "squadre escluse", "Valore non numerico: " + t);
+                }
+            }
+            if (escluse.cardinality() == teams) {
+                ValidationUtil.addV(violations, rowNumber, "squadre escluse", "Tutte le " + teams + " squadre escluse non è ammesso");
+            }
+        }
+
+        // duplicati data+turno (le date fuori periodo sono già segnalate)
+        if (date != null && ("MP".equals(turno) || "SN".equals(turno)) && table.index(date) >= 0) {
+            if (!table.mark(date, turno)) {
+                ValidationUtil.addV(violations, rowNumber, "__row__", "Duplicato data+turno");
+            }
+        }
+
+        // assemble if fields valid enough
+        if (date != null && ("MP".equals(turno) || "SN".equals(turno)) && peso != null) {
+            FestivoInputRow ir = new FestivoInputRow();
+            ir.excelRowNumber = rowNumber;
+            ir.note1 = note1;
+            ir.note2 = note2;
+            ir.date = date;
+            ir.turno = turno;
+            ir.peso = peso;
+            ir.assegnazioneForzata = forzata;
+            ir.squadreEscluse = escluse;
+            rows.add(ir);
+            if (rows.size() % 100 == 0) log.debug("[PARSE] rows parsed={}", rows.size());
+            table.put(ir);
+            if (forzata.isPresent() && escluse.get(forzata.get())) {
+                ValidationUtil.addV(violations, rowNumber, "assegnazione forzata", "Conflitto: squadra forzata presente tra le escluse");
+            }
+        }
+    }
+
+    void addPesanteRow(int rowNumber, String dataStr, String turno) {
+        if (violations.isFull()) return;
+        try {
+            LocalDate d = LocalDate.parse(dataStr, STRICT_FMT);
+            if (d.isBefore(startDate) || d.isAfter(endDate)) {
+                ValidationUtil.addV(violations, rowNumber, "data", "Data fuori periodo");
+            }
+            if (!"MP".equals(turno) && !"SN".equals(turno)) {
+                ValidationUtil.addV(violations, rowNumber, "turno", "Valore non valido (MP|SN)");
+            } else {
+                pesanti.add(d + "|" + turno);
+                table.markHeavy(d, turno);
+            }
+        } catch (Exception e) {
+            ValidationUtil.addV(violations, rowNumber, "data", "Formato data non valido in festivi-pesanti");
+        }
+    }
+
+    int pesantiCount() {
+        return pesanti.size();
+    }
+
+    /** Controlli trasversali (RuleValidator, un passaggio sui giorni del periodo) e costruzione del risultato. */
+    ParseResult finish() {
+        if (overrides) {
+            if (!violations.isEmpty()) throw new ValidationException(violations);
+            log.info("[PARSE] Overrides completed. rows={}, heavy={}", rows.size(), pesanti.size());
+            return new ParseResult(rows, pesanti);
+        }
+        // con il limite già raggiunto le regole trasversali non aggiungerebbero nulla alla risposta
+        if (!violations.isFull()) RuleValidator.validate(table, teamConfig, violations);
+
+        if (!violations.isEmpty()) {
+            log.warn("[PARSE] Validation violations found: {}", violations.size());
+            throw new ValidationException(violations);
+        }
+        log.info("[PARSE] Completed. rows={}, heavy={}", rows.size(), pesanti.size());
+        return new ParseResult(rows, pesanti);
+    }
+}
@@ -0,0 +1,500 @@
+package com.example.crocerosacelestefestivinewbackend.service;
+
+import com.example.crocerosacelestefestivinewbackend.api.ValidationException;
+import com.example.crocerosacelestefestivinewbackend.service.dto.FestivoInputRow;
+import com.google.ortools.graph.MinCostFlow;
+import com.google.ortools.graph.MinCostFlowBase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.*;
+
+import static com.example.crocerosacelestefestivinewbackend.service.SchedulingCommon.*;
+
+/**
+ * Engine a flusso di costo minimo (SimpleMinCostFlow di OR-Tools) sul nucleo di trasporto del problema: sorgente ->
+ * unità (capacità 1) -> nodo squadra-mese (capacità 1: al più un festivo al mese) -> squadra -> pozzo. Esclusioni,
+ * forzate e prossimità sono archi assenti. Sugli archi squadra -> pozzo il costo dell'evento k-esimo cresce (2k - 1):
+ * costo convesso che bilancia gli eventi. Il bilanciamento dei pesi non è un flusso (ogni unità porta un peso diverso),
+ * quindi si linearizza il quadrato del carico: l'arco unità -> squadra costa peso * (2 * carico medio + peso), con il
+ * carico medio delle iterazioni precedenti (Frank-Wolfe). I vincoli fuori dalla rete (un pesante all'anno, MP/SN dello
+ * stesso giorno su squadre diverse) diventano penalità lagrangiane sugli archi, aumentate finché sono violati, e una
+ * riparazione locale sistema quelli che restano. Dalla migliore soluzione riparata partono i passaggi mese per mese:
+ * ogni squadra ha al più un festivo nel mese, quindi con gli altri mesi fissi il costo quadratico di pesi ed eventi è
+ * separabile e il mese si riassegna in modo esatto con un flusso. Vince la soluzione con lo score alpha più basso.
+ */
+@Service
+public class FlowSchedulerService {
+    private static final Logger log = LoggerFactory.getLogger(FlowSchedulerService.class);
+    private static final String ENGINE = SchedulingMetrics.ENGINE_FLOW;
+    private static final double COST_SCALE = 1e6; // costi interi per SimpleMinCostFlow
+    private static final double EPS = 1e-9;
+
+    private final SchedulingMetrics metrics;
+    private final OrToolsNatives natives;
+    private final InfeasibilityDiagnosis diagnosis;
+    private final int iterations;
+    private final int patience;
+    private final int sweeps;
+
+    public FlowSchedulerService(SchedulingMetrics metrics,
+                                OrToolsNatives natives,
+                                InfeasibilityDiagnosis diagnosis,
+                                @Value("${festivi.flow.iterations:60}") int iterations,
+                                @Value("${festivi.flow.patience:15}") int patience,
+                                @Value("${festivi.flow.sweeps:20}") int sweeps) {
+        this.metrics = metrics;
+        this.natives = natives;
+        this.diagnosis = diagnosis;
+        this.iterations = Math.max(1, iterations);
+        this.patience = Math.max(1, patience);
+        this.sweeps = Math.max(0, sweeps);
+    }
+
+    public ScheduleResult schedule(List<FestivoInputRow> rows,
+                                   Set<String> pesanti,
+                                   LocalDate start,
+                                   LocalDate end,
+                                   int minProximityDays,
+                                   double alpha,
+                                   TeamConfig teams,
+                                   SchedulingTrace trace) {
+        metrics.solveStarted(ENGINE);
+        try {
+            return doSchedule(rows, pesanti, start, end, minProximityDays, alpha, teams, trace);
+        } finally {
+            metrics.solveFinished(ENGINE);
+        }
+    }
+
+    private ScheduleResult doSchedule(List<FestivoInputRow> rows,
+                                      Set<String> pesanti,
+                                      LocalDate start,
+                                      LocalDate end,
+                                      int minProximityDays,
+                                      double alpha,
+                                      TeamConfig teams,
+                                      SchedulingTrace trace) {
+        natives.ensureLoaded();
+        SchedulingMetrics.Phase unitsPhase = metrics.start();
+        BuiltModel bm = buildUnits(rows, pesanti, start, end, teams);
+        long unitsNanos = metrics.stop(unitsPhase, SchedulingMetrics.PHASE_BUILD_UNITS, ENGINE);
+        metrics.units(ENGINE, bm.units.size());
+        trace.phase(SchedulingMetrics.PHASE_BUILD_UNITS, unitsNanos, "units=" + bm.units.size() + " teams=" + teams);
+
+        SchedulingMetrics.Phase solvePhase = metrics.start();
+        Network net = new Network(bm, start, minProximityDays, alpha);
+        int U = net.U;
+        int T = net.T;
+        double[] loadAvg = new double[T + 1]; // carico medio delle iterazioni: punto di linearizzazione
+        Arrays.fill(loadAvg, (double) net.totalPeso / T);
+        long[][] heavyPenalty = new long[T + 1][net.years];
+        Map<String, long[]> dayPenalty = new HashMap<>(); // data -> [squadra]
+        int[] best = null;
+        double bestScore = Double.MAX_VALUE;
+        int[] lastConflicts = null;
+        int stale = 0;
+        int it = 0;
+        long penaltyStep = 0;
+        for (; it < iterations && stale < patience; it++) {
+            Flow flow = net.solve(loadAvg, heavyPenalty, dayPenalty);
+            if (flow.unrouted.length > 0) {
+                // la rete non dipende da costi e penalità: le unità senza flusso non hanno squadra in nessuna iterazione
+                long solveNanos = metrics.stop(solvePhase, SchedulingMetrics.PHASE_SOLVE, ENGINE);
+                trace.phase(SchedulingMetrics.PHASE_SOLVE, solveNanos, "unrouted=" + flow.unrouted.length);
+                fail(bm, minProximityDays, flow.unrouted, "nessun flusso: squadre già occupate nel mese o non ammesse", trace);
+            }
+            if (penaltyStep == 0) penaltyStep = Math.max(1, flow.maxArcCost / 2);
+            int[] a = flow.team;
+            // Frank-Wolfe: il punto di linearizzazione si sposta verso i carichi di questa iterazione
+            double gamma = 2.0 / (it + 2.0);
+            long[] w = net.loads(a);
+            for (int t = 1; t <= T; t++) loadAvg[t] = (1 - gamma) * loadAvg[t] + gamma * w[t];
+            int violated = net.updatePenalties(a, heavyPenalty, dayPenalty, penaltyStep);
+            int[] repaired = a.clone();
+            int[] conflicts = net.repair(repaired);
+            double s = conflicts.length == 0 ? net.score(repaired) : Double.MAX_VALUE;
+            if (trace.enabled()) {
+                trace.record("iterazione", null, "n=" + it + " violati=" + violated + " nonRiparati=" + conflicts.length
+                        + (conflicts.length == 0 ? " score=" + String.format(Locale.ROOT, "%.4f", s) : ""));
+            }
+            if (s < bestScore - EPS) {
+                best = repaired;
+                bestScore = s;
+                stale = 0;
+            } else {
+                stale++;
+            }
+            if (conflicts.length > 0) lastConflicts = conflicts;
+        }
+        if (best == null) {
+            long solveNanos = metrics.stop(solvePhase, SchedulingMetrics.PHASE_SOLVE, ENGINE);
+            trace.phase(SchedulingMetrics.PHASE_SOLVE, solveNanos, "iterations=" + it + " score=-");
+            fail(bm, minProximityDays, lastConflicts, "vincolo dei pesanti o dello stesso giorno non riparabile", trace);
+        }
+        double initialScore = bestScore;
+        int[] current = best.clone();
+        int sw = 0;
+        while (sw < sweeps && net.sweep(current)) {
+            sw++;
+            double s = net.score(current);
+            if (trace.enabled()) trace.record("passaggio", null, "n=" + sw + " score=" + String.format(Locale.ROOT, "%.4f", s));
+            if (s < bestScore - EPS) {
+                best = current.clone();
+                bestScore = s;
+            }
+        }
+        long solveNanos = metrics.stop(solvePhase, SchedulingMetrics.PHASE_SOLVE, ENGINE);
+        trace.phase(SchedulingMetrics.PHASE_SOLVE, solveNanos, "iterations=" + it + " sweeps=" + sw
+                + " score=" + String.format(Locale.ROOT, "%.4f", initialScore) + "->" + String.format(Locale.ROOT, "%.4f", bestScore));
+        metrics.outcome(ENGINE, SchedulingMetrics.OUTCOME_FEASIBLE);
+        log.info("[FLOW] Completed. units={} teams={} iterations={} sweeps={} score={} durationMs={}", U, T, it, sw, bestScore, solveNanos / 1_000_000);
+
+        traceAssigned(trace, net.units, best);
+        return new ScheduleResult(assignmentOf(net.units, best, T), bm.mutatedRows, bestScore, Double.NaN, List.of(), List.of());
+    }
+
+    private void fail(BuiltModel bm, int minProximityDays, int[] unitIdx, String cause, SchedulingTrace trace) {
+        List<Map<String, Object>> violations = new ArrayList<>();
+        for (int i : unitIdx) {
+            FestivoUnit u = bm.units.get(i);
+            String reason = "Nessuna squadra disponibile per data=" + u.dates.get(0) + " turno=" + u.tipo + " (" + cause + ")";
+            addV(violations, u.rows.get(0).excelRowNumber, "__assign__", reason);
+            trace.record("nessun-candidato", u.id, reason);
+            for (FestivoInputRow row : u.rows) row.errorMessage = reason;
+        }
+        log.warn("[FLOW] {} units without team: {}", unitIdx.length, cause);
+        diagnoseInto(diagnosis, metrics, ENGINE, bm, minProximityDays, violations, trace, "la riparazione non l'ha trovata, usa l'engine MILP");
+        metrics.outcome(ENGINE, SchedulingMetrics.OUTCOME_INFEASIBLE);
+        throw new ValidationException(violations);
+    }
+
+    /** Esito di un flusso: squadra per unità (0 se senza flusso) e unità rimaste fuori. */
+    private static final class Flow {
+        final int[] team;
+        final int[] unrouted;
+        final long maxArcCost;
+
+        Flow(int[] team, int[] unrouted, long maxArcCost) {
+            this.team = team;
+            this.unrouted = unrouted;
+            this.maxArcCost = maxArcCost;
+        }
+    }
+
+    /** Rete e vincoli laterali, in sola lettura tra le iterazioni. */
+    private static final class Network {
+        final List<FestivoUnit> units;
+        final int U;
+        final int T;
+        final double alpha;
+        final long totalPeso;
+        final int[][] domain; // squadre ammesse: forzata, esclusioni, prossimità
+        final int[] monthIdx; // indice compatto dell'anno-mese
+        final int months;
+        final int[] yearIdx;
+        final int years;
+        final int[][] dayPeers; // MP/SN dello stesso giorno
+        final String[] dayKey; // data condivisa con i peer, null se nessuno
+        final Map<Integer, List<Integer>> byMonth = new HashMap<>();
+        final Map<Integer, List<Integer>> heavyByYear = new HashMap<>();
+
+        Network(BuiltModel bm, LocalDate start, int minProximityDays, double alpha) {
+            this.units = bm.units;
+            this.U = units.size();
+            this.T = bm.teams.teams();
+            this.alpha = alpha;
+            long tot = 0;
+            for (FestivoUnit u : units) tot += u.peso;
+            this.totalPeso = tot;
+            this.domain = new int[U][];
+            this.monthIdx = new int[U];
+            this.yearIdx = new int[U];
+            Map<Integer, Integer> compact = new TreeMap<>();
+            for (FestivoUnit u : units) compact.putIfAbsent((u.year - start.getYear()) * 12 + u.month - 1, 0);
+            int m = 0;
+            for (Map.Entry<Integer, Integer> e : compact.entrySet()) e.setValue(m++);
+            this.months = m;
+            int maxYear = 0;
+            for (int i = 0; i < U; i++) {
+                FestivoUnit u = units.get(i);
+                monthIdx[i] = compact.get((u.year - start.getYear()) * 12 + u.month - 1);
+                yearIdx[i] = u.year - start.getYear();
+                maxYear = Math.max(maxYear, yearIdx[i]);
+                byMonth.computeIfAbsent(monthIdx[i], k -> new ArrayList<>()).add(i);
+                if (u.pesante) heavyByYear.computeIfAbsent(yearIdx[i], k -> new ArrayList<>()).add(i);
+                int[] d = new int[T];
+                int n = 0;
+                for (int t = 1; t <= T; t++) {
+                    if (u.escluse.get(t) || (u.forzata.isPresent() && u.forzata.get() != t)) continue;
+                    boolean ok = true;
+                    for (LocalDate date : u.dates) if (!bm.proximityOk(t, date, minProximityDays)) { ok = false; break; }
+                    if (ok) d[n++] = t;
+                }
+                domain[i] = Arrays.copyOf(d, n);
+            }
+            this.years = maxYear + 1;
+            this.dayPeers = dayPeers(units);
+            this.dayKey = new String[U];
+            for (int i = 0; i < U; i++) {
+                for (LocalDate date : units.get(i).dates) {
+                    for (int q : dayPeers[i]) if (units.get(q).dates.contains(date)) dayKey[i] = date.toString();
+                    if (dayKey[i] != null) break;
+                }
+            }
+        }
+
+        /**
+         * Un flusso di costo minimo: costi linearizzati in loadAvg più le penalità correnti. Con solveMaxFlowWithMinCost
+         * le unità che non trovano una squadra-mese libera restano senza flusso invece di rendere il problema impossibile.
+         */
+        Flow solve(double[] loadAvg, long[][] heavyPenalty, Map<String, long[]> dayPenalty) {
+            int source = 0;
+            int unitBase = 1;
+            int monthTeamBase = unitBase + U;
+            int teamBase = monthTeamBase + months * T;
+            int sink = teamBase + T;
+            MinCostFlow mcf = new MinCostFlow(sink + 1, U * (T + 2) + months * T + T * (months + 1));
+            try {
+                double avgLoad = (double) totalPeso / Math.max(1, T);
+                double wScale = alpha * COST_SCALE / Math.max(1.0, totalPeso * avgLoad);
+                double eAvg = (double) U / Math.max(1, T);
+                double eScale = (1.0 - alpha) * COST_SCALE / Math.max(1.0, U * eAvg);
+                long maxArcCost = 0;
+                int[][] arc = new int[U][T + 1];
+                for (int i = 0; i < U; i++) {
+                    mcf.addArcWithCapacityAndUnitCost(source, unitBase + i, 1, 0);
+                    FestivoUnit u = units.get(i);
+                    long[] dp = dayKey[i] == null ? null : dayPenalty.get(dayKey[i]);
+                    for (int t : domain[i]) {
+                        // derivata di W_t^2 in loadAvg: peso * (2 * carico + peso)
+                        long cost = Math.round(wScale * u.peso * (2.0 * loadAvg[t] + u.peso));
+                        maxArcCost = Math.max(maxArcCost, cost);
+                        if (u.pesante) cost += heavyPenalty[t][yearIdx[i]];
+                        if (dp != null) cost += dp[t];
+                        arc[i][t] = mcf.addArcWithCapacityAndUnitCost(unitBase + i, monthTeamBase + monthIdx[i] * T + (t - 1), 1, cost);
+                    }
+                }
+                for (int mi = 0; mi < months; mi++) {
+                    for (int t = 1; t <= T; t++) {
+                        mcf.addArcWithCapacityAndUnitCost(monthTeamBase + mi * T + (t - 1), teamBase + (t - 1), 1, 0);
+                    }
+                }
+                // costo convesso degli eventi: il k-esimo evento della squadra costa (2k - 1), somma = k^2
+                for (int t = 1; t <= T; t++) {
+                    for (int k = 1; k <= months; k++) {
+                        long cost = Math.round(eScale * (2L * k - 1));
+                        maxArcCost = Math.max(maxArcCost, cost);
+                        mcf.addArcWithCapacityAndUnitCost(teamBase + (t - 1), sink, 1, cost);
+                    }
+                }
+                mcf.setNodeSupply(source, U);
+                mcf.setNodeSupply(sink, -U);
+                MinCostFlowBase.Status status = mcf.solveMaxFlowWithMinCost();
+                if (status != MinCostFlowBase.Status.OPTIMAL) throw new IllegalStateException("Min cost flow non risolto: " + status);
+                int[] team = new int[U];
+                List<Integer> unrouted = new ArrayList<>();
+                for (int i = 0; i < U; i++) {
+                    for (int t : domain[i]) {
+                        if (mcf.getFlow(arc[i][t]) > 0) { team[i] = t; break; }
+                    }
+                    if (team[i] == 0) unrouted.add(i);
+                }
+                return new Flow(team, unrouted.stream().mapToInt(Integer::intValue).toArray(), maxArcCost);
+            } finally {
+                mcf.delete();
+            }
+        }
+
+        /**
+         * Un passaggio su tutti i mesi: con le altre unità fisse ogni mese è un assegnamento (al più un'unità per
+         * squadra), risolto esatto con il costo marginale peso * (2 * carico + peso) e (2 * eventi + 1). Le squadre
+         * bloccate da unità fisse (pesante dello stesso anno, stesso giorno a cavallo del mese) non hanno arco, quindi la
+         * soluzione resta ammissibile e la somma dei quadrati non sale. In place su a; true se qualcosa è cambiato.
+         */
+        boolean sweep(int[] a) {
+            double wScale = alpha * COST_SCALE / Math.max(1.0, totalPeso * ((double) totalPeso / Math.max(1, T)));
+            double eScale = (1.0 - alpha) * COST_SCALE / Math.max(1.0, U * ((double) U / Math.max(1, T)));
+            long[] w = loads(a);
+            int[] e = new int[T + 1];
+            for (int i = 0; i < U; i++) e[a[i]]++;
+            boolean changed = false;
+            for (int mi = 0; mi < months; mi++) {
+                List<Integer> month = byMonth.get(mi);
+                int n = month.size();
+                for (int i : month) {
+                    w[a[i]] -= units.get(i).peso;
+                    e[a[i]]--;
+                }
+                int sink = n + T + 1;
+                MinCostFlow mcf = new MinCostFlow(sink + 1, n * (T + 1) + T);
+                try {
+                    int[][] arc = new int[n][T + 1];
+                    for (int k = 0; k < n; k++) {
+                        int i = month.get(k);
+                        FestivoUnit u = units.get(i);
+                        mcf.addArcWithCapacityAndUnitCost(0, 1 + k, 1, 0);
+                        Arrays.fill(arc[k], -1);
+                        for (int t : domain[i]) {
+                            if (blockedOutside(a, i, t)) continue;
+                            long cost = Math.round(wScale * u.peso * (2.0 * w[t] + u.peso)) + Math.round(eScale * (2.0 * e[t] + 1));
+                            arc[k][t] = mcf.addArcWithCapacityAndUnitCost(1 + k, 1 + n + (t - 1), 1, cost);
+                        }
+                    }
+                    for (int t = 1; t <= T; t++) mcf.addArcWithCapacityAndUnitCost(1 + n + (t - 1), sink, 1, 0);
+                    mcf.setNodeSupply(0, n);
+                    mcf.setNodeSupply(sink, -n);
+                    // l'assegnamento corrente è ammissibile: il flusso pieno esiste sempre
+                    if (mcf.solve() == MinCostFlowBase.Status.OPTIMAL) {
+                        for (int k = 0; k < n; k++) {
+                            for (int t = 1; t <= T; t++) {
+                                if (arc[k][t] >= 0 && mcf.getFlow(arc[k][t]) > 0) {
+                                    if (a[month.get(k)] != t) changed = true;
+                                    a[month.get(k)] = t;
+                                    break;
+                                }
+                            }
+                        }
+                    }
+                } finally {
+                    mcf.delete();
+                }
+                for (int i : month) {
+                    w[a[i]] += units.get(i).peso;
+                    e[a[i]]++;
+                }
+            }
+            return changed;
+        }
+
+        // squadra t vietata a i da unità di altri mesi
+        private boolean blockedOutside(int[] a, int i, int t) {
+            if (units.get(i).pesante) {
+                for (int j : heavyByYear.get(yearIdx[i])) if (monthIdx[j] != monthIdx[i] && a[j] == t) return true;
+            }
+            for (int q : dayPeers[i]) if (monthIdx[q] != monthIdx[i] && a[q] == t) return true;
+            return false;
+        }
+
+        /** Subgradiente: le penalità dei vincoli violati crescono di step, quelle soddisfatte calano. Restituisce i violati. */
+        int updatePenalties(int[] a, long[][] heavyPenalty, Map<String, long[]> dayPenalty, long step) {
+            int violated = 0;
+            for (Map.Entry<Integer, List<Integer>> e : heavyByYear.entrySet()) {
+                int[] count = new int[T + 1];
+                for (int i : e.getValue()) count[a[i]]++;
+                for (int t = 1; t <= T; t++) {
+                    if (count[t] > 1) {
+                        heavyPenalty[t][e.getKey()] += step * (count[t] - 1);
+                        violated++;
+                    } else {
+                        heavyPenalty[t][e.getKey()] = Math.max(0, heavyPenalty[t][e.getKey()] - step / 2);
+                    }
+                }
+            }
+            for (int i = 0; i < U; i++) {
+                if (dayKey[i] == null) continue;
+                long[] p = dayPenalty.computeIfAbsent(dayKey[i], k -> new long[T + 1]);
+                boolean clash = false;
+                for (int q : dayPeers[i]) if (a[q] == a[i]) { clash = true; break; }
+                if (clash) {
+                    p[a[i]] += step;
+                    violated++;
+                } else {
+                    p[a[i]] = Math.max(0, p[a[i]] - step / 2);
+                }
+            }
+            return violated;
+        }
+
+        /**
+         * Riparazione: ogni unità in conflitto (pesante nello stesso anno, stesso giorno) passa alla squadra ammessa
+         * libera con il carico più basso; se non ce n'è, si sposta l'unica unità che occupa una squadra ammessa. In
+         * place su a; restituisce le unità rimaste in conflitto.
+         */
+        int[] repair(int[] a) {
+            long[] w = loads(a);
+            Integer[] byPeso = new Integer[U];
+            for (int i = 0; i < U; i++) byPeso[i] = i;
+            Arrays.sort(byPeso, (x, y) -> Integer.compare(units.get(x).peso, units.get(y).peso)); // si spostano prima i leggeri
+            List<Integer> left = new ArrayList<>();
+            for (int i : byPeso) {
+                if (!conflicted(a, i)) continue;
+                if (moveToFree(a, w, i, 0) || eject(a, w, i)) continue;
+                left.add(i);
+            }
+            return left.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        private boolean conflicted(int[] a, int i) {
+            return blockers(a, i, a[i]).size() > 0;
+        }
+
+        // unità diverse da i che impediscono la squadra t a i
+        private Set<Integer> blockers(int[] a, int i, int t) {
+            Set<Integer> out = new LinkedHashSet<>();
+            for (int j : byMonth.get(monthIdx[i])) if (j != i && a[j] == t) out.add(j);
+            if (units.get(i).pesante) for (int j : heavyByYear.get(yearIdx[i])) if (j != i && a[j] == t) out.add(j);
+            for (int q : dayPeers[i]) if (a[q] == t) out.add(q);
+            return out;
+        }
+
+        private boolean moveToFree(int[] a, long[] w, int i, int avoid) {
+            int best = 0;
+            for (int t : domain[i]) {
+                if (t == a[i] || t == avoid || !blockers(a, i, t).isEmpty()) continue;
+                if (best == 0 || w[t] < w[best]) best = t;
+            }
+            if (best == 0) return false;
+            w[a[i]] -= units.get(i).peso;
+            w[best] += units.get(i).peso;
+            a[i] = best;
+            return true;
+        }
+
+        private boolean eject(int[] a, long[] w, int i) {
+            int from = a[i];
+            for (int t : domain[i]) {
+                if (t == from) continue;
+                Set<Integer> b = blockers(a, i, t);
+                if (b.size() != 1) continue;
+                int v = b.iterator().next();
+                a[i] = t; // i prende t, v cerca un'altra squadra libera diversa da t
+                w[from] -= units.get(i).peso;
+                w[t] += units.get(i).peso;
+                if (moveToFree(a, w, v, t)) return true;
+                w[t] -= units.get(i).peso;
+                w[from] += units.get(i).peso;
+                a[i] = from;
+            }
+            return false;
+        }
+
+        long[] loads(int[] a) {
+            long[] w = new long[T + 1];
+            for (int i = 0; i < U; i++) if (a[i] > 0) w[a[i]] += units.get(i).peso;
+            return w;
+        }
+
+        double score(int[] a) {
+            long[] w = new long[T + 1];
+            int[] e = new int[T + 1];
+            for (int i = 0; i < U; i++) {
+                w[a[i]] += units.get(i).peso;
+                e[a[i]] += 1;
+            }
+            long maxW = Long.MIN_VALUE, minW = Long.MAX_VALUE;
+            int maxE = 0;
+            for (int t = 1; t <= T; t++) {
+                maxW = Math.max(maxW, w[t]);
+                minW = Math.min(minW, w[t]);
+                maxE = Math.max(maxE, e[t]);
+            }
+            double l = totalPeso == 0 ? 0.0 : (double) (maxW - minW) / (double) totalPeso;
+            double ev = U == 0 ? 0.0 : (double) maxE / (double) U;
+            return alpha * l + (1.0 - alpha) * ev;
+        }
+    }
+}
@@ -15,17 +15,12 @@ import static com.example.crocerosacelestefestivinewbackend.service.SchedulingCo
 public class GreedySchedulerService {
     private static final Logger log = LoggerFactory.getLogger(GreedySchedulerService.class);
 
-    public static class ScheduleResult {
-        public final Map<String, Integer> assignment; // key=date|turno -> squadra
-        public final Map<Integer, long[]> pesiPerMese;
-        public final Map<Integer, int[]> eventiPerMese;
-        public final List<FestivoInputRow> rowsMutated;
-        public ScheduleResult(Map<String, Integer> assignment, Map<Integer, long[]> pesiPerMese, Map<Integer, int[]> eventiPerMese, List<FestivoInputRow> rowsMutated) {
-            this.assignment = assignment;
-            this.pesiPerMese = pesiPerMese;
-            this.eventiPerMese = eventiPerMese;
-            this.rowsMutated = rowsMutated;
-        }
+    private final SchedulingMetrics metrics;
+    private final InfeasibilityDiagnosis diagnosis;
+
+    public GreedySchedulerService(SchedulingMetrics metrics, InfeasibilityDiagnosis diagnosis) {
+        this.metrics = metrics;
+        this.diagnosis = diagnosis;
     }
 
     public ScheduleResult schedule(List<FestivoInputRow> rows,
@@ -34,8 +29,68 @@ public class GreedySchedulerService {
                                    LocalDate end,
                                    int minProximityDays,
                                    double alpha) {
-        BuiltModel bm = buildUnits(rows, pesanti, start, end);
-        log.info("[GREEDY] Units built: {}", bm.units.size());
+        return schedule(rows, pesanti, start, end, minProximityDays, alpha, TeamConfig.DEFAULT);
+    }
+
+    public ScheduleResult schedule(List<FestivoInputRow> rows,
+                                   Set<String> pesanti,
+                                   LocalDate start,
+                                   LocalDate end,
+                                   int minProximityDays,
+                                   double alpha,
+                                   TeamConfig teams) {
+        return schedule(rows, pesanti, start, end, minProximityDays, alpha, teams, SchedulingTrace.OFF);
+    }
+
+    public ScheduleResult schedule(List<FestivoInputRow> rows,
+                                   Set<String> pesanti,
+                                   LocalDate start,
+                                   LocalDate end,
+                                   int minProximityDays,
+                                   double alpha,
+                                   TeamConfig teams,
+                                   SchedulingTrace trace) {
+        return schedule(rows, pesanti, start, end, minProximityDays, alpha, false, teams, trace);
+    }
+
+    /**
+     * dynamicOrder: invece dell'ordine fisso (forzate, blocchi MPB, peso) sceglie a ogni passo l'unità con meno
+     * squadre ancora ammesse (vedi scheduleDynamic). trace: decisioni per unità (candidati dopo ogni filtro, ordine,
+     * squadra scelta), vedi SchedulingTrace.
+     */
+    public ScheduleResult schedule(List<FestivoInputRow> rows,
+                                   Set<String> pesanti,
+                                   LocalDate start,
+                                   LocalDate end,
+                                   int minProximityDays,
+                                   double alpha,
+                                   boolean dynamicOrder,
+                                   TeamConfig teams,
+                                   SchedulingTrace trace) {
+        metrics.solveStarted(SchedulingMetrics.ENGINE_GREEDY);
+        try {
+            return doSchedule(rows, pesanti, start, end, minProximityDays, alpha, dynamicOrder, teams, trace);
+        } finally {
+            metrics.solveFinished(SchedulingMetrics.ENGINE_GREEDY);
+        }
+    }
+
+    private ScheduleResult doSchedule(List<FestivoInputRow> rows,
+                                      Set<String> pesanti,
+                                      LocalDate start,
+                                      LocalDate end,
+                                      int minProximityDays,
+                                      double alpha,
+                                      boolean dynamicOrder,
+                                      TeamConfig teams,
+                                      SchedulingTrace trace) {
+        SchedulingMetrics.Phase buildPhase = metrics.start();
+        BuiltModel bm = buildUnits(rows, pesanti, start, end, teams);
+        long buildNanos = metrics.stop(buildPhase, SchedulingMetrics.PHASE_BUILD_UNITS, SchedulingMetrics.ENGINE_GREEDY);
+        log.info("[GREEDY] Units built: {} dynamicOrder={}", bm.units.size(), dynamicOrder);
+        metrics.units(SchedulingMetrics.ENGINE_GREEDY, bm.units.size());
+        trace.phase(SchedulingMetrics.PHASE_BUILD_UNITS, buildNanos, "units=" + bm.units.size() + " teams=" + teams);
+        SchedulingMetrics.Phase solvePhase = metrics.start();
         List<Map<String, Object>> violations = new ArrayList<>();
 
         // Sort: 1) forced assignments first, 2) then MPB blocks, 3) then by descending peso
@@ -54,97 +109,135 @@ public class GreedySchedulerService {
             // Priority 3: descending peso
             return Integer.compare(b.peso, a.peso);
         });
-        log.debug("[GREEDY] Sorted units. First={} peso={} forced={}", 
-            units.isEmpty()?"-":units.get(0).id, 
-            units.isEmpty()?0:units.get(0).peso,
-            units.isEmpty()?false:units.get(0).forzata.isPresent());
-
-        Map<String, Integer> assignment = new HashMap<>();
-        long[] pesi = new long[11]; // 1..10
-        int[] eventiQuestoAnnoPesanti = new int[11];
-        Map<Integer, int[]> eventiPerMese = new HashMap<>();
-        Map<Integer, long[]> pesiPerMese = new HashMap<>();
-        for (int s = 1; s <= 10; s++) { eventiPerMese.put(s, new int[12]); pesiPerMese.put(s, new long[12]); }
-
-        // helper: team can take unit?
-        for (FestivoUnit u : units) {
-            if (log.isDebugEnabled()) {
-                log.debug("[GREEDY] Unit start id={} tipo={} peso={} dates={} month={} forzata={} escluse={} pesante={}",
-                        u.id, u.tipo, u.peso, u.dates, u.month, u.forzata.orElse(null), u.escluse, u.pesante);
-            }
-            Integer forced = u.forzata.orElse(null);
-            List<Integer> candidates = new ArrayList<>();
-            if (forced != null) {
-                candidates.add(forced);
-            } else {
-                for (int team = 1; team <= 10; team++) candidates.add(team);
-            }
-            candidates.removeIf(u.escluse::contains);
-            if (log.isTraceEnabled()) log.trace("[GREEDY] Candidates after exclusions {} -> {}", u.id, candidates);
 
-            // Same-day MP vs SN must be different teams
-            // We'll enforce when assigning by checking existing assignment for same date other tipo
+        // vincoli mensile e pesante/anno distinti per anno (periodi pluriennali), come nel MILP
+        State st = new State(teams.teams(), start, end);
+        if (dynamicOrder) scheduleDynamic(bm, units, st, minProximityDays, alpha, violations, trace);
+        else scheduleStatic(bm, units, st, minProximityDays, alpha, violations, trace);
 
-            // Filter by proximity for each date in unit
-            candidates.removeIf(team -> u.dates.stream().anyMatch(d -> !proximityOk(team, d, minProximityDays)));
-            if (log.isTraceEnabled()) log.trace("[GREEDY] Candidates after proximity {} -> {}", u.id, candidates);
+        long solveNanos = metrics.stop(solvePhase, SchedulingMetrics.PHASE_SOLVE, SchedulingMetrics.ENGINE_GREEDY);
+        trace.phase(SchedulingMetrics.PHASE_SOLVE, solveNanos, "assigned=" + st.assignment.size() + " violations=" + violations.size());
+        if (!violations.isEmpty()) {
+            log.warn("[GREEDY] Violations at end: {}", violations.size());
+            // il greedy può bloccarsi anche se una soluzione esiste: la diagnosi distingue i due casi
+            diagnoseInto(diagnosis, metrics, SchedulingMetrics.ENGINE_GREEDY, bm, minProximityDays, violations, trace,
+                    "l'ordine di scelta del greedy ha bloccato i festivi segnalati, usa l'engine MILP");
+            metrics.outcome(SchedulingMetrics.ENGINE_GREEDY, SchedulingMetrics.OUTCOME_INFEASIBLE);
+            throw new ValidationException(violations);
+        }
+        metrics.outcome(SchedulingMetrics.ENGINE_GREEDY, SchedulingMetrics.OUTCOME_FEASIBLE);
+
+        return new ScheduleResult(st.assignment, st.pesiPerMese, st.eventiPerMese, bm.mutatedRows);
+    }
 
-            // Filter by monthly 1-event per team
-            candidates.removeIf(team -> eventiPerMese.get(team)[u.month - 1] >= 1);
-            if (log.isTraceEnabled()) log.trace("[GREEDY] Candidates after monthly limit {} -> {}", u.id, candidates);
+    /** Carichi e contatori dell'assegnazione in corso, comuni all'ordine fisso e a quello dinamico. */
+    private static final class State {
+        final int T;
+        final int baseYear;
+        final Map<String, Integer> assignment = new HashMap<>();
+        final long[] pesi; // 1..T
+        final int[] eventi; // totale eventi per squadra
+        final int[][] eventiAnnoMese;
+        final int[][] pesantiPerAnno;
+        final int[][] eventiPerMese;
+        final long[][] pesiPerMese;
+        final double[] scores;
+
+        State(int T, LocalDate start, LocalDate end) {
+            this.T = T;
+            this.baseYear = start.getYear();
+            int years = end.getYear() - baseYear + 1;
+            pesi = new long[T + 1];
+            eventi = new int[T + 1];
+            eventiAnnoMese = new int[T + 1][years * 12];
+            pesantiPerAnno = new int[T + 1][years];
+            eventiPerMese = new int[T + 1][12];
+            pesiPerMese = new long[T + 1][12];
+            scores = new double[T + 1];
+        }
+
+        int ym(FestivoUnit u) {
+            return (u.year - baseYear) * 12 + u.month - 1;
+        }
 
-            // Filter by heavy 1/year per team if pesante
-            if (u.pesante) {
-                candidates.removeIf(team -> eventiQuestoAnnoPesanti[team] >= 1);
-                if (log.isTraceEnabled()) log.trace("[GREEDY] Candidates after heavy limit {} -> {}", u.id, candidates);
+        /** Score pesato alpha * L' + (1-alpha) * Emax' di ogni candidato e candidati in ordine crescente (insertion sort: sono al più T). */
+        void rank(int[] candidates, int n, FestivoUnit u, double alpha) {
+            for (int k = 0; k < n; k++) scores[candidates[k]] = scoreAfterAssign(pesi, eventi, T, candidates[k], u, alpha);
+            for (int k = 1; k < n; k++) {
+                int c = candidates[k];
+                int h = k - 1;
+                while (h >= 0 && compareCandidates(candidates[h], c, scores, pesi, eventi) > 0) {
+                    candidates[h + 1] = candidates[h];
+                    h--;
+                }
+                candidates[h + 1] = c;
             }
+        }
+
+        void place(FestivoUnit u, int chosen) {
+            if ("MPB".equals(u.tipo)) {
+                assignment.put(u.dates.get(0) + "|MP", chosen);
+                assignment.put(u.dates.get(1) + "|MP", chosen);
+            } else {
+                assignment.put(u.dates.get(0) + "|" + u.tipo, chosen);
+            }
+            pesi[chosen] += u.peso;
+            eventi[chosen] += 1;
+            eventiPerMese[chosen][u.month - 1] += 1;
+            eventiAnnoMese[chosen][ym(u)] += 1;
+            if (u.pesante) pesantiPerAnno[chosen][u.year - baseYear] += 1;
+            pesiPerMese[chosen][u.month - 1] += u.peso;
+        }
+    }
+
+    private void scheduleStatic(BuiltModel bm, List<FestivoUnit> units, State st, int minProximityDays, double alpha,
+                                List<Map<String, Object>> violations, SchedulingTrace trace) {
+        int T = st.T;
+        int[] candidates = new int[T];
+        for (FestivoUnit u : units) {
+            // filtri in un solo passaggio: forzata, esclusioni, prossimità, limite mensile, pesante/anno
+            int ym = st.ym(u);
+            int from = u.forzata.isPresent() ? u.forzata.get() : 1;
+            int to = u.forzata.isPresent() ? Math.min(u.forzata.get(), T) : T;
+            int n = 0;
+            for (int team = from; team <= to; team++) {
+                if (u.escluse.get(team)) continue;
+                if (!proximityOk(bm, team, u, minProximityDays)) continue;
+                if (st.eventiAnnoMese[team][ym] >= 1) continue;
+                if (u.pesante && st.pesantiPerAnno[team][u.year - st.baseYear] >= 1) continue;
+                candidates[n++] = team;
+            }
+            if (trace.enabled()) traceFilters(trace, bm, u, minProximityDays, st.eventiAnnoMese, st.pesantiPerAnno, ym, st.baseYear);
 
             // Same day MP/SN or other unit on same date must not conflict (assign later check)
 
-            if (candidates.isEmpty()) {
-                String reason = buildNoCandidatesReason(u, bm, minProximityDays, eventiPerMese, eventiQuestoAnnoPesanti);
-                addV(violations, u.rows.get(0).excelRowNumber, "__assign__", reason);
-                log.warn("[GREEDY] No candidates for unit {}. Reason: {}", u.id, reason);
-                // Popola errorMessage nelle righe corrispondenti
-                for (FestivoInputRow row : u.rows) {
-                    row.errorMessage = reason;
-                }
+            if (n == 0) {
+                noCandidates(u, bm, st, minProximityDays, violations, trace);
                 continue;
             }
 
             // Choose least loaded by pesi, then by eventi; tie-break: farthest last assignment (omitted for brevity), then lower id
-            // Score pesato: alpha * L' + (1-alpha) * Emax'
-            candidates.sort((a, b) -> {
-                double sa = scoreAfterAssign(bm, assignment, pesi, eventiPerMese, a, u, alpha);
-                double sb = scoreAfterAssign(bm, assignment, pesi, eventiPerMese, b, u, alpha);
-                int cmp = Double.compare(sa, sb);
-                if (cmp != 0) return cmp;
-                // tie-break legacy
-                int cmpW = Long.compare(pesi[a], pesi[b]);
-                if (cmpW != 0) return cmpW;
-                cmpW = Integer.compare(sum(eventiPerMese.get(a)), sum(eventiPerMese.get(b)));
-                if (cmpW != 0) return cmpW;
-                return Integer.compare(a, b);
-            });
-            if (log.isTraceEnabled()) log.trace("[GREEDY] Candidates sorted {} -> {}", u.id, candidates);
+            st.rank(candidates, n, u, alpha);
+            if (trace.enabled()) traceOrder(trace, u, candidates, n, st.scores);
 
             Integer chosen = null;
             // enforce same-day different teams: if same date has other assignment, ensure different team
-            for (Integer team : candidates) {
+            for (int k = 0; k < n; k++) {
+                int team = candidates[k];
                 boolean conflict = false;
                 for (LocalDate d : u.dates) {
                     String otherKeyMP = d + "|MP";
                     String otherKeySN = d + "|SN";
                     if ("MPB".equals(u.tipo)) {
                         // For each date in block MP, ensure SN (if exists) is not assigned to same team
-                        Integer sn = assignment.get(otherKeySN);
-                        if (sn != null && sn.equals(team)) { conflict = true; break; }
+                        Integer sn = st.assignment.get(otherKeySN);
+                        if (sn != null && sn == team) { conflict = true; break; }
                     } else if ("SN".equals(u.tipo)) {
-                        Integer mp = assignment.get(otherKeyMP);
-                        if (mp != null && mp.equals(team)) { conflict = true; break; }
+                        Integer mp = st.assignment.get(otherKeyMP);
+                        if (mp != null && mp == team) { conflict = true; break; }
                     } else { // u.tipo == MP single
-                        Integer sn = assignment.get(otherKeySN);
-                        if (sn != null && sn.equals(team)) { conflict = true; break; }
+                        Integer sn = st.assignment.get(otherKeySN);
+                        if (sn != null && sn == team) { conflict = true; break; }
                     }
                 }
                 if (!conflict) { chosen = team; break; }
@@ -154,6 +247,7 @@ public class GreedySchedulerService {
                 String reason = "Conflitto con vincolo MP vs SN nello stesso giorno";
                 addV(violations, u.rows.get(0).excelRowNumber, "__assign__", reason);
                 log.warn("[GREEDY] Day conflict for unit {}", u.id);
+                trace.record("conflitto-giorno", u.id, reason);
                 // Popola errorMessage nelle righe corrispondenti
                 for (FestivoInputRow row : u.rows) {
                     row.errorMessage = reason;
@@ -161,78 +255,281 @@ public class GreedySchedulerService {
                 continue;
             }
 
-            // assign
-            if ("MPB".equals(u.tipo)) {
-                assignment.put(u.dates.get(0) + "|MP", chosen);
-                assignment.put(u.dates.get(1) + "|MP", chosen);
-            } else {
-                assignment.put(u.dates.get(0) + "|" + u.tipo, chosen);
+            st.place(u, chosen);
+            if (trace.enabled()) traceAssigned(trace, u, chosen, st);
+        }
+    }
+
+    /**
+     * Ordine dinamico (most-constrained-first): ogni unità non assegnata ha la bitmask delle squadre ancora ammesse
+     * (forzata, esclusioni, prossimità, poi i posti consumati). Dopo ogni assegnazione la squadra scelta sparisce solo
+     * dalle unità toccate: stesso mese, stesso anno se entrambe pesanti, MP/SN dello stesso giorno. La prossima unità è
+     * quella con il dominio più piccolo (a parità: forzata, peso maggiore, ordine fisso) da una coda a priorità
+     * indicizzata: estrazione e aggiornamento O(log n). La squadra è la migliore per score alpha tra quelle che non
+     * svuotano il dominio di un'unità toccata.
+     */
+    private void scheduleDynamic(BuiltModel bm, List<FestivoUnit> units, State st, int minProximityDays, double alpha,
+                                 List<Map<String, Object>> violations, SchedulingTrace trace) {
+        int U = units.size();
+        int T = st.T;
+        int words = (T >> 6) + 1;
+        long[][] dom = new long[U][words];
+        int[] size = new int[U];
+        for (int i = 0; i < U; i++) {
+            FestivoUnit u = units.get(i);
+            for (int team = 1; team <= T; team++) {
+                if (u.forzata.isPresent() && u.forzata.get() != team) continue;
+                if (u.escluse.get(team) || !proximityOk(bm, team, u, minProximityDays)) continue;
+                dom[i][team >> 6] |= 1L << team;
+                size[i]++;
+            }
+        }
+
+        // unità toccate da un'assegnazione: stesso anno-mese, pesanti dello stesso anno, MP/SN dello stesso giorno
+        Map<Integer, List<Integer>> byMonth = new HashMap<>();
+        Map<Integer, List<Integer>> heavyByYear = new HashMap<>();
+        for (int i = 0; i < U; i++) {
+            FestivoUnit u = units.get(i);
+            byMonth.computeIfAbsent(st.ym(u), k -> new ArrayList<>()).add(i);
+            if (u.pesante) heavyByYear.computeIfAbsent(u.year, k -> new ArrayList<>()).add(i);
+        }
+        int[][] dayPeers = dayPeers(units);
+        int[][] peers = new int[U][];
+        for (int i = 0; i < U; i++) {
+            FestivoUnit u = units.get(i);
+            Set<Integer> p = new LinkedHashSet<>(byMonth.get(st.ym(u)));
+            if (u.pesante) p.addAll(heavyByYear.get(u.year));
+            for (int q : dayPeers[i]) p.add(q);
+            p.remove(i);
+            peers[i] = p.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        // indice nell'ordine fisso come ultimo criterio: a parità di dominio il comportamento resta quello storico
+        UnitQueue queue = new UnitQueue(U, (a, b) -> {
+            int cmp = Integer.compare(size[a], size[b]);
+            if (cmp != 0) return cmp;
+            boolean af = units.get(a).forzata.isPresent();
+            boolean bf = units.get(b).forzata.isPresent();
+            if (af != bf) return af ? -1 : 1;
+            cmp = Integer.compare(units.get(b).peso, units.get(a).peso);
+            return cmp != 0 ? cmp : Integer.compare(a, b);
+        });
+
+        int[] candidates = new int[T];
+        while (!queue.isEmpty()) {
+            int i = queue.poll();
+            FestivoUnit u = units.get(i);
+            int n = 0;
+            for (int w = 0; w < words; w++) {
+                for (long bits = dom[i][w]; bits != 0; bits &= bits - 1) candidates[n++] = (w << 6) + Long.numberOfTrailingZeros(bits);
+            }
+            if (trace.enabled()) traceFilters(trace, bm, u, minProximityDays, st.eventiAnnoMese, st.pesantiPerAnno, st.ym(u), st.baseYear);
+            if (n == 0) {
+                noCandidates(u, bm, st, minProximityDays, violations, trace);
+                continue;
             }
-            if (log.isDebugEnabled()) {
-                log.debug("[GREEDY] Assigned unit={} tipo={} to team={} peso={} dates={}", u.id, u.tipo, chosen, u.peso, u.dates);
+            st.rank(candidates, n, u, alpha);
+            if (trace.enabled()) traceOrder(trace, u, candidates, n, st.scores);
+            // il dominio esclude già MP/SN dello stesso giorno; forward checking: la squadra migliore che non lascia
+            // senza candidati un'unità toccata, altrimenti comunque la migliore
+            int chosen = candidates[0];
+            for (int k = 0; k < n; k++) {
+                if (!wipesOut(candidates[k], peers[i], dom, size, queue)) {
+                    chosen = candidates[k];
+                    break;
+                }
             }
+            st.place(u, chosen);
+            if (trace.enabled()) traceAssigned(trace, u, chosen, st);
 
-            pesi[chosen] += u.peso;
-            eventiPerMese.get(chosen)[u.month - 1] += 1;
-            if (u.pesante) eventiQuestoAnnoPesanti[chosen] += 1;
-            pesiPerMese.get(chosen)[u.month - 1] += u.peso;
-            if (log.isTraceEnabled()) {
-                log.trace("[GREEDY] Team {} monthly events={} weights={} after unit {}", chosen,
-                        Arrays.toString(eventiPerMese.get(chosen)), Arrays.toString(pesiPerMese.get(chosen)), u.id);
+            int w = chosen >> 6;
+            long bit = 1L << chosen;
+            for (int j : peers[i]) {
+                if (!queue.contains(j) || (dom[j][w] & bit) == 0) continue;
+                dom[j][w] &= ~bit;
+                size[j]--;
+                queue.decreased(j);
             }
         }
+    }
 
-        if (!violations.isEmpty()) {
-            log.warn("[GREEDY] Violations at end: {}", violations.size());
-            throw new ValidationException(violations);
+    private static boolean wipesOut(int team, int[] peers, long[][] dom, int[] size, UnitQueue queue) {
+        int w = team >> 6;
+        long bit = 1L << team;
+        for (int j : peers) {
+            if (size[j] == 1 && (dom[j][w] & bit) != 0 && queue.contains(j)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Coda a priorità indicizzata sulle unità (heap binario con posizione di ogni unità): poll e decreased in
+     * O(log n). La chiave può solo scendere (il dominio si restringe), quindi basta risalire.
+     */
+    private static final class UnitQueue {
+        private final int[] heap;
+        private final int[] pos; // -1 se estratta
+        private final IntComparator cmp;
+        private int n;
+
+        interface IntComparator {
+            int compare(int a, int b);
+        }
+
+        UnitQueue(int size, IntComparator cmp) {
+            this.heap = new int[size];
+            this.pos = new int[size];
+            this.cmp = cmp;
+            for (int i = 0; i < size; i++) {
+                heap[i] = i;
+                pos[i] = i;
+            }
+            n = size;
+            for (int k = n / 2 - 1; k >= 0; k--) down(k);
+        }
+
+        boolean isEmpty() {
+            return n == 0;
         }
 
-        return new ScheduleResult(assignment, pesiPerMese, eventiPerMese, bm.mutatedRows);
+        boolean contains(int unit) {
+            return pos[unit] >= 0;
+        }
+
+        int poll() {
+            int top = heap[0];
+            pos[top] = -1;
+            if (--n > 0) {
+                heap[0] = heap[n];
+                pos[heap[0]] = 0;
+                down(0);
+            }
+            return top;
+        }
+
+        void decreased(int unit) {
+            int k = pos[unit];
+            while (k > 0) {
+                int parent = (k - 1) >> 1;
+                if (cmp.compare(heap[k], heap[parent]) >= 0) break;
+                swap(k, parent);
+                k = parent;
+            }
+        }
+
+        private void down(int k) {
+            while (true) {
+                int l = 2 * k + 1;
+                if (l >= n) return;
+                int c = l + 1 < n && cmp.compare(heap[l + 1], heap[l]) < 0 ? l + 1 : l;
+                if (cmp.compare(heap[c], heap[k]) >= 0) return;
+                swap(k, c);
+                k = c;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int t = heap[a];
+            heap[a] = heap[b];
+            heap[b] = t;
+            pos[heap[a]] = a;
+            pos[heap[b]] = b;
+        }
     }
 
-    private static int sum(int[] a) {
-        int s = 0; for (int v : a) s += v; return s;
+    private void noCandidates(FestivoUnit u, BuiltModel bm, State st, int minProximityDays,
+                              List<Map<String, Object>> violations, SchedulingTrace trace) {
+        String reason = buildNoCandidatesReason(u, bm, minProximityDays, st.eventiAnnoMese, st.pesantiPerAnno, st.baseYear);
+        addV(violations, u.rows.get(0).excelRowNumber, "__assign__", reason);
+        log.warn("[GREEDY] No candidates for unit {}. Reason: {}", u.id, reason);
+        trace.record("nessun-candidato", u.id, reason);
+        // Popola errorMessage nelle righe corrispondenti
+        for (FestivoInputRow row : u.rows) {
+            row.errorMessage = reason;
+        }
     }
 
-    private double scoreAfterAssign(BuiltModel bm,
-                                    Map<String, Integer> assignment,
-                                    long[] pesi,
-                                    Map<Integer, int[]> eventiPerMese,
-                                    int teamCandidate,
-                                    FestivoUnit u,
-                                    double alpha) {
-        // clone light
-        long[] W = Arrays.copyOf(pesi, pesi.length);
-        Map<Integer, int[]> E = new HashMap<>();
-        for (int t = 1; t <= 10; t++) E.put(t, Arrays.copyOf(eventiPerMese.get(t), 12));
-
-        // apply tentative assignment
-        if ("MPB".equals(u.tipo)) {
-            W[teamCandidate] += u.peso;
-            E.get(teamCandidate)[u.month - 1] += 1;
-        } else {
-            W[teamCandidate] += u.peso;
-            E.get(teamCandidate)[u.month - 1] += 1;
+    private static void traceOrder(SchedulingTrace trace, FestivoUnit u, int[] candidates, int n, double[] scores) {
+        StringBuilder sb = new StringBuilder();
+        for (int k = 0; k < n; k++) {
+            if (k > 0) sb.append(", ");
+            sb.append(candidates[k]).append(" (").append(String.format(Locale.ROOT, "%.4f", scores[candidates[k]])).append(')');
         }
+        trace.record("ordine", u.id, sb.toString());
+    }
 
+    private static void traceAssigned(SchedulingTrace trace, FestivoUnit u, int chosen, State st) {
+        trace.record("assegnata", u.id, "squadra=" + chosen + " score=" + String.format(Locale.ROOT, "%.4f", st.scores[chosen])
+                + " peso=" + u.peso + " caricoSquadra=" + st.pesi[chosen] + " eventiSquadra=" + st.eventi[chosen]);
+    }
+
+    /** Squadre rimaste dopo ciascun filtro, nello stesso ordine del passaggio unico di doSchedule. */
+    private static void traceFilters(SchedulingTrace trace, BuiltModel bm, FestivoUnit u, int minProximityDays,
+                                     int[][] eventiAnnoMese, int[][] pesantiPerAnno, int ym, int baseYear) {
+        int T = bm.teams.teams();
+        int[] left = new int[T];
+        StringBuilder sb = new StringBuilder();
+        int n = 0;
+        for (int team = 1; team <= T; team++) {
+            if (u.forzata.isPresent() && u.forzata.get() != team) continue;
+            if (!u.escluse.get(team)) left[n++] = team;
+        }
+        sb.append("forzata/escluse=").append(SchedulingTrace.teams(left, n));
+        int m = 0;
+        for (int k = 0; k < n; k++) if (proximityOk(bm, left[k], u, minProximityDays)) left[m++] = left[k];
+        sb.append(" prossimità=").append(SchedulingTrace.teams(left, m));
+        n = m;
+        m = 0;
+        for (int k = 0; k < n; k++) if (eventiAnnoMese[left[k]][ym] < 1) left[m++] = left[k];
+        sb.append(" mese=").append(SchedulingTrace.teams(left, m));
+        if (u.pesante) {
+            n = m;
+            m = 0;
+            for (int k = 0; k < n; k++) if (pesantiPerAnno[left[k]][u.year - baseYear] < 1) left[m++] = left[k];
+            sb.append(" pesante=").append(SchedulingTrace.teams(left, m));
+        }
+        trace.record("candidati", u.id, "tipo=" + u.tipo + " peso=" + u.peso + " " + sb);
+    }
+
+    private static boolean proximityOk(BuiltModel bm, int team, FestivoUnit u, int minProximityDays) {
+        for (LocalDate d : u.dates) {
+            if (!bm.proximityOk(team, d, minProximityDays)) return false;
+        }
+        return true;
+    }
+
+    /** Ordine dei candidati: score, poi carico pesi, poi numero di eventi, poi numero di squadra. */
+    private static int compareCandidates(int a, int b, double[] scores, long[] pesi, int[] eventi) {
+        int cmp = Double.compare(scores[a], scores[b]);
+        if (cmp != 0) return cmp;
+        // tie-break legacy
+        cmp = Long.compare(pesi[a], pesi[b]);
+        if (cmp != 0) return cmp;
+        cmp = Integer.compare(eventi[a], eventi[b]);
+        if (cmp != 0) return cmp;
+        return Integer.compare(a, b);
+    }
+
+    /** Score dopo l'assegnazione tentativa di u a teamCandidate, senza copiare lo stato. */
+    private static double scoreAfterAssign(long[] pesi, int[] eventi, int T, int teamCandidate, FestivoUnit u, double alpha) {
         long maxW = Long.MIN_VALUE, minW = Long.MAX_VALUE, totW = 0;
         int maxE = Integer.MIN_VALUE, totE = 0;
-        for (int t = 1; t <= 10; t++) {
-            maxW = Math.max(maxW, W[t]);
-            minW = Math.min(minW, W[t]);
-            totW += W[t];
-            int sumE = sum(E.get(t));
-            maxE = Math.max(maxE, sumE);
-            totE += sumE;
+        for (int t = 1; t <= T; t++) {
+            long w = pesi[t] + (t == teamCandidate ? u.peso : 0);
+            int e = eventi[t] + (t == teamCandidate ? 1 : 0);
+            maxW = Math.max(maxW, w);
+            minW = Math.min(minW, w);
+            totW += w;
+            maxE = Math.max(maxE, e);
+            totE += e;
         }
         double Lprime = totW == 0 ? 0.0 : (double)(maxW - minW) / (double)totW;
         double EmaxPrime = totE == 0 ? 0.0 : (double)maxE / (double)totE;
-        double score = alpha * Lprime + (1.0 - alpha) * EmaxPrime;
-        return score;
+        return alpha * Lprime + (1.0 - alpha) * EmaxPrime;
     }
 
     private String buildNoCandidatesReason(FestivoUnit u, BuiltModel bm, int minProximityDays,
-                                           Map<Integer, int[]> eventiPerMese, int[] eventiQuestoAnnoPesanti) {
+                                           int[][] eventiAnnoMese, int[][] pesantiPerAnno, int baseYear) {
         StringBuilder sb = new StringBuilder();
         sb.append("Nessuna squadra disponibile per data=").append(u.dates.get(0)).append(" turno=").append(u.tipo).append(". ");
         
@@ -242,8 +539,9 @@ public class GreedySchedulerService {
         List<Integer> heavyBlocked = new ArrayList<>();
         
         // Analizza ogni squadra
-        for (int team = 1; team <= 10; team++) {
-            if (u.escluse.contains(team)) {
+        int T = bm.teams.teams();
+        for (int team = 1; team <= T; team++) {
+            if (u.escluse.get(team)) {
                 excluded.add(team);
                 continue;
             }
@@ -252,20 +550,13 @@ public class GreedySchedulerService {
             }
             
             // Proximity
-            boolean proxOk = true;
-            for (LocalDate d : u.dates) {
-                if (!proximityOk(team, d, minProximityDays)) {
-                    proxOk = false;
-                    break;
-                }
-            }
-            if (!proxOk) proximityBlocked.add(team);
+            if (!proximityOk(bm, team, u, minProximityDays)) proximityBlocked.add(team);
             
             // Monthly
-            if (eventiPerMese.get(team)[u.month - 1] >= 1) monthlyBlocked.add(team);
+            if (eventiAnnoMese[team][(u.year - baseYear) * 12 + u.month - 1] >= 1) monthlyBlocked.add(team);
             
             // Heavy
-            if (u.pesante && eventiQuestoAnnoPesanti[team] >= 1) heavyBlocked.add(team);
+            if (u.pesante && pesantiPerAnno[team][u.year - baseYear] >= 1) heavyBlocked.add(team);
         }
         
         // Costruisci messaggio dettagliato
@@ -296,7 +587,7 @@ public class GreedySchedulerService {
         
         // Squadre libere (non bloccate da nessun vincolo)
         List<Integer> free = new ArrayList<>();
-        for (int team = 1; team <= 10; team++) {
+        for (int team = 1; team <= T; team++) {
             if (!excluded.contains(team) && !proximityBlocked.contains(team) 
                 && !monthlyBlocked.contains(team) && !heavyBlocked.contains(team)
                 && (!u.forzata.isPresent() || u.forzata.get() == team)) {
@@ -0,0 +1,399 @@
+package com.example.crocerosacelestefestivinewbackend.service;
+
+import com.example.crocerosacelestefestivinewbackend.service.SchedulingCommon.BuiltModel;
+import com.example.crocerosacelestefestivinewbackend.service.SchedulingCommon.FestivoUnit;
+import com.example.crocerosacelestefestivinewbackend.service.dto.FestivoInputRow;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Diagnosi di un'assegnazione fallita: nucleo minimo di vincoli incompatibili tra forzate, esclusioni, prossimità ai
+ * turni ordinari, MP/SN dello stesso giorno, al più un festivo per squadra nel mese e un pesante per squadra nell'anno.
+ * <p>
+ * Ogni vincolo del BuiltModel è un elemento eliminabile, come la presenza di ogni festivo. Il controllo di fattibilità
+ * non è il MILP ma una ricerca sui domini delle squadre con propagazione (forward checking e matching di Hall sui
+ * gruppi "squadre diverse") e limite di nodi. Deletion filtering: si toglie un elemento alla volta e lo si rimette
+ * solo se senza di esso il resto non è più dimostrato impossibile. Il nucleo resta dimostrato impossibile; è minimo
+ * se nessun controllo si è fermato sul limite di nodi (festivi.diagnosis.node-limit) o sul budget
+ * (festivi.diagnosis.budget-ms).
+ */
+@Component
+public class InfeasibilityDiagnosis {
+    private static final Logger log = LoggerFactory.getLogger(InfeasibilityDiagnosis.class);
+    static final String FIELD = "__core__";
+
+    enum Verdict { INFEASIBLE, FEASIBLE, UNKNOWN }
+
+    // l'ordine è quello di eliminazione: prima i festivi (restringe il problema al conflitto), gli ultimi restano più spesso
+    enum Kind { FESTIVO, PROSSIMITA, ESCLUSIONE, STESSO_GIORNO, FORZATA, MESE, PESANTE }
+
+    /** Elemento eliminabile: un vincolo unario (unità, squadra) o un gruppo di unità a squadre diverse. label: id del festivo per gli unari. */
+    static final class Item {
+        final Kind kind;
+        final int[] units;
+        final int team;
+        final String label;
+
+        Item(Kind kind, int[] units, int team, String label) {
+            this.kind = kind;
+            this.units = units;
+            this.team = team;
+            this.label = label;
+        }
+    }
+
+    static final class Result {
+        final Verdict verdict;
+        final List<String> core; // descrizione dei vincoli del nucleo
+        final int[] coreRows; // riga Excel di riferimento per ogni vincolo
+        final Map<FestivoUnit, List<String>> byUnit; // vincoli del nucleo che toccano ogni festivo coinvolto
+        final boolean minimal;
+        final int checks;
+        final long millis;
+
+        Result(Verdict verdict, List<String> core, int[] coreRows, Map<FestivoUnit, List<String>> byUnit,
+               boolean minimal, int checks, long millis) {
+            this.verdict = verdict;
+            this.core = core;
+            this.coreRows = coreRows;
+            this.byUnit = byUnit;
+            this.minimal = minimal;
+            this.checks = checks;
+            this.millis = millis;
+        }
+    }
+
+    private final long budgetMs;
+    private final int nodeLimit;
+
+    public InfeasibilityDiagnosis(@Value("${festivi.diagnosis.budget-ms:2000}") long budgetMs,
+                                  @Value("${festivi.diagnosis.node-limit:20000}") int nodeLimit) {
+        this.budgetMs = Math.max(1, budgetMs);
+        this.nodeLimit = Math.max(1, nodeLimit);
+    }
+
+    /** Valori di default, per l'uso fuori da Spring (benchmark, replay). */
+    static InfeasibilityDiagnosis defaults() {
+        return new InfeasibilityDiagnosis(2000, 20000);
+    }
+
+    Result diagnose(BuiltModel bm, int minProximityDays) {
+        long t0 = System.currentTimeMillis();
+        long deadline = t0 + budgetMs;
+        Problem p = new Problem(bm, minProximityDays);
+        boolean[] active = new boolean[p.items.size()];
+        Arrays.fill(active, true);
+
+        int checks = 1;
+        Verdict full = p.check(active, nodeLimit, deadline);
+        if (full != Verdict.INFEASIBLE) {
+            log.info("[DIAGNOSIS] Full model verdict={} items={} durationMs={}", full, p.items.size(), System.currentTimeMillis() - t0);
+            return new Result(full, List.of(), new int[0], Map.of(), false, checks, System.currentTimeMillis() - t0);
+        }
+
+        boolean minimal = true;
+        for (int i = 0; i < active.length; i++) {
+            if (!active[i]) continue;
+            if (!p.relevant(i, active)) {
+                active[i] = false; // il festivo è già stato tolto: il vincolo non può far parte del nucleo
+                continue;
+            }
+            if (System.currentTimeMillis() > deadline) {
+                minimal = false;
+                break;
+            }
+            active[i] = false;
+            Verdict v = p.check(active, nodeLimit, deadline);
+            checks++;
+            if (v != Verdict.INFEASIBLE) {
+                active[i] = true;
+                if (v == Verdict.UNKNOWN) minimal = false;
+            }
+        }
+        // l'interruzione per budget lascia attivi elementi non più rilevanti
+        for (int i = 0; i < active.length; i++) if (active[i] && !p.relevant(i, active)) active[i] = false;
+
+        // prossimità ed esclusioni dello stesso festivo in un'unica voce con l'elenco delle squadre
+        Map<String, List<Item>> merged = new LinkedHashMap<>();
+        for (int i = 0; i < active.length; i++) {
+            Item it = p.items.get(i);
+            if (!active[i] || it.kind == Kind.FESTIVO) continue;
+            String key = it.kind == Kind.PROSSIMITA || it.kind == Kind.ESCLUSIONE ? it.kind + "|" + it.units[0] : String.valueOf(i);
+            merged.computeIfAbsent(key, k -> new ArrayList<>()).add(it);
+        }
+        List<String> core = new ArrayList<>();
+        List<Integer> rows = new ArrayList<>();
+        Map<FestivoUnit, List<String>> byUnit = new LinkedHashMap<>();
+        for (List<Item> same : merged.values()) {
+            Item it = same.get(0);
+            String msg = p.describe(same, active);
+            core.add(msg);
+            int firstUnit = -1;
+            for (int u : it.units) {
+                if (!active[p.unitItem[u]]) continue;
+                if (firstUnit < 0) firstUnit = u;
+                byUnit.computeIfAbsent(bm.units.get(u), k -> new ArrayList<>()).add(msg);
+            }
+            rows.add(firstUnit < 0 ? 0 : bm.units.get(firstUnit).rows.get(0).excelRowNumber);
+        }
+        long dt = System.currentTimeMillis() - t0;
+        log.info("[DIAGNOSIS] Core size={} units={} minimal={} checks={} durationMs={}", core.size(), byUnit.size(), minimal, checks, dt);
+        return new Result(Verdict.INFEASIBLE, core, rows.stream().mapToInt(Integer::intValue).toArray(), byUnit, minimal, checks, dt);
+    }
+
+    /**
+     * Nucleo nelle violazioni (campo __core__: una voce di riepilogo e una per vincolo), nella colonna note / errori
+     * delle righe coinvolte e nella traccia. Per un verdetto diverso da INFEASIBLE non aggiunge nulla.
+     */
+    static void report(Result r, List<Map<String, Object>> violations, SchedulingTrace trace) {
+        if (r.verdict != Verdict.INFEASIBLE) return;
+        String summary = "Vincoli incompatibili: " + r.core.size() + " vincoli su " + r.byUnit.size() + " festivi"
+                + (r.minimal ? ", togliendone o modificandone uno qualsiasi il conflitto scompare"
+                             : " (nucleo non minimo: diagnosi interrotta per limite di tempo o di ricerca)");
+        ValidationUtil.addV(violations, 0, FIELD, summary);
+        trace.record("nucleo", null, summary);
+        for (int i = 0; i < r.core.size(); i++) {
+            ValidationUtil.addV(violations, r.coreRows[i], FIELD, r.core.get(i));
+            trace.record("nucleo", null, r.core.get(i));
+        }
+        for (Map.Entry<FestivoUnit, List<String>> e : r.byUnit.entrySet()) {
+            String note = "Vincoli incompatibili: " + String.join("; ", e.getValue());
+            for (FestivoInputRow row : e.getKey().rows) {
+                row.errorMessage = row.errorMessage == null || row.errorMessage.isEmpty() ? note : note + "; " + row.errorMessage;
+            }
+        }
+    }
+
+    /** Elementi del BuiltModel e controllo di fattibilità su un sottoinsieme attivo. */
+    private static final class Problem {
+        final BuiltModel bm;
+        final int minProximityDays;
+        final int U;
+        final int T;
+        final List<Item> items = new ArrayList<>();
+        final int[] unitItem; // indice dell'elemento FESTIVO di ogni unità
+
+        Problem(BuiltModel bm, int minProximityDays) {
+            this.bm = bm;
+            this.minProximityDays = minProximityDays;
+            this.U = bm.units.size();
+            this.T = bm.teams.teams();
+            this.unitItem = new int[U];
+
+            List<Item> unary = new ArrayList<>();
+            for (int u = 0; u < U; u++) {
+                FestivoUnit fu = bm.units.get(u);
+                unitItem[u] = items.size();
+                items.add(new Item(Kind.FESTIVO, new int[]{u}, 0, fu.id));
+                for (int t = 1; t <= T; t++) {
+                    boolean proxOk = true;
+                    for (LocalDate d : fu.dates) {
+                        if (!bm.proximityOk(t, d, minProximityDays)) { proxOk = false; break; }
+                    }
+                    if (!proxOk) unary.add(new Item(Kind.PROSSIMITA, new int[]{u}, t, fu.id));
+                    if (fu.escluse.get(t)) unary.add(new Item(Kind.ESCLUSIONE, new int[]{u}, t, fu.id));
+                }
+                if (fu.forzata.isPresent()) {
+                    unary.add(new Item(Kind.FORZATA, new int[]{u}, fu.forzata.get(), "Forzata: " + fu.id + " alla squadra " + fu.forzata.get()));
+                }
+            }
+
+            // gruppi a squadre diverse, come nel modello MILP: MP/SN stesso giorno, mese, pesanti nell'anno
+            Map<LocalDate, Integer> mpAtDate = new HashMap<>();
+            Map<LocalDate, Integer> snAtDate = new HashMap<>();
+            Map<String, List<Integer>> byMonth = new TreeMap<>();
+            Map<Integer, List<Integer>> heavyByYear = new TreeMap<>();
+            for (int u = 0; u < U; u++) {
+                FestivoUnit fu = bm.units.get(u);
+                if ("SN".equals(fu.tipo)) snAtDate.put(fu.dates.get(0), u);
+                else for (LocalDate d : fu.dates) mpAtDate.put(d, u);
+                byMonth.computeIfAbsent(fu.year + "-" + String.format("%02d", fu.month), k -> new ArrayList<>()).add(u);
+                if (fu.pesante) heavyByYear.computeIfAbsent(fu.year, k -> new ArrayList<>()).add(u);
+            }
+            List<Item> groups = new ArrayList<>();
+            for (Map.Entry<LocalDate, Integer> e : new TreeMap<>(mpAtDate).entrySet()) {
+                Integer sn = snAtDate.get(e.getKey());
+                if (sn == null) continue;
+                groups.add(new Item(Kind.STESSO_GIORNO, new int[]{e.getValue(), sn}, 0,
+                        "Stesso giorno: MP e SN del " + e.getKey() + " a squadre diverse"));
+            }
+            for (Map.Entry<String, List<Integer>> e : byMonth.entrySet()) {
+                if (e.getValue().size() < 2) continue;
+                groups.add(new Item(Kind.MESE, e.getValue().stream().mapToInt(Integer::intValue).toArray(), 0,
+                        "Al più un festivo per squadra nel mese " + e.getKey()));
+            }
+            for (Map.Entry<Integer, List<Integer>> e : heavyByYear.entrySet()) {
+                if (e.getValue().size() < 2) continue;
+                groups.add(new Item(Kind.PESANTE, e.getValue().stream().mapToInt(Integer::intValue).toArray(), 0,
+                        "Al più un festivo pesante per squadra nell'anno " + e.getKey()));
+            }
+            items.addAll(unary);
+            items.addAll(groups);
+            items.sort(Comparator.comparing(it -> it.kind)); // stabile: a parità di tipo resta l'ordine per data
+            for (int i = 0; i < items.size(); i++) {
+                Item it = items.get(i);
+                if (it.kind == Kind.FESTIVO) unitItem[it.units[0]] = i;
+            }
+        }
+
+        boolean relevant(int i, boolean[] active) {
+            Item it = items.get(i);
+            if (it.kind == Kind.FESTIVO) return true;
+            int present = 0;
+            for (int u : it.units) if (active[unitItem[u]]) present++;
+            return it.units.length == 1 ? present == 1 : present >= 2;
+        }
+
+        /** Voce del nucleo: prossimità ed esclusioni con l'elenco delle squadre, i gruppi con i festivi rimasti. */
+        String describe(List<Item> same, boolean[] active) {
+            Item it = same.get(0);
+            switch (it.kind) {
+                case PROSSIMITA, ESCLUSIONE -> {
+                    List<Integer> teams = same.stream().map(x -> x.team).toList();
+                    String who = teams.size() == 1 ? "squadra " + teams.get(0) : "squadre " + teams;
+                    if (it.kind == Kind.PROSSIMITA) {
+                        return "Prossimità: " + who + " con turno ordinario a meno di " + minProximityDays + " giorni da " + it.label;
+                    }
+                    return "Esclusione: " + who + (teams.size() == 1 ? " esclusa" : " escluse") + " da " + it.label;
+                }
+                case MESE, PESANTE -> {
+                    StringJoiner sj = new StringJoiner(", ", it.label + " (", ")");
+                    for (int u : it.units) if (active[unitItem[u]]) sj.add(bm.units.get(u).id);
+                    return sj.toString();
+                }
+                default -> {
+                    return it.label;
+                }
+            }
+        }
+
+        Verdict check(boolean[] active, int nodeLimit, long deadline) {
+            BitSet[] dom = new BitSet[U];
+            for (int u = 0; u < U; u++) {
+                if (!active[unitItem[u]]) continue;
+                dom[u] = new BitSet(T + 1);
+                dom[u].set(1, T + 1);
+            }
+            List<int[]> groups = new ArrayList<>();
+            for (int i = 0; i < items.size(); i++) {
+                if (!active[i]) continue;
+                Item it = items.get(i);
+                switch (it.kind) {
+                    case FESTIVO -> { }
+                    case PROSSIMITA, ESCLUSIONE -> {
+                        BitSet d = dom[it.units[0]];
+                        if (d != null) d.clear(it.team);
+                    }
+                    case FORZATA -> {
+                        BitSet d = dom[it.units[0]];
+                        if (d != null) {
+                            boolean keep = d.get(it.team);
+                            d.clear();
+                            if (keep) d.set(it.team);
+                        }
+                    }
+                    default -> {
+                        int[] g = Arrays.stream(it.units).filter(u -> dom[u] != null).toArray();
+                        if (g.length >= 2) groups.add(g);
+                    }
+                }
+            }
+            List<List<int[]>> groupsOf = new ArrayList<>(U);
+            for (int u = 0; u < U; u++) groupsOf.add(new ArrayList<>());
+            for (int[] g : groups) for (int u : g) groupsOf.get(u).add(g);
+            return new Search(groups, groupsOf, nodeLimit, deadline).solve(dom);
+        }
+
+        /** Ricerca in profondità sul festivo con meno squadre ammesse, con propagazione a ogni nodo. */
+        private final class Search {
+            final List<int[]> groups;
+            final List<List<int[]>> groupsOf;
+            final int nodeLimit;
+            final long deadline;
+            final int[] matchUnit = new int[T + 1]; // matching di Hall: squadra -> posizione nel gruppo
+            final boolean[] seen = new boolean[T + 1];
+            int nodes;
+
+            Search(List<int[]> groups, List<List<int[]>> groupsOf, int nodeLimit, long deadline) {
+                this.groups = groups;
+                this.groupsOf = groupsOf;
+                this.nodeLimit = nodeLimit;
+                this.deadline = deadline;
+            }
+
+            Verdict solve(BitSet[] dom) {
+                if (!propagate(dom)) return Verdict.INFEASIBLE;
+                int best = -1, bestSize = Integer.MAX_VALUE;
+                for (int u = 0; u < U; u++) {
+                    if (dom[u] == null) continue;
+                    int c = dom[u].cardinality();
+                    if (c > 1 && c < bestSize) { best = u; bestSize = c; }
+                }
+                if (best < 0) return Verdict.FEASIBLE;
+                for (int t = dom[best].nextSetBit(1); t >= 0; t = dom[best].nextSetBit(t + 1)) {
+                    if (++nodes > nodeLimit || (nodes & 255) == 0 && System.currentTimeMillis() > deadline) return Verdict.UNKNOWN;
+                    BitSet[] child = new BitSet[U];
+                    for (int u = 0; u < U; u++) if (dom[u] != null) child[u] = (BitSet) dom[u].clone();
+                    child[best].clear();
+                    child[best].set(t);
+                    Verdict v = solve(child);
+                    if (v != Verdict.INFEASIBLE) return v;
+                }
+                return Verdict.INFEASIBLE;
+            }
+
+            // squadra fissata: tolta dagli altri festivi dei suoi gruppi; poi ogni gruppo deve avere un matching completo
+            boolean propagate(BitSet[] dom) {
+                ArrayDeque<Integer> fixed = new ArrayDeque<>();
+                for (int u = 0; u < U; u++) {
+                    if (dom[u] == null) continue;
+                    int c = dom[u].cardinality();
+                    if (c == 0) return false;
+                    if (c == 1) fixed.add(u);
+                }
+                while (!fixed.isEmpty()) {
+                    int u = fixed.poll();
+                    int t = dom[u].nextSetBit(0);
+                    for (int[] g : groupsOf.get(u)) {
+                        for (int v : g) {
+                            if (v == u || !dom[v].get(t)) continue;
+                            dom[v].clear(t);
+                            int c = dom[v].cardinality();
+                            if (c == 0) return false;
+                            if (c == 1) fixed.add(v);
+                        }
+                    }
+                }
+                for (int[] g : groups) if (!hallOk(g, dom)) return false;
+                return true;
+            }
+
+            private boolean hallOk(int[] g, BitSet[] dom) {
+                Arrays.fill(matchUnit, -1);
+                for (int i = 0; i < g.length; i++) {
+                    Arrays.fill(seen, false);
+                    if (!augment(i, g, dom)) return false;
+                }
+                return true;
+            }
+
+            private boolean augment(int i, int[] g, BitSet[] dom) {
+                BitSet d = dom[g[i]];
+                for (int t = d.nextSetBit(0); t >= 0; t = d.nextSetBit(t + 1)) {
+                    if (seen[t]) continue;
+                    seen[t] = true;
+                    if (matchUnit[t] < 0 || augment(matchUnit[t], g, dom)) {
+                        matchUnit[t] = i;
+                        return true;
+                    }
+                }
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,492 @@
+package com.example.crocerosacelestefestivinewbackend.service;
+
+import com.example.crocerosacelestefestivinewbackend.service.dto.FestivoInputRow;
+import com.google.ortools.linearsolver.MPConstraint;
+import com.google.ortools.linearsolver.MPObjective;
+import com.google.ortools.linearsolver.MPSolver;
+import com.google.ortools.linearsolver.MPVariable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Supplier;
+
+import static com.example.crocerosacelestefestivinewbackend.service.SchedulingCommon.*;
+
+/**
+ * Large Neighborhood Search sopra una soluzione iniziale (greedy, LP arrotondato, incumbent MILP o flusso di costo
+ * minimo): a ogni giro libera tutte le unità di alcune finestre di mesi consecutivi (o tutti i pesanti di un anno),
+ * tiene fisse le altre e risolve il sottoproblema con SCIP entro un limite breve. Più vicinati su mesi disgiunti girano insieme sul pool solver;
+ * i miglioramenti si applicano uno alla volta sulla soluzione corrente, solo se restano ammissibili (il vincolo dei
+ * pesanti lega mesi diversi dello stesso anno) e abbassano lo score. Il ciclo termina a budget scaduto o quando ogni
+ * vicinato (ogni finestra e ogni anno dei pesanti) è stato provato dall'ultimo miglioramento senza migliorare.
+ * L'obiettivo è lo score alpha del greedy, registrato a ogni miglioramento. La soluzione iniziale di un engine con
+ * ammissione (milp, lp, flow) occupa anche uno slot di quell'engine, oltre a quello dell'LNS.
+ */
+@Service
+public class LnsSchedulerService {
+    private static final Logger log = LoggerFactory.getLogger(LnsSchedulerService.class);
+    private static final String ENGINE = SchedulingMetrics.ENGINE_LNS;
+    private static final double EPS = 1e-9;
+    public static final String INITIAL_GREEDY = "greedy";
+    public static final String INITIAL_LP = "lp";
+    public static final String INITIAL_MILP = "milp";
+    public static final String INITIAL_FLOW = "flow";
+
+    private final SchedulingMetrics metrics;
+    private final SolverAdmission admission;
+    private final CpuOffload cpuOffload;
+    private final OrToolsNatives natives;
+    private final GreedySchedulerService greedy;
+    private final LpRoundingSchedulerService lp;
+    private final MilpSchedulerService milp;
+    private final FlowSchedulerService flow;
+    private final int windowMonths;
+    private final long subTimeLimitMs;
+    private final int parallel;
+    private final long seed;
+    private final int defaultBudgetSeconds;
+
+    public LnsSchedulerService(SchedulingMetrics metrics,
+                               SolverAdmission admission,
+                               CpuOffload cpuOffload,
+                               OrToolsNatives natives,
+                               GreedySchedulerService greedy,
+                               LpRoundingSchedulerService lp,
+                               MilpSchedulerService milp,
+                               FlowSchedulerService flow,
+                               @Value("${festivi.lns.window-months:2}") int windowMonths,
+                               @Value("${festivi.lns.sub-time-limit-ms:1000}") long subTimeLimitMs,
+                               @Value("${festivi.lns.parallel:0}") int parallel,
+                               @Value("${festivi.lns.seed:1}") long seed,
+                               @Value("${festivi.lns.budget-seconds:10}") int defaultBudgetSeconds) {
+        this.metrics = metrics;
+        this.admission = admission;
+        this.cpuOffload = cpuOffload;
+        this.natives = natives;
+        this.greedy = greedy;
+        this.lp = lp;
+        this.milp = milp;
+        this.flow = flow;
+        this.windowMonths = Math.max(1, windowMonths);
+        this.subTimeLimitMs = Math.max(100, subTimeLimitMs);
+        this.parallel = parallel;
+        this.seed = seed;
+        this.defaultBudgetSeconds = Math.max(1, defaultBudgetSeconds);
+    }
+
+    /** Punto dell'andamento: score della soluzione corrente dopo un miglioramento. */
+    public static final class ObjectivePoint {
+        public final String section;
+        public final long millis; // dall'inizio della ricerca
+        public final double score;
+        public final long spread;
+        public final int emax;
+        public final String source; // soluzione iniziale o vicinato che ha migliorato
+
+        ObjectivePoint(String section, long millis, double score, long spread, int emax, String source) {
+            this.section = section;
+            this.millis = millis;
+            this.score = score;
+            this.spread = spread;
+            this.emax = emax;
+            this.source = source;
+        }
+
+        public ObjectivePoint withSection(String name) {
+            return new ObjectivePoint(name, millis, score, spread, emax, source);
+        }
+    }
+
+    public int defaultBudgetSeconds() {
+        return defaultBudgetSeconds;
+    }
+
+    @SuppressWarnings("try") // il permesso serve solo a essere rilasciato a fine solve
+    public ScheduleResult schedule(List<FestivoInputRow> rows,
+                                   Set<String> pesanti,
+                                   LocalDate start,
+                                   LocalDate end,
+                                   int minProximityDays,
+                                   double alpha,
+                                   String initial,
+                                   int budgetSeconds,
+                                   TeamConfig teams,
+                                   SchedulingTrace trace) {
+        // soluzione iniziale con il suo engine (metriche e traccia sue); se fallisce la sua ValidationException arriva al client.
+        // Passa dall'ammissione di quell'engine: un initial=milp non aggira gli slot di SCIP (429 se la coda milp è piena)
+        long t0 = System.currentTimeMillis();
+        Map<String, Integer> start0;
+        try (SolverAdmission.Permit permit = admission.acquire(initial)) {
+            start0 = cpuOffload.solve(() -> switch (initial) {
+                case INITIAL_LP -> lp.schedule(rows, pesanti, start, end, minProximityDays, alpha, teams, trace).assignment;
+                case INITIAL_FLOW -> flow.schedule(rows, pesanti, start, end, minProximityDays, alpha, teams, trace).assignment;
+                case INITIAL_MILP -> milp.schedule(rows, pesanti, start, end, minProximityDays, alpha,
+                        Math.max(1, budgetSeconds / 4), false, teams, trace).assignment;
+                default -> greedy.schedule(rows, pesanti, start, end, minProximityDays, alpha, true, teams, trace).assignment;
+            });
+        }
+        long deadline = t0 + budgetSeconds * 1000L;
+        metrics.solveStarted(ENGINE);
+        try {
+            return search(rows, pesanti, start, end, minProximityDays, alpha, initial, start0, t0, deadline, teams, trace);
+        } finally {
+            metrics.solveFinished(ENGINE);
+        }
+    }
+
+    private ScheduleResult search(List<FestivoInputRow> rows,
+                                  Set<String> pesanti,
+                                  LocalDate start,
+                                  LocalDate end,
+                                  int minProximityDays,
+                                  double alpha,
+                                  String initial,
+                                  Map<String, Integer> start0,
+                                  long t0,
+                                  long deadline,
+                                  TeamConfig teams,
+                                  SchedulingTrace trace) {
+        natives.ensureLoaded();
+        SchedulingMetrics.Phase unitsPhase = metrics.start();
+        BuiltModel bm = buildUnits(rows, pesanti, start, end, teams);
+        long unitsNanos = metrics.stop(unitsPhase, SchedulingMetrics.PHASE_BUILD_UNITS, ENGINE);
+        metrics.units(ENGINE, bm.units.size());
+        trace.phase(SchedulingMetrics.PHASE_BUILD_UNITS, unitsNanos, "units=" + bm.units.size() + " teams=" + teams);
+
+        SchedulingMetrics.Phase solvePhase = metrics.start();
+        Instance in = new Instance(bm, start, minProximityDays, alpha);
+        int[] current = new int[in.U];
+        for (int i = 0; i < in.U; i++) current[i] = start0.get(unitKey(in.units.get(i)));
+        double score = in.score(current);
+        List<ObjectivePoint> progress = new ArrayList<>();
+        progress.add(in.point(current, score, System.currentTimeMillis() - t0, "iniziale " + initial));
+        log.info("[LNS] Start. initial={} score={} windows={} parallel={} budgetMs={}", initial, score, in.windows.size(),
+                workers(), deadline - System.currentTimeMillis());
+
+        Random rnd = new Random(seed);
+        int rounds = 0;
+        int solved = 0;
+        Set<Neighborhood> tried = new HashSet<>(); // vicinati distinti provati dall'ultimo miglioramento
+        int total = in.windows.size() + in.heavyYears.size();
+        while (System.currentTimeMillis() < deadline && tried.size() < total) {
+            List<Neighborhood> picked = pick(in, rnd, tried);
+            int[] snapshot = current.clone();
+            List<Supplier<int[]>> work = new ArrayList<>(picked.size());
+            for (Neighborhood n : picked) {
+                long limit = Math.min(subTimeLimitMs, deadline - System.currentTimeMillis());
+                work.add(() -> in.solve(snapshot, n, Math.max(1, limit)));
+            }
+            List<int[]> results = cpuOffload.callAll(work);
+            rounds++;
+            solved += picked.size();
+            tried.addAll(picked);
+            // unione: i miglioramenti dei vicinati, dal migliore, applicati solo se ancora ammissibili e migliorativi
+            List<Integer> byScore = new ArrayList<>();
+            double[] candidateScore = new double[results.size()];
+            for (int k = 0; k < results.size(); k++) {
+                if (results.get(k) == null) continue;
+                candidateScore[k] = in.score(results.get(k));
+                if (candidateScore[k] < score - EPS) byScore.add(k);
+            }
+            byScore.sort(Comparator.comparingDouble(k -> candidateScore[k]));
+            for (int k : byScore) {
+                int[] merged = current.clone();
+                for (int i : picked.get(k).units) merged[i] = results.get(k)[i];
+                if (!in.feasible(merged)) continue;
+                double s = in.score(merged);
+                if (s >= score - EPS) continue;
+                current = merged;
+                score = s;
+                tried.clear();
+                progress.add(in.point(current, score, System.currentTimeMillis() - t0, picked.get(k).name));
+                if (trace.enabled()) trace.record("miglioramento", picked.get(k).name, "score=" + format(score));
+            }
+        }
+        long solveNanos = metrics.stop(solvePhase, SchedulingMetrics.PHASE_SOLVE, ENGINE);
+        metrics.outcome(ENGINE, SchedulingMetrics.OUTCOME_FEASIBLE);
+        String stop = tried.size() >= total ? "vicinati esauriti" : "budget";
+        log.info("[LNS] Completed. rounds={} subproblems={} improvements={} score={} stop={} durationMs={}", rounds, solved,
+                progress.size() - 1, score, stop, System.currentTimeMillis() - t0);
+        trace.phase(SchedulingMetrics.PHASE_SOLVE, solveNanos, "rounds=" + rounds + " subproblems=" + solved
+                + " improvements=" + (progress.size() - 1) + " score=" + format(score) + " stop=" + stop);
+
+        traceAssigned(trace, in.units, current);
+        return new ScheduleResult(assignmentOf(in.units, current, in.T), bm.mutatedRows, score, Double.NaN, List.of(), progress);
+    }
+
+    private int workers() {
+        return parallel > 0 ? parallel : cpuOffload.threads();
+    }
+
+    /**
+     * Vicinati del giro, tra quelli non ancora provati dall'ultimo miglioramento: finestre di mesi disgiunte a partire
+     * da una a caso, a volte i pesanti di un anno. Almeno un vicinato non provato deve esistere.
+     */
+    private List<Neighborhood> pick(Instance in, Random rnd, Set<Neighborhood> tried) {
+        List<Neighborhood> windows = new ArrayList<>();
+        for (Neighborhood w : in.windows) if (!tried.contains(w)) windows.add(w);
+        List<Neighborhood> heavy = new ArrayList<>();
+        for (Neighborhood h : in.heavyYears) if (!tried.contains(h)) heavy.add(h);
+        int n = Math.max(1, Math.min(workers(), windows.size()));
+        List<Neighborhood> out = new ArrayList<>(n);
+        if (!heavy.isEmpty() && rnd.nextInt(windows.size() + heavy.size()) < heavy.size()) {
+            out.add(heavy.get(rnd.nextInt(heavy.size()))); // da solo: tocca tutti i mesi dell'anno
+            return out;
+        }
+        int first = rnd.nextInt(windows.size());
+        int stride = Math.max(1, windows.size() / n);
+        Set<Integer> usedMonths = new HashSet<>();
+        for (int k = 0; k < n; k++) {
+            Neighborhood w = windows.get((first + k * stride) % windows.size());
+            boolean disjoint = true;
+            for (int m : w.months) if (usedMonths.contains(m)) { disjoint = false; break; }
+            if (!disjoint) continue;
+            for (int m : w.months) usedMonths.add(m);
+            out.add(w);
+        }
+        return out;
+    }
+
+    private static String format(double v) {
+        return String.format(Locale.ROOT, "%.4f", v);
+    }
+
+    /** Unità liberate da un vicinato. */
+    private static final class Neighborhood {
+        final String name;
+        final int[] units;
+        final int[] months; // anno-mese coperti (vuoto per i pesanti di un anno)
+
+        Neighborhood(String name, int[] units, int[] months) {
+            this.name = name;
+            this.units = units;
+            this.months = months;
+        }
+    }
+
+    /** Istanza in sola lettura condivisa dai sottoproblemi: domini, gruppi dei vincoli e vicinati. */
+    private final class Instance {
+        final List<FestivoUnit> units;
+        final int U;
+        final int T;
+        final double alpha;
+        final long totalPeso;
+        final boolean[][] allowed; // [unità][squadra]: forzata, esclusioni, prossimità
+        final int[] ym;
+        final int[][] dayPeers;
+        final Map<Integer, List<Integer>> byMonth = new TreeMap<>();
+        final Map<Integer, List<Integer>> heavyByYear = new TreeMap<>();
+        final List<Neighborhood> windows = new ArrayList<>();
+        final List<Neighborhood> heavyYears = new ArrayList<>();
+
+        Instance(BuiltModel bm, LocalDate start, int minProximityDays, double alpha) {
+            this.units = bm.units;
+            this.U = units.size();
+            this.T = bm.teams.teams();
+            this.alpha = alpha;
+            long tot = 0;
+            for (FestivoUnit u : units) tot += u.peso;
+            this.totalPeso = tot;
+            this.allowed = new boolean[U][T + 1];
+            this.ym = new int[U];
+            int baseYear = start.getYear();
+            for (int i = 0; i < U; i++) {
+                FestivoUnit u = units.get(i);
+                ym[i] = (u.year - baseYear) * 12 + u.month - 1;
+                byMonth.computeIfAbsent(ym[i], k -> new ArrayList<>()).add(i);
+                if (u.pesante) heavyByYear.computeIfAbsent(u.year, k -> new ArrayList<>()).add(i);
+                for (int t = 1; t <= T; t++) {
+                    boolean ok = !u.escluse.get(t) && (u.forzata.isEmpty() || u.forzata.get() == t);
+                    for (LocalDate d : u.dates) if (ok && !bm.proximityOk(t, d, minProximityDays)) ok = false;
+                    allowed[i][t] = ok;
+                }
+            }
+            this.dayPeers = dayPeers(units);
+            // una finestra per ogni mese di partenza: windowMonths mesi consecutivi con festivi
+            List<Integer> months = new ArrayList<>(byMonth.keySet());
+            int w = Math.min(windowMonths, months.size());
+            for (int s = 0; s + w <= months.size(); s++) {
+                List<Integer> free = new ArrayList<>();
+                int[] ms = new int[w];
+                for (int k = 0; k < w; k++) {
+                    ms[k] = months.get(s + k);
+                    free.addAll(byMonth.get(ms[k]));
+                }
+                String name = "mesi " + label(baseYear, ms[0]) + (w > 1 ? ".." + label(baseYear, ms[w - 1]) : "");
+                windows.add(new Neighborhood(name, free.stream().mapToInt(Integer::intValue).toArray(), ms));
+            }
+            for (Map.Entry<Integer, List<Integer>> e : heavyByYear.entrySet()) {
+                if (e.getValue().size() < 2) continue;
+                heavyYears.add(new Neighborhood("pesanti " + e.getKey(), e.getValue().stream().mapToInt(Integer::intValue).toArray(), new int[0]));
+            }
+        }
+
+        private String label(int baseYear, int ym) {
+            return String.format(Locale.ROOT, "%d-%02d", baseYear + ym / 12, ym % 12 + 1);
+        }
+
+        /**
+         * Sottoproblema esatto: variabili solo per le unità liberate, i carichi delle altre sono costanti. Le squadre
+         * già occupate da unità fisse nello stesso mese, anno pesante o giorno sono escluse dal dominio. Restituisce la
+         * soluzione completa (fisse invariate) o null se SCIP non trova nulla entro il limite.
+         */
+        int[] solve(int[] snapshot, Neighborhood n, long limitMs) {
+            boolean[] free = new boolean[U];
+            for (int i : n.units) free[i] = true;
+            long[] w0 = new long[T + 1];
+            int[] e0 = new int[T + 1];
+            for (int i = 0; i < U; i++) {
+                if (free[i]) continue;
+                w0[snapshot[i]] += units.get(i).peso;
+                e0[snapshot[i]] += 1;
+            }
+            MPSolver solver = MPSolver.createSolver("SCIP");
+            if (solver == null) throw new RuntimeException("Solver SCIP non disponibile");
+            try {
+                MPVariable[][] x = new MPVariable[U][];
+                List<MPVariable> hintVars = new ArrayList<>();
+                List<Double> hintValues = new ArrayList<>();
+                for (int i : n.units) {
+                    x[i] = new MPVariable[T + 1];
+                    MPConstraint one = solver.makeConstraint(1, 1, "one_u" + i);
+                    for (int t = 1; t <= T; t++) {
+                        if (!allowed[i][t] || blockedByFixed(snapshot, free, i, t)) continue;
+                        x[i][t] = solver.makeIntVar(0, 1, "x_u" + i + "_t" + t);
+                        one.setCoefficient(x[i][t], 1);
+                        hintVars.add(x[i][t]);
+                        hintValues.add(snapshot[i] == t ? 1.0 : 0.0);
+                    }
+                }
+                // al più una unità liberata per squadra in ogni mese e in ogni anno tra i pesanti, MP/SN dello stesso giorno diversi
+                addAtMostOne(solver, x, n.units, i -> "m" + ym[i], i -> true);
+                addAtMostOne(solver, x, n.units, i -> "h" + units.get(i).year, i -> units.get(i).pesante);
+                for (int i : n.units) {
+                    for (int q : dayPeers[i]) {
+                        if (q < i || !free[q]) continue;
+                        for (int t = 1; t <= T; t++) {
+                            if (x[i][t] == null || x[q][t] == null) continue;
+                            MPConstraint c = solver.makeConstraint(0, 1, "day_u" + i + "_u" + q + "_t" + t);
+                            c.setCoefficient(x[i][t], 1);
+                            c.setCoefficient(x[q][t], 1);
+                        }
+                    }
+                }
+                MPVariable L = solver.makeNumVar(0, MPSolver.infinity(), "L");
+                MPVariable Lmin = solver.makeNumVar(0, MPSolver.infinity(), "Lmin");
+                MPVariable Emax = solver.makeNumVar(0, MPSolver.infinity(), "Emax");
+                for (int t = 1; t <= T; t++) {
+                    // L >= W_t >= Lmin e Emax >= E_t con W_t = w0 + somma dei pesi liberati
+                    MPConstraint cl = solver.makeConstraint(w0[t], MPSolver.infinity(), "capL_t" + t);
+                    MPConstraint cm = solver.makeConstraint(-MPSolver.infinity(), w0[t], "capLmin_t" + t);
+                    MPConstraint ce = solver.makeConstraint(e0[t], MPSolver.infinity(), "capE_t" + t);
+                    cl.setCoefficient(L, 1);
+                    cm.setCoefficient(Lmin, 1);
+                    ce.setCoefficient(Emax, 1);
+                    for (int i : n.units) {
+                        if (x[i][t] == null) continue;
+                        cl.setCoefficient(x[i][t], -units.get(i).peso);
+                        cm.setCoefficient(x[i][t], -units.get(i).peso);
+                        ce.setCoefficient(x[i][t], -1);
+                    }
+                }
+                MPObjective obj = solver.objective();
+                double wL = alpha / Math.max(1.0, (double) totalPeso);
+                double wE = (1.0 - alpha) / Math.max(1.0, (double) U);
+                obj.setCoefficient(L, wL * MilpSchedulerService.OBJECTIVE_SCALE);
+                obj.setCoefficient(Lmin, -wL * MilpSchedulerService.OBJECTIVE_SCALE);
+                obj.setCoefficient(Emax, wE * MilpSchedulerService.OBJECTIVE_SCALE);
+                obj.setMinimization();
+                solver.setHint(hintVars.toArray(new MPVariable[0]), hintValues.stream().mapToDouble(Double::doubleValue).toArray());
+                solver.setTimeLimit(limitMs);
+                MPSolver.ResultStatus status = solver.solve();
+                if (status != MPSolver.ResultStatus.OPTIMAL && status != MPSolver.ResultStatus.FEASIBLE) return null;
+                int[] out = snapshot.clone();
+                for (int i : n.units) {
+                    for (int t = 1; t <= T; t++) {
+                        if (x[i][t] != null && x[i][t].solutionValue() > 0.5) { out[i] = t; break; }
+                    }
+                }
+                return out;
+            } finally {
+                solver.delete();
+            }
+        }
+
+        private void addAtMostOne(MPSolver solver, MPVariable[][] x, int[] freeUnits,
+                                  java.util.function.IntFunction<String> group, java.util.function.IntPredicate member) {
+            Map<String, List<Integer>> groups = new HashMap<>();
+            for (int i : freeUnits) if (member.test(i)) groups.computeIfAbsent(group.apply(i), k -> new ArrayList<>()).add(i);
+            for (Map.Entry<String, List<Integer>> e : groups.entrySet()) {
+                if (e.getValue().size() < 2) continue;
+                for (int t = 1; t <= T; t++) {
+                    MPConstraint c = solver.makeConstraint(0, 1, e.getKey() + "_t" + t);
+                    for (int i : e.getValue()) if (x[i][t] != null) c.setCoefficient(x[i][t], 1);
+                }
+            }
+        }
+
+        // la squadra t ha già un'unità fissa nello stesso mese, un pesante fisso nello stesso anno o il turno opposto del giorno
+        private boolean blockedByFixed(int[] snapshot, boolean[] free, int i, int t) {
+            for (int j : byMonth.get(ym[i])) if (!free[j] && snapshot[j] == t) return true;
+            if (units.get(i).pesante) {
+                for (int j : heavyByYear.get(units.get(i).year)) if (!free[j] && snapshot[j] == t) return true;
+            }
+            for (int q : dayPeers[i]) if (!free[q] && snapshot[q] == t) return true;
+            return false;
+        }
+
+        /** Controllo completo dopo l'unione: un mese e un pesante all'anno per squadra, MP/SN dello stesso giorno diversi. */
+        boolean feasible(int[] a) {
+            for (List<Integer> group : byMonth.values()) if (!distinct(a, group)) return false;
+            for (List<Integer> group : heavyByYear.values()) if (!distinct(a, group)) return false;
+            for (int i = 0; i < U; i++) {
+                if (!allowed[i][a[i]]) return false;
+                for (int q : dayPeers[i]) if (a[q] == a[i]) return false;
+            }
+            return true;
+        }
+
+        private boolean distinct(int[] a, List<Integer> group) {
+            boolean[] seen = new boolean[T + 1];
+            for (int i : group) {
+                if (seen[a[i]]) return false;
+                seen[a[i]] = true;
+            }
+            return true;
+        }
+
+        double score(int[] a) {
+            long[] st = stats(a);
+            double l = totalPeso == 0 ? 0.0 : (double) st[0] / (double) totalPeso;
+            double e = U == 0 ? 0.0 : (double) st[1] / (double) U;
+            return alpha * l + (1.0 - alpha) * e;
+        }
+
+        ObjectivePoint point(int[] a, double score, long millis, String source) {
+            long[] st = stats(a);
+            return new ObjectivePoint(null, millis, score, st[0], (int) st[1], source);
+        }
+
+        // spread dei pesi (massimo - minimo tra le squadre) ed Emax
+        private long[] stats(int[] a) {
+            long[] w = new long[T + 1];
+            int[] e = new int[T + 1];
+            for (int i = 0; i < U; i++) {
+                w[a[i]] += units.get(i).peso;
+                e[a[i]] += 1;
+            }
+            long maxW = Long.MIN_VALUE, minW = Long.MAX_VALUE;
+            int maxE = 0;
+            for (int t = 1; t <= T; t++) {
+                maxW = Math.max(maxW, w[t]);
+                minW = Math.min(minW, w[t]);
+                maxE = Math.max(maxE, e[t]);
+            }
+            return new long[]{maxW - minW, maxE};
+        }
+    }
+}
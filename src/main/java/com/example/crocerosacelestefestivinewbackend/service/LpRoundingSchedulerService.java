@@ -0,0 +1,414 @@
+package com.example.crocerosacelestefestivinewbackend.service;
+
+import com.example.crocerosacelestefestivinewbackend.api.ValidationException;
+import com.example.crocerosacelestefestivinewbackend.service.dto.FestivoInputRow;
+import com.google.ortools.linearsolver.MPSolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.*;
+
+import static com.example.crocerosacelestefestivinewbackend.service.SchedulingCommon.*;
+
+/**
+ * Rilassamento LP del modello MILP (formulazione rafforzata, variabili continue) risolto con GLOP, poi arrotondato.
+ * L'obiettivo rafforzato è lo score alpha del greedy, quindi il valore LP è un limite inferiore dello score di
+ * qualunque assegnazione: il risultato riporta entrambi e la distanza dall'ottimo è al più la loro differenza.
+ * <p>
+ * Arrotondamento: più campioni, il primo deterministico (per ogni unità la squadra con x più alto), gli altri
+ * estraendo la squadra con probabilità proporzionale a x[u][t] tra quelle ancora compatibili (mese, anno pesante,
+ * stesso giorno). Le unità vanno in ordine di x massimo decrescente: prima quelle che l'LP ha già deciso. Se
+ * un'unità non ha squadre compatibili la riparazione sposta l'unica unità che blocca una squadra ammessa su
+ * un'altra squadra; a fine campione una ricerca locale sposta singole unità finché lo score scende. Vince il campione
+ * con meno unità non assegnate e poi con lo score più basso. Il seme è fisso: stessa richiesta, stesso risultato.
+ */
+@Service
+public class LpRoundingSchedulerService {
+    private static final Logger log = LoggerFactory.getLogger(LpRoundingSchedulerService.class);
+    private static final String ENGINE = SchedulingMetrics.ENGINE_LP;
+    private static final double EPS = 1e-9;
+    private static final int MAX_IMPROVE_PASSES = 5;
+
+    private final SchedulingMetrics metrics;
+    private final OrToolsNatives natives;
+    private final MilpSchedulerService milp;
+    private final InfeasibilityDiagnosis diagnosis;
+    private final int roundings;
+    private final long seed;
+    private final int timeLimitSeconds;
+
+    public LpRoundingSchedulerService(SchedulingMetrics metrics,
+                                      OrToolsNatives natives,
+                                      MilpSchedulerService milp,
+                                      InfeasibilityDiagnosis diagnosis,
+                                      @Value("${festivi.lp.roundings:32}") int roundings,
+                                      @Value("${festivi.lp.seed:1}") long seed,
+                                      @Value("${festivi.lp.time-limit-seconds:30}") int timeLimitSeconds) {
+        this.metrics = metrics;
+        this.natives = natives;
+        this.milp = milp;
+        this.diagnosis = diagnosis;
+        this.roundings = Math.max(1, roundings);
+        this.seed = seed;
+        this.timeLimitSeconds = Math.max(1, timeLimitSeconds);
+    }
+
+    public ScheduleResult schedule(List<FestivoInputRow> rows,
+                                   Set<String> pesanti,
+                                   LocalDate start,
+                                   LocalDate end,
+                                   int minProximityDays,
+                                   double alpha,
+                                   TeamConfig teams,
+                                   SchedulingTrace trace) {
+        metrics.solveStarted(ENGINE);
+        try {
+            return doSchedule(rows, pesanti, start, end, minProximityDays, alpha, teams, trace);
+        } finally {
+            metrics.solveFinished(ENGINE);
+        }
+    }
+
+    private ScheduleResult doSchedule(List<FestivoInputRow> rows,
+                                      Set<String> pesanti,
+                                      LocalDate start,
+                                      LocalDate end,
+                                      int minProximityDays,
+                                      double alpha,
+                                      TeamConfig teams,
+                                      SchedulingTrace trace) {
+        natives.ensureLoaded();
+        SchedulingMetrics.Phase unitsPhase = metrics.start();
+        BuiltModel bm = buildUnits(rows, pesanti, start, end, teams);
+        long unitsNanos = metrics.stop(unitsPhase, SchedulingMetrics.PHASE_BUILD_UNITS, ENGINE);
+        metrics.units(ENGINE, bm.units.size());
+        trace.phase(SchedulingMetrics.PHASE_BUILD_UNITS, unitsNanos, "units=" + bm.units.size() + " teams=" + teams);
+        log.info("[LP] Units built: {} teams={} roundings={}", bm.units.size(), teams, roundings);
+
+        SchedulingMetrics.Phase buildPhase = metrics.start();
+        MilpSchedulerService.MilpModel model = milp.buildModel(bm, minProximityDays, alpha, true, true);
+        MPSolver solver = model.solver;
+        solver.setTimeLimit(timeLimitSeconds * 1000L);
+        long buildNanos = metrics.stop(buildPhase, SchedulingMetrics.PHASE_MODEL_BUILD, ENGINE);
+        metrics.modelSize(ENGINE, solver.numVariables(), solver.numConstraints());
+        trace.phase(SchedulingMetrics.PHASE_MODEL_BUILD, buildNanos, "variables=" + solver.numVariables() + " constraints=" + solver.numConstraints());
+
+        SchedulingMetrics.Phase solvePhase = metrics.start();
+        MPSolver.ResultStatus status = solver.solve();
+        int U = model.U;
+        int T = model.T;
+        double[][] x = null;
+        double lowerBound = 0.0;
+        if (status == MPSolver.ResultStatus.OPTIMAL) {
+            x = new double[U][T + 1];
+            for (int u = 0; u < U; u++) {
+                for (int t = 1; t <= T; t++) x[u][t] = model.x[u][t].solutionValue();
+            }
+            lowerBound = solver.objective().value() / MilpSchedulerService.OBJECTIVE_SCALE;
+        }
+        solver.delete();
+        long solveNanos = metrics.stop(solvePhase, SchedulingMetrics.PHASE_SOLVE, ENGINE);
+        log.info("[LP] Relaxation status={} bound={} durationMs={}", status, lowerBound, solveNanos / 1_000_000);
+        trace.phase(SchedulingMetrics.PHASE_SOLVE, solveNanos, "status=" + status + " bound=" + format(lowerBound));
+
+        List<Map<String, Object>> violations = new ArrayList<>();
+        if (x == null) {
+            // solo INFEASIBLE dimostra che non esiste nemmeno una soluzione intera; il limite di tempo non dimostra nulla
+            String reason = status == MPSolver.ResultStatus.INFEASIBLE
+                    ? "Il rilassamento LP non ha soluzione: nessuna assegnazione rispetta tutti i vincoli"
+                    : "Il rilassamento LP si è interrotto senza soluzione (status=" + status + ", limite " + timeLimitSeconds
+                      + " s): non dimostra che i vincoli siano incompatibili, riprovare o usare un altro motore";
+            String outcome = switch (status) {
+                case INFEASIBLE -> SchedulingMetrics.OUTCOME_INFEASIBLE;
+                case NOT_SOLVED -> SchedulingMetrics.OUTCOME_TIMEOUT;
+                default -> SchedulingMetrics.OUTCOME_ERROR;
+            };
+            addV(violations, 0, "__assign__", reason);
+            for (FestivoUnit u : bm.units) for (FestivoInputRow row : u.rows) row.errorMessage = reason;
+            diagnoseInto(diagnosis, metrics, ENGINE, bm, minProximityDays, violations, trace, "l'arrotondamento non l'ha trovata, usa l'engine MILP");
+            metrics.outcome(ENGINE, outcome);
+            throw new ValidationException(violations);
+        }
+
+        SchedulingMetrics.Phase roundPhase = metrics.start();
+        Rounding rounding = new Rounding(bm, model, x, start, alpha);
+        Random rnd = new Random(seed);
+        Solution best = null;
+        for (int r = 0; r < roundings; r++) {
+            Solution s = rounding.round(r == 0 ? null : rnd);
+            rounding.improve(s);
+            if (trace.enabled()) trace.record("campione", null, "n=" + r + " nonAssegnate=" + s.unassigned + " score=" + format(s.score));
+            if (best == null || s.unassigned < best.unassigned || (s.unassigned == best.unassigned && s.score < best.score)) best = s;
+        }
+        long roundNanos = metrics.stop(roundPhase, SchedulingMetrics.PHASE_ROUNDING, ENGINE);
+        trace.phase(SchedulingMetrics.PHASE_ROUNDING, roundNanos, "roundings=" + roundings + " score=" + format(best.score) + " bound=" + format(lowerBound));
+
+        for (int i = 0; i < U; i++) {
+            if (best.team[i] != 0) continue;
+            FestivoUnit u = bm.units.get(i);
+            String reason = "Nessuna squadra disponibile per data=" + u.dates.get(0) + " turno=" + u.tipo
+                    + " dopo l'arrotondamento della soluzione LP e la riparazione";
+            addV(violations, u.rows.get(0).excelRowNumber, "__assign__", reason);
+            trace.record("nessun-candidato", u.id, reason);
+            for (FestivoInputRow row : u.rows) row.errorMessage = reason;
+        }
+        if (!violations.isEmpty()) {
+            log.warn("[LP] Rounding left {} units unassigned", best.unassigned);
+            diagnoseInto(diagnosis, metrics, ENGINE, bm, minProximityDays, violations, trace, "l'arrotondamento non l'ha trovata, usa l'engine MILP");
+            metrics.outcome(ENGINE, SchedulingMetrics.OUTCOME_INFEASIBLE);
+            throw new ValidationException(violations);
+        }
+
+        double gap = Math.max(0.0, best.score - lowerBound) / Math.max(best.score, 1e-9);
+        metrics.gap(ENGINE, gap);
+        metrics.outcome(ENGINE, gap <= 1e-9 ? SchedulingMetrics.OUTCOME_OPTIMAL : SchedulingMetrics.OUTCOME_FEASIBLE);
+        log.info("[LP] Completed. score={} bound={} gap={} roundingMs={}", best.score, lowerBound, gap, roundNanos / 1_000_000);
+
+        if (trace.enabled()) {
+            for (int i = 0; i < U; i++) {
+                FestivoUnit u = bm.units.get(i);
+                trace.record("assegnata", u.id, "squadra=" + best.team[i] + " peso=" + u.peso + " x=" + format(x[i][best.team[i]]));
+            }
+        }
+        return new ScheduleResult(assignmentOf(bm.units, best.team, T), bm.mutatedRows, best.score, lowerBound, List.of(), List.of());
+    }
+
+    private static String format(double v) {
+        return String.format(Locale.ROOT, "%.4f", v);
+    }
+
+    /** Assegnazione (anche parziale) di un campione con i posti occupati per mese, anno pesante e squadra. */
+    private static final class Solution {
+        final int[] team; // [unità] -> squadra, 0 se non assegnata
+        final long[] pesi;
+        final int[] eventi;
+        final int[][] monthHolder; // [anno-mese][squadra] -> unità, -1 se libero
+        final int[][] heavyHolder; // [anno][squadra] -> unità pesante, -1 se libero
+        int unassigned;
+        double score;
+
+        Solution(int U, int T, int months, int years) {
+            team = new int[U];
+            pesi = new long[T + 1];
+            eventi = new int[T + 1];
+            monthHolder = new int[months][T + 1];
+            heavyHolder = new int[years][T + 1];
+            for (int[] m : monthHolder) Arrays.fill(m, -1);
+            for (int[] h : heavyHolder) Arrays.fill(h, -1);
+        }
+    }
+
+    /** Dati dell'istanza in sola lettura e operazioni di arrotondamento, riparazione e miglioramento. */
+    private static final class Rounding {
+        final List<FestivoUnit> units;
+        final int U;
+        final int T;
+        final double[][] x;
+        final double alpha;
+        final long totalPeso;
+        final int[][] domain; // squadre ammesse (forzata, esclusioni, prossimità) per x decrescente
+        final int[] ym;
+        final int[] year;
+        final int months;
+        final int years;
+        final int[][] dayPeers; // MP/SN dello stesso giorno
+        final int[] order; // x massimo decrescente, poi peso decrescente
+
+        Rounding(BuiltModel bm, MilpSchedulerService.MilpModel model, double[][] x, LocalDate start, double alpha) {
+            this.units = bm.units;
+            this.U = model.U;
+            this.T = model.T;
+            this.x = x;
+            this.alpha = alpha;
+            long tot = 0;
+            for (FestivoUnit u : units) tot += u.peso;
+            this.totalPeso = tot;
+            int baseYear = start.getYear();
+            this.ym = new int[U];
+            this.year = new int[U];
+            this.domain = new int[U][];
+            int maxYm = 0;
+            int maxYear = 0;
+            double[] top = new double[U];
+            for (int i = 0; i < U; i++) {
+                FestivoUnit u = units.get(i);
+                ym[i] = (u.year - baseYear) * 12 + u.month - 1;
+                year[i] = u.year - baseYear;
+                maxYm = Math.max(maxYm, ym[i]);
+                maxYear = Math.max(maxYear, year[i]);
+                List<Integer> d = new ArrayList<>();
+                for (int t = 1; t <= T; t++) {
+                    if (model.allowed[t][i]) d.add(t);
+                    top[i] = Math.max(top[i], x[i][t]);
+                }
+                int row = i;
+                d.sort((a, b) -> Double.compare(x[row][b], x[row][a]));
+                domain[i] = d.stream().mapToInt(Integer::intValue).toArray();
+            }
+            this.months = maxYm + 1;
+            this.years = maxYear + 1;
+            this.dayPeers = dayPeers(units);
+            this.order = java.util.stream.IntStream.range(0, U).boxed()
+                    .sorted((a, b) -> {
+                        int cmp = Double.compare(top[b], top[a]);
+                        return cmp != 0 ? cmp : Integer.compare(units.get(b).peso, units.get(a).peso);
+                    })
+                    .mapToInt(Integer::intValue).toArray();
+        }
+
+        /** rnd null: arrotondamento deterministico alla squadra con x più alto tra le compatibili. */
+        Solution round(Random rnd) {
+            Solution s = new Solution(U, T, months, years);
+            int[] candidates = new int[T];
+            for (int i : order) {
+                int n = 0;
+                for (int t : domain[i]) if (fits(s, i, t)) candidates[n++] = t;
+                if (n == 0) {
+                    if (!repair(s, i)) s.unassigned++;
+                    continue;
+                }
+                place(s, i, pick(s, i, candidates, n, rnd));
+            }
+            s.score = score(s);
+            return s;
+        }
+
+        private int pick(Solution s, int i, int[] candidates, int n, Random rnd) {
+            double total = 0;
+            for (int k = 0; k < n; k++) total += x[i][candidates[k]];
+            if (total <= EPS) return bestByScore(s, i, candidates, n); // l'LP non dà peso a nessuna compatibile
+            if (rnd == null) return candidates[0]; // domain è già ordinato per x decrescente
+            double r = rnd.nextDouble() * total;
+            for (int k = 0; k < n; k++) {
+                r -= x[i][candidates[k]];
+                if (r <= 0) return candidates[k];
+            }
+            return candidates[n - 1];
+        }
+
+        private int bestByScore(Solution s, int i, int[] candidates, int n) {
+            int best = candidates[0];
+            double bestScore = Double.MAX_VALUE;
+            for (int k = 0; k < n; k++) {
+                place(s, i, candidates[k]);
+                double sc = score(s);
+                remove(s, i);
+                if (sc < bestScore) { bestScore = sc; best = candidates[k]; }
+            }
+            return best;
+        }
+
+        /**
+         * Riparazione locale: cerca una squadra ammessa per i occupata da una sola unità v (stesso mese, anno pesante
+         * o giorno) e sposta v su un'altra squadra compatibile, la migliore per score.
+         */
+        private boolean repair(Solution s, int i) {
+            int[] candidates = new int[T];
+            for (int t : domain[i]) {
+                int v = singleBlocker(s, i, t);
+                if (v < 0) continue;
+                remove(s, v);
+                place(s, i, t);
+                int n = 0;
+                for (int t2 : domain[v]) if (t2 != t && fits(s, v, t2)) candidates[n++] = t2;
+                if (n > 0) {
+                    place(s, v, bestByScore(s, v, candidates, n));
+                    return true;
+                }
+                remove(s, i);
+                place(s, v, t);
+            }
+            return false;
+        }
+
+        // unica unità che impedisce (i, t), -1 se nessuna o più di una
+        private int singleBlocker(Solution s, int i, int t) {
+            int blocker = -1;
+            int m = s.monthHolder[ym[i]][t];
+            if (m >= 0) blocker = m;
+            if (units.get(i).pesante) {
+                int h = s.heavyHolder[year[i]][t];
+                if (h >= 0 && h != blocker) {
+                    if (blocker >= 0) return -1;
+                    blocker = h;
+                }
+            }
+            for (int q : dayPeers[i]) {
+                if (s.team[q] != t || q == blocker) continue;
+                if (blocker >= 0) return -1;
+                blocker = q;
+            }
+            return blocker;
+        }
+
+        /** Ricerca locale: sposta una unità alla volta sulla squadra compatibile che abbassa di più lo score. */
+        void improve(Solution s) {
+            for (int pass = 0; pass < MAX_IMPROVE_PASSES; pass++) {
+                boolean moved = false;
+                for (int i : order) {
+                    int current = s.team[i];
+                    if (current == 0 || domain[i].length < 2) continue;
+                    double bestScore = s.score;
+                    int best = current;
+                    remove(s, i);
+                    for (int t : domain[i]) {
+                        if (t == current || !fits(s, i, t)) continue;
+                        place(s, i, t);
+                        double sc = score(s);
+                        remove(s, i);
+                        if (sc < bestScore - EPS) { bestScore = sc; best = t; }
+                    }
+                    place(s, i, best);
+                    if (best != current) {
+                        s.score = bestScore;
+                        moved = true;
+                    }
+                }
+                if (!moved) break;
+            }
+        }
+
+        boolean fits(Solution s, int i, int t) {
+            if (s.monthHolder[ym[i]][t] >= 0) return false;
+            if (units.get(i).pesante && s.heavyHolder[year[i]][t] >= 0) return false;
+            for (int q : dayPeers[i]) if (s.team[q] == t) return false;
+            return true;
+        }
+
+        void place(Solution s, int i, int t) {
+            FestivoUnit u = units.get(i);
+            s.team[i] = t;
+            s.pesi[t] += u.peso;
+            s.eventi[t] += 1;
+            s.monthHolder[ym[i]][t] = i;
+            if (u.pesante) s.heavyHolder[year[i]][t] = i;
+        }
+
+        void remove(Solution s, int i) {
+            FestivoUnit u = units.get(i);
+            int t = s.team[i];
+            s.team[i] = 0;
+            s.pesi[t] -= u.peso;
+            s.eventi[t] -= 1;
+            s.monthHolder[ym[i]][t] = -1;
+            if (u.pesante) s.heavyHolder[year[i]][t] = -1;
+        }
+
+        // score alpha del greedy sull'assegnazione completa: alpha * spread / peso totale + (1 - alpha) * Emax / eventi
+        double score(Solution s) {
+            long maxW = Long.MIN_VALUE, minW = Long.MAX_VALUE;
+            int maxE = 0;
+            for (int t = 1; t <= T; t++) {
+                maxW = Math.max(maxW, s.pesi[t]);
+                minW = Math.min(minW, s.pesi[t]);
+                maxE = Math.max(maxE, s.eventi[t]);
+            }
+            double l = totalPeso == 0 ? 0.0 : (double) (maxW - minW) / (double) totalPeso;
+            double e = U == 0 ? 0.0 : (double) maxE / (double) U;
+            return alpha * l + (1.0 - alpha) * e;
+        }
+    }
+}
@@ -2,10 +2,10 @@ package com.example.crocerosacelestefestivinewbackend.service;
 
 import com.example.crocerosacelestefestivinewbackend.api.ValidationException;
 import com.example.crocerosacelestefestivinewbackend.service.dto.FestivoInputRow;
-import com.google.ortools.Loader;
 import com.google.ortools.linearsolver.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDate;
@@ -16,17 +16,54 @@ import static com.example.crocerosacelestefestivinewbackend.service.SchedulingCo
 @Service
 public class MilpSchedulerService {
     private static final Logger log = LoggerFactory.getLogger(MilpSchedulerService.class);
+    private static final String ENGINE = SchedulingMetrics.ENGINE_MILP;
+    static final double POOL_SHARE = 0.2; // quota del timeout riservata alle alternative del pool
+    static final double OBJECTIVE_SCALE = 1e6; // coefficienti dell'obiettivo scalati: valore = score alpha * OBJECTIVE_SCALE
 
-    public static class ScheduleResult {
-        public final Map<String, Integer> assignment; // key=date|turno -> squadra
-        public final Map<Integer, long[]> pesiPerMese;
-        public final Map<Integer, int[]> eventiPerMese;
-        public final List<FestivoInputRow> rowsMutated;
-        public ScheduleResult(Map<String, Integer> assignment, Map<Integer, long[]> pesiPerMese, Map<Integer, int[]> eventiPerMese, List<FestivoInputRow> rowsMutated) {
+    private final SchedulingMetrics metrics;
+    private final OrToolsNatives natives;
+    private final boolean strengthened;
+    private final double lexPhase1Share;
+    private final double lexTolerance;
+    private final ModelDump modelDump;
+    private final InfeasibilityDiagnosis diagnosis;
+
+    public MilpSchedulerService(SchedulingMetrics metrics,
+                                OrToolsNatives natives,
+                                ModelDump modelDump,
+                                InfeasibilityDiagnosis diagnosis,
+                                @Value("${festivi.milp.strengthened:false}") boolean strengthened,
+                                @Value("${festivi.milp.lex.phase1-share:0.6}") double lexPhase1Share,
+                                @Value("${festivi.milp.lex.tolerance:0.0}") double lexTolerance) {
+        this.metrics = metrics;
+        this.natives = natives;
+        this.modelDump = modelDump;
+        this.diagnosis = diagnosis;
+        this.strengthened = strengthened;
+        this.lexPhase1Share = Math.min(0.95, Math.max(0.05, lexPhase1Share));
+        this.lexTolerance = Math.max(0.0, lexTolerance);
+    }
+
+    /** Soluzione del pool: assegnazione con score alpha, spread dei pesi, Emax e distanza dalla prima. */
+    public static final class PoolSolution {
+        public final int rank; // 1 = soluzione restituita
+        public final Map<String, Integer> assignment;
+        public final long[][] pesiPerMese;
+        public final int[][] eventiPerMese;
+        public final double score;
+        public final long spread;
+        public final int emax;
+        public final int distance; // unità assegnate a una squadra diversa rispetto alla soluzione di rango 1
+        PoolSolution(int rank, Map<String, Integer> assignment, long[][] pesiPerMese, int[][] eventiPerMese,
+                     double score, long spread, int emax, int distance) {
+            this.rank = rank;
             this.assignment = assignment;
             this.pesiPerMese = pesiPerMese;
             this.eventiPerMese = eventiPerMese;
-            this.rowsMutated = rowsMutated;
+            this.score = score;
+            this.spread = spread;
+            this.emax = emax;
+            this.distance = distance;
         }
     }
 
@@ -37,47 +74,434 @@ public class MilpSchedulerService {
                                    int minProximityDays,
                                    double alpha,
                                    int timeoutSeconds) {
-        Loader.loadNativeLibraries();
-        log.info("[MILP] Building model. rows={} heavy={} period=[{}..{}] timeout={}s", rows.size(), pesanti.size(), start, end, timeoutSeconds);
+        return schedule(rows, pesanti, start, end, minProximityDays, alpha, timeoutSeconds, false);
+    }
+
+    /**
+     * Con lexicographic ignora alpha e risolve in due fasi: prima il carico dei pesi, poi Emax con il carico fissato
+     * all'ottimo della prima fase (o entro festivi.milp.lex.tolerance), dividendo il timeout tra le due.
+     */
+    public ScheduleResult schedule(List<FestivoInputRow> rows,
+                                   Set<String> pesanti,
+                                   LocalDate start,
+                                   LocalDate end,
+                                   int minProximityDays,
+                                   double alpha,
+                                   int timeoutSeconds,
+                                   boolean lexicographic) {
+        return schedule(rows, pesanti, start, end, minProximityDays, alpha, timeoutSeconds, lexicographic, TeamConfig.DEFAULT);
+    }
+
+    public ScheduleResult schedule(List<FestivoInputRow> rows,
+                                   Set<String> pesanti,
+                                   LocalDate start,
+                                   LocalDate end,
+                                   int minProximityDays,
+                                   double alpha,
+                                   int timeoutSeconds,
+                                   boolean lexicographic,
+                                   TeamConfig teams) {
+        return schedule(rows, pesanti, start, end, minProximityDays, alpha, timeoutSeconds, lexicographic, teams, SchedulingTrace.OFF);
+    }
+
+    /** trace: fasi con durata, dominio di ogni unità, stato e obiettivo, squadra assegnata (vedi SchedulingTrace). */
+    public ScheduleResult schedule(List<FestivoInputRow> rows,
+                                   Set<String> pesanti,
+                                   LocalDate start,
+                                   LocalDate end,
+                                   int minProximityDays,
+                                   double alpha,
+                                   int timeoutSeconds,
+                                   boolean lexicographic,
+                                   TeamConfig teams,
+                                   SchedulingTrace trace) {
+        return schedule(rows, pesanti, start, end, minProximityDays, alpha, timeoutSeconds, lexicographic, 1, 0, teams, trace);
+    }
+
+    /**
+     * Con poolSize > 1 (solo senza lexicographic) cerca fino a poolSize soluzioni a distanza di Hamming almeno
+     * poolMinDistance l'una dall'altra, nello stesso timeout: vedi ScheduleResult.pool.
+     */
+    public ScheduleResult schedule(List<FestivoInputRow> rows,
+                                   Set<String> pesanti,
+                                   LocalDate start,
+                                   LocalDate end,
+                                   int minProximityDays,
+                                   double alpha,
+                                   int timeoutSeconds,
+                                   boolean lexicographic,
+                                   int poolSize,
+                                   int poolMinDistance,
+                                   TeamConfig teams,
+                                   SchedulingTrace trace) {
+        metrics.solveStarted(ENGINE);
+        try {
+            return doSchedule(rows, pesanti, start, end, minProximityDays, alpha, timeoutSeconds, lexicographic,
+                    lexicographic ? 1 : Math.max(1, poolSize), Math.max(1, poolMinDistance), teams, trace);
+        } finally {
+            metrics.solveFinished(ENGINE);
+        }
+    }
+
+    private ScheduleResult doSchedule(List<FestivoInputRow> rows,
+                                      Set<String> pesanti,
+                                      LocalDate start,
+                                      LocalDate end,
+                                      int minProximityDays,
+                                      double alpha,
+                                      int timeoutSeconds,
+                                      boolean lexicographic,
+                                      int poolSize,
+                                      int poolMinDistance,
+                                      TeamConfig teams,
+                                      SchedulingTrace trace) {
+        natives.ensureLoaded(); // no-op dopo l'inizializzazione all'avvio (SolverWarmup)
+        log.info("[MILP] Building model. rows={} heavy={} period=[{}..{}] timeout={}s lexicographic={} teams={}", rows.size(), pesanti.size(), start, end, timeoutSeconds, lexicographic, teams);
 
-        BuiltModel bm = buildUnits(rows, pesanti, start, end);
-        if (log.isDebugEnabled()) log.debug("[MILP] Units built: {}", bm.units.size());
+        SchedulingMetrics.Phase unitsPhase = metrics.start();
+        BuiltModel bm = buildUnits(rows, pesanti, start, end, teams);
+        long unitsNanos = metrics.stop(unitsPhase, SchedulingMetrics.PHASE_BUILD_UNITS, ENGINE);
+        metrics.units(ENGINE, bm.units.size());
+        trace.phase(SchedulingMetrics.PHASE_BUILD_UNITS, unitsNanos, "units=" + bm.units.size() + " teams=" + teams);
 
-        // Pre-validate forzate monthly/yearly heavy conflicts
+        // forzate in conflitto nel mese o nell'anno: già respinte dal parsing (RuleValidator)
         List<Map<String, Object>> violations = new ArrayList<>();
-        Map<String, Integer> forcedMonthCount = new HashMap<>(); // key team|year|month
-        Map<String, Integer> forcedHeavyYear = new HashMap<>(); // key team|year
-        for (FestivoUnit u : bm.units) {
-            if (u.forzata.isPresent()) {
-                String k = u.forzata.get() + "|" + u.year + "|" + u.month;
-                forcedMonthCount.put(k, forcedMonthCount.getOrDefault(k, 0) + 1);
-                if (u.pesante) {
-                    String ky = u.forzata.get() + "|" + u.year;
-                    forcedHeavyYear.put(ky, forcedHeavyYear.getOrDefault(ky, 0) + 1);
+
+        SchedulingMetrics.Phase buildPhase = metrics.start();
+        MilpModel model = buildModel(bm, minProximityDays, alpha);
+        MPSolver solver = model.solver;
+        int U = model.U;
+        int T = model.T;
+
+        MPSolver.ResultStatus status;
+        int[] chosenTeams;
+        List<int[]> found = new ArrayList<>();
+        try {
+            // Timeout configurabile dall'utente; con il pool la prima soluzione (il risultato) ne ha la quota principale,
+            // le alternative si dividono il resto più il tempo che la prima non ha usato
+            long budgetMs = timeoutSeconds * 1000L;
+            solver.setTimeLimit(poolSize > 1 ? Math.round(budgetMs * (1 - POOL_SHARE)) : budgetMs);
+            if (log.isDebugEnabled()) log.debug("[MILP] Model built complete. Starting solve with {}s timeout...", timeoutSeconds);
+            long buildNanos = metrics.stop(buildPhase, SchedulingMetrics.PHASE_MODEL_BUILD, ENGINE);
+            metrics.modelSize(ENGINE, solver.numVariables(), solver.numConstraints());
+            if (trace.enabled()) {
+                trace.phase(SchedulingMetrics.PHASE_MODEL_BUILD, buildNanos, "variables=" + solver.numVariables()
+                        + " constraints=" + solver.numConstraints() + " strengthened=" + strengthened);
+                traceDomains(trace, bm, model);
+            }
+            int numVariables = solver.numVariables();
+            int numConstraints = solver.numConstraints();
+            String dumpedModel = modelDump.capture(solver);
+
+            SchedulingMetrics.Phase solvePhase = metrics.start();
+            long t0 = System.currentTimeMillis();
+            boolean objectiveValid = true;
+            if (lexicographic) {
+                LexResult lex = solveLexicographic(model, timeoutSeconds);
+                status = lex.status;
+                chosenTeams = lex.chosen;
+                objectiveValid = lex.objectiveValid;
+            } else {
+                status = solver.solve();
+                chosenTeams = isSolution(status) ? chosenTeams(model) : null;
+            }
+            long dt = System.currentTimeMillis() - t0;
+            long solveNanos = metrics.stop(solvePhase, SchedulingMetrics.PHASE_SOLVE, ENGINE);
+            log.info("[MILP] Solve status={}, durationMs={}", status, dt);
+            if (trace.enabled()) {
+                boolean withObjective = objectiveValid && isSolution(status);
+                trace.phase(SchedulingMetrics.PHASE_SOLVE, solveNanos, "status=" + status + " lexicographic=" + lexicographic
+                        + (withObjective ? " objective=" + solver.objective().value() + " bound=" + solver.objective().bestBound() : ""));
+            }
+            recordOutcome(status, objectiveValid ? solver : null);
+            if (dumpedModel != null) {
+                ModelDump.Request req = new ModelDump.Request();
+                req.start = start;
+                req.end = end;
+                req.minProximityDays = minProximityDays;
+                req.alpha = alpha;
+                req.timeoutSeconds = timeoutSeconds;
+                req.lexicographic = lexicographic;
+                req.strengthened = strengthened;
+                req.teams = teams;
+                req.rows = rows;
+                req.pesanti = pesanti;
+                boolean withObjective = objectiveValid && isSolution(status);
+                modelDump.write(dumpedModel, req, bm, status, dt, numVariables, numConstraints,
+                        withObjective ? solver.objective().value() : null, withObjective ? solver.objective().bestBound() : null);
+            }
+            if (chosenTeams != null) {
+                found.add(chosenTeams);
+                if (poolSize > 1) {
+                    collectPool(model, found, poolSize, poolMinDistance, budgetMs - (System.currentTimeMillis() - t0), trace);
                 }
             }
+        } finally {
+            solver.delete(); // le soluzioni sono già copiate in chosenTeams e found
         }
-        for (Map.Entry<String, Integer> e : forcedMonthCount.entrySet()) {
-            if (e.getValue() > 1) addV(violations, 1, "assegnazione forzata", "Più forzate per stessa squadra nello stesso mese");
+        List<PoolSolution> pool = new ArrayList<>();
+        if (found.size() > 1) {
+            pool = rankPool(bm, found, T, alpha);
+            chosenTeams = found.get(0);
+            log.info("[MILP] Pool: {} solutions, minDistance={}, scores={}", pool.size(), poolMinDistance,
+                    pool.stream().map(p -> String.format(Locale.ROOT, "%.4f", p.score)).toList());
         }
-        for (Map.Entry<String, Integer> e : forcedHeavyYear.entrySet()) {
-            if (e.getValue() > 1) addV(violations, 1, "assegnazione forzata", "Più festivi pesanti forzati per stessa squadra nello stesso anno");
+
+        if (chosenTeams == null) {
+            String reason = buildInfeasibilityReason(status, bm, minProximityDays);
+            log.warn("[MILP] Infeasible. Status={}, reason={}", status, reason);
+            // Popola errorMessage in tutte le righe (errore globale)
+            for (FestivoUnit u : bm.units) {
+                for (FestivoInputRow row : u.rows) {
+                    row.errorMessage = "MILP infeasible: " + reason;
+                }
+            }
+            addV(violations, 0, "__assign__", reason);
+            // nucleo con la ricerca a propagazione di InfeasibilityDiagnosis, non con altre risoluzioni MILP: dopo un
+            // timeout la diagnosi può anche trovare che una soluzione esiste
+            diagnoseInto(diagnosis, metrics, ENGINE, bm, minProximityDays, violations, trace,
+                    status == MPSolver.ResultStatus.INFEASIBLE ? null : "il solver non l'ha trovata entro il timeout, aumenta timeoutSeconds");
+            throw new ValidationException(violations);
+        }
+
+        for (int u = 0; u < U; u++) {
+            if (chosenTeams[u] == -1) addV(violations, bm.units.get(u).rows.get(0).excelRowNumber, "__assign__", "Unità non assegnata");
         }
         if (!violations.isEmpty()) throw new ValidationException(violations);
 
-        if (log.isDebugEnabled()) log.debug("[MILP] Creating solver SCIP...");
-        MPSolver solver = MPSolver.createSolver("SCIP");
+        traceAssigned(trace, bm.units, chosenTeams);
+        return new ScheduleResult(assignmentOf(bm.units, chosenTeams, T), bm.mutatedRows, Double.NaN, Double.NaN, pool, List.of());
+    }
+
+    /**
+     * Pool di soluzioni sullo stesso modello: dopo ogni soluzione un taglio di Hamming (al più U - d unità con la
+     * squadra di quella soluzione) la esclude insieme a tutte quelle a distanza minore di d, e SCIP cerca la migliore
+     * rimasta. Il tempo residuo si divide tra le soluzioni ancora da cercare; ci si ferma al primo solve senza
+     * soluzione (nessun'altra a distanza d) o a tempo scaduto.
+     */
+    private void collectPool(MilpModel model, List<int[]> found, int poolSize, int minDistance, long remainingMs, SchedulingTrace trace) {
+        MPSolver solver = model.solver;
+        long t0 = System.currentTimeMillis();
+        while (found.size() < poolSize) {
+            long left = remainingMs - (System.currentTimeMillis() - t0);
+            if (left < 100) break;
+            int[] last = found.get(found.size() - 1);
+            MPConstraint cut = solver.makeConstraint(-MPSolver.infinity(), model.U - minDistance, "pool_" + found.size());
+            for (int u = 0; u < model.U; u++) cut.setCoefficient(model.x[u][last[u]], 1);
+            solver.setTimeLimit(left / (poolSize - found.size()));
+            MPSolver.ResultStatus status = solver.solve();
+            if (trace.enabled()) {
+                trace.record("pool", null, "n=" + (found.size() + 1) + " status=" + status
+                        + (isSolution(status) ? " objective=" + solver.objective().value() : ""));
+            }
+            if (!isSolution(status)) break;
+            found.add(chosenTeams(model));
+        }
+    }
+
+    /** Soluzioni ordinate per score alpha (la prima diventa il risultato); found viene riordinata allo stesso modo. */
+    private static List<PoolSolution> rankPool(BuiltModel bm, List<int[]> found, int T, double alpha) {
+        int U = bm.units.size();
+        long totalPeso = 0;
+        for (FestivoUnit fu : bm.units) totalPeso += fu.peso;
+        double[] score = new double[found.size()];
+        long[] spread = new long[found.size()];
+        int[] emax = new int[found.size()];
+        for (int k = 0; k < found.size(); k++) {
+            long[] w = new long[T + 1];
+            int[] e = new int[T + 1];
+            for (int u = 0; u < U; u++) {
+                w[found.get(k)[u]] += bm.units.get(u).peso;
+                e[found.get(k)[u]] += 1;
+            }
+            long maxW = Long.MIN_VALUE, minW = Long.MAX_VALUE;
+            for (int t = 1; t <= T; t++) {
+                maxW = Math.max(maxW, w[t]);
+                minW = Math.min(minW, w[t]);
+                emax[k] = Math.max(emax[k], e[t]);
+            }
+            spread[k] = maxW - minW;
+            score[k] = alpha * (totalPeso == 0 ? 0.0 : (double) spread[k] / totalPeso) + (1.0 - alpha) * (U == 0 ? 0.0 : (double) emax[k] / U);
+        }
+        Integer[] order = new Integer[found.size()];
+        for (int k = 0; k < order.length; k++) order[k] = k;
+        Arrays.sort(order, Comparator.comparingDouble(k -> score[k])); // stabile: a pari score resta l'ordine di ricerca
+        List<int[]> sorted = new ArrayList<>();
+        for (int k : order) sorted.add(found.get(k));
+        found.clear();
+        found.addAll(sorted);
+
+        List<PoolSolution> pool = new ArrayList<>();
+        for (int rank = 0; rank < order.length; rank++) {
+            int[] chosen = found.get(rank);
+            int distance = 0;
+            for (int u = 0; u < U; u++) if (chosen[u] != found.get(0)[u]) distance++;
+            Assignment a = assignmentOf(bm.units, chosen, T);
+            int k = order[rank];
+            pool.add(new PoolSolution(rank + 1, a.byKey, a.pesiPerMese, a.eventiPerMese, score[k], spread[k], emax[k], distance));
+        }
+        return pool;
+    }
+
+    /** Dominio di ogni unità: squadre rimaste dopo forzata/esclusioni e dopo la prossimità. */
+    private static void traceDomains(SchedulingTrace trace, BuiltModel bm, MilpModel model) {
+        int[] left = new int[model.T];
+        for (int u = 0; u < model.U; u++) {
+            FestivoUnit fu = bm.units.get(u);
+            int n = 0;
+            for (int t = 1; t <= model.T; t++) {
+                if (!fu.escluse.get(t) && (fu.forzata.isEmpty() || fu.forzata.get() == t)) left[n++] = t;
+            }
+            String base = SchedulingTrace.teams(left, n);
+            n = 0;
+            for (int t = 1; t <= model.T; t++) if (model.allowed[t][u]) left[n++] = t;
+            trace.record("candidati", fu.id, "tipo=" + fu.tipo + " peso=" + fu.peso + " forzata/escluse=" + base
+                    + " prossimità=" + SchedulingTrace.teams(left, n));
+        }
+    }
+
+    private static boolean isSolution(MPSolver.ResultStatus status) {
+        return status == MPSolver.ResultStatus.OPTIMAL || status == MPSolver.ResultStatus.FEASIBLE;
+    }
+
+    /** Squadra scelta per ogni unità nella soluzione corrente del solver (-1 se nessuna). */
+    private static int[] chosenTeams(MilpModel model) {
+        int[] chosen = new int[model.U];
+        for (int u = 0; u < model.U; u++) {
+            chosen[u] = -1;
+            for (int t = 1; t <= model.T; t++) {
+                if (model.x[u][t].solutionValue() > 0.5) { chosen[u] = t; break; }
+            }
+        }
+        return chosen;
+    }
+
+    static class LexResult {
+        final MPSolver.ResultStatus status;
+        final int[] chosen; // null se nessuna soluzione
+        final boolean objectiveValid; // false se la soluzione viene dalla fase 1 e l'obiettivo corrente non ha valore
+        LexResult(MPSolver.ResultStatus status, int[] chosen, boolean objectiveValid) {
+            this.status = status;
+            this.chosen = chosen;
+            this.objectiveValid = objectiveValid;
+        }
+    }
+
+    /**
+     * Fase 1: minimizza lo spread dei pesi L - Lmin con una quota del timeout (nella formulazione originale Lmin non
+     * c'è e viene aggiunto qui). Fase 2: vincola lo spread al valore trovato (più la tolleranza) e minimizza Emax nel
+     * tempo rimanente, partendo dalla soluzione della fase 1 come hint. Se la fase 1 ha esaurito il timeout o la fase 2
+     * non trova soluzioni resta quella della fase 1.
+     */
+    LexResult solveLexicographic(MilpModel model, int timeoutSeconds) {
+        MPSolver solver = model.solver;
+        long budgetMs = timeoutSeconds * 1000L;
+        long t0 = System.currentTimeMillis();
+
+        if (model.Lmin == null) {
+            model.Lmin = solver.makeVar(0, MPSolver.infinity(), true, "Lmin");
+            for (int t = 1; t <= model.T; t++) {
+                MPConstraint c = solver.makeConstraint(0, MPSolver.infinity(), "capLmin_t" + t);
+                c.setCoefficient(model.W[t], 1);
+                c.setCoefficient(model.Lmin, -1);
+            }
+        }
+        MPObjective obj = solver.objective();
+        obj.clear();
+        obj.setCoefficient(model.L, 1);
+        obj.setCoefficient(model.Lmin, -1);
+        obj.setMinimization();
+        solver.setTimeLimit(Math.min(budgetMs, Math.max(1000L, (long) (budgetMs * lexPhase1Share))));
+        MPSolver.ResultStatus phase1 = solver.solve();
+        long dt1 = System.currentTimeMillis() - t0;
+        if (!isSolution(phase1)) {
+            log.info("[MILP] Lexicographic phase 1 status={} durationMs={}", phase1, dt1);
+            return new LexResult(phase1, null, false);
+        }
+        double spread = obj.value();
+        int[] chosen1 = chosenTeams(model);
+        log.info("[MILP] Lexicographic phase 1 status={} spread={} bound={} durationMs={}", phase1, spread, obj.bestBound(), dt1);
+
+        // carico fissato: spread <= ottimo di fase 1 (arrotondato, le variabili sono intere) più la tolleranza
+        double band = Math.floor(spread * (1.0 + lexTolerance) + 1e-6);
+        MPConstraint fix = solver.makeConstraint(-MPSolver.infinity(), band, "lex_spread");
+        fix.setCoefficient(model.L, 1);
+        fix.setCoefficient(model.Lmin, -1);
+
+        List<MPVariable> hintVars = new ArrayList<>();
+        List<Double> hintValues = new ArrayList<>();
+        for (int u = 0; u < model.U; u++) {
+            for (int t = 1; t <= model.T; t++) {
+                hintVars.add(model.x[u][t]);
+                hintValues.add(chosen1[u] == t ? 1.0 : 0.0);
+            }
+        }
+        solver.setHint(hintVars.toArray(new MPVariable[0]), hintValues.stream().mapToDouble(Double::doubleValue).toArray());
+
+        obj.clear();
+        obj.setCoefficient(model.Emax, 1);
+        obj.setMinimization();
+        long remaining = budgetMs - (System.currentTimeMillis() - t0);
+        if (remaining <= 0) {
+            log.info("[MILP] Lexicographic phase 2 skipped: timeout used up by phase 1");
+            return new LexResult(MPSolver.ResultStatus.FEASIBLE, chosen1, false);
+        }
+        solver.setTimeLimit(remaining);
+        MPSolver.ResultStatus phase2 = solver.solve();
+        log.info("[MILP] Lexicographic phase 2 status={} Emax={} durationMs={}", phase2,
+                isSolution(phase2) ? obj.value() : null, System.currentTimeMillis() - t0 - dt1);
+        if (!isSolution(phase2)) {
+            // nessuna soluzione in fase 2: resta quella della fase 1, valida ma non ottima in senso lessicografico
+            return new LexResult(MPSolver.ResultStatus.FEASIBLE, chosen1, false);
+        }
+        // ottimo lessicografico solo se entrambe le fasi sono dimostrate ottime
+        MPSolver.ResultStatus status = phase1 == MPSolver.ResultStatus.OPTIMAL && lexTolerance == 0.0 ? phase2 : MPSolver.ResultStatus.FEASIBLE;
+        return new LexResult(status, chosenTeams(model), true);
+    }
+
+    /** Variabili e vincoli del modello MILP costruito su un BuiltModel. */
+    static class MilpModel {
+        MPSolver solver;
+        MPVariable[][] x; // [unit][team 1..T]
+        MPVariable[] W;
+        MPVariable[] E;
+        MPVariable L;
+        MPVariable Lmin;
+        MPVariable Emax;
+        boolean[][] allowed; // [team][unit]: dominio dopo esclusioni, forzate e prossimità
+        int U;
+        int T;
+    }
+
+    MilpModel buildModel(BuiltModel bm, int minProximityDays, double alpha) {
+        return buildModel(bm, minProximityDays, alpha, strengthened);
+    }
+
+    /**
+     * Con strengthened l'obiettivo usa lo spread L - Lmin (come lo score del greedy) e il modello riceve bound e tagli
+     * validi: bound su L/Lmin/Emax da peso totale e numero di squadre, capacità per squadra aggregate sui mesi e
+     * ordinamento dei carichi tra squadre con domini identici. Senza, è la formulazione originale (min L).
+     */
+    MilpModel buildModel(BuiltModel bm, int minProximityDays, double alpha, boolean strengthened) {
+        return buildModel(bm, minProximityDays, alpha, strengthened, false);
+    }
+
+    /** Con relaxed lo stesso modello su GLOP con variabili continue: il rilassamento LP (vedi LpRoundingSchedulerService). */
+    MilpModel buildModel(BuiltModel bm, int minProximityDays, double alpha, boolean strengthened, boolean relaxed) {
+        String solverId = relaxed ? "GLOP" : "SCIP";
+        if (log.isDebugEnabled()) log.debug("[MILP] Creating solver {}...", solverId);
+        MPSolver solver = MPSolver.createSolver(solverId);
         if (solver == null) {
-            throw new RuntimeException("Solver SCIP non disponibile");
+            throw new RuntimeException("Solver " + solverId + " non disponibile");
         }
-        if (log.isDebugEnabled()) log.debug("[MILP] Solver SCIP created successfully");
+        if (log.isDebugEnabled()) log.debug("[MILP] Solver {} created successfully", solverId);
 
         int U = bm.units.size();
-        int T = 10;
-        MPVariable[][] x = new MPVariable[U][T + 1]; // 1..10
+        int T = bm.teams.teams();
+        MPVariable[][] x = new MPVariable[U][T + 1]; // 1..T
         for (int u = 0; u < U; u++) {
             for (int t = 1; t <= T; t++) {
-                x[u][t] = solver.makeIntVar(0, 1, "x_u" + u + "_t" + t);
+                x[u][t] = solver.makeVar(0, 1, !relaxed, "x_u" + u + "_t" + t);
             }
         }
         if (log.isTraceEnabled()) log.trace("[MILP] Variables created: x={}, W/E per team, L and Emax", U * T);
@@ -86,11 +510,12 @@ public class MilpSchedulerService {
         MPVariable[] W = new MPVariable[T + 1];
         MPVariable[] E = new MPVariable[T + 1];
         for (int t = 1; t <= T; t++) {
-            W[t] = solver.makeIntVar(0, MPSolver.infinity(), "W_t" + t);
-            E[t] = solver.makeIntVar(0, MPSolver.infinity(), "E_t" + t);
+            W[t] = solver.makeVar(0, MPSolver.infinity(), !relaxed, "W_t" + t);
+            E[t] = solver.makeVar(0, MPSolver.infinity(), !relaxed, "E_t" + t);
         }
-        MPVariable L = solver.makeIntVar(0, MPSolver.infinity(), "L");
-        MPVariable Emax = solver.makeIntVar(0, MPSolver.infinity(), "Emax");
+        MPVariable L = solver.makeVar(0, MPSolver.infinity(), !relaxed, "L");
+        MPVariable Lmin = strengthened ? solver.makeVar(0, MPSolver.infinity(), !relaxed, "Lmin") : null;
+        MPVariable Emax = solver.makeVar(0, MPSolver.infinity(), !relaxed, "Emax");
         if (log.isDebugEnabled()) log.debug("[MILP] Variables created: {} units × {} teams", U, T);
 
         // Exactly one team per unit
@@ -101,18 +526,21 @@ public class MilpSchedulerService {
         if (log.isDebugEnabled()) log.debug("[MILP] Added one-team-per-unit constraints");
 
         // Apply exclusions, forzate, proximity
+        boolean[][] allowed = new boolean[T + 1][U]; // dominio di ogni squadra, usato dai tagli
         for (int u = 0; u < U; u++) {
             FestivoUnit fu = bm.units.get(u);
             for (int t = 1; t <= T; t++) {
-                if (fu.escluse.contains(t)) {
+                allowed[t][u] = !fu.escluse.get(t) && (fu.forzata.isEmpty() || fu.forzata.get() == t);
+                if (fu.escluse.get(t)) {
                     MPConstraint c = solver.makeConstraint(0, 0, "excl_u" + u + "_t" + t);
                     c.setCoefficient(x[u][t], 1);
                 }
                 boolean proxOk = true;
                 for (LocalDate d : fu.dates) {
-                    if (!proximityOk(t, d, minProximityDays)) { proxOk = false; break; }
+                    if (!bm.proximityOk(t, d, minProximityDays)) { proxOk = false; break; }
                 }
                 if (!proxOk) {
+                    allowed[t][u] = false;
                     MPConstraint c = solver.makeConstraint(0, 0, "prox_u" + u + "_t" + t);
                     c.setCoefficient(x[u][t], 1);
                 }
@@ -128,7 +556,6 @@ public class MilpSchedulerService {
                     }
                 }
             }
-            if (log.isTraceEnabled()) log.trace("[MILP] Constraints for unit {} set (exclusions/proximity/forzate)", u);
         }
         if (log.isDebugEnabled()) log.debug("[MILP] Added exclusions/proximity/forzate constraints");
 
@@ -203,74 +630,124 @@ public class MilpSchedulerService {
             MPConstraint ceMax = solver.makeConstraint(0, MPSolver.infinity(), "capEmax_t" + t);
             ceMax.setCoefficient(Emax, 1);
             ceMax.setCoefficient(E[t], -1);
+
+            if (strengthened) {
+                MPConstraint cLmin = solver.makeConstraint(0, MPSolver.infinity(), "capLmin_t" + t);
+                cLmin.setCoefficient(W[t], 1);
+                cLmin.setCoefficient(Lmin, -1);
+            }
         }
 
-        // Objective: minimize L (primary) + small weight * Emax (secondary)
-        MPObjective obj = solver.objective();
         // Normalizzazione: totale pesi ed eventi
         long totalPeso = 0; for (FestivoUnit fu : bm.units) totalPeso += fu.peso;
         int totalEventi = bm.units.size();
+        if (strengthened) addValidInequalities(solver, bm, allowed, unitsByTeamMonthKey, W, E, L, Lmin, Emax, totalPeso, T);
+
+        // Objective: minimize L (o lo spread L - Lmin) (primary) + small weight * Emax (secondary)
+        MPObjective obj = solver.objective();
         double wL = (alpha <= 0) ? 0.0 : alpha / Math.max(1.0, (double) Math.max(1, totalPeso));
         double wE = (alpha >= 1) ? 0.0 : (1.0 - alpha) / Math.max(1.0, (double) Math.max(1, totalEventi));
         // Poiché l'objective non accetta divisioni direttamente sulle variabili, usiamo pesi scalati
-        double scale = 1e6; // per evitare coefficienti troppo piccoli
+        double scale = OBJECTIVE_SCALE; // per evitare coefficienti troppo piccoli
         obj.setCoefficient(L, wL * scale);
+        if (strengthened) obj.setCoefficient(Lmin, -wL * scale);
         obj.setCoefficient(Emax, wE * scale);
         obj.setMinimization();
         
-        // Timeout configurabile dall'utente
-        solver.setTimeLimit(timeoutSeconds * 1000L);
-        if (log.isDebugEnabled()) log.debug("[MILP] Model built complete. Starting solve with {}s timeout...", timeoutSeconds);
+        MilpModel model = new MilpModel();
+        model.solver = solver;
+        model.x = x;
+        model.W = W;
+        model.E = E;
+        model.L = L;
+        model.Lmin = Lmin;
+        model.Emax = Emax;
+        model.allowed = allowed;
+        model.U = U;
+        model.T = T;
+        return model;
+    }
 
-        long t0 = System.currentTimeMillis();
-        MPSolver.ResultStatus status = solver.solve();
-        long dt = System.currentTimeMillis() - t0;
-        log.info("[MILP] Solve status={}, durationMs={}", status, dt);
-        
-        if (!(status == MPSolver.ResultStatus.OPTIMAL || status == MPSolver.ResultStatus.FEASIBLE)) {
-            String reason = buildInfeasibilityReason(status, bm, minProximityDays);
-            log.warn("[MILP] Infeasible. Status={}, reason={}", status, reason);
-            // Popola errorMessage in tutte le righe (errore globale)
-            for (FestivoUnit u : bm.units) {
-                for (FestivoInputRow row : u.rows) {
-                    row.errorMessage = "MILP infeasible: " + reason;
-                }
-            }
-            addV(violations, 0, "__assign__", reason);
-            throw new ValidationException(violations);
+    private static void addValidInequalities(MPSolver solver, BuiltModel bm, boolean[][] allowed,
+                                             Map<String, List<Integer>> unitsByMonth,
+                                             MPVariable[] W, MPVariable[] E, MPVariable L, MPVariable Lmin, MPVariable Emax,
+                                             long totalPeso, int T) {
+        int U = bm.units.size();
+        // ogni W_t è multiplo del MCD g dei pesi: L >= g*ceil(media/g) e >= peso massimo (qualcuno lo riceve),
+        // Lmin <= g*floor(media/g): se la media non è multipla di g lo spread è almeno g già nel rilassamento
+        long maxPeso = 0;
+        long g = 0;
+        for (FestivoUnit fu : bm.units) {
+            maxPeso = Math.max(maxPeso, fu.peso);
+            g = gcd(g, fu.peso);
         }
+        if (g <= 0) g = 1;
+        long unitsOfG = totalPeso / g;
+        long lbL = Math.max(g * ((unitsOfG + T - 1) / T), maxPeso);
 
-        Map<String, Integer> assignment = new HashMap<>();
-        Map<Integer, long[]> pesiPerMese = new HashMap<>();
-        Map<Integer, int[]> eventiPerMese = new HashMap<>();
-        for (int t = 1; t <= T; t++) { pesiPerMese.put(t, new long[12]); eventiPerMese.put(t, new int[12]); }
-
-        for (int u = 0; u < U; u++) {
-            int chosen = -1;
-            for (int t = 1; t <= T; t++) {
-                if (x[u][t].solutionValue() > 0.5) { chosen = t; break; }
-            }
-            if (chosen == -1) {
-                addV(violations, bm.units.get(u).rows.get(0).excelRowNumber, "__assign__", "Unità non assegnata");
-                continue;
+        // Capacità aggregate per squadra: con al più un evento al mese, E_t <= mesi in cui la squadra è ammessa
+        // e W_t <= somma sui mesi del peso massimo ammesso in quel mese
+        long maxCapW = 0;
+        int maxMonths = 0;
+        for (int t = 1; t <= T; t++) {
+            long capW = 0;
+            int months = 0;
+            for (List<Integer> idxs : unitsByMonth.values()) {
+                long best = -1;
+                for (int u : idxs) if (allowed[t][u]) best = Math.max(best, bm.units.get(u).peso);
+                if (best >= 0) { capW += best; months++; }
             }
-            FestivoUnit fu = bm.units.get(u);
-            if ("MPB".equals(fu.tipo)) {
-                assignment.put(fu.dates.get(0) + "|MP", chosen);
-                assignment.put(fu.dates.get(1) + "|MP", chosen);
-            } else {
-                assignment.put(fu.dates.get(0) + "|" + fu.tipo, chosen);
+            W[t].setUb(capW);
+            E[t].setUb(months);
+            maxCapW = Math.max(maxCapW, capW);
+            maxMonths = Math.max(maxMonths, months);
+        }
+        L.setBounds(Math.min(lbL, maxCapW), maxCapW);
+        Lmin.setBounds(0, g * (unitsOfG / T));
+        Emax.setBounds(Math.min((U + T - 1) / T, maxMonths), maxMonths);
+
+        // Squadre con domini identici sono intercambiabili: impone W_t >= W_t' (t < t') per rompere la simmetria
+        Map<String, List<Integer>> teamsByDomain = new LinkedHashMap<>();
+        for (int t = 1; t <= T; t++) {
+            teamsByDomain.computeIfAbsent(Arrays.toString(allowed[t]), k -> new ArrayList<>()).add(t);
+        }
+        int cuts = 0;
+        for (List<Integer> group : teamsByDomain.values()) {
+            for (int i = 1; i < group.size(); i++) {
+                MPConstraint c = solver.makeConstraint(0, MPSolver.infinity(), "sym_t" + group.get(i - 1) + "_t" + group.get(i));
+                c.setCoefficient(W[group.get(i - 1)], 1);
+                c.setCoefficient(W[group.get(i)], -1);
+                cuts++;
             }
-            pesiPerMese.get(chosen)[fu.month - 1] += fu.peso;
-            eventiPerMese.get(chosen)[fu.month - 1] += 1;
         }
+        if (log.isDebugEnabled()) log.debug("[MILP] Strengthening: L in [{}..{}], Lmin <= {}, Emax in [{}..{}], symmetry cuts={}",
+                L.lb(), L.ub(), Lmin.ub(), Emax.lb(), Emax.ub(), cuts);
+    }
 
-        if (!violations.isEmpty()) throw new ValidationException(violations);
+    private static long gcd(long a, long b) {
+        while (b != 0) { long r = a % b; a = b; b = r; }
+        return Math.abs(a);
+    }
 
-        return new ScheduleResult(assignment, pesiPerMese, eventiPerMese, bm.mutatedRows);
+    private void recordOutcome(MPSolver.ResultStatus status, MPSolver solver) {
+        switch (status) {
+            case OPTIMAL -> metrics.outcome(ENGINE, SchedulingMetrics.OUTCOME_OPTIMAL);
+            case FEASIBLE -> metrics.outcome(ENGINE, SchedulingMetrics.OUTCOME_FEASIBLE);
+            case INFEASIBLE -> metrics.outcome(ENGINE, SchedulingMetrics.OUTCOME_INFEASIBLE);
+            case NOT_SOLVED -> metrics.outcome(ENGINE, SchedulingMetrics.OUTCOME_TIMEOUT);
+            default -> metrics.outcome(ENGINE, SchedulingMetrics.OUTCOME_ERROR);
+        }
+        if (solver != null && isSolution(status)) {
+            double value = solver.objective().value();
+            double bound = solver.objective().bestBound();
+            double gap = Math.abs(value - bound) / Math.max(Math.abs(value), 1e-9);
+            metrics.gap(ENGINE, gap);
+            if (log.isDebugEnabled()) log.debug("[MILP] Objective={} bestBound={} gap={}", value, bound, gap);
+        }
     }
 
     private String buildInfeasibilityReason(MPSolver.ResultStatus status, BuiltModel bm, int minProximityDays) {
+        int T = bm.teams.teams();
         StringBuilder sb = new StringBuilder();
         sb.append("Impossibile assegnare tutti i festivi. Status=").append(status).append(". ");
         
@@ -296,9 +773,9 @@ public class MilpSchedulerService {
                 }
             }
             
-            if (maxFestiviInMese > 10) {
+            if (maxFestiviInMese > T) {
                 sb.append("• Troppi festivi nel mese ").append(meseProblematico).append(" (").append(maxFestiviInMese)
-                  .append(" festivi, ma solo 10 squadre disponibili e vincolo max 1/mese). ");
+                  .append(" festivi, ma solo ").append(T).append(" squadre disponibili e vincolo max 1/mese). ");
             }
             
             if (minProximityDays >= 3) {
@@ -312,9 +789,9 @@ public class MilpSchedulerService {
             }
             
             for (Map.Entry<Integer, Integer> e : pesantiPerAnno.entrySet()) {
-                if (e.getValue() > 10) {
+                if (e.getValue() > T) {
                     sb.append("• Anno ").append(e.getKey()).append(": ci sono ").append(e.getValue())
-                      .append(" festivi pesanti, ma solo 10 squadre (max 1 pesante/anno per squadra). ");
+                      .append(" festivi pesanti, ma solo ").append(T).append(" squadre (max 1 pesante/anno per squadra). ");
                 }
             }
             
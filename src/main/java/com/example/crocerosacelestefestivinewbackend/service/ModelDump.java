@@ -0,0 +1,193 @@
+package com.example.crocerosacelestefestivinewbackend.service;
+
+import com.example.crocerosacelestefestivinewbackend.service.SchedulingCommon.BuiltModel;
+import com.example.crocerosacelestefestivinewbackend.service.SchedulingCommon.FestivoUnit;
+import com.example.crocerosacelestefestivinewbackend.service.dto.FestivoInputRow;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.ortools.linearsolver.MPSolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+/**
+ * Corpus di modelli MILP per riprodurre offline le richieste lente o infeasible. Con festivi.milp.dump.dir impostata,
+ * ogni risoluzione che dura almeno festivi.milp.dump.min-solve-ms (o che non trova soluzione) viene salvata in una
+ * sottodirectory con il modello (model.mps o model.lp, catturato prima della risoluzione), snapshot.json (parametri,
+ * righe di input, pesanti e unità del BuiltModel) e stats.json (stato, tempi, obiettivo, bound).
+ * Il replay è in CorpusReplay (src/jmh).
+ */
+@Component
+public class ModelDump {
+    private static final Logger log = LoggerFactory.getLogger(ModelDump.class);
+    private static final DateTimeFormatter DIR_FMT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+    static final String SNAPSHOT = "snapshot.json";
+    static final String STATS = "stats.json";
+
+    private final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    private final String dir;
+    private final long minSolveMs;
+    private final boolean lp;
+
+    public ModelDump(@Value("${festivi.milp.dump.dir:}") String dir,
+                     @Value("${festivi.milp.dump.min-solve-ms:0}") long minSolveMs,
+                     @Value("${festivi.milp.dump.format:mps}") String format) {
+        this.dir = dir == null ? "" : dir.trim();
+        this.minSolveMs = minSolveMs;
+        this.lp = "lp".equalsIgnoreCase(format == null ? "" : format.trim());
+    }
+
+    /** Dump disattivato, per l'uso fuori da Spring (benchmark, replay). */
+    static ModelDump disabled() {
+        return new ModelDump("", 0, "mps");
+    }
+
+    public boolean isEnabled() {
+        return !dir.isEmpty();
+    }
+
+    /** Parametri della richiesta, sufficienti a rieseguirla con qualsiasi engine. */
+    static class Request {
+        LocalDate start;
+        LocalDate end;
+        int minProximityDays;
+        double alpha;
+        int timeoutSeconds;
+        boolean lexicographic;
+        boolean strengthened;
+        TeamConfig teams = TeamConfig.DEFAULT;
+        List<FestivoInputRow> rows;
+        Set<String> pesanti;
+    }
+
+    /** Il modello va esportato prima di solve(): la modalità lessicografica cambia obiettivo e vincoli. */
+    String capture(MPSolver solver) {
+        if (!isEnabled()) return null;
+        return lp ? solver.exportModelAsLpFormat() : solver.exportModelAsMpsFormat();
+    }
+
+    void write(String model, Request request, BuiltModel bm, MPSolver.ResultStatus status, long solveMs,
+               int variables, int constraints, Double objective, Double bestBound) {
+        if (model == null) return;
+        boolean solved = status == MPSolver.ResultStatus.OPTIMAL || status == MPSolver.ResultStatus.FEASIBLE;
+        if (solved && solveMs < minSolveMs) return;
+        try {
+            String name = LocalDateTime.now().format(DIR_FMT) + "-" + Integer.toHexString(model.hashCode());
+            Path target = Paths.get(dir).resolve(name);
+            Files.createDirectories(target);
+            Files.writeString(target.resolve(lp ? "model.lp" : "model.mps"), model, StandardCharsets.UTF_8);
+
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("request", requestJson(request));
+            List<Map<String, Object>> rows = new ArrayList<>();
+            for (FestivoInputRow r : request.rows) rows.add(rowJson(r));
+            snapshot.put("rows", rows);
+            snapshot.put("pesanti", new TreeSet<>(request.pesanti));
+            List<Map<String, Object>> units = new ArrayList<>();
+            for (FestivoUnit u : bm.units) units.add(unitJson(u));
+            snapshot.put("units", units);
+            mapper.writeValue(target.resolve(SNAPSHOT).toFile(), snapshot);
+
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("status", status.name());
+            stats.put("solveMs", solveMs);
+            stats.put("variables", variables);
+            stats.put("constraints", constraints);
+            stats.put("units", bm.units.size());
+            stats.put("objective", objective);
+            stats.put("bestBound", bestBound);
+            mapper.writeValue(target.resolve(STATS).toFile(), stats);
+            log.info("[DUMP] Model written to {} (status={}, solveMs={})", target, status, solveMs);
+        } catch (IOException | RuntimeException e) {
+            // il dump è diagnostico: non deve mai far fallire la richiesta
+            log.warn("[DUMP] Cannot write model dump: {}", e.toString());
+        }
+    }
+
+    static Request readSnapshot(Path entry) throws IOException {
+        JsonNode root = new ObjectMapper().readTree(entry.resolve(SNAPSHOT).toFile());
+        JsonNode req = root.path("request");
+        Request r = new Request();
+        r.start = LocalDate.parse(req.path("startDate").asText());
+        r.end = LocalDate.parse(req.path("endDate").asText());
+        r.minProximityDays = req.path("minProximityDays").asInt();
+        r.alpha = req.path("alpha").asDouble();
+        r.timeoutSeconds = req.path("timeoutSeconds").asInt();
+        r.lexicographic = req.path("lexicographic").asBoolean();
+        r.strengthened = req.path("strengthened").asBoolean();
+        // snapshot precedenti alla configurazione delle squadre: 10 squadre, rotazione mensile
+        r.teams = TeamConfig.of(req.path("teams").isMissingNode() ? null : req.path("teams").asInt(),
+                req.path("rotation").asText(null),
+                req.path("rotationStart").isTextual() ? LocalDate.parse(req.path("rotationStart").asText()) : null, r.start);
+        r.rows = new ArrayList<>();
+        for (JsonNode n : root.path("rows")) {
+            FestivoInputRow row = new FestivoInputRow();
+            row.excelRowNumber = n.path("row").asInt();
+            row.date = LocalDate.parse(n.path("data").asText());
+            row.turno = n.path("turno").asText();
+            row.peso = n.path("peso").asInt();
+            row.assegnazioneForzata = n.path("forzata").isNull() || n.path("forzata").isMissingNode()
+                    ? Optional.empty() : Optional.of(n.path("forzata").asInt());
+            row.squadreEscluse = new BitSet();
+            for (JsonNode e : n.path("escluse")) row.squadreEscluse.set(e.asInt());
+            r.rows.add(row);
+        }
+        r.pesanti = new HashSet<>();
+        for (JsonNode p : root.path("pesanti")) r.pesanti.add(p.asText());
+        return r;
+    }
+
+    private static Map<String, Object> requestJson(Request r) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("startDate", r.start.toString());
+        m.put("endDate", r.end.toString());
+        m.put("minProximityDays", r.minProximityDays);
+        m.put("alpha", r.alpha);
+        m.put("timeoutSeconds", r.timeoutSeconds);
+        m.put("lexicographic", r.lexicographic);
+        m.put("strengthened", r.strengthened);
+        m.put("teams", r.teams.teams());
+        m.put("rotation", r.teams.rotation().name());
+        m.put("rotationStart", r.teams.rotationStart() == null ? null : r.teams.rotationStart().toString());
+        return m;
+    }
+
+    private static Map<String, Object> rowJson(FestivoInputRow r) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("row", r.excelRowNumber);
+        m.put("data", r.date.toString());
+        m.put("turno", r.turno);
+        m.put("peso", r.peso);
+        m.put("forzata", r.assegnazioneForzata == null ? null : r.assegnazioneForzata.orElse(null));
+        m.put("escluse", r.squadreEscluse == null ? List.of() : r.squadreEscluse.stream().boxed().toList());
+        return m;
+    }
+
+    private static Map<String, Object> unitJson(FestivoUnit u) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("id", u.id);
+        m.put("tipo", u.tipo);
+        List<String> dates = new ArrayList<>();
+        for (LocalDate d : u.dates) dates.add(d.toString());
+        m.put("dates", dates);
+        m.put("peso", u.peso);
+        m.put("year", u.year);
+        m.put("month", u.month);
+        m.put("pesante", u.pesante);
+        m.put("forzata", u.forzata.orElse(null));
+        m.put("escluse", u.escluse.stream().boxed().toList());
+        return m;
+    }
+}
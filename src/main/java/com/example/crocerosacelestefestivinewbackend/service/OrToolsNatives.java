@@ -0,0 +1,139 @@
+package com.example.crocerosacelestefestivinewbackend.service;
+
+import com.google.ortools.Loader;
+import com.sun.jna.Platform;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Caricamento unico delle librerie native OR-Tools. Senza festivi.ortools.native-dir usa Loader (estrazione in una
+ * directory temporanea nuova ad ogni avvio); con la directory configurata estrae una sola volta in una sottodirectory
+ * legata alla versione delle librerie e ai riavvii successivi carica direttamente da lì.
+ */
+@Component
+public class OrToolsNatives {
+    private static final Logger log = LoggerFactory.getLogger(OrToolsNatives.class);
+    private static final String JNI_LIB = "jniortools";
+    private static final String COMPLETE_MARKER = ".complete";
+    // dipendenze della libreria JNI nei jar nativi (Linux, macOS); su Windows la JNI è autonoma
+    private static final List<String> DEPENDENCIES = List.of("libortools.so.9", "libortools.9.dylib");
+
+    private final String nativeDir;
+    private volatile boolean loaded;
+
+    public OrToolsNatives(@Value("${festivi.ortools.native-dir:}") String nativeDir) {
+        this.nativeDir = nativeDir == null ? "" : nativeDir.trim();
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public synchronized void ensureLoaded() {
+        if (loaded) return;
+        long t0 = System.currentTimeMillis();
+        if (!nativeDir.isEmpty()) {
+            try {
+                loadFromPersistentDir(Paths.get(nativeDir));
+                loaded = true;
+                log.info("[ORTOOLS] Native libraries loaded from {} in {}ms", nativeDir, System.currentTimeMillis() - t0);
+                return;
+            } catch (IOException | URISyntaxException | UnsatisfiedLinkError e) {
+                log.warn("[ORTOOLS] Persistent native dir {} not usable, falling back to Loader: {}", nativeDir, e.toString());
+            }
+        }
+        Loader.loadNativeLibraries();
+        loaded = true;
+        log.info("[ORTOOLS] Native libraries loaded in {}ms", System.currentTimeMillis() - t0);
+    }
+
+    private void loadFromPersistentDir(Path base) throws IOException, URISyntaxException {
+        String resourcePath = "ortools-" + Platform.RESOURCE_PREFIX + "/";
+        URL url = Loader.class.getClassLoader().getResource(resourcePath);
+        if (url == null) throw new IOException("Risorse native non trovate: " + resourcePath);
+        URI uri = url.toURI();
+        // l'URI contiene il nome del jar (e quindi la versione): directory diversa per ogni versione delle librerie
+        Path target = base.resolve("ortools-" + Integer.toHexString(uri.toString().hashCode()));
+        if (!Files.exists(target.resolve(COMPLETE_MARKER))) {
+            extract(uri, target);
+        } else if (log.isDebugEnabled()) {
+            log.debug("[ORTOOLS] Reusing extracted libraries in {}", target);
+        }
+
+        // ordine esplicito: prima la libreria OR-Tools, poi la JNI che la referenzia. File inattesi (altra versione,
+        // altra piattaforma) fanno scartare la directory prima di caricare qualsiasi cosa
+        String jniName = System.mapLibraryName(JNI_LIB);
+        List<String> names = new ArrayList<>();
+        try (Stream<Path> files = Files.list(target)) {
+            files.map(p -> p.getFileName().toString()).filter(n -> !n.equals(COMPLETE_MARKER)).forEach(names::add);
+        }
+        List<Path> order = new ArrayList<>();
+        for (String dep : DEPENDENCIES) {
+            if (names.remove(dep)) order.add(target.resolve(dep));
+        }
+        if (!names.remove(jniName)) throw new IOException(jniName + " mancante in " + target);
+        if (!names.isEmpty()) throw new IOException("File inattesi in " + target + ": " + names);
+        order.add(target.resolve(jniName));
+
+        int done = 0;
+        try {
+            for (Path p : order) {
+                System.load(p.toAbsolutePath().toString());
+                done++;
+            }
+        } catch (UnsatisfiedLinkError e) {
+            // con una libreria già caricata il fallback su Loader la caricherebbe una seconda volta da un altro percorso
+            if (done > 0) throw new IllegalStateException("Caricamento parziale delle librerie native da " + target, e);
+            throw e;
+        }
+    }
+
+    private static void extract(URI uri, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path tmp = Files.createTempDirectory(target.getParent(), target.getFileName() + ".tmp");
+        FileSystem fs = null;
+        try {
+            if ("jar".equals(uri.getScheme())) {
+                try {
+                    fs = FileSystems.newFileSystem(uri, Collections.emptyMap());
+                } catch (FileSystemAlreadyExistsException e) {
+                    // già aperto (es. da Loader): Paths.get lo riusa
+                }
+            }
+            Path source = Paths.get(uri);
+            try (Stream<Path> files = Files.list(source)) {
+                for (Path p : (Iterable<Path>) files::iterator) {
+                    Files.copy(p, tmp.resolve(p.getFileName().toString()), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Files.createFile(tmp.resolve(COMPLETE_MARKER));
+            try {
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException | DirectoryNotEmptyException e) {
+                // un'altra istanza ha completato l'estrazione nel frattempo
+                deleteRecursively(tmp);
+            }
+            log.info("[ORTOOLS] Native libraries extracted to {}", target);
+        } finally {
+            if (fs != null) fs.close();
+        }
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : (Iterable<Path>) files.sorted(Collections.reverseOrder())::iterator) Files.deleteIfExists(p);
+        }
+    }
+}
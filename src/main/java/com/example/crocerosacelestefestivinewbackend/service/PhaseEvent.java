@@ -0,0 +1,26 @@
+package com.example.crocerosacelestefestivinewbackend.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Evento JFR per ogni fase della pipeline (parse, buildUnits, modelBuild, solve, render), emesso insieme al timer
+ * Micrometer della fase. Senza una registrazione JFR attiva il costo è un controllo su begin/commit.
+ * Registrazione: jcmd &lt;pid&gt; JFR.start name=festivi settings=profile, poi filtrare su festivi.Phase.
+ */
+@Name("festivi.Phase")
+@Label("Fase di assegnazione")
+@Description("Durata di una fase della pipeline di assegnazione dei festivi")
+@Category({"Festivi"})
+@StackTrace(false)
+final class PhaseEvent extends Event {
+    @Label("Engine")
+    String engine;
+
+    @Label("Fase")
+    String phase;
+}
@@ -0,0 +1,168 @@
+package com.example.crocerosacelestefestivinewbackend.service;
+
+import com.example.crocerosacelestefestivinewbackend.service.dto.FestivoInputRow;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Regole trasversali sulle righe valide, in un solo passaggio sui giorni del periodo:
+ * <ul>
+ *   <li>coppie sab-dom MP complete, forzate coerenti nella coppia e non escluse nel blocco;</li>
+ *   <li>regola del 31 (solo rotazione mensile): SN presente, MP solo nel weekend;</li>
+ *   <li>al più un festivo forzato per squadra nel mese e un festivo pesante forzato per squadra nell'anno, contando
+ *   il blocco sab-dom come un'unica unità nel mese del sabato (come buildUnits).</li>
+ * </ul>
+ * Le righe stanno in una DayTable indicizzata per giorno: nessuna mappa o chiave stringa per data+turno.
+ */
+final class RuleValidator {
+
+    private RuleValidator() {
+    }
+
+    /** Righe MP/SN per giorno del periodo (indice = giorni da start), con i festivi pesanti. */
+    static final class DayTable {
+        final LocalDate start;
+        final int days;
+        private final long startEpochDay;
+        final FestivoInputRow[] mp;
+        final FestivoInputRow[] sn;
+        private final BitSet seen = new BitSet(); // 2 * giorno + turno, anche per righe scartate (duplicati)
+        final BitSet heavy = new BitSet(); // 2 * giorno + turno
+
+        DayTable(LocalDate start, LocalDate end) {
+            this.start = start;
+            this.startEpochDay = start.toEpochDay();
+            this.days = (int) Math.max(0, end.toEpochDay() - startEpochDay + 1);
+            this.mp = new FestivoInputRow[days];
+            this.sn = new FestivoInputRow[days];
+        }
+
+        static DayTable of(List<FestivoInputRow> rows, Set<String> pesanti, LocalDate start, LocalDate end) {
+            DayTable t = new DayTable(start, end);
+            for (FestivoInputRow r : rows) t.put(r);
+            for (String key : pesanti) {
+                int sep = key.indexOf('|');
+                t.markHeavy(LocalDate.parse(key.substring(0, sep)), key.substring(sep + 1));
+            }
+            return t;
+        }
+
+        /** Indice del giorno, -1 fuori periodo. */
+        int index(LocalDate d) {
+            long i = d.toEpochDay() - startEpochDay;
+            return i < 0 || i >= days ? -1 : (int) i;
+        }
+
+        /** Segna data+turno come visto: false se già visto (duplicato) o fuori periodo. */
+        boolean mark(LocalDate d, String turno) {
+            int i = index(d);
+            if (i < 0) return false;
+            int bit = 2 * i + ("SN".equals(turno) ? 1 : 0);
+            if (seen.get(bit)) return false;
+            seen.set(bit);
+            return true;
+        }
+
+        void put(FestivoInputRow r) {
+            int i = index(r.date);
+            if (i < 0) return;
+            if ("MP".equals(r.turno)) mp[i] = r;
+            else sn[i] = r;
+        }
+
+        FestivoInputRow get(LocalDate d, String turno) {
+            int i = index(d);
+            if (i < 0) return null;
+            return "MP".equals(turno) ? mp[i] : sn[i];
+        }
+
+        void markHeavy(LocalDate d, String turno) {
+            int i = index(d);
+            if (i >= 0) heavy.set(2 * i + ("SN".equals(turno) ? 1 : 0));
+        }
+
+        boolean isHeavy(int day, boolean snTurno) {
+            return heavy.get(2 * day + (snTurno ? 1 : 0));
+        }
+    }
+
+    static void validate(DayTable t, TeamConfig teams, List<Map<String, Object>> v) {
+        boolean monthlyRotation = teams.rotation() == TeamConfig.Rotation.MENSILE;
+        int[] forcedInMonth = new int[teams.teams() + 1];
+        int[] forcedHeavyInYear = new int[teams.teams() + 1];
+        int month = -1, year = -1;
+        LocalDate d = t.start;
+        for (int i = 0; i < t.days; i++, d = d.plusDays(1)) {
+            if (d.getYear() != year) {
+                year = d.getYear();
+                Arrays.fill(forcedHeavyInYear, 0);
+            }
+            if (d.getMonthValue() != month) {
+                month = d.getMonthValue();
+                Arrays.fill(forcedInMonth, 0);
+            }
+            DayOfWeek dow = d.getDayOfWeek();
+            FestivoInputRow mp = t.mp[i];
+            FestivoInputRow sn = t.sn[i];
+
+            // MP: blocco sab-dom (unità nel mese del sabato) oppure unità singola; la domenica del blocco è già contata
+            if (dow == DayOfWeek.SATURDAY && i + 1 < t.days) {
+                FestivoInputRow sun = t.mp[i + 1];
+                if ((mp != null) ^ (sun != null)) {
+                    FestivoInputRow present = mp != null ? mp : sun;
+                    LocalDate missing = mp != null ? d.plusDays(1) : d;
+                    ValidationUtil.addV(v, present.excelRowNumber, "turno",
+                            "Coppia sab-dom MP incompleta: presente MP per " + present.date + ", manca MP per " + missing);
+                }
+                if (mp != null && sun != null) {
+                    Integer fSat = mp.assegnazioneForzata.orElse(null);
+                    Integer fSun = sun.assegnazioneForzata.orElse(null);
+                    if (fSat != null && fSun != null && !fSat.equals(fSun)) {
+                        ValidationUtil.addV(v, mp.excelRowNumber, "assegnazione forzata", "Forzate diverse tra sabato e domenica MP adiacenti");
+                    }
+                    Integer forced = fSat != null ? fSat : fSun;
+                    if (forced != null && (mp.squadreEscluse.get(forced) || sun.squadreEscluse.get(forced))) {
+                        ValidationUtil.addV(v, mp.excelRowNumber, "assegnazione forzata", "Forzata in conflitto con esclusioni nel blocco sab-dom");
+                    }
+                    countForced(forced, mp, t.isHeavy(i, false) || t.isHeavy(i + 1, false), forcedInMonth, forcedHeavyInYear, d, v);
+                } else if (mp != null) {
+                    countForced(mp.assegnazioneForzata.orElse(null), mp, t.isHeavy(i, false), forcedInMonth, forcedHeavyInYear, d, v);
+                }
+            } else if (mp != null && !(dow == DayOfWeek.SUNDAY && i > 0 && t.mp[i - 1] != null)) {
+                countForced(mp.assegnazioneForzata.orElse(null), mp, t.isHeavy(i, false), forcedInMonth, forcedHeavyInYear, d, v);
+            }
+            if (sn != null) {
+                countForced(sn.assegnazioneForzata.orElse(null), sn, t.isHeavy(i, true), forcedInMonth, forcedHeavyInYear, d, v);
+            }
+
+            // la regola del 31 esiste perché nella rotazione mensile il 31 non ha squadra ordinaria
+            if (monthlyRotation && d.getDayOfMonth() == 31) {
+                if (sn == null) {
+                    ValidationUtil.addV(v, 1, "data", "Il 31 del mese " + d.getMonth() + " deve contenere SN");
+                }
+                if (mp != null && dow != DayOfWeek.SATURDAY && dow != DayOfWeek.SUNDAY) {
+                    ValidationUtil.addV(v, mp.excelRowNumber, "turno", "Il 31 infrasettimanale non può avere MP");
+                }
+            }
+        }
+    }
+
+    private static void countForced(Integer team, FestivoInputRow row, boolean heavy, int[] forcedInMonth,
+                                    int[] forcedHeavyInYear, LocalDate d, List<Map<String, Object>> v) {
+        if (team == null || team >= forcedInMonth.length) return; // fuori range: già segnalato sulla riga
+        if (++forcedInMonth[team] == 2) {
+            ValidationUtil.addV(v, row.excelRowNumber, "assegnazione forzata",
+                    "Più forzate per la squadra " + team + " nello stesso mese (" + d.getYear() + "-" + String.format("%02d", d.getMonthValue()) + ")");
+        }
+        if (heavy && ++forcedHeavyInYear[team] == 2) {
+            ValidationUtil.addV(v, row.excelRowNumber, "assegnazione forzata",
+                    "Più festivi pesanti forzati per la squadra " + team + " nello stesso anno (" + d.getYear() + ")");
+        }
+    }
+}
@@ -1,14 +1,59 @@
 package com.example.crocerosacelestefestivinewbackend.service;
 
-import com.example.crocerosacelestefestivinewbackend.api.ValidationException;
 import com.example.crocerosacelestefestivinewbackend.service.dto.FestivoInputRow;
 
 import java.time.DayOfWeek;
 import java.time.LocalDate;
-import java.time.temporal.ChronoUnit;
 import java.util.*;
 
-class SchedulingCommon {
+public class SchedulingCommon {
+
+    /**
+     * Risultato di un engine. score e lowerBound sono NaN per gli engine che non li calcolano, pool è vuota fuori dal
+     * pool MILP e progress fuori dall'LNS.
+     */
+    public static class ScheduleResult {
+        public final Map<String, Integer> assignment; // key=date|turno -> squadra
+        public final long[][] pesiPerMese; // [squadra 1..N][mese 0..11], riga 0 inutilizzata
+        public final int[][] eventiPerMese;
+        public final List<FestivoInputRow> rowsMutated;
+        public final double score; // score alpha dell'assegnazione
+        public final double lowerBound; // rilassamento LP: nessuna assegnazione ha score più basso
+        public final List<MilpSchedulerService.PoolSolution> pool; // con poolSize > 1: soluzioni per score crescente, la prima è quella restituita
+        public final List<LnsSchedulerService.ObjectivePoint> progress; // andamento dello score dell'LNS
+        public ScheduleResult(Map<String, Integer> assignment, long[][] pesiPerMese, int[][] eventiPerMese, List<FestivoInputRow> rowsMutated) {
+            this(assignment, pesiPerMese, eventiPerMese, rowsMutated, Double.NaN, Double.NaN, List.of(), List.of());
+        }
+        ScheduleResult(Assignment a, List<FestivoInputRow> rowsMutated, double score, double lowerBound,
+                       List<MilpSchedulerService.PoolSolution> pool, List<LnsSchedulerService.ObjectivePoint> progress) {
+            this(a.byKey, a.pesiPerMese, a.eventiPerMese, rowsMutated, score, lowerBound, pool, progress);
+        }
+        public ScheduleResult(Map<String, Integer> assignment, long[][] pesiPerMese, int[][] eventiPerMese, List<FestivoInputRow> rowsMutated,
+                              double score, double lowerBound, List<MilpSchedulerService.PoolSolution> pool,
+                              List<LnsSchedulerService.ObjectivePoint> progress) {
+            this.assignment = assignment;
+            this.pesiPerMese = pesiPerMese;
+            this.eventiPerMese = eventiPerMese;
+            this.rowsMutated = rowsMutated;
+            this.score = score;
+            this.lowerBound = lowerBound;
+            this.pool = pool;
+            this.progress = progress;
+        }
+    }
+
+    /** Assegnazione per chiave data|turno (un MPB su entrambe le date) con pesi ed eventi per squadra e mese. */
+    static final class Assignment {
+        final Map<String, Integer> byKey;
+        final long[][] pesiPerMese;
+        final int[][] eventiPerMese;
+
+        Assignment(Map<String, Integer> byKey, long[][] pesiPerMese, int[][] eventiPerMese) {
+            this.byKey = byKey;
+            this.pesiPerMese = pesiPerMese;
+            this.eventiPerMese = eventiPerMese;
+        }
+    }
 
     static class FestivoUnit {
         String id; // unique key
@@ -20,7 +65,7 @@ class SchedulingCommon {
         int year;  // for heavy constraint (MPB -> year of saturday)
         boolean pesante;
         Optional<Integer> forzata; // unified
-        Set<Integer> escluse; // union
+        BitSet escluse; // union, bit = numero squadra
     }
 
     static class BuiltModel {
@@ -28,23 +73,28 @@ class SchedulingCommon {
         Map<LocalDate, String> pairTypeByDate; // date -> "MP" or "SN" markers present (for same-day constraint)
         Map<String, FestivoUnit> byKey;
         List<FestivoInputRow> mutatedRows; // with propagated forzata for MPB if needed
+        TeamConfig teams; // numero di squadre e rotazione dei turni ordinari
+
+        boolean proximityOk(int team, LocalDate date, int minProxDays) {
+            return teams.proximityOk(team, date, minProxDays);
+        }
     }
 
     static BuiltModel buildUnits(List<FestivoInputRow> rows, Set<String> pesanti, LocalDate start, LocalDate end) {
-        List<Map<String, Object>> violations = new ArrayList<>();
-        Map<String, FestivoInputRow> byKey = new HashMap<>();
-        Map<LocalDate, Set<String>> byDateTurni = new HashMap<>();
-        for (FestivoInputRow r : rows) {
-            byKey.put(r.date + "|" + r.turno, r);
-            byDateTurni.computeIfAbsent(r.date, k -> new HashSet<>()).add(r.turno);
-        }
+        return buildUnits(rows, pesanti, start, end, TeamConfig.DEFAULT);
+    }
+
+    /**
+     * Unità di assegnazione dalle righe già validate (RuleValidator: coppie sab-dom, coerenza delle forzate nel
+     * blocco, regola del 31): i blocchi sab-dom MP diventano un'unica unità MPB.
+     */
+    static BuiltModel buildUnits(List<FestivoInputRow> rows, Set<String> pesanti, LocalDate start, LocalDate end, TeamConfig teams) {
+        RuleValidator.DayTable table = new RuleValidator.DayTable(start, end);
+        for (FestivoInputRow r : rows) table.put(r);
 
         List<FestivoUnit> units = new ArrayList<>();
-        Set<String> used = new HashSet<>();
-        List<FestivoInputRow> mutated = new ArrayList<>();
-        for (FestivoInputRow r : rows) {
-            mutated.add(r);
-        }
+        Set<FestivoInputRow> used = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<FestivoInputRow> mutated = new ArrayList<>(rows);
 
         // Build MP Saturday/Sunday blocks first
         for (FestivoInputRow r : rows) {
@@ -52,19 +102,10 @@ class SchedulingCommon {
             if (r.date.getDayOfWeek() != DayOfWeek.SATURDAY) continue;
             LocalDate sat = r.date;
             LocalDate sun = sat.plusDays(1);
-            if (sun.isAfter(end)) continue; // no coupling outside period
-            FestivoInputRow rSun = byKey.get(sun + "|MP");
-            if (rSun == null) continue; // already validated, but ignore here
-
-            String kSat = sat + "|MP";
-            String kSun = sun + "|MP";
-            if (used.contains(kSat) || used.contains(kSun)) continue;
-
-            // Validate forzate coherence
-            if (r.assegnazioneForzata.isPresent() && rSun.assegnazioneForzata.isPresent()
-                    && !r.assegnazioneForzata.get().equals(rSun.assegnazioneForzata.get())) {
-                addV(violations, r.excelRowNumber, "assegnazione forzata", "Forzate diverse tra sabato e domenica MP adiacenti");
-            }
+            FestivoInputRow rSun = table.get(sun, "MP"); // null anche oltre la fine del periodo: nessun accoppiamento
+            if (rSun == null) continue;
+            if (used.contains(r) || used.contains(rSun)) continue;
+
             // Unified forzata (propagate if one side only)
             Optional<Integer> forz = r.assegnazioneForzata.isPresent() ? r.assegnazioneForzata : rSun.assegnazioneForzata;
             if (forz.isPresent()) {
@@ -83,20 +124,17 @@ class SchedulingCommon {
             u.year = sat.getYear();
             u.pesante = pesanti.contains(sat + "|MP") || pesanti.contains(sun + "|MP");
             u.forzata = forz;
-            u.escluse = new HashSet<>();
-            u.escluse.addAll(r.squadreEscluse);
-            u.escluse.addAll(rSun.squadreEscluse);
-            if (forz.isPresent() && u.escluse.contains(forz.get())) {
-                addV(violations, r.excelRowNumber, "assegnazione forzata", "Forzata in conflitto con esclusioni nel blocco sab-dom");
-            }
+            u.escluse = (BitSet) r.squadreEscluse.clone();
+            u.escluse.or(rSun.squadreEscluse);
             units.add(u);
-            used.add(kSat); used.add(kSun);
+            used.add(r);
+            used.add(rSun);
         }
 
         // Remaining MP (non-block) and SN
         for (FestivoInputRow r : rows) {
+            if (used.contains(r)) continue;
             String k = r.date + "|" + r.turno;
-            if (used.contains(k)) continue;
             FestivoUnit u = new FestivoUnit();
             u.id = k;
             u.rows = Collections.singletonList(r);
@@ -107,12 +145,10 @@ class SchedulingCommon {
             u.year = r.date.getYear();
             u.pesante = pesanti.contains(k);
             u.forzata = r.assegnazioneForzata;
-            u.escluse = new HashSet<>(r.squadreEscluse);
+            u.escluse = (BitSet) r.squadreEscluse.clone();
             units.add(u);
         }
 
-        if (!violations.isEmpty()) throw new ValidationException(violations);
-
         // Map date -> present types for same-day constraint
         Map<LocalDate, String> pairTypeByDate = new HashMap<>();
         for (FestivoUnit u : units) {
@@ -130,31 +166,77 @@ class SchedulingCommon {
         bm.pairTypeByDate = pairTypeByDate;
         bm.byKey = null;
         bm.mutatedRows = mutated;
+        bm.teams = teams;
         return bm;
     }
 
-    static boolean proximityOk(int team, LocalDate date, int minProxDays) {
-        // team regular days: team 1 => 1,11,21 ; ... team 10 => 10,20,30 ; day 31 no regular
-        for (int delta = -minProxDays; delta <= minProxDays; delta++) {
-            LocalDate d = date.plusDays(delta);
-            int dom = d.getDayOfMonth();
-            if (dom == 31) continue; // 31 has no regular
-            int mod = dom % 10; // 0..9; team 10 maps to 0, others to 1..9
-            int teamOfDay = (mod == 0) ? 10 : mod;
-            if (teamOfDay == team) {
-                if (Math.abs(ChronoUnit.DAYS.between(date, d)) < minProxDays) return false; // strict < X forbidden, ==X allowed
+    static void addV(List<Map<String, Object>> violations, int row, String field, String message) {
+        ValidationUtil.addV(violations, row, field, message);
+    }
+
+    /** team[i] è la squadra (1..T) di units.get(i). */
+    static Assignment assignmentOf(List<FestivoUnit> units, int[] team, int T) {
+        Map<String, Integer> byKey = new HashMap<>();
+        long[][] pesiPerMese = new long[T + 1][12];
+        int[][] eventiPerMese = new int[T + 1][12];
+        for (int i = 0; i < units.size(); i++) {
+            FestivoUnit u = units.get(i);
+            if ("MPB".equals(u.tipo)) {
+                byKey.put(u.dates.get(0) + "|MP", team[i]);
+                byKey.put(u.dates.get(1) + "|MP", team[i]);
+            } else {
+                byKey.put(u.dates.get(0) + "|" + u.tipo, team[i]);
             }
+            pesiPerMese[team[i]][u.month - 1] += u.peso;
+            eventiPerMese[team[i]][u.month - 1] += 1;
         }
-        return true;
+        return new Assignment(byKey, pesiPerMese, eventiPerMese);
     }
 
-    static void addV(List<Map<String, Object>> violations, int row, String field, String message) {
-        Map<String, Object> m = new HashMap<>();
-        m.put("row", row);
-        m.put("field", field);
-        m.put("message", message);
-        violations.add(m);
+    static void traceAssigned(SchedulingTrace trace, List<FestivoUnit> units, int[] team) {
+        if (!trace.enabled()) return;
+        for (int i = 0; i < units.size(); i++) {
+            trace.record("assegnata", units.get(i).id, "squadra=" + team[i] + " peso=" + units.get(i).peso);
+        }
     }
-}
 
+    /** Chiave data|turno della prima data dell'unità: per gli MPB il sabato. */
+    static String unitKey(FestivoUnit u) {
+        return u.dates.get(0) + "|" + ("MPB".equals(u.tipo) ? "MP" : u.tipo);
+    }
 
+    /** Per ogni unità (indice in units) le unità del turno opposto (MP/SN) in una delle sue date. */
+    static int[][] dayPeers(List<FestivoUnit> units) {
+        Map<LocalDate, List<Integer>> mpAt = new HashMap<>();
+        Map<LocalDate, List<Integer>> snAt = new HashMap<>();
+        for (int i = 0; i < units.size(); i++) {
+            FestivoUnit u = units.get(i);
+            for (LocalDate d : u.dates) ("SN".equals(u.tipo) ? snAt : mpAt).computeIfAbsent(d, k -> new ArrayList<>()).add(i);
+        }
+        int[][] peers = new int[units.size()][];
+        for (int i = 0; i < units.size(); i++) {
+            FestivoUnit u = units.get(i);
+            Set<Integer> day = new LinkedHashSet<>();
+            for (LocalDate d : u.dates) day.addAll(("SN".equals(u.tipo) ? mpAt : snAt).getOrDefault(d, List.of()));
+            peers[i] = day.stream().mapToInt(Integer::intValue).toArray();
+        }
+        return peers;
+    }
+
+    /**
+     * Diagnosi dopo un fallimento dell'engine, con fase e traccia: se una soluzione esiste aggiunge feasibleHint
+     * (cosa fare per trovarla), altrimenti il nucleo di vincoli incompatibili. feasibleHint null: sempre il nucleo.
+     */
+    static void diagnoseInto(InfeasibilityDiagnosis diagnosis, SchedulingMetrics metrics, String engine, BuiltModel bm,
+                             int minProximityDays, List<Map<String, Object>> violations, SchedulingTrace trace, String feasibleHint) {
+        SchedulingMetrics.Phase phase = metrics.start();
+        InfeasibilityDiagnosis.Result r = diagnosis.diagnose(bm, minProximityDays);
+        long nanos = metrics.stop(phase, SchedulingMetrics.PHASE_DIAGNOSIS, engine);
+        trace.phase(SchedulingMetrics.PHASE_DIAGNOSIS, nanos, "verdict=" + r.verdict + " core=" + r.core.size() + " checks=" + r.checks);
+        if (r.verdict == InfeasibilityDiagnosis.Verdict.FEASIBLE && feasibleHint != null) {
+            addV(violations, 0, InfeasibilityDiagnosis.FIELD, "Esiste un'assegnazione che rispetta tutti i vincoli: " + feasibleHint);
+        } else {
+            InfeasibilityDiagnosis.report(r, violations, trace);
+        }
+    }
+}
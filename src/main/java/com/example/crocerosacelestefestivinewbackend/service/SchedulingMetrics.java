@@ -0,0 +1,166 @@
+package com.example.crocerosacelestefestivinewbackend.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Metriche Micrometer della pipeline: timer per fase (parse, buildUnits, modelBuild, solve, rounding, diagnosis, render)
+ * con tag engine ed evento JFR festivi.Phase, gauge delle risoluzioni in corso, contatori degli esiti e
+ * distribuzioni delle dimensioni.
+ */
+@Component
+public class SchedulingMetrics {
+    public static final String ENGINE_GREEDY = "greedy";
+    public static final String ENGINE_MILP = "milp";
+    public static final String ENGINE_BEAM = "beam";
+    public static final String ENGINE_LP = "lp";
+    public static final String ENGINE_LNS = "lns";
+    public static final String ENGINE_FLOW = "flow";
+
+    public static final String PHASE_PARSE = "parse";
+    public static final String PHASE_BUILD_UNITS = "buildUnits";
+    public static final String PHASE_MODEL_BUILD = "modelBuild";
+    public static final String PHASE_SOLVE = "solve";
+    public static final String PHASE_ROUNDING = "rounding"; // arrotondamento e riparazione della soluzione LP
+    public static final String PHASE_DIAGNOSIS = "diagnosis"; // nucleo di vincoli incompatibili, solo se l'assegnazione fallisce
+    public static final String PHASE_RENDER = "render";
+
+    // esiti: optimal, feasible (incumbent non provato ottimo), infeasible, timeout (nessuna soluzione entro il limite), error
+    public static final String OUTCOME_OPTIMAL = "optimal";
+    public static final String OUTCOME_FEASIBLE = "feasible";
+    public static final String OUTCOME_INFEASIBLE = "infeasible";
+    public static final String OUTCOME_TIMEOUT = "timeout";
+    public static final String OUTCOME_ERROR = "error";
+
+    private final MeterRegistry registry;
+    private final Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+
+    public SchedulingMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /** Fase in corso: timer Micrometer ed evento JFR (PhaseEvent) chiusi insieme da stop. */
+    public static final class Phase {
+        private final Timer.Sample sample;
+        private final PhaseEvent event = new PhaseEvent();
+
+        private Phase(Timer.Sample sample) {
+            this.sample = sample;
+            event.begin();
+        }
+    }
+
+    public <T> T time(String phase, String engine, Supplier<T> body) {
+        Phase p = start();
+        try {
+            return body.get();
+        } finally {
+            stop(p, phase, engine);
+        }
+    }
+
+    public Phase start() {
+        return new Phase(Timer.start(registry));
+    }
+
+    /** Chiude la fase e ne restituisce la durata in nanosecondi. */
+    public long stop(Phase p, String phase, String engine) {
+        p.event.end();
+        if (p.event.shouldCommit()) {
+            p.event.engine = engine;
+            p.event.phase = phase;
+            p.event.commit();
+        }
+        return p.sample.stop(phaseTimer(phase, engine));
+    }
+
+    private Timer phaseTimer(String phase, String engine) {
+        return Timer.builder("festivi.phase")
+                .description("Durata delle fasi della pipeline di assegnazione")
+                .tags("phase", phase, "engine", engine)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    public void solveStarted(String engine) {
+        inFlightGauge(engine).incrementAndGet();
+    }
+
+    public void solveFinished(String engine) {
+        inFlightGauge(engine).decrementAndGet();
+    }
+
+    private AtomicInteger inFlightGauge(String engine) {
+        return inFlight.computeIfAbsent(engine, e -> registry.gauge("festivi.solve.inflight", Tags.of("engine", e), new AtomicInteger()));
+    }
+
+    /** Richieste in coda e slot occupati del controllo di ammissione. */
+    public void queueGauges(String engine, Supplier<Number> waiting, Supplier<Number> active) {
+        Gauge.builder("festivi.solver.queue.depth", waiting).description("Richieste in attesa di uno slot")
+                .tags("engine", engine).register(registry);
+        Gauge.builder("festivi.solver.slots.active", active).description("Slot di risoluzione occupati")
+                .tags("engine", engine).register(registry);
+    }
+
+    public void queueWait(String engine, long nanos) {
+        Timer.builder("festivi.solver.queue.wait")
+                .description("Attesa di uno slot di risoluzione")
+                .tags("engine", engine)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void rejected(String engine) {
+        Counter.builder("festivi.solver.rejected")
+                .description("Richieste rifiutate con 429")
+                .tags("engine", engine)
+                .register(registry)
+                .increment();
+    }
+
+    public void outcome(String engine, String outcome) {
+        Counter.builder("festivi.solve.outcome")
+                .description("Esiti delle risoluzioni")
+                .tags("engine", engine, "outcome", outcome)
+                .register(registry)
+                .increment();
+    }
+
+    public void units(String engine, int units) {
+        summary("festivi.units", "Unità (festivi/blocchi) per richiesta", engine).record(units);
+    }
+
+    public void modelSize(String engine, int variables, int constraints) {
+        summary("festivi.model.variables", "Variabili del modello", engine).record(variables);
+        summary("festivi.model.constraints", "Vincoli del modello", engine).record(constraints);
+    }
+
+    /** Gap relativo tra incumbent e best bound al termine della risoluzione. */
+    public void gap(String engine, double gap) {
+        DistributionSummary.builder("festivi.solve.gap")
+                .description("Gap relativo a fine risoluzione")
+                .tags("engine", engine)
+                .register(registry)
+                .record(gap);
+    }
+
+    private DistributionSummary summary(String name, String description, String engine) {
+        return DistributionSummary.builder(name)
+                .description(description)
+                .tags("engine", engine)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+}
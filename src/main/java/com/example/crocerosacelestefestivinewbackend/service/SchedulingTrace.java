@@ -0,0 +1,109 @@
+package com.example.crocerosacelestefestivinewbackend.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Traccia delle decisioni di una richiesta, attivata per richiesta (header X-Festivi-Trace o parametro trace=true)
+ * al posto dei log di debug per unità: fasi con durata, squadre candidate dopo ogni filtro, ordine dei candidati,
+ * squadra scelta e score. Buffer circolare di capacità fissa: oltre la capacità restano le voci più recenti.
+ * Le voci si scrivono solo se enabled(): chi costruisce il dettaglio deve controllarlo prima (OFF non registra nulla).
+ * Con le sezioni ogni sezione scrive con forSection(nome) nello stesso buffer, anche da thread diversi.
+ */
+public final class SchedulingTrace {
+    public static final int DEFAULT_CAPACITY = 20_000;
+
+    /** Traccia disattivata: enabled() false, nessuna allocazione. */
+    public static final SchedulingTrace OFF = new SchedulingTrace(null, null);
+
+    public static final class Entry {
+        public final long atMicros; // dall'inizio della richiesta
+        public final String section;
+        public final String kind;
+        public final String unit;
+        public final String detail;
+
+        Entry(long atMicros, String section, String kind, String unit, String detail) {
+            this.atMicros = atMicros;
+            this.section = section;
+            this.kind = kind;
+            this.unit = unit;
+            this.detail = detail;
+        }
+    }
+
+    private static final class Ring {
+        final long startNanos = System.nanoTime();
+        final Entry[] entries;
+        long total;
+
+        Ring(int capacity) {
+            entries = new Entry[Math.max(1, capacity)];
+        }
+    }
+
+    private final Ring ring;
+    private final String section;
+
+    private SchedulingTrace(Ring ring, String section) {
+        this.ring = ring;
+        this.section = section;
+    }
+
+    public static SchedulingTrace create(int capacity) {
+        return new SchedulingTrace(new Ring(capacity), null);
+    }
+
+    public boolean enabled() {
+        return ring != null;
+    }
+
+    /** Vista sullo stesso buffer che marca le voci con la sezione. */
+    public SchedulingTrace forSection(String name) {
+        return ring == null ? this : new SchedulingTrace(ring, name);
+    }
+
+    public void record(String kind, String unit, String detail) {
+        if (ring == null) return;
+        long at = (System.nanoTime() - ring.startNanos) / 1_000;
+        synchronized (ring) {
+            ring.entries[(int) (ring.total % ring.entries.length)] = new Entry(at, section, kind, unit, detail);
+            ring.total++;
+        }
+    }
+
+    public void phase(String phase, long durationNanos, String detail) {
+        if (ring == null) return;
+        record("fase", phase, "durationMs=" + durationNanos / 1_000_000 + (detail == null ? "" : " " + detail));
+    }
+
+    /** Voci scartate perché il buffer era pieno. */
+    public long dropped() {
+        if (ring == null) return 0;
+        synchronized (ring) {
+            return Math.max(0, ring.total - ring.entries.length);
+        }
+    }
+
+    /** Voci in ordine di registrazione (le più vecchie oltre la capacità sono perse). */
+    public List<Entry> entries() {
+        if (ring == null) return List.of();
+        synchronized (ring) {
+            int n = (int) Math.min(ring.total, ring.entries.length);
+            List<Entry> out = new ArrayList<>(n);
+            long first = ring.total - n;
+            for (long i = first; i < ring.total; i++) out.add(ring.entries[(int) (i % ring.entries.length)]);
+            return out;
+        }
+    }
+
+    /** Elenco compatto di squadre, es. "[1, 4, 7]". */
+    static String teams(int[] teams, int n) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int k = 0; k < n; k++) {
+            if (k > 0) sb.append(", ");
+            sb.append(teams[k]);
+        }
+        return sb.append(']').toString();
+    }
+}
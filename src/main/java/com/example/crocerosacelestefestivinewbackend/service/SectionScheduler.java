@@ -0,0 +1,81 @@
+package com.example.crocerosacelestefestivinewbackend.service;
+
+import com.example.crocerosacelestefestivinewbackend.api.ValidationException;
+import com.example.crocerosacelestefestivinewbackend.service.ExcelOutputService.SectionOutput;
+import com.example.crocerosacelestefestivinewbackend.service.ExcelParsingService.Section;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Risoluzione delle sezioni di un upload in parallelo sul pool solver (CpuOffload, al più festivi.executor.solver-threads
+ * sezioni alla volta): con thread sufficienti la latenza è quella della sezione più lenta, non la somma.
+ * Il parallelismo è limitato anche dagli slot di ammissione ottenuti per l'engine: con k slot le sezioni sono
+ * distribuite su k corsie, ognuna risolta in sequenza, così un upload non esegue più solve nativi dei suoi slot.
+ * Ogni sezione è indipendente; le violazioni di tutte le sezioni sono riportate insieme, con il nome della sezione.
+ */
+@Component
+public class SectionScheduler {
+    private static final Logger log = LoggerFactory.getLogger(SectionScheduler.class);
+
+    private final CpuOffload cpuOffload;
+
+    public SectionScheduler(CpuOffload cpuOffload) {
+        this.cpuOffload = cpuOffload;
+    }
+
+    private static class Outcome {
+        SectionOutput output;
+        List<Map<String, Object>> violations;
+    }
+
+    /** Risolve le sezioni con al più parallelism solve contemporanei (gli slot di ammissione ottenuti per l'engine). */
+    public List<SectionOutput> solveAll(String engine, List<Section> sections, int parallelism,
+                                        Function<Section, SectionOutput> solver) {
+        long t0 = System.currentTimeMillis();
+        int lanes = Math.max(1, Math.min(parallelism, sections.size()));
+        // corsia i: sezioni i, i + lanes, i + 2*lanes, ... in sequenza
+        List<Supplier<List<Outcome>>> work = new ArrayList<>(lanes);
+        for (int lane = 0; lane < lanes; lane++) {
+            int first = lane;
+            work.add(() -> {
+                List<Outcome> done = new ArrayList<>();
+                for (int i = first; i < sections.size(); i += lanes) done.add(solveOne(engine, sections.get(i), solver));
+                return done;
+            });
+        }
+        List<List<Outcome>> byLane = cpuOffload.callAll(work);
+        List<Outcome> outcomes = new ArrayList<>(sections.size());
+        for (int i = 0; i < sections.size(); i++) outcomes.add(byLane.get(i % lanes).get(i / lanes));
+
+        List<Map<String, Object>> violations = new ArrayList<>();
+        List<SectionOutput> outputs = new ArrayList<>(sections.size());
+        for (Outcome o : outcomes) {
+            if (o.violations != null) violations.addAll(o.violations);
+            else outputs.add(o.output);
+        }
+        log.info("[SECTIONS] engine={} sections={} failed={} durationMs={}", engine, sections.size(),
+                sections.size() - outputs.size(), System.currentTimeMillis() - t0);
+        if (!violations.isEmpty()) throw new ValidationException(violations);
+        return outputs;
+    }
+
+    private static Outcome solveOne(String engine, Section section, Function<Section, SectionOutput> solver) {
+        long s0 = System.currentTimeMillis();
+        Outcome o = new Outcome();
+        try {
+            o.output = solver.apply(section);
+        } catch (ValidationException ve) {
+            o.violations = ExcelParsingService.tagSection(ve.getViolations(), section.name);
+        }
+        log.info("[SECTIONS] engine={} section={} teams={} rows={} ok={} durationMs={}", engine, section.name,
+                section.teams, section.parsed.rows.size(), o.violations == null, System.currentTimeMillis() - s0);
+        return o;
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.crocerosacelestefestivinewbackend.service;
+
+import com.example.crocerosacelestefestivinewbackend.api.SolverBusyException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Controllo di ammissione per gli engine costosi: per ogni engine elencato in festivi.solver.limited-engines
+ * un pool di slot (festivi.solver.&lt;engine&gt;.slots) con coda d'attesa limitata (queue-capacity, max-wait-seconds).
+ * Oltre la coda, o scaduta l'attesa, la richiesta viene rifiutata con SolverBusyException (HTTP 429) e un
+ * Retry-After stimato dai tempi di risoluzione osservati. Gli engine non elencati (es. greedy) passano senza attesa.
+ * L'ordine di arrivo è rispettato: il semaforo è equo e anche il primo tentativo passa dalla coda.
+ * Un upload a sezioni chiede uno slot per sezione (al più tutti gli slot dell'engine) e risolve tante sezioni
+ * in parallelo quanti slot ha ottenuto.
+ */
+@Component
+public class SolverAdmission {
+    private static final Logger log = LoggerFactory.getLogger(SolverAdmission.class);
+    private static final double EWMA_WEIGHT = 0.2;
+    private static final long DEFAULT_ESTIMATE_MS = 10_000;
+
+    private final Map<String, Pool> pools = new HashMap<>();
+    private final SchedulingMetrics metrics;
+
+    public SolverAdmission(Environment env, SchedulingMetrics metrics) {
+        this.metrics = metrics;
+        for (String engine : env.getProperty("festivi.solver.limited-engines", String[].class, new String[0])) {
+            String prefix = "festivi.solver." + engine.trim() + ".";
+            int slots = env.getProperty(prefix + "slots", Integer.class, Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+            int queue = env.getProperty(prefix + "queue-capacity", Integer.class, slots * 2);
+            int maxWait = env.getProperty(prefix + "max-wait-seconds", Integer.class, 60);
+            Pool p = new Pool(engine.trim(), slots, queue, maxWait * 1000L);
+            pools.put(p.engine, p);
+            metrics.queueGauges(p.engine, p.waiting::get, () -> p.slots - p.semaphore.availablePermits());
+            log.info("[ADMISSION] engine={} slots={} queueCapacity={} maxWaitSeconds={}", p.engine, slots, queue, maxWait);
+        }
+    }
+
+    /** Ottiene uno slot per l'engine (bloccante fino a max-wait). Da rilasciare con close(). */
+    public Permit acquire(String engine) {
+        return acquire(engine, 1);
+    }
+
+    /**
+     * Ottiene min(wanted, slots) slot per l'engine, tutti insieme (bloccante fino a max-wait): Permit.count() dice
+     * quanti solve possono girare in parallelo. Per gli engine non limitati count() è wanted.
+     */
+    public Permit acquire(String engine, int wanted) {
+        Pool p = pools.get(engine);
+        if (p == null) return new Permit(null, Math.max(1, wanted));
+        int n = Math.max(1, Math.min(wanted, p.slots));
+        long t0 = System.nanoTime();
+        try {
+            // con timeout (anche zero) il semaforo equo rispetta la coda: tryAcquire() passerebbe davanti a chi attende
+            if (p.semaphore.tryAcquire(n, 0, TimeUnit.MILLISECONDS)) {
+                metrics.queueWait(engine, 0L);
+                return new Permit(p, n);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw reject(p, "interrupted");
+        }
+        if (p.waiting.incrementAndGet() > p.queueCapacity) {
+            p.waiting.decrementAndGet();
+            throw reject(p, "queue full");
+        }
+        boolean acquired = false;
+        try {
+            acquired = p.semaphore.tryAcquire(n, p.maxWaitMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            p.waiting.decrementAndGet();
+            metrics.queueWait(engine, System.nanoTime() - t0);
+        }
+        if (!acquired) throw reject(p, "wait timeout");
+        return new Permit(p, n);
+    }
+
+    private SolverBusyException reject(Pool p, String why) {
+        long retryAfter = p.retryAfterSeconds();
+        metrics.rejected(p.engine);
+        log.warn("[ADMISSION] Rejected engine={} reason={} waiting={} retryAfter={}s", p.engine, why, p.waiting.get(), retryAfter);
+        return new SolverBusyException(p.engine, retryAfter);
+    }
+
+    public static class Permit implements AutoCloseable {
+        private final Pool pool;
+        private final int count;
+        private final long acquiredAt = System.nanoTime();
+        private boolean released;
+
+        private Permit(Pool pool, int count) {
+            this.pool = pool;
+            this.count = count;
+        }
+
+        /** Slot ottenuti: quanti solve dell'engine si possono eseguire in parallelo con questo permesso. */
+        public int count() {
+            return count;
+        }
+
+        @Override
+        public void close() {
+            if (pool == null || released) return;
+            released = true;
+            pool.observe((System.nanoTime() - acquiredAt) / 1_000_000L);
+            pool.semaphore.release(count);
+        }
+    }
+
+    static final class Pool {
+        final String engine;
+        final int slots;
+        final int queueCapacity;
+        final long maxWaitMs;
+        final Semaphore semaphore;
+        final AtomicInteger waiting = new AtomicInteger();
+        private volatile double avgSolveMs = -1;
+
+        Pool(String engine, int slots, int queueCapacity, long maxWaitMs) {
+            this.engine = engine;
+            this.slots = slots;
+            this.queueCapacity = queueCapacity;
+            this.maxWaitMs = maxWaitMs;
+            this.semaphore = new Semaphore(slots, true);
+        }
+
+        synchronized void observe(long durationMs) {
+            avgSolveMs = avgSolveMs < 0 ? durationMs : EWMA_WEIGHT * durationMs + (1 - EWMA_WEIGHT) * avgSolveMs;
+        }
+
+        // tempo per smaltire la coda attuale più la richiesta rifiutata, con tutti gli slot in parallelo
+        long retryAfterSeconds() {
+            double avg = avgSolveMs < 0 ? DEFAULT_ESTIMATE_MS : avgSolveMs;
+            double ms = avg * (waiting.get() + 1) / slots;
+            return Math.max(1L, (long) Math.ceil(ms / 1000.0));
+        }
+    }
+}
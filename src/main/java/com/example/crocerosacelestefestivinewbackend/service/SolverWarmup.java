@@ -0,0 +1,97 @@
+package com.example.crocerosacelestefestivinewbackend.service;
+
+import com.example.crocerosacelestefestivinewbackend.service.dto.FestivoInputRow;
+import com.google.ortools.linearsolver.MPSolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * All'avvio carica le librerie OR-Tools e, se festivi.solver.warmup.enabled, risolve un modello sintetico minimo
+ * (buildUnits + modello MILP + SCIP) per scaldare i percorsi nativi e il JIT. Fa da health indicator "solver":
+ * DOWN finché il solver non è utilizzabile, incluso nel gruppo readiness.
+ */
+@Component("solver")
+public class SolverWarmup implements ApplicationRunner, HealthIndicator {
+    private static final Logger log = LoggerFactory.getLogger(SolverWarmup.class);
+
+    private final OrToolsNatives natives;
+    private final MilpSchedulerService milpSchedulerService;
+    private final boolean warmupEnabled;
+    private volatile boolean ready;
+    private volatile String failure;
+
+    public SolverWarmup(OrToolsNatives natives,
+                        MilpSchedulerService milpSchedulerService,
+                        @Value("${festivi.solver.warmup.enabled:true}") boolean warmupEnabled) {
+        this.natives = natives;
+        this.milpSchedulerService = milpSchedulerService;
+        this.warmupEnabled = warmupEnabled;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        // in background: l'applicazione accetta liveness subito, la readiness arriva a warm-up concluso
+        Thread t = new Thread(this::initialize, "solver-warmup");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    void initialize() {
+        long t0 = System.currentTimeMillis();
+        try {
+            natives.ensureLoaded();
+            if (warmupEnabled) warmupSolve();
+            ready = true;
+            log.info("[WARMUP] Solver ready in {}ms (warmup={})", System.currentTimeMillis() - t0, warmupEnabled);
+        } catch (RuntimeException | UnsatisfiedLinkError e) {
+            failure = e.toString();
+            log.error("[WARMUP] Solver initialization failed", e);
+        }
+    }
+
+    private void warmupSolve() {
+        // un sabato/domenica MP (blocco MPB) e una SN: percorre buildUnits, vincoli stesso giorno e mensili
+        LocalDate sat = LocalDate.of(2025, 1, 4);
+        List<FestivoInputRow> rows = List.of(row(2, sat, "MP"), row(3, sat.plusDays(1), "MP"), row(4, sat.plusDays(1), "SN"));
+        SchedulingCommon.BuiltModel bm = SchedulingCommon.buildUnits(rows, Set.of(), sat, sat.plusDays(1));
+        MilpSchedulerService.MilpModel model = milpSchedulerService.buildModel(bm, 1, 0.5);
+        try {
+            model.solver.setTimeLimit(5_000);
+            MPSolver.ResultStatus status = model.solver.solve();
+            if (log.isDebugEnabled()) log.debug("[WARMUP] Synthetic solve status={}", status);
+        } finally {
+            model.solver.delete();
+        }
+    }
+
+    private static FestivoInputRow row(int excelRow, LocalDate d, String turno) {
+        FestivoInputRow r = new FestivoInputRow();
+        r.excelRowNumber = excelRow;
+        r.date = d;
+        r.turno = turno;
+        r.peso = 1;
+        r.assegnazioneForzata = Optional.empty();
+        r.squadreEscluse = new BitSet();
+        return r;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    @Override
+    public Health health() {
+        if (ready) return Health.up().withDetail("warmup", warmupEnabled).build();
+        if (failure != null) return Health.down().withDetail("error", failure).build();
+        return Health.outOfService().withDetail("state", "initializing").build();
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.crocerosacelestefestivinewbackend.service;
+
+import com.example.crocerosacelestefestivinewbackend.api.ValidationException;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Numero di squadre e rotazione dei turni ordinari di una richiesta. La rotazione dice quale squadra ha il turno
+ * ordinario in una data: un festivo non può cadere a meno di minProximityDays da un turno ordinario della squadra.
+ * <ul>
+ *   <li>MENSILE: giorno del mese ciclico, squadra ((giorno - 1) mod N) + 1, il 31 senza squadra ordinaria.
+ *   Con 10 squadre è la rotazione storica (squadra 1 → 1, 11, 21; squadra 10 → 10, 20, 30); oltre 30 squadre
+ *   le squadre 31..N non hanno turni ordinari.</li>
+ *   <li>CONTINUA: ciclo ininterrotto di N giorni, squadra 1 nella data di riferimento (default: inizio periodo).</li>
+ *   <li>NESSUNA: nessun turno ordinario, il vincolo di prossimità non si applica.</li>
+ * </ul>
+ * Le squadre sono numerate 1..N; gli insiemi di squadre (escluse) sono BitSet indicizzati per numero di squadra.
+ */
+public final class TeamConfig {
+    public static final int DEFAULT_TEAMS = 10;
+    public static final int MAX_TEAMS = 200;
+
+    public enum Rotation { MENSILE, CONTINUA, NESSUNA }
+
+    /** Configurazione storica: 10 squadre, rotazione sul giorno del mese. */
+    public static final TeamConfig DEFAULT = new TeamConfig(DEFAULT_TEAMS, Rotation.MENSILE, null);
+
+    private final int teams;
+    private final Rotation rotation;
+    private final LocalDate anchor; // solo CONTINUA
+    private final long anchorEpochDay;
+
+    private TeamConfig(int teams, Rotation rotation, LocalDate anchor) {
+        this.teams = teams;
+        this.rotation = rotation;
+        this.anchor = anchor;
+        this.anchorEpochDay = anchor == null ? 0 : anchor.toEpochDay();
+    }
+
+    /**
+     * Configurazione dai parametri della richiesta (tutti opzionali). rotationStart serve solo alla rotazione
+     * continua e vale startDate se assente.
+     */
+    public static TeamConfig of(Integer teams, String rotation, LocalDate rotationStart, LocalDate startDate) {
+        int n = teams == null ? DEFAULT_TEAMS : teams;
+        if (n < 2 || n > MAX_TEAMS) {
+            throw new ValidationException(List.of(Map.of(
+                    "row", 0,
+                    "field", "teams",
+                    "message", "teams deve essere tra 2 e " + MAX_TEAMS)));
+        }
+        Rotation r;
+        try {
+            r = rotation == null || rotation.isBlank() ? Rotation.MENSILE : Rotation.valueOf(rotation.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException(List.of(Map.of(
+                    "row", 0,
+                    "field", "rotation",
+                    "message", "rotation deve essere mensile, continua o nessuna")));
+        }
+        if (n == DEFAULT_TEAMS && r == Rotation.MENSILE) return DEFAULT;
+        return new TeamConfig(n, r, r == Rotation.CONTINUA ? (rotationStart != null ? rotationStart : startDate) : null);
+    }
+
+    public int teams() {
+        return teams;
+    }
+
+    public Rotation rotation() {
+        return rotation;
+    }
+
+    /** Data in cui la squadra 1 ha il turno ordinario (solo rotazione continua, altrimenti null). */
+    public LocalDate rotationStart() {
+        return anchor;
+    }
+
+    /** Squadra con il turno ordinario nella data, 0 se nessuna. */
+    int regularTeam(LocalDate d) {
+        switch (rotation) {
+            case MENSILE: {
+                int dom = d.getDayOfMonth();
+                if (dom == 31) return 0; // 31 has no regular
+                return (dom - 1) % teams + 1;
+            }
+            case CONTINUA:
+                return (int) Math.floorMod(d.toEpochDay() - anchorEpochDay, (long) teams) + 1;
+            default:
+                return 0;
+        }
+    }
+
+    /** Il festivo in data è ad almeno minProxDays dai turni ordinari della squadra (distanza == minProxDays ammessa). */
+    boolean proximityOk(int team, LocalDate date, int minProxDays) {
+        if (rotation == Rotation.NESSUNA) return true;
+        for (int delta = -minProxDays + 1; delta < minProxDays; delta++) {
+            if (regularTeam(date.plusDays(delta)) == team) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return teams + "/" + rotation.name().toLowerCase(Locale.ROOT) + (anchor == null ? "" : "@" + anchor);
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.crocerosacelestefestivinewbackend.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Template xlsx caricato una sola volta all'avvio (stesso ordine di ricerca dell'endpoint originale) e servito dalla
+ * memoria, con ETag (md5 del contenuto) e Last-Modified della risorsa.
+ */
+@Component
+public class TemplateStore {
+    private static final Logger log = LoggerFactory.getLogger(TemplateStore.class);
+
+    private final byte[] bytes;
+    private final String etag;
+    private final long lastModified;
+
+    public TemplateStore() {
+        byte[] found = null;
+        long modified = -1;
+        // Prefer exact file name with '@'
+        for (Resource res : new Resource[]{
+                new ClassPathResource("@festivi-template.xlsx"),
+                new ClassPathResource("festivi-template.xlsx"),
+                new FileSystemResource("src/main/resources/@festivi-template.xlsx"),
+                new FileSystemResource("src/main/resources/festivi-template.xlsx"),
+                new FileSystemResource("main/resources/@festivi-template.xlsx"),
+                new FileSystemResource("main/resources/festivi-template.xlsx")
+        }) {
+            if (!res.exists()) continue;
+            try (InputStream is = res.getInputStream()) {
+                found = is.readAllBytes();
+            } catch (IOException e) {
+                log.warn("[TEMPLATE] Cannot read {}: {}", res.getDescription(), e.toString());
+                continue;
+            }
+            try {
+                modified = res.lastModified();
+            } catch (IOException e) {
+                modified = -1;
+            }
+            log.info("[TEMPLATE] Loaded {} ({} bytes)", res.getDescription(), found.length);
+            break;
+        }
+        if (found == null) log.warn("[TEMPLATE] Template not found, /template will answer 404");
+        this.bytes = found;
+        this.etag = found == null ? null : "\"" + DigestUtils.md5DigestAsHex(found) + "\"";
+        // senza data affidabile (es. voce di jar senza timestamp) vale l'avvio
+        this.lastModified = modified > 0 ? modified / 1000 * 1000 : System.currentTimeMillis() / 1000 * 1000;
+    }
+
+    public boolean isAvailable() {
+        return bytes != null;
+    }
+
+    /** Contenuto condiviso, da non modificare. */
+    public byte[] bytes() {
+        return bytes;
+    }
+
+    public String etag() {
+        return etag;
+    }
+
+    public long lastModified() {
+        return lastModified;
+    }
+}
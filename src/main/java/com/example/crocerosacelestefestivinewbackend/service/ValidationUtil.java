@@ -6,6 +6,10 @@ import java.util.Map;
 
 class ValidationUtil {
     static void addV(List<Map<String, Object>> violations, int row, String field, String message) {
+        if (violations instanceof Violations compact) {
+            compact.add(row, field, message);
+            return;
+        }
         Map<String, Object> m = new HashMap<>();
         m.put("row", row);
         m.put("field", field);
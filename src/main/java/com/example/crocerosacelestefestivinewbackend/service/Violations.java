@@ -0,0 +1,95 @@
+package com.example.crocerosacelestefestivinewbackend.service;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Lista di violazioni compatta: riga, campo e messaggio in array paralleli, la mappa {row, field, message[, sezione]}
+ * è creata solo quando la lista viene letta (serializzazione della risposta 400). Oltre max violazioni le successive
+ * sono scartate e in coda compare una voce __global__; isFull() permette al parsing di fermarsi alla prima scartata
+ * invece di continuare a produrre errori su un upload da buttare (festivi.validation.max-violations).
+ */
+final class Violations extends AbstractList<Map<String, Object>> {
+    static final int DEFAULT_MAX = 200;
+
+    private final int max;
+    private int size;
+    private boolean truncated;
+    private int[] rows = new int[8];
+    private String[] fields = new String[8];
+    private String[] messages = new String[8];
+    private String[] sections; // solo se qualche voce ha la sezione
+
+    Violations(int max) {
+        this.max = Math.max(1, max);
+    }
+
+    Violations() {
+        this(DEFAULT_MAX);
+    }
+
+    void add(int row, String field, String message) {
+        add(row, field, message, null);
+    }
+
+    private boolean add(int row, String field, String message, String section) {
+        if (size >= max) {
+            truncated = true; // almeno una violazione persa: in coda la voce __global__
+            return false;
+        }
+        if (size == rows.length) {
+            int n = Math.min(max, size * 2);
+            rows = Arrays.copyOf(rows, n);
+            fields = Arrays.copyOf(fields, n);
+            messages = Arrays.copyOf(messages, n);
+            if (sections != null) sections = Arrays.copyOf(sections, n);
+        }
+        rows[size] = row;
+        fields[size] = field;
+        messages[size] = message;
+        if (section != null) {
+            if (sections == null) sections = new String[rows.length];
+            sections[size] = section;
+        }
+        size++;
+        return true;
+    }
+
+    /** Voce già in forma di mappa (violazioni di altre liste, es. sezioni). */
+    @Override
+    public boolean add(Map<String, Object> v) {
+        Object row = v.get("row");
+        Object section = v.get(ExcelParsingService.COL_SEZIONE);
+        return add(row instanceof Number n ? n.intValue() : 0, String.valueOf(v.get("field")), String.valueOf(v.get("message")),
+                section == null ? null : section.toString());
+    }
+
+    /** Una violazione è già stata scartata oltre il limite: inutile continuare a validare. */
+    boolean isFull() {
+        return truncated;
+    }
+
+    @Override
+    public int size() {
+        return truncated ? size + 1 : size;
+    }
+
+    @Override
+    public Map<String, Object> get(int i) {
+        Map<String, Object> m = new HashMap<>();
+        if (i == size && truncated) {
+            m.put("row", 0);
+            m.put("field", "__global__");
+            m.put("message", "Troppe violazioni: mostrate le prime " + max + ", validazione interrotta");
+            return m;
+        }
+        if (i < 0 || i >= size) throw new IndexOutOfBoundsException(i);
+        m.put("row", rows[i]);
+        m.put("field", fields[i]);
+        m.put("message", messages[i]);
+        if (sections != null && sections[i] != null) m.put(ExcelParsingService.COL_SEZIONE, sections[i]);
+        return m;
+    }
+}
@@ -0,0 +1,383 @@
+package com.example.crocerosacelestefestivinewbackend.service;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Patch in streaming di un pacchetto xlsx: le parti non toccate sono copiate voce per voce in forma compressa
+ * (senza decomprimere né ricomprimere), il foglio indicato è riscritto in StAX sostituendo solo le celle delle
+ * colonne patchate nelle righe richieste, e i fogli di un secondo xlsx sono innestati in coda (o al posto dei
+ * fogli con lo stesso nome). Workbook, relazioni e content type sono aggiornati con inserimenti testuali.
+ * Il costo è proporzionale al foglio patchato e ai fogli aggiunti, non al resto del workbook.
+ */
+final class WorkbookPatcher {
+    private static final String NS_REL = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    private static final String REL_WORKSHEET = NS_REL + "/worksheet";
+    private static final String REL_CALC_CHAIN = NS_REL + "/calcChain";
+    private static final String REL_OFFICE_DOCUMENT = NS_REL + "/officeDocument";
+    private static final String CT_WORKSHEET = "application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml";
+    private static final String CONTENT_TYPES = "[Content_Types].xml";
+    private static final QName REF = new QName("r");
+
+    private static final XMLInputFactory IN = XMLInputFactory.newFactory();
+    private static final XMLOutputFactory OUT = XMLOutputFactory.newFactory();
+    private static final XMLEventFactory EV = XMLEventFactory.newFactory();
+    static {
+        // l'upload non è fidato: niente DTD né entità esterne
+        IN.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        IN.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    private WorkbookPatcher() {}
+
+    /**
+     * @param original pacchetto xlsx caricato
+     * @param sheetName foglio da patchare (confronto senza maiuscole, come POI)
+     * @param firstCol colonna (0-based) della prima cella patchata
+     * @param values riga Excel (1-based) -&gt; valori delle colonne firstCol, firstCol+1, ...; vuoto = cella rimossa
+     * @param extra xlsx con i fogli da innestare, con stringhe inline (nessuno shared string né stile proprio)
+     */
+    static byte[] patch(byte[] original, String sheetName, int firstCol, Map<Integer, String[]> values, byte[] extra)
+            throws IOException, XMLStreamException {
+        try (ZipFile src = new ZipFile(new SeekableInMemoryByteChannel(original));
+             ZipFile add = new ZipFile(new SeekableInMemoryByteChannel(extra))) {
+            String wbPath = officeDocument(src);
+            String wbRelsPath = relsOf(wbPath);
+            String wbXml = read(src, wbPath);
+            String wbRels = read(src, wbRelsPath);
+            String types = read(src, CONTENT_TYPES);
+            Map<String, String> sheets = sheetParts(wbXml, wbRels, wbPath);
+            String target = lookup(sheets, sheetName);
+            if (target == null) throw new IllegalArgumentException("Foglio " + sheetName + " non trovato");
+
+            // parti nuove o sostituite, per nome di voce
+            Map<String, byte[]> replaced = new HashMap<>();
+            Map<String, byte[]> appended = new LinkedHashMap<>();
+            Set<String> dropped = new HashSet<>();
+            boolean[] droppedFormula = new boolean[1];
+            try (InputStream in = src.getInputStream(src.getEntry(target))) {
+                replaced.put(target, rewriteSheet(in, firstCol, values, droppedFormula));
+            }
+
+            String addWb = officeDocument(add);
+            Map<String, String> addSheets = sheetParts(read(add, addWb), read(add, relsOf(addWb)), addWb);
+            Set<String> ids = attributeValues(wbRels, "Relationship", "Id");
+            int sheetId = 0;
+            for (String v : attributeValues(wbXml, "sheet", "sheetId")) sheetId = Math.max(sheetId, Integer.parseInt(v));
+            String wbDir = wbPath.substring(0, wbPath.lastIndexOf('/') + 1);
+            String sheetTag = prefix(wbXml, "sheets") + "sheet";
+            String relTag = prefix(wbRels, "Relationships") + "Relationship";
+            String typeTag = prefix(types, "Types") + "Override";
+            StringBuilder newSheets = new StringBuilder(), newRels = new StringBuilder(), newTypes = new StringBuilder();
+            int n = 1;
+            for (Map.Entry<String, String> e : addSheets.entrySet()) {
+                byte[] xml = readBytes(add, e.getValue());
+                String existing = lookup(sheets, e.getKey());
+                if (existing != null && !existing.equals(target)) {
+                    // il foglio nuovo non cita relazioni: quelle del vecchio (disegni, commenti) resterebbero orfane
+                    replaced.put(existing, xml);
+                    dropped.add(relsOf(existing));
+                    continue;
+                }
+                String part;
+                do { part = wbDir + "worksheets/sheet" + n++ + ".xml"; } while (src.getEntry(part) != null);
+                String rid;
+                int k = ids.size() + 1;
+                do { rid = "rId" + k++; } while (!ids.add(rid));
+                appended.put(part, xml);
+                newSheets.append("<").append(sheetTag).append(" xmlns:r=\"" + NS_REL + "\" name=\"").append(escape(e.getKey()))
+                        .append("\" sheetId=\"").append(++sheetId).append("\" r:id=\"").append(rid).append("\"/>");
+                newRels.append("<").append(relTag).append(" Id=\"").append(rid).append("\" Type=\"" + REL_WORKSHEET + "\" Target=\"")
+                        .append(escape(part.substring(wbDir.length()))).append("\"/>");
+                newTypes.append("<").append(typeTag).append(" PartName=\"/").append(escape(part)).append("\" ContentType=\"" + CT_WORKSHEET + "\"/>");
+            }
+            wbXml = insertBefore(wbXml, "sheets", newSheets.toString());
+            wbRels = insertBefore(wbRels, "Relationships", newRels.toString());
+            types = insertBefore(types, "Types", newTypes.toString());
+
+            // celle con formula rimosse: la calcChain le citerebbe ancora, Excel la ricostruisce se manca
+            if (droppedFormula[0]) {
+                for (String[] rel : relationships(wbRels)) {
+                    if (!REL_CALC_CHAIN.equals(rel[1])) continue;
+                    String part = resolve(wbPath, rel[2]);
+                    dropped.add(part);
+                    wbRels = wbRels.replaceAll("<([\\w.-]+:)?Relationship\\s[^>]*Id=\"" + Pattern.quote(rel[0]) + "\"[^>]*/>", "");
+                    types = types.replaceAll("<([\\w.-]+:)?Override\\s[^>]*PartName=\"/" + Pattern.quote(part) + "\"[^>]*/>", "");
+                }
+            }
+            replaced.put(wbPath, wbXml.getBytes(StandardCharsets.UTF_8));
+            replaced.put(wbRelsPath, wbRels.getBytes(StandardCharsets.UTF_8));
+            replaced.put(CONTENT_TYPES, types.getBytes(StandardCharsets.UTF_8));
+
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(original.length + extra.length);
+            try (ZipArchiveOutputStream out = new ZipArchiveOutputStream(bos)) {
+                for (ZipArchiveEntry e : Collections.list(src.getEntriesInPhysicalOrder())) {
+                    if (dropped.contains(e.getName())) continue;
+                    byte[] data = replaced.get(e.getName());
+                    if (data == null) {
+                        out.addRawArchiveEntry(e, src.getRawInputStream(e));
+                    } else {
+                        write(out, e.getName(), data);
+                    }
+                }
+                for (Map.Entry<String, byte[]> e : appended.entrySet()) write(out, e.getKey(), e.getValue());
+            }
+            return bos.toByteArray();
+        }
+    }
+
+    /**
+     * Riscrive il foglio evento per evento. Le righe senza valori passano invariate; in quelle patchate le celle
+     * delle colonne patchate sono scartate e riscritte (stringhe inline) nella posizione di colonna giusta, tutte le
+     * celle ricevono il riferimento esplicito e l'attributo spans è tolto.
+     */
+    private static byte[] rewriteSheet(InputStream in, int firstCol, Map<Integer, String[]> values, boolean[] droppedFormula)
+            throws XMLStreamException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        XMLEventReader r = IN.createXMLEventReader(in);
+        XMLEventWriter w = OUT.createXMLEventWriter(bos, "UTF-8");
+        int lastRow = 0;
+        int rowNum = 0;
+        String[] rowValues = null;
+        int nextCol = 0;
+        boolean emitted = false;
+        StartElement row = null;
+        while (r.hasNext()) {
+            XMLEvent ev = r.nextEvent();
+            if (ev.isStartElement()) {
+                StartElement se = ev.asStartElement();
+                String local = se.getName().getLocalPart();
+                if (local.equals("row")) {
+                    Attribute ra = se.getAttributeByName(REF);
+                    rowNum = ra == null ? lastRow + 1 : Integer.parseInt(ra.getValue().trim());
+                    lastRow = rowNum;
+                    rowValues = values.get(rowNum);
+                    if (rowValues != null) {
+                        row = se;
+                        nextCol = 0;
+                        emitted = false;
+                        List<Attribute> attrs = new ArrayList<>();
+                        for (Iterator<Attribute> it = se.getAttributes(); it.hasNext(); ) {
+                            Attribute a = it.next();
+                            if (!a.getName().getLocalPart().equals("spans") || !a.getName().getNamespaceURI().isEmpty()) attrs.add(a);
+                        }
+                        if (ra == null) attrs.add(EV.createAttribute("r", String.valueOf(rowNum)));
+                        w.add(EV.createStartElement(se.getName(), attrs.iterator(), se.getNamespaces()));
+                        continue;
+                    }
+                } else if (local.equals("c") && rowValues != null) {
+                    Attribute ca = se.getAttributeByName(REF);
+                    int col = ca == null ? nextCol : column(ca.getValue());
+                    nextCol = col + 1;
+                    if (col >= firstCol && col < firstCol + rowValues.length) {
+                        if (skipElement(r)) droppedFormula[0] = true;
+                        continue;
+                    }
+                    if (col >= firstCol + rowValues.length && !emitted) {
+                        writeCells(w, row, rowNum, firstCol, rowValues);
+                        emitted = true;
+                    }
+                    if (ca == null) {
+                        List<Attribute> attrs = new ArrayList<>();
+                        for (Iterator<Attribute> it = se.getAttributes(); it.hasNext(); ) attrs.add(it.next());
+                        attrs.add(EV.createAttribute("r", cellRef(col, rowNum)));
+                        w.add(EV.createStartElement(se.getName(), attrs.iterator(), se.getNamespaces()));
+                        continue;
+                    }
+                }
+            } else if (ev.isEndElement() && rowValues != null && ev.asEndElement().getName().getLocalPart().equals("row")) {
+                if (!emitted) writeCells(w, row, rowNum, firstCol, rowValues);
+                rowValues = null;
+            }
+            w.add(ev);
+        }
+        w.flush();
+        w.close();
+        r.close();
+        return bos.toByteArray();
+    }
+
+    // consuma l'elemento appena aperto fino alla sua chiusura; true se conteneva una formula
+    private static boolean skipElement(XMLEventReader r) throws XMLStreamException {
+        boolean formula = false;
+        for (int depth = 1; depth > 0; ) {
+            XMLEvent ev = r.nextEvent();
+            if (ev.isStartElement()) {
+                depth++;
+                if (ev.asStartElement().getName().getLocalPart().equals("f")) formula = true;
+            } else if (ev.isEndElement()) {
+                depth--;
+            }
+        }
+        return formula;
+    }
+
+    private static void writeCells(XMLEventWriter w, StartElement row, int rowNum, int firstCol, String[] vals)
+            throws XMLStreamException {
+        String prefix = row.getName().getPrefix();
+        String ns = row.getName().getNamespaceURI();
+        for (int i = 0; i < vals.length; i++) {
+            String v = vals[i];
+            if (v == null || v.isEmpty()) continue;
+            w.add(EV.createStartElement(prefix, ns, "c",
+                    List.of(EV.createAttribute("r", cellRef(firstCol + i, rowNum)), EV.createAttribute("t", "inlineStr")).iterator(), null));
+            w.add(EV.createStartElement(prefix, ns, "is"));
+            boolean preserve = Character.isWhitespace(v.charAt(0)) || Character.isWhitespace(v.charAt(v.length() - 1));
+            w.add(EV.createStartElement(prefix, ns, "t",
+                    preserve ? List.of(EV.createAttribute("xml", XMLConstants.XML_NS_URI, "space", "preserve")).iterator() : null, null));
+            w.add(EV.createCharacters(v));
+            w.add(EV.createEndElement(prefix, ns, "t"));
+            w.add(EV.createEndElement(prefix, ns, "is"));
+            w.add(EV.createEndElement(prefix, ns, "c"));
+        }
+    }
+
+    private static int column(String ref) {
+        int col = 0;
+        for (int i = 0; i < ref.length(); i++) {
+            char ch = Character.toUpperCase(ref.charAt(i));
+            if (ch < 'A' || ch > 'Z') break;
+            col = col * 26 + (ch - 'A' + 1);
+        }
+        return col - 1;
+    }
+
+    private static String cellRef(int col, int row) {
+        StringBuilder sb = new StringBuilder();
+        for (int c = col + 1; c > 0; c = (c - 1) / 26) sb.append((char) ('A' + (c - 1) % 26));
+        return sb.reverse().append(row).toString();
+    }
+
+    // nome foglio -> parte, nell'ordine del workbook
+    private static Map<String, String> sheetParts(String wbXml, String wbRels, String wbPath) throws XMLStreamException {
+        Map<String, String> targets = new HashMap<>();
+        for (String[] rel : relationships(wbRels)) targets.put(rel[0], resolve(wbPath, rel[2]));
+        Map<String, String> out = new LinkedHashMap<>();
+        XMLStreamReader r = IN.createXMLStreamReader(new ByteArrayInputStream(wbXml.getBytes(StandardCharsets.UTF_8)));
+        while (r.hasNext()) {
+            if (r.next() == XMLStreamConstants.START_ELEMENT && r.getLocalName().equals("sheet")) {
+                String part = targets.get(r.getAttributeValue(NS_REL, "id"));
+                if (part != null) out.put(r.getAttributeValue(null, "name"), part);
+            }
+        }
+        r.close();
+        return out;
+    }
+
+    // {Id, Type, Target}
+    private static List<String[]> relationships(String rels) throws XMLStreamException {
+        List<String[]> out = new ArrayList<>();
+        XMLStreamReader r = IN.createXMLStreamReader(new ByteArrayInputStream(rels.getBytes(StandardCharsets.UTF_8)));
+        while (r.hasNext()) {
+            if (r.next() == XMLStreamConstants.START_ELEMENT && r.getLocalName().equals("Relationship")
+                    && !"External".equals(r.getAttributeValue(null, "TargetMode"))) {
+                out.add(new String[]{r.getAttributeValue(null, "Id"), r.getAttributeValue(null, "Type"), r.getAttributeValue(null, "Target")});
+            }
+        }
+        r.close();
+        return out;
+    }
+
+    private static Set<String> attributeValues(String xml, String element, String attr) throws XMLStreamException {
+        Set<String> out = new HashSet<>();
+        XMLStreamReader r = IN.createXMLStreamReader(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+        while (r.hasNext()) {
+            if (r.next() == XMLStreamConstants.START_ELEMENT && r.getLocalName().equals(element)) {
+                String v = r.getAttributeValue(null, attr);
+                if (v != null) out.add(v);
+            }
+        }
+        r.close();
+        return out;
+    }
+
+    private static String officeDocument(ZipFile zip) throws IOException, XMLStreamException {
+        for (String[] rel : relationships(read(zip, "_rels/.rels"))) {
+            if (REL_OFFICE_DOCUMENT.equals(rel[1])) return resolve("", rel[2]);
+        }
+        throw new IllegalArgumentException("Pacchetto xlsx senza workbook");
+    }
+
+    // il target di una relazione è relativo alla cartella della parte sorgente, o assoluto nel pacchetto
+    private static String resolve(String sourcePart, String target) {
+        return URI.create("/" + sourcePart).resolve(target).getPath().substring(1);
+    }
+
+    private static String relsOf(String part) {
+        int slash = part.lastIndexOf('/');
+        return part.substring(0, slash + 1) + "_rels/" + part.substring(slash + 1) + ".rels";
+    }
+
+    private static String lookup(Map<String, String> sheets, String name) {
+        for (Map.Entry<String, String> e : sheets.entrySet()) {
+            if (e.getKey().equalsIgnoreCase(name)) return e.getValue();
+        }
+        return null;
+    }
+
+    // prefisso di namespace (con i due punti) usato dal contenitore, per scrivere i figli allo stesso modo
+    private static String prefix(String xml, String container) {
+        Matcher m = closing(xml, container);
+        return m.group(1) == null ? "" : m.group(1);
+    }
+
+    // inserisce gli elementi prima della chiusura del contenitore
+    private static String insertBefore(String xml, String container, String elements) {
+        if (elements.isEmpty()) return xml;
+        Matcher m = closing(xml, container);
+        return xml.substring(0, m.start()) + elements + xml.substring(m.start());
+    }
+
+    private static Matcher closing(String xml, String container) {
+        Matcher m = Pattern.compile("</([\\w.-]+:)?" + container + "\\s*>").matcher(xml);
+        if (!m.find()) throw new IllegalArgumentException("Elemento " + container + " non trovato");
+        return m;
+    }
+
+    private static String escape(String s) {
+        return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;").replace("'", "&apos;");
+    }
+
+    private static String read(ZipFile zip, String name) throws IOException {
+        return new String(readBytes(zip, name), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readBytes(ZipFile zip, String name) throws IOException {
+        ZipArchiveEntry e = zip.getEntry(name);
+        if (e == null) throw new IllegalArgumentException("Parte " + name + " mancante");
+        try (InputStream in = zip.getInputStream(e)) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static void write(ZipArchiveOutputStream out, String name, byte[] data) throws IOException {
+        out.putArchiveEntry(new ZipArchiveEntry(name));
+        out.write(data);
+        out.closeArchiveEntry();
+    }
+}
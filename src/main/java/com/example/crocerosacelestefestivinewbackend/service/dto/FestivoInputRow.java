@@ -1,8 +1,8 @@
 package com.example.crocerosacelestefestivinewbackend.service.dto;
 
 import java.time.LocalDate;
+import java.util.BitSet;
 import java.util.Optional;
-import java.util.Set;
 
 public class FestivoInputRow {
     public int excelRowNumber;
@@ -11,8 +11,8 @@ public class FestivoInputRow {
     public LocalDate date;
     public String turno; // MP | SN
     public int peso; // > 0
-    public Optional<Integer> assegnazioneForzata; // 1..10
-    public Set<Integer> squadreEscluse; // 1..10
+    public Optional<Integer> assegnazioneForzata; // 1..N squadre
+    public BitSet squadreEscluse; // bit = numero squadra 1..N
     public String errorMessage; // Messaggio di errore per questo festivo (se presente)
 }
 
@@ -0,0 +1,52 @@
+package com.example.crocerosacelestefestivinewbackend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CsvTokenizerTest {
+
+    private static CsvTokenizer tokenizer(String text) throws IOException {
+        return new CsvTokenizer(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static List<List<String>> records(CsvTokenizer t, int columns) throws IOException {
+        List<List<String>> out = new ArrayList<>();
+        String[] row = new String[columns];
+        while (t.next(row)) out.add(Arrays.asList(row.clone()));
+        return out;
+    }
+
+    @Test
+    void quotedFieldsKeepDelimitersNewlinesAndEscapedQuotes() throws IOException {
+        CsvTokenizer t = tokenizer("data;nota\r\n2025-03-08;\"a; \"\"b\"\"\r\nc\"\r\n");
+
+        assertThat(t.delimiter()).isEqualTo(';');
+        assertThat(records(t, 2)).containsExactly(List.of("data", "nota"), List.of("2025-03-08", "a; \"b\"\r\nc"));
+        assertThat(t.recordNumber()).isEqualTo(2);
+    }
+
+    @Test
+    void crlfLfAndCrEndRecordsAlike() throws IOException {
+        CsvTokenizer t = tokenizer("a,b\r\nc,d\ne,f\rg,h");
+
+        assertThat(records(t, 2)).containsExactly(List.of("a", "b"), List.of("c", "d"), List.of("e", "f"), List.of("g", "h"));
+        assertThat(t.recordNumber()).isEqualTo(4);
+    }
+
+    @Test
+    void bomIsSkippedTabIsSniffedAndMissingColumnsAreEmpty() throws IOException {
+        CsvTokenizer t = tokenizer("\uFEFFdata\tturno\textra\n 2025-03-09 \tSN\n");
+
+        assertThat(t.delimiter()).isEqualTo('\t');
+        assertThat(records(t, 2)).containsExactly(List.of("data", "turno"), List.of("2025-03-09", "SN"));
+        assertThat(records(tokenizer("x\n"), 3)).containsExactly(List.of("x", "", ""));
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.crocerosacelestefestivinewbackend.service;
+
+import com.example.crocerosacelestefestivinewbackend.service.ExcelParsingService.ParseResult;
+import com.example.crocerosacelestefestivinewbackend.service.dto.FestivoInputRow;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EditingSessionServiceTest {
+
+    private static final LocalDate START = LocalDate.of(2025, 1, 1);
+    private static final LocalDate END = LocalDate.of(2026, 6, 30);
+
+    private final EditingSessionService service = new EditingSessionService(30, 100);
+    private ParseResult calendar;
+
+    @BeforeEach
+    void generateCalendar() {
+        calendar = new CalendarGenerator(new MockEnvironment()).generate(START, END, TeamConfig.DEFAULT);
+        // vincoli di dominio, per avere anche violazioni di squadra esclusa e forzata
+        List<FestivoInputRow> rows = calendar.rows;
+        rows.get(0).squadreEscluse.set(1);
+        rows.get(5).assegnazioneForzata = Optional.of(2);
+    }
+
+    private EditingSessionService.Session session(Map<String, Integer> assignment) {
+        return service.create(calendar.rows, calendar.pesanti, START, END, 0, 0.7, TeamConfig.DEFAULT, assignment);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> units(EditingSessionService.Session s) {
+        return (List<Map<String, Object>>) s.describe().get("units");
+    }
+
+    private static Map<String, Object> state(EditingSessionService.Session s) {
+        Map<String, Object> d = new HashMap<>(s.describe());
+        d.remove("id");
+        return d;
+    }
+
+    // squadra casuale per ogni data|turno: per gli MPB conta quella del sabato
+    private EditingSessionService.Session randomSession(Random rnd) {
+        Map<String, Integer> assignment = new HashMap<>();
+        for (FestivoInputRow r : calendar.rows) assignment.put(r.date + "|" + r.turno, 1 + rnd.nextInt(TeamConfig.DEFAULT.teams()));
+        return session(assignment);
+    }
+
+    private EditingSessionService.Session recomputed(EditingSessionService.Session s) {
+        Map<String, Integer> assignment = new HashMap<>();
+        for (Map<String, Object> u : units(s)) assignment.put((String) u.get("unit"), (Integer) u.get("team"));
+        return session(assignment);
+    }
+
+    @Test
+    void incrementalStateMatchesFullRecompute() {
+        Random rnd = new Random(42);
+        EditingSessionService.Session s = randomSession(rnd);
+        List<String> keys = units(s).stream().map(u -> (String) u.get("unit")).toList();
+        int teams = TeamConfig.DEFAULT.teams();
+
+        for (int step = 0; step < 200; step++) {
+            int before = (Integer) s.describe().get("violations");
+            Map<String, Object> r;
+            if (rnd.nextBoolean()) {
+                r = s.move(keys.get(rnd.nextInt(keys.size())), 1 + rnd.nextInt(teams), false);
+            } else {
+                int i = rnd.nextInt(keys.size());
+                int j = (i + 1 + rnd.nextInt(keys.size() - 1)) % keys.size();
+                r = s.swap(keys.get(i), keys.get(j), false);
+            }
+            EditingSessionService.Session fresh = recomputed(s);
+            assertThat(state(s)).as("step %d", step).isEqualTo(state(fresh));
+            assertThat(r.get("violations")).isEqualTo(fresh.describe().get("violations"));
+            assertThat(r.get("deltaViolations")).isEqualTo((Integer) r.get("violations") - before);
+            service.delete(fresh.id);
+        }
+    }
+
+    @Test
+    void monthlyTablesMatchFullRecompute() {
+        Random rnd = new Random(7);
+        EditingSessionService.Session s = randomSession(rnd);
+        List<String> keys = units(s).stream().map(u -> (String) u.get("unit")).toList();
+        for (int step = 0; step < 50; step++) s.move(keys.get(rnd.nextInt(keys.size())), 1 + rnd.nextInt(TeamConfig.DEFAULT.teams()), false);
+
+        ExcelOutputService.SectionOutput incremental = s.export();
+        ExcelOutputService.SectionOutput full = recomputed(s).export();
+        assertThat(incremental.pesiPerMese).isDeepEqualTo(full.pesiPerMese);
+        assertThat(incremental.eventiPerMese).isDeepEqualTo(full.eventiPerMese);
+        assertThat(incremental.assignment).isEqualTo(full.assignment);
+    }
+
+    @Test
+    void dryRunReportsTheSameDeltasAndLeavesStateUnchanged() {
+        EditingSessionService.Session s = randomSession(new Random(1));
+        List<String> keys = units(s).stream().map(u -> (String) u.get("unit")).toList();
+        Map<String, Object> initial = state(s);
+
+        Map<String, Object> dry = s.swap(keys.get(3), keys.get(40), true);
+        assertThat(dry).containsEntry("applied", false);
+        assertThat(state(s)).isEqualTo(initial);
+
+        Map<String, Object> applied = s.swap(keys.get(3), keys.get(40), false);
+        assertThat(applied).containsEntry("applied", true);
+        Map<String, Object> dryWithoutFlag = new HashMap<>(dry);
+        Map<String, Object> appliedWithoutFlag = new HashMap<>(applied);
+        dryWithoutFlag.remove("applied");
+        appliedWithoutFlag.remove("applied");
+        assertThat(appliedWithoutFlag).isEqualTo(dryWithoutFlag);
+
+        // lo scambio inverso riporta lo stato iniziale e inverte introdotte e risolte
+        Map<String, Object> back = s.swap(keys.get(3), keys.get(40), false);
+        assertThat(state(s)).isEqualTo(initial);
+        assertThat(back.get("introduced")).isEqualTo(applied.get("resolved"));
+        assertThat(back.get("resolved")).isEqualTo(applied.get("introduced"));
+        assertThat(back.get("deltaViolations")).isEqualTo(-(Integer) applied.get("deltaViolations"));
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.crocerosacelestefestivinewbackend.service;
+
+import com.example.crocerosacelestefestivinewbackend.service.dto.FestivoInputRow;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Optional;
+
+/** Righe di lista-festivi scritte a mano nei test: peso 10, nessuna esclusione, numero di riga Excel dalla 2. */
+final class FestivoRows {
+
+    final List<FestivoInputRow> list = new ArrayList<>();
+
+    FestivoInputRow add(String date, String turno, Integer forzata) {
+        FestivoInputRow r = new FestivoInputRow();
+        r.excelRowNumber = list.size() + 2;
+        r.date = LocalDate.parse(date);
+        r.turno = turno;
+        r.peso = 10;
+        r.assegnazioneForzata = Optional.ofNullable(forzata);
+        r.squadreEscluse = new BitSet();
+        list.add(r);
+        return r;
+    }
+}
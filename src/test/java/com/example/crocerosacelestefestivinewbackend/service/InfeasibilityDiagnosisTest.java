@@ -0,0 +1,68 @@
+package com.example.crocerosacelestefestivinewbackend.service;
+
+import com.example.crocerosacelestefestivinewbackend.service.dto.FestivoInputRow;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InfeasibilityDiagnosisTest {
+
+    private final FestivoRows rows = new FestivoRows();
+
+    private InfeasibilityDiagnosis.Result diagnose(String start, String end) {
+        SchedulingCommon.BuiltModel bm = SchedulingCommon.buildUnits(rows.list, Set.of(), LocalDate.parse(start), LocalDate.parse(end));
+        return InfeasibilityDiagnosis.defaults().diagnose(bm, 0);
+    }
+
+    @Test
+    void twoForcedInTheSameMonthFormAMinimalCore() {
+        rows.add("2025-04-20", "SN", 4);
+        rows.add("2025-04-25", "SN", 4);
+        rows.add("2025-04-21", "SN", null); // estraneo al conflitto
+
+        InfeasibilityDiagnosis.Result r = diagnose("2025-04-01", "2025-04-30");
+
+        assertThat(r.verdict).isEqualTo(InfeasibilityDiagnosis.Verdict.INFEASIBLE);
+        assertThat(r.minimal).isTrue();
+        assertThat(r.core).containsExactly(
+                "Forzata: 2025-04-20|SN alla squadra 4",
+                "Forzata: 2025-04-25|SN alla squadra 4",
+                "Al più un festivo per squadra nel mese 2025-04 (2025-04-20|SN, 2025-04-25|SN)");
+        assertThat(r.coreRows).containsExactly(2, 3, 2);
+        assertThat(r.byUnit.keySet()).extracting(u -> u.id).containsExactlyInAnyOrder("2025-04-20|SN", "2025-04-25|SN");
+    }
+
+    @Test
+    void reportPrependsTheCoreToRowNotesWithSemicolon() {
+        FestivoInputRow first = rows.add("2025-04-20", "SN", 4);
+        rows.add("2025-04-25", "SN", 4);
+        first.errorMessage = "nota esistente";
+
+        List<Map<String, Object>> v = new ArrayList<>();
+        InfeasibilityDiagnosis.report(diagnose("2025-04-01", "2025-04-30"), v, SchedulingTrace.OFF);
+
+        assertThat(v).hasSize(4).allSatisfy(m -> assertThat(m).containsEntry("field", InfeasibilityDiagnosis.FIELD));
+        assertThat(v.get(0)).containsEntry("row", 0);
+        assertThat(first.errorMessage).isEqualTo("Vincoli incompatibili: Forzata: 2025-04-20|SN alla squadra 4; "
+                + "Al più un festivo per squadra nel mese 2025-04 (2025-04-20|SN, 2025-04-25|SN); nota esistente");
+    }
+
+    @Test
+    void feasibleModelReportsNothing() {
+        rows.add("2025-04-20", "SN", 4);
+        rows.add("2025-04-25", "SN", 5);
+
+        InfeasibilityDiagnosis.Result r = diagnose("2025-04-01", "2025-04-30");
+        List<Map<String, Object>> v = new ArrayList<>();
+        InfeasibilityDiagnosis.report(r, v, SchedulingTrace.OFF);
+
+        assertThat(r.verdict).isEqualTo(InfeasibilityDiagnosis.Verdict.FEASIBLE);
+        assertThat(v).isEmpty();
+    }
+}
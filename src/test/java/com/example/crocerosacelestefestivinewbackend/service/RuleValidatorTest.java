@@ -0,0 +1,71 @@
+package com.example.crocerosacelestefestivinewbackend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RuleValidatorTest {
+
+    private final FestivoRows rows = new FestivoRows();
+
+    private List<Map<String, Object>> validate(String start, String end, Set<String> pesanti) {
+        List<Map<String, Object>> v = new ArrayList<>();
+        RuleValidator.validate(RuleValidator.DayTable.of(rows.list, pesanti, LocalDate.parse(start), LocalDate.parse(end)),
+                TeamConfig.DEFAULT, v);
+        return v;
+    }
+
+    @Test
+    void saturdayWithoutSundayIsAnIncompletePair() {
+        rows.add("2025-03-01", "MP", null);
+
+        List<Map<String, Object>> v = validate("2025-03-01", "2025-03-30", Set.of());
+
+        assertThat(v).singleElement().satisfies(m -> {
+            assertThat(m).containsEntry("row", 2).containsEntry("field", "turno");
+            assertThat((String) m.get("message")).contains("manca MP per 2025-03-02");
+        });
+    }
+
+    @Test
+    void weekendPairCountsOnceInTheMonthOfSaturday() {
+        // sab 31 maggio + dom 1 giugno forzati alla 3: un'unità di maggio, la forzata del 2 giugno è la prima di giugno
+        rows.add("2025-05-31", "MP", 3);
+        rows.add("2025-05-31", "SN", null);
+        rows.add("2025-06-01", "MP", 3);
+        rows.add("2025-06-02", "SN", 3);
+
+        assertThat(validate("2025-05-01", "2025-06-30", Set.of())).isEmpty();
+    }
+
+    @Test
+    void twoForcedInTheSameMonthAndHeavyInTheSameYear() {
+        rows.add("2025-04-20", "SN", 4);
+        rows.add("2025-04-25", "SN", 4);
+        rows.add("2025-12-25", "SN", 4);
+
+        List<Map<String, Object>> v = validate("2025-04-01", "2025-12-30",
+                Set.of("2025-04-20|SN", "2025-12-25|SN"));
+
+        assertThat(v).extracting(m -> (String) m.get("message")).filteredOn(m -> m.contains("forzat")).containsExactly(
+                "Più forzate per la squadra 4 nello stesso mese (2025-04)",
+                "Più festivi pesanti forzati per la squadra 4 nello stesso anno (2025)");
+    }
+
+    @Test
+    void thirtyFirstNeedsSnAndNoWeekdayMp() {
+        rows.add("2025-01-31", "MP", null); // venerdì
+
+        List<Map<String, Object>> v = validate("2025-01-01", "2025-01-31", Set.of());
+
+        assertThat(v).extracting(m -> (String) m.get("message")).containsExactly(
+                "Il 31 del mese JANUARY deve contenere SN",
+                "Il 31 infrasettimanale non può avere MP");
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.crocerosacelestefestivinewbackend.service;
+
+import com.example.crocerosacelestefestivinewbackend.service.ExcelParsingService.ParseResult;
+import com.example.crocerosacelestefestivinewbackend.service.SchedulingCommon.FestivoUnit;
+import com.example.crocerosacelestefestivinewbackend.service.SchedulingCommon.ScheduleResult;
+import com.example.crocerosacelestefestivinewbackend.service.dto.FestivoInputRow;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Invarianti comuni a tutti gli engine su un semestre generato (CalendarGenerator) con una forzata e un'esclusione:
+ * ogni festivo assegnato, un festivo per squadra nel mese, un pesante per squadra nell'anno, MP e SN dello stesso
+ * giorno a squadre diverse, forzate ed esclusioni rispettate.
+ */
+class SchedulingEnginesTest {
+
+    private static final LocalDate START = LocalDate.of(2025, 1, 1);
+    private static final LocalDate END = LocalDate.of(2025, 6, 30);
+    private static final TeamConfig TEAMS = TeamConfig.DEFAULT;
+    private static final double ALPHA = 0.7;
+    private static final int FORCED_TEAM = 3;
+    private static final int EXCLUDED_TEAM = 1;
+
+    private static GreedySchedulerService greedy;
+    private static MilpSchedulerService milp;
+    private static BeamSchedulerService beam;
+    private static LpRoundingSchedulerService lp;
+    private static FlowSchedulerService flow;
+    private static LnsSchedulerService lns;
+
+    @BeforeAll
+    static void engines() {
+        SchedulingMetrics metrics = new SchedulingMetrics(new SimpleMeterRegistry());
+        OrToolsNatives natives = new OrToolsNatives("");
+        natives.ensureLoaded();
+        InfeasibilityDiagnosis diagnosis = InfeasibilityDiagnosis.defaults();
+        CpuOffload cpuOffload = new CpuOffload(2, 2);
+        greedy = new GreedySchedulerService(metrics, diagnosis);
+        milp = new MilpSchedulerService(metrics, natives, ModelDump.disabled(), diagnosis, false, 0.6, 0.0);
+        beam = new BeamSchedulerService(metrics, cpuOffload, diagnosis, 16, 2000);
+        lp = new LpRoundingSchedulerService(metrics, natives, milp, diagnosis, 16, 1, 30);
+        flow = new FlowSchedulerService(metrics, natives, diagnosis, 60, 15, 20);
+        // nessun engine limitato: l'ammissione non entra in gioco
+        SolverAdmission admission = new SolverAdmission(new MockEnvironment(), metrics);
+        lns = new LnsSchedulerService(metrics, admission, cpuOffload, natives, greedy, lp, milp, flow, 2, 500, 2, 1, 10);
+    }
+
+    // calendario nuovo a ogni chiamata (gli engine modificano le righe): SN forzato alla squadra 3 e un MP di sabato
+    // (blocco MPB) che esclude la squadra 1
+    private static ParseResult calendar() {
+        ParseResult c = new CalendarGenerator(new MockEnvironment()).generate(START, END, TEAMS);
+        c.rows.stream().filter(r -> "SN".equals(r.turno)).findFirst().orElseThrow()
+                .assegnazioneForzata = Optional.of(FORCED_TEAM);
+        c.rows.stream().filter(r -> "MP".equals(r.turno) && r.date.getDayOfWeek() == DayOfWeek.SATURDAY)
+                .skip(3).findFirst().orElseThrow().squadreEscluse.set(EXCLUDED_TEAM);
+        return c;
+    }
+
+    private static void assertInvariants(Map<String, Integer> assignment) {
+        ParseResult c = calendar();
+        for (FestivoInputRow r : c.rows) assertThat(assignment).containsKey(r.date + "|" + r.turno);
+
+        List<FestivoUnit> units = SchedulingCommon.buildUnits(c.rows, c.pesanti, START, END, TEAMS).units;
+        int[][] peers = SchedulingCommon.dayPeers(units);
+        int[] team = new int[units.size()];
+        Set<String> months = new HashSet<>();
+        Set<String> heavy = new HashSet<>();
+        for (int i = 0; i < units.size(); i++) {
+            FestivoUnit u = units.get(i);
+            String id = SchedulingCommon.unitKey(u);
+            team[i] = assignment.get(id);
+            assertThat(team[i]).as(id).isBetween(1, TEAMS.teams());
+            for (LocalDate d : u.dates) assertThat(assignment.get(d + "|" + ("MPB".equals(u.tipo) ? "MP" : u.tipo))).as(id).isEqualTo(team[i]);
+            u.forzata.ifPresent(f -> assertThat(assignment.get(id)).as("forzata " + id).isEqualTo(f));
+            assertThat(u.escluse.get(team[i])).as("esclusa " + id).isFalse();
+            assertThat(months.add(u.year + "-" + u.month + "/" + team[i])).as("mese " + id).isTrue();
+            if (u.pesante) assertThat(heavy.add(u.year + "/" + team[i])).as("pesante " + id).isTrue();
+        }
+        for (int i = 0; i < units.size(); i++) {
+            for (int q : peers[i]) assertThat(team[q]).as("stesso giorno " + SchedulingCommon.unitKey(units.get(i))).isNotEqualTo(team[i]);
+        }
+    }
+
+    @Test
+    void greedyWithStaticOrderRespectsTheRules() {
+        ParseResult c = calendar();
+        assertInvariants(greedy.schedule(c.rows, c.pesanti, START, END, 0, ALPHA, false, TEAMS, SchedulingTrace.OFF).assignment);
+    }
+
+    @Test
+    void greedyWithDynamicOrderRespectsTheRules() {
+        ParseResult c = calendar();
+        assertInvariants(greedy.schedule(c.rows, c.pesanti, START, END, 0, ALPHA, true, TEAMS, SchedulingTrace.OFF).assignment);
+    }
+
+    @Test
+    void beamRespectsTheRules() {
+        ParseResult c = calendar();
+        ScheduleResult res = beam.schedule(c.rows, c.pesanti, START, END, 0, ALPHA, 16, 2000, TEAMS, SchedulingTrace.OFF);
+        assertInvariants(res.assignment);
+        assertThat(res.score).isNotNaN();
+    }
+
+    @Test
+    void lpRoundingRespectsTheRulesAboveItsBound() {
+        ParseResult c = calendar();
+        ScheduleResult res = lp.schedule(c.rows, c.pesanti, START, END, 0, ALPHA, TEAMS, SchedulingTrace.OFF);
+        assertInvariants(res.assignment);
+        assertThat(res.score).isGreaterThanOrEqualTo(res.lowerBound - 1e-9);
+    }
+
+    @Test
+    void flowRespectsTheRules() {
+        ParseResult c = calendar();
+        assertInvariants(flow.schedule(c.rows, c.pesanti, START, END, 0, ALPHA, TEAMS, SchedulingTrace.OFF).assignment);
+    }
+
+    @Test
+    void lnsRespectsTheRulesAndNeverWorsensTheInitialSolution() {
+        ParseResult c = calendar();
+        ScheduleResult res = lns.schedule(c.rows, c.pesanti, START, END, 0, ALPHA, LnsSchedulerService.INITIAL_GREEDY, 3, TEAMS, SchedulingTrace.OFF);
+        assertInvariants(res.assignment);
+        assertThat(res.progress).isNotEmpty();
+        for (int k = 1; k < res.progress.size(); k++) assertThat(res.progress.get(k).score).isLessThan(res.progress.get(k - 1).score);
+        assertThat(res.score).isEqualTo(res.progress.get(res.progress.size() - 1).score);
+    }
+
+    @Test
+    void milpPoolIsSortedByScoreAndPairwiseDistant() {
+        int minDistance = 4;
+        ParseResult c = calendar();
+        ScheduleResult res = milp.schedule(c.rows, c.pesanti, START, END, 0, ALPHA, 20, false, 3, minDistance, TEAMS, SchedulingTrace.OFF);
+        assertInvariants(res.assignment);
+        assertThat(res.pool).hasSizeGreaterThan(1);
+        assertThat(res.pool.get(0).assignment).isEqualTo(res.assignment);
+
+        List<FestivoUnit> units = SchedulingCommon.buildUnits(calendar().rows, c.pesanti, START, END, TEAMS).units;
+        for (int k = 0; k < res.pool.size(); k++) {
+            MilpSchedulerService.PoolSolution p = res.pool.get(k);
+            assertThat(p.rank).isEqualTo(k + 1);
+            assertInvariants(p.assignment);
+            if (k > 0) assertThat(p.score).isGreaterThanOrEqualTo(res.pool.get(k - 1).score);
+            for (int j = 0; j < k; j++) {
+                int distance = 0;
+                for (FestivoUnit u : units) {
+                    String id = SchedulingCommon.unitKey(u);
+                    if (!p.assignment.get(id).equals(res.pool.get(j).assignment.get(id))) distance++;
+                }
+                assertThat(distance).as("rango " + (j + 1) + " e " + (k + 1)).isGreaterThanOrEqualTo(minDistance);
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.crocerosacelestefestivinewbackend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ViolationsTest {
+
+    @Test
+    void exactlyMaxViolationsAreNotTruncated() {
+        Violations v = new Violations(3);
+        for (int i = 1; i <= 3; i++) v.add(i, "data", "errore " + i);
+
+        assertThat(v.isFull()).isFalse();
+        assertThat(v).hasSize(3);
+        assertThat(v).extracting(m -> m.get("field")).containsOnly("data");
+    }
+
+    @Test
+    void firstDiscardedViolationAppendsGlobalEntry() {
+        Violations v = new Violations(3);
+        for (int i = 1; i <= 5; i++) v.add(i, "data", "errore " + i);
+
+        assertThat(v.isFull()).isTrue();
+        assertThat(v).hasSize(4);
+        assertThat(v.get(2)).containsEntry("row", 3);
+        assertThat(v.get(3)).containsEntry("row", 0).containsEntry("field", "__global__");
+        assertThat((String) v.get(3).get("message")).contains("prime 3");
+    }
+
+    @Test
+    void addMapReportsWhetherTheEntryWasStored() {
+        Violations v = new Violations(1);
+
+        assertThat(v.add(Map.of("row", 7, "field", "turno", "message", "x", ExcelParsingService.COL_SEZIONE, "nord"))).isTrue();
+        assertThat(v.add(Map.of("row", 8, "field", "turno", "message", "y"))).isFalse();
+        assertThat(v.get(0)).containsEntry("row", 7).containsEntry(ExcelParsingService.COL_SEZIONE, "nord");
+        assertThat(v).hasSize(2);
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.crocerosacelestefestivinewbackend.service;
+
+import org.apache.poi.ss.usermodel.ClientAnchor;
+import org.apache.poi.ss.usermodel.Comment;
+import org.apache.poi.ss.usermodel.Drawing;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WorkbookPatcherTest {
+
+    private static byte[] original() throws IOException {
+        try (XSSFWorkbook wb = new XSSFWorkbook()) {
+            Sheet lista = wb.createSheet("lista-festivi");
+            for (int r = 0; r < 4; r++) {
+                Row row = lista.createRow(r);
+                for (int c = 0; c < 9; c++) row.createCell(c).setCellValue(r == 0 ? "h" + c : "v" + r + c);
+            }
+            Sheet pesi = wb.createSheet("riepilogo-pesi");
+            pesi.createRow(0).createCell(0).setCellValue("vecchio");
+            Drawing<?> drawing = pesi.createDrawingPatriarch();
+            ClientAnchor anchor = wb.getCreationHelper().createClientAnchor();
+            Comment comment = drawing.createCellComment(anchor);
+            comment.setString(wb.getCreationHelper().createRichTextString("commento"));
+            pesi.getRow(0).getCell(0).setCellComment(comment);
+            wb.createSheet("altro").createRow(0).createCell(0).setCellValue("intatto");
+            return write(wb);
+        }
+    }
+
+    private static byte[] extra() throws IOException {
+        SXSSFWorkbook wb = new SXSSFWorkbook(null, SXSSFWorkbook.DEFAULT_WINDOW_SIZE, false, false);
+        try {
+            wb.createSheet("riepilogo-pesi").createRow(0).createCell(0).setCellValue("nuovo");
+            wb.createSheet("andamento").createRow(0).createCell(0).setCellValue("aggiunto");
+            return write(wb);
+        } finally {
+            wb.dispose();
+        }
+    }
+
+    private static byte[] write(Workbook wb) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        wb.write(bos);
+        return bos.toByteArray();
+    }
+
+    private static Map<String, byte[]> entries(byte[] xlsx) throws IOException {
+        Map<String, byte[]> out = new HashMap<>();
+        try (ZipInputStream zin = new ZipInputStream(new ByteArrayInputStream(xlsx))) {
+            for (ZipEntry e; (e = zin.getNextEntry()) != null; ) out.put(e.getName(), zin.readAllBytes());
+        }
+        return out;
+    }
+
+    private static byte[] patch(byte[] original) throws Exception {
+        Map<Integer, String[]> values = new HashMap<>();
+        values.put(1, new String[]{"squadra assegnata", "note / errori"});
+        values.put(2, new String[]{"3", " spazi "});
+        values.put(3, new String[]{"", ""});
+        return WorkbookPatcher.patch(original, "LISTA-FESTIVI", 7, values, extra());
+    }
+
+    @Test
+    void patchesOnlyTheRequestedCells() throws Exception {
+        byte[] patched = patch(original());
+
+        try (XSSFWorkbook wb = new XSSFWorkbook(new ByteArrayInputStream(patched))) {
+            List<String> names = new ArrayList<>();
+            wb.forEach(s -> names.add(s.getSheetName()));
+            assertThat(names).containsExactly("lista-festivi", "riepilogo-pesi", "altro", "andamento");
+
+            Sheet lista = wb.getSheet("lista-festivi");
+            assertThat(lista.getRow(0).getCell(7).getStringCellValue()).isEqualTo("squadra assegnata");
+            assertThat(lista.getRow(1).getCell(7).getStringCellValue()).isEqualTo("3");
+            assertThat(lista.getRow(1).getCell(8).getStringCellValue()).isEqualTo(" spazi ");
+            assertThat(lista.getRow(2).getCell(7)).isNull();
+            assertThat(lista.getRow(2).getCell(8)).isNull();
+            assertThat(lista.getRow(2).getCell(6).getStringCellValue()).isEqualTo("v26");
+            assertThat(lista.getRow(3).getCell(7).getStringCellValue()).isEqualTo("v37");
+            assertThat(wb.getSheet("andamento").getRow(0).getCell(0).getStringCellValue()).isEqualTo("aggiunto");
+        }
+    }
+
+    @Test
+    void untouchedPartsAreCopiedByteForByte() throws Exception {
+        byte[] original = original();
+        Map<String, byte[]> before = entries(original);
+        Map<String, byte[]> after = entries(patch(original));
+
+        for (String part : List.of("xl/styles.xml", "xl/sharedStrings.xml", "xl/worksheets/sheet3.xml")) {
+            assertThat(after.get(part)).as(part).isEqualTo(before.get(part));
+        }
+    }
+
+    @Test
+    void replacedSheetDropsTheOldRelationships() throws Exception {
+        byte[] original = original();
+        assertThat(entries(original)).containsKey("xl/worksheets/_rels/sheet2.xml.rels");
+
+        byte[] patched = patch(original);
+
+        assertThat(entries(patched)).doesNotContainKey("xl/worksheets/_rels/sheet2.xml.rels");
+        try (XSSFWorkbook wb = new XSSFWorkbook(new ByteArrayInputStream(patched))) {
+            Sheet pesi = wb.getSheet("riepilogo-pesi");
+            assertThat(pesi.getRow(0).getCell(0).getStringCellValue()).isEqualTo("nuovo");
+            assertThat(pesi.getCellComments()).isEmpty();
+        }
+    }
+}